@@ -30,6 +30,13 @@ public interface TraceSequenceTypes {
     public static final byte FORMAT_SEQUITUR = 1<<0;
     public static final byte FORMAT_GZIP = 1<<1;
     public static final byte FORMAT_UNCOMPRESSED = 1<<2;
+    public static final byte FORMAT_PACKED = 1<<3;
+    public static final byte FORMAT_LZ = 1<<4;
+    public static final byte FORMAT_SEQUITUR_SHARDED = (byte) (1<<7);
+    // short sequences stored inline in the sequence table, longer ones in a nested format
+    public static final byte FORMAT_INLINE = 1<<5;
+    // not a format of its own: the sequence table of the thread is stored in a separate stream
+    public static final byte FORMAT_TABLE_STREAM = (byte) 0xff;
 
     public static final byte TYPE_INTEGER = 1<<5;
     public static final byte TYPE_LONG = 1<<6;
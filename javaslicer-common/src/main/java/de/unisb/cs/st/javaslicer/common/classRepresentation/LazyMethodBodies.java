@@ -0,0 +1,89 @@
+/** License information:
+ *    Component: javaslicer-common
+ *    Package:   de.unisb.cs.st.javaslicer.common.classRepresentation
+ *    Class:     LazyMethodBodies
+ *    Filename:  javaslicer-common/src/main/java/de/unisb/cs/st/javaslicer/common/classRepresentation/LazyMethodBodies.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.common.classRepresentation;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.zip.InflaterInputStream;
+
+import de.hammacher.util.StringCacheInput;
+import de.unisb.cs.st.javaslicer.common.exceptions.TracerException;
+
+/**
+ * The method bodies of a class read from a class directory (see
+ * {@link ReadClass#readDirectoryEntry}). They are decoded when the body of one of
+ * the methods is accessed for the first time, all methods of the class at once.
+ */
+class LazyMethodBodies {
+
+    private final ReadClass.BodySource source;
+    private final long position;
+    private final int length;
+    // in the order in which the bodies have been written
+    private final ReadMethod[] methods;
+
+    private boolean loaded = false;
+    // rethrown on every access if the bodies could not be read
+    private TracerException failure = null;
+
+    public LazyMethodBodies(final ReadClass.BodySource source, final long position, final int length,
+            final ReadMethod[] methods) {
+        this.source = source;
+        this.position = position;
+        this.length = length;
+        this.methods = methods;
+        for (final ReadMethod rm: methods)
+            rm.setLazyBodies(this);
+    }
+
+    public synchronized void load() {
+        if (this.failure != null)
+            throw this.failure;
+        if (this.loaded)
+            return;
+        try {
+            final DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(this.source.readBodies(this.position, this.length))));
+            final StringCacheInput stringCache = new StringCacheInput();
+            for (final ReadMethod rm: this.methods)
+                rm.readBody(in, stringCache, 0, 0);
+        } catch (final IOException e) {
+            throw fail(e);
+        } catch (final RuntimeException e) {
+            // corrupted data may also show up as e.g. an IndexOutOfBoundsException
+            throw fail(e);
+        }
+        this.loaded = true;
+        // publishes the bodies to all threads (the field is volatile)
+        for (final ReadMethod rm: this.methods)
+            rm.setLazyBodies(null);
+    }
+
+    private TracerException fail(final Exception cause) {
+        this.failure = new TracerException("Error reading the method bodies of class "
+            + this.methods[0].getReadClass().getName(), cause);
+        return this.failure;
+    }
+
+}
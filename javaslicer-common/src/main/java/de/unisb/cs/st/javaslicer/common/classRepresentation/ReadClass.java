@@ -22,12 +22,14 @@
  */
 package de.unisb.cs.st.javaslicer.common.classRepresentation;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.DeflaterOutputStream;
 
 import org.objectweb.asm.Type;
 
@@ -38,11 +40,26 @@ import de.hammacher.util.streams.OptimizedDataOutputStream;
 
 public class ReadClass implements Comparable<ReadClass> {
 
+    /**
+     * Reads the blocks of method bodies written by {@link ReadClass#writeBodies()}.
+     */
+    public static interface BodySource {
+
+        byte[] readBodies(long position, int length) throws IOException;
+
+    }
+
+    /**
+     * Is written in place of the name of the first class to mark a class directory
+     * (see {@link #writeDirectoryEntry}). Classes never have an empty name.
+     */
+    public static final String DIRECTORY_MARKER = "";
+
     private final String internalClassName;
     private final String className;
     private final ArrayList<ReadMethod> methods = new ArrayList<ReadMethod>();
     private final List<Field> fields;
-    private final int instructionNumberStart;
+    private int instructionNumberStart;
     private int instructionNumberEnd;
     private final String source;
     private final int access;
@@ -116,7 +133,57 @@ public class ReadClass implements Comparable<ReadClass> {
         return this.superClassName;
     }
 
+    /**
+     * Moves all instructions of this class to other instruction and trace sequence indexes.
+     * This is used to move a class which has been instrumented in a local index space to
+     * the indexes reserved for it. Must not be called once the class is in use.
+     */
+    public void relocate(final int instructionIndexOffset, final int traceSeqIndexOffset) {
+        if (instructionIndexOffset == 0 && traceSeqIndexOffset == 0)
+            return;
+        this.instructionNumberStart += instructionIndexOffset;
+        this.instructionNumberEnd += instructionIndexOffset;
+        for (final ReadMethod rm: this.methods)
+            rm.relocate(instructionIndexOffset, traceSeqIndexOffset);
+    }
+
     public void writeOut(final DataOutputStream out, final StringCacheOutput stringCache) throws IOException {
+        writeHeader(out, stringCache);
+        OptimizedDataOutputStream.writeInt0(this.methods.size(), out);
+        for (final ReadMethod rm: this.methods)
+            rm.writeOut(out, stringCache);
+    }
+
+    /**
+     * Writes the bodies of all methods of this class into one compressed block, which
+     * can be decoded independently of all other classes (see {@link #writeDirectoryEntry}).
+     */
+    public byte[] writeBodies() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+        final StringCacheOutput stringCache = new StringCacheOutput();
+        for (final ReadMethod rm: this.methods)
+            rm.writeBody(out, stringCache);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes this class like {@link #writeOut}, but without the method bodies. Instead,
+     * the position of the block written by {@link #writeBodies()} is stored, so that the
+     * bodies can be decoded on first access.
+     */
+    public void writeDirectoryEntry(final DataOutputStream out, final StringCacheOutput stringCache,
+            final long bodiesPosition, final int bodiesLength) throws IOException {
+        writeHeader(out, stringCache);
+        OptimizedDataOutputStream.writeInt0(this.methods.size(), out);
+        for (final ReadMethod rm: this.methods)
+            rm.writeHeader(out, stringCache);
+        OptimizedDataOutputStream.writeLong0(bodiesPosition, out);
+        OptimizedDataOutputStream.writeInt0(bodiesLength, out);
+    }
+
+    private void writeHeader(final DataOutputStream out, final StringCacheOutput stringCache) throws IOException {
         stringCache.writeString(this.internalClassName, out);
         OptimizedDataOutputStream.writeInt0(this.instructionNumberStart, out);
         OptimizedDataOutputStream.writeInt0(this.access, out);
@@ -125,16 +192,80 @@ public class ReadClass implements Comparable<ReadClass> {
         OptimizedDataOutputStream.writeInt0(this.fields.size(), out);
         for (final Field field: this.fields)
             field.writeOut(out, stringCache);
-        OptimizedDataOutputStream.writeInt0(this.methods.size(), out);
-        for (final ReadMethod rm: this.methods)
-            rm.writeOut(out, stringCache);
     }
 
     public static ReadClass readFrom(final DataInputStream in, final StringCacheInput stringCache) throws IOException {
-        final String intName = stringCache.readString(in);
+        return readFrom(in, stringCache, 0, 0);
+    }
+
+    /**
+     * Reads a class and relocates all its instruction indexes and trace sequence indexes
+     * by the given offsets. This is used to reuse classes instrumented in an earlier run.
+     */
+    public static ReadClass readFrom(final DataInputStream in, final StringCacheInput stringCache,
+            final int instructionIndexOffset, final int traceSeqIndexOffset) throws IOException {
+        return readFrom(in, stringCache, stringCache.readString(in), instructionIndexOffset, traceSeqIndexOffset);
+    }
+
+    /**
+     * Reads a class whose internal name has already been read (e.g. to check for the
+     * {@link #DIRECTORY_MARKER}).
+     */
+    public static ReadClass readFrom(final DataInputStream in, final StringCacheInput stringCache,
+            final String internalClassName) throws IOException {
+        return readFrom(in, stringCache, internalClassName, 0, 0);
+    }
+
+    private static ReadClass readFrom(final DataInputStream in, final StringCacheInput stringCache,
+            final String internalClassName, final int instructionIndexOffset, final int traceSeqIndexOffset)
+            throws IOException {
+        final ReadClass rc = readHeader(in, stringCache, internalClassName, instructionIndexOffset);
+        int numMethods = OptimizedDataInputStream.readInt0(in);
+        rc.methods.ensureCapacity(numMethods);
+        int instrIndex = rc.instructionNumberStart;
+        while (numMethods-- > 0) {
+            final ReadMethod newMethod = ReadMethod.readFrom(in, rc, instrIndex, stringCache,
+                instructionIndexOffset, traceSeqIndexOffset);
+            instrIndex = newMethod.getInstructionNumberEnd();
+            rc.methods.add(newMethod);
+        }
+        rc.setInstructionNumberEnd(instrIndex);
+        rc.methods.trimToSize();
+        Collections.sort(rc.methods);
+        return rc;
+    }
+
+    /**
+     * Reads a class written by {@link #writeDirectoryEntry}, after its internal name
+     * has been read. The method bodies are read from the given source when they are
+     * first accessed.
+     */
+    public static ReadClass readDirectoryEntry(final DataInputStream in, final StringCacheInput stringCache,
+            final String internalClassName, final BodySource bodySource) throws IOException {
+        final ReadClass rc = readHeader(in, stringCache, internalClassName, 0);
+        final ReadMethod[] methods = new ReadMethod[OptimizedDataInputStream.readInt0(in)];
+        int instrIndex = rc.instructionNumberStart;
+        for (int i = 0; i < methods.length; ++i) {
+            methods[i] = ReadMethod.readHeader(in, rc, instrIndex, stringCache);
+            instrIndex = methods[i].getInstructionNumberEnd();
+        }
+        final long bodiesPosition = OptimizedDataInputStream.readLong0(in);
+        final int bodiesLength = OptimizedDataInputStream.readInt0(in);
+        if (methods.length > 0)
+            new LazyMethodBodies(bodySource, bodiesPosition, bodiesLength, methods);
+        rc.methods.ensureCapacity(methods.length);
+        for (final ReadMethod rm: methods)
+            rc.methods.add(rm);
+        rc.setInstructionNumberEnd(instrIndex);
+        Collections.sort(rc.methods);
+        return rc;
+    }
+
+    private static ReadClass readHeader(final DataInputStream in, final StringCacheInput stringCache,
+            final String intName, final int instructionIndexOffset) throws IOException {
         if (intName == null || intName.length() == 0)
             throw new IOException("corrupted data");
-        final int instructionNumberStart = OptimizedDataInputStream.readInt0(in);
+        final int instructionNumberStart = OptimizedDataInputStream.readInt0(in) + instructionIndexOffset;
         final int access = OptimizedDataInputStream.readInt0(in);
         final String source = stringCache.readString(in);
         final String superClass = stringCache.readString(in);
@@ -147,17 +278,6 @@ public class ReadClass implements Comparable<ReadClass> {
         final ReadClass rc = new ReadClass(intName, instructionNumberStart, access, source, fields, superClass);
         while (numFields-- > 0)
             fields.add(Field.readFrom(in, stringCache, rc));
-        int numMethods = OptimizedDataInputStream.readInt0(in);
-        rc.methods.ensureCapacity(numMethods);
-        int instrIndex = instructionNumberStart;
-        while (numMethods-- > 0) {
-            final ReadMethod newMethod = ReadMethod.readFrom(in, rc, instrIndex, stringCache);
-            instrIndex = newMethod.getInstructionNumberEnd();
-            rc.methods.add(newMethod);
-        }
-        rc.setInstructionNumberEnd(instrIndex);
-        rc.methods.trimToSize();
-        Collections.sort(rc.methods);
         return rc;
     }
 
@@ -45,15 +45,37 @@ public class ReadMethod implements Comparable<ReadMethod> {
 
         private final ReadMethod method;
         protected final IntegerMap<LabelMarker> labels = new IntegerMap<LabelMarker>();
+        // added to all instruction and trace sequence indexes read (for relocating a class)
+        private final int instructionIndexOffset;
+        private final int traceSeqIndexOffset;
 
         public MethodReadInformation(final ReadMethod method) {
+            this(method, 0, 0);
+        }
+
+        public MethodReadInformation(final ReadMethod method, final int instructionIndexOffset,
+                final int traceSeqIndexOffset) {
             this.method = method;
+            this.instructionIndexOffset = instructionIndexOffset;
+            this.traceSeqIndexOffset = traceSeqIndexOffset;
         }
 
         public ReadMethod getMethod() {
             return this.method;
         }
 
+        public int getInstructionIndexOffset() {
+            return this.instructionIndexOffset;
+        }
+
+        /**
+         * Relocates a trace sequence index that has just been read.
+         * The index -1 (meaning "no sequence") is left unchanged.
+         */
+        public int relocateTraceSeqIndex(final int traceSeqIndex) {
+            return traceSeqIndex == -1 ? -1 : traceSeqIndex + this.traceSeqIndexOffset;
+        }
+
         public LabelMarker getLabel(final int labelNr) throws IOException {
             final LabelMarker lm = this.labels.get(labelNr);
             if (lm == null)
@@ -71,11 +93,14 @@ public class ReadMethod implements Comparable<ReadMethod> {
     private final int access;
     private final String name;
     private final String desc;
-    private final int instructionNumberStart;
+    private int instructionNumberStart;
     private int instructionNumberEnd;
     private LabelMarker methodEntryLabel;
     private LabelMarker abnormalTerminationLabel;
     private LocalVariable[] localVariables;
+    // set while the body of this method (instructions, try-catch blocks and local variables)
+    // has not been decoded yet (see ReadClass#readDirectoryEntry)
+    private volatile LazyMethodBodies lazyBodies = null;
 
     public ReadMethod(final ReadClass readClass, final int access, final String name, final String desc, final int instructionNumberStart) {
         this.readClass = readClass;
@@ -101,13 +126,25 @@ public class ReadMethod implements Comparable<ReadMethod> {
     }
 
     public List<AbstractInstruction> getInstructions() {
+        loadBody();
         return this.instructions;
     }
 
     public List<TryCatchBlock> getTryCatchBlocks() {
+        loadBody();
         return this.tryCatchBlocks;
     }
 
+    private void loadBody() {
+        final LazyMethodBodies bodies = this.lazyBodies;
+        if (bodies != null)
+            bodies.load();
+    }
+
+    void setLazyBodies(final LazyMethodBodies lazyBodies) {
+        this.lazyBodies = lazyBodies;
+    }
+
     public ReadClass getReadClass() {
         return this.readClass;
     }
@@ -136,6 +173,18 @@ public class ReadMethod implements Comparable<ReadMethod> {
         this.instructionNumberEnd = instructionNumberEnd;
     }
 
+    /**
+     * Moves all instructions of this method to other instruction and trace sequence
+     * indexes (see {@link AbstractInstruction#relocate(int, int)}).
+     */
+    public void relocate(final int instructionIndexOffset, final int traceSeqIndexOffset) {
+        loadBody();
+        this.instructionNumberStart += instructionIndexOffset;
+        this.instructionNumberEnd += instructionIndexOffset;
+        for (final AbstractInstruction instr: this.instructions)
+            instr.relocate(instructionIndexOffset, traceSeqIndexOffset);
+    }
+
     /**
      * Returns the {@link LabelMarker} which is passed whenever this method is
      * entered.
@@ -144,6 +193,7 @@ public class ReadMethod implements Comparable<ReadMethod> {
      *         entered
      */
     public LabelMarker getMethodEntryLabel() {
+        loadBody();
         return this.methodEntryLabel;
     }
 
@@ -160,6 +210,7 @@ public class ReadMethod implements Comparable<ReadMethod> {
      *         by a thrown exception
      */
     public LabelMarker getAbnormalTerminationLabel() {
+        loadBody();
         return this.abnormalTerminationLabel;
     }
 
@@ -178,14 +229,30 @@ public class ReadMethod implements Comparable<ReadMethod> {
      * @return an unmodifiable list of all local variables
      */
     public LocalVariable[] getLocalVariables() {
+        loadBody();
         return this.localVariables;
     }
 
     public void writeOut(final DataOutputStream out, final StringCacheOutput stringCache) throws IOException {
+        loadBody();
+        writeHeader(out, stringCache);
+        writeBody(out, stringCache);
+    }
+
+    /**
+     * Writes everything but the body of this method (see {@link #writeBody}).
+     */
+    void writeHeader(final DataOutputStream out, final StringCacheOutput stringCache) throws IOException {
         OptimizedDataOutputStream.writeInt0(this.access, out);
         stringCache.writeString(this.name, out);
         stringCache.writeString(this.desc, out);
         OptimizedDataOutputStream.writeInt0(this.instructions.size(), out);
+    }
+
+    /**
+     * Writes the instructions, try-catch blocks and local variables of this method.
+     */
+    void writeBody(final DataOutputStream out, final StringCacheOutput stringCache) throws IOException {
         for (final Instruction instr: this.instructions)
             if (instr instanceof LabelMarker)
                 instr.writeOut(out, stringCache);
@@ -217,15 +284,45 @@ public class ReadMethod implements Comparable<ReadMethod> {
 
     public static ReadMethod readFrom(final DataInputStream in, final ReadClass readClass, final int instructionNumberStart,
             final StringCacheInput stringCache) throws IOException {
+        return readFrom(in, readClass, instructionNumberStart, stringCache, 0, 0);
+    }
+
+    /**
+     * Reads a method and relocates all instruction indexes (which are not relative to
+     * instructionNumberStart) and trace sequence indexes by the given offsets.
+     */
+    public static ReadMethod readFrom(final DataInputStream in, final ReadClass readClass, final int instructionNumberStart,
+            final StringCacheInput stringCache, final int instructionIndexOffset, final int traceSeqIndexOffset)
+            throws IOException {
+        final ReadMethod rm = readHeader(in, readClass, instructionNumberStart, stringCache);
+        rm.readBody(in, stringCache, instructionIndexOffset, traceSeqIndexOffset);
+        return rm;
+    }
+
+    /**
+     * Reads everything but the body of a method (see {@link #readBody}).
+     */
+    static ReadMethod readHeader(final DataInputStream in, final ReadClass readClass, final int instructionNumberStart,
+            final StringCacheInput stringCache) throws IOException {
         final int access = OptimizedDataInputStream.readInt0(in);
         final String name = stringCache.readString(in);
         final String desc = stringCache.readString(in);
         final ReadMethod rm = new ReadMethod(readClass, access, name, desc, instructionNumberStart);
-        int numInstr = OptimizedDataInputStream.readInt0(in);
+        final int numInstr = OptimizedDataInputStream.readInt0(in);
         rm.setInstructionNumberEnd(instructionNumberStart+numInstr);
-        rm.instructions.ensureCapacity(numInstr);
+        return rm;
+    }
+
+    /**
+     * Reads the body written by {@link #writeBody} into this method, whose header has
+     * been read before (see {@link #readHeader}).
+     */
+    void readBody(final DataInputStream in, final StringCacheInput stringCache,
+            final int instructionIndexOffset, final int traceSeqIndexOffset) throws IOException {
+        int numInstr = this.instructionNumberEnd - this.instructionNumberStart;
+        this.instructions.ensureCapacity(numInstr);
         final Queue<LabelMarker> labels = new ArrayQueue<LabelMarker>();
-        final MethodReadInformation mri = new MethodReadInformation(rm);
+        final MethodReadInformation mri = new MethodReadInformation(this, instructionIndexOffset, traceSeqIndexOffset);
         AbstractInstruction instr = null;
         while (numInstr-- > 0) {
             instr = AbstractInstruction.readFrom(in, mri, stringCache);
@@ -240,55 +337,53 @@ public class ReadMethod implements Comparable<ReadMethod> {
             if (instr == null)
                 instr = AbstractInstruction.readFrom(in, mri, stringCache);
             while (!labels.isEmpty() && labels.peek().getIndex() < instr.getIndex())
-                rm.instructions.add(labels.poll());
-            rm.instructions.add(instr);
+                this.instructions.add(labels.poll());
+            this.instructions.add(instr);
             instr = null;
         }
-        rm.instructions.addAll(labels);
-        rm.instructions.trimToSize();
+        this.instructions.addAll(labels);
+        this.instructions.trimToSize();
         int numTcb = OptimizedDataInputStream.readInt0(in);
         while (numTcb-- > 0) {
-            rm.addTryCatchBlock(TryCatchBlock.readFrom(in, mri, stringCache));
+            addTryCatchBlock(TryCatchBlock.readFrom(in, mri, stringCache));
         }
 
         final boolean hasEntryAndLeaveLabels = in.readBoolean();
 
         if (hasEntryAndLeaveLabels) {
-            final AbstractInstruction methodEntryLabel = rm.instructions.get(0);
+            final AbstractInstruction methodEntryLabel = this.instructions.get(0);
             if (methodEntryLabel instanceof LabelMarker)
-                rm.setMethodEntryLabel((LabelMarker) methodEntryLabel);
+                setMethodEntryLabel((LabelMarker) methodEntryLabel);
             else
                 throw new IOException("corrupted data");
 
-            final AbstractInstruction abnormalTerminationLabel = rm.instructions.get(rm.instructions.size()-1);
+            final AbstractInstruction abnormalTerminationLabel = this.instructions.get(this.instructions.size()-1);
             if (abnormalTerminationLabel instanceof LabelMarker)
-                rm.setAbnormalTerminationLabel((LabelMarker) abnormalTerminationLabel);
+                setAbnormalTerminationLabel((LabelMarker) abnormalTerminationLabel);
             else
                 throw new IOException("corrupted data");
         }
 
         int localVarsNr = OptimizedDataInputStream.readInt0(in);
-        rm.localVariables = new LocalVariable[localVarsNr];
+        this.localVariables = new LocalVariable[localVarsNr];
         boolean trim = false;
         while (localVarsNr > 0) {
         	LocalVariable var = LocalVariable.readFrom(in);
         	if (var == null)
         		continue;
         	--localVarsNr;
-        	if (rm.localVariables.length <= var.getIndex()) {
-        		rm.localVariables = Arrays.copyOf(rm.localVariables, Math.max(var.getIndex()+1, 2*rm.localVariables.length));
+        	if (this.localVariables.length <= var.getIndex()) {
+        		this.localVariables = Arrays.copyOf(this.localVariables, Math.max(var.getIndex()+1, 2*this.localVariables.length));
         		trim = true;
         	}
-            rm.localVariables[var.getIndex()] = var;
+            this.localVariables[var.getIndex()] = var;
         }
-        if (trim && rm.localVariables[rm.localVariables.length-1] == null) {
-        	int newSize = rm.localVariables.length-1;
-        	while (rm.localVariables[newSize-1] == null)
+        if (trim && this.localVariables[this.localVariables.length-1] == null) {
+        	int newSize = this.localVariables.length-1;
+        	while (this.localVariables[newSize-1] == null)
         		--newSize;
-        	rm.localVariables = Arrays.copyOf(rm.localVariables, newSize);
+        	this.localVariables = Arrays.copyOf(this.localVariables, newSize);
         }
-
-        return rm;
     }
 
     /**
@@ -343,6 +438,7 @@ public class ReadMethod implements Comparable<ReadMethod> {
     }
 
 	public void setLocalVariables(LocalVariable[] newLocalVars) {
+		loadBody();
 		this.localVariables = newLocalVars;
 	}
 
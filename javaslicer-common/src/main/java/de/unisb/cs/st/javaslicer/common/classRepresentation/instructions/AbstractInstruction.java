@@ -25,11 +25,9 @@ package de.unisb.cs.st.javaslicer.common.classRepresentation.instructions;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.hammacher.util.StringCacheInput;
 import de.hammacher.util.StringCacheOutput;
@@ -49,54 +47,55 @@ import de.unisb.cs.st.javaslicer.common.exceptions.TracerException;
  */
 public abstract class AbstractInstruction implements Instruction {
 
-    private static int nextIndex = 0;
+    private static final AtomicInteger nextIndex = new AtomicInteger(0);
+
+    // if set, the instructions created by this thread are numbered in a local index space
+    // (see beginLocalIndexes). the array holds the next local index.
+    private static final ThreadLocal<int[]> localNextIndex = new ThreadLocal<int[]>();
+
+    // the type bytes written before each instruction
+    private static final int TYPE_ARRAY = 0;
+    private static final int TYPE_FIELD = 1;
+    private static final int TYPE_IINC = 2;
+    private static final int TYPE_INT_PUSH = 3;
+    private static final int TYPE_JUMP = 4;
+    private static final int TYPE_LABEL_MARKER = 5;
+    private static final int TYPE_LDC = 6;
+    private static final int TYPE_LOOKUP_SWITCH = 7;
+    private static final int TYPE_METHOD_INVOCATION = 8;
+    private static final int TYPE_MULTIANEWARRAY = 9;
+    private static final int TYPE_NEW_ARRAY = 10;
+    private static final int TYPE_SIMPLE = 11;
+    private static final int TYPE_TABLE_SWITCH = 12;
+    private static final int TYPE_TYPE = 13;
+    private static final int TYPE_VAR = 14;
 
     private static final Map<Class<?>, Integer> instructions = new HashMap<Class<?>, Integer>();
     static {
-        instructions.put(ArrayInstruction.class, instructions.size());
-        instructions.put(FieldInstruction.class, instructions.size());
-        instructions.put(IIncInstruction.class, instructions.size());
-        instructions.put(IntPush.class, instructions.size());
-        instructions.put(JumpInstruction.class, instructions.size());
-        instructions.put(LabelMarker.class, instructions.size());
-        instructions.put(LdcInstruction.class, instructions.size());
-        instructions.put(LookupSwitchInstruction.class, instructions.size());
-        instructions.put(MethodInvocationInstruction.class, instructions.size());
-        instructions.put(MultiANewArrayInstruction.class, instructions.size());
-        instructions.put(NewArrayInstruction.class, instructions.size());
-        instructions.put(SimpleInstruction.class, instructions.size());
-        instructions.put(TableSwitchInstruction.class, instructions.size());
-        instructions.put(TypeInstruction.class, instructions.size());
-        instructions.put(VarInstruction.class, instructions.size());
-    }
-
-    private static final Method[] readMethods = new Method[instructions.size()];
-    static {
-        for (final Entry<Class<?>, Integer> entry: instructions.entrySet()) {
-            try {
-                readMethods[entry.getValue()] = entry.getKey().getMethod("readFrom",
-                        DataInputStream.class, MethodReadInformation.class, StringCacheInput.class,
-                        int.class, int.class, int.class);
-            } catch (final SecurityException e) {
-                throw new RuntimeException(e);
-            } catch (final NoSuchMethodException e) {
-                throw new InternalError("Internal error: class " + entry.getKey()
-                   + " does not implement readFrom");
-            } catch (final IllegalArgumentException e) {
-                throw new RuntimeException(e);
-            }
-        }
+        instructions.put(ArrayInstruction.class, TYPE_ARRAY);
+        instructions.put(FieldInstruction.class, TYPE_FIELD);
+        instructions.put(IIncInstruction.class, TYPE_IINC);
+        instructions.put(IntPush.class, TYPE_INT_PUSH);
+        instructions.put(JumpInstruction.class, TYPE_JUMP);
+        instructions.put(LabelMarker.class, TYPE_LABEL_MARKER);
+        instructions.put(LdcInstruction.class, TYPE_LDC);
+        instructions.put(LookupSwitchInstruction.class, TYPE_LOOKUP_SWITCH);
+        instructions.put(MethodInvocationInstruction.class, TYPE_METHOD_INVOCATION);
+        instructions.put(MultiANewArrayInstruction.class, TYPE_MULTIANEWARRAY);
+        instructions.put(NewArrayInstruction.class, TYPE_NEW_ARRAY);
+        instructions.put(SimpleInstruction.class, TYPE_SIMPLE);
+        instructions.put(TableSwitchInstruction.class, TYPE_TABLE_SWITCH);
+        instructions.put(TypeInstruction.class, TYPE_TYPE);
+        instructions.put(VarInstruction.class, TYPE_VAR);
     }
 
-    private final int index;
+    private int index;
     protected final ReadMethod method;
     private final int opcode;
     private final int lineNumber;
 
     public AbstractInstruction(final ReadMethod readMethod, final int opcode, final int lineNumber) {
-        this(readMethod, opcode, lineNumber, nextIndex++);
-        if (nextIndex < 0)
-            throw new RuntimeException("Integer overflow in instruction index");
+        this(readMethod, opcode, lineNumber, newIndex());
     }
 
     protected AbstractInstruction(final ReadMethod readMethod, final int opcode, final int lineNumber, final int index) {
@@ -126,8 +125,77 @@ public abstract class AbstractInstruction implements Instruction {
         return this.lineNumber;
     }
 
+    private static int newIndex() {
+        final int[] local = localNextIndex.get();
+        if (local != null)
+            return local[0]++;
+        return reserveIndexes(1);
+    }
+
+    /**
+     * Returns the index that the next instruction created by the current thread gets.
+     * If the thread is inside a local index space, this is a local index.
+     */
     public static int getNextIndex() {
-        return nextIndex;
+        final int[] local = localNextIndex.get();
+        return local != null ? local[0] : nextIndex.get();
+    }
+
+    /**
+     * Reserves a range of instruction indexes for instructions which are created
+     * with explicit indexes (e.g. read from a cache, or relocated from a local index space).
+     *
+     * @param count the number of indexes to reserve
+     * @return the first reserved index
+     */
+    public static int reserveIndexes(final int count) {
+        final int first = nextIndex.getAndAdd(count);
+        if (first < 0 || first + count < 0)
+            throw new RuntimeException("Integer overflow in instruction index");
+        return first;
+    }
+
+    /**
+     * Lets the instructions created by the current thread be numbered from 0, independently
+     * of all other threads, until {@link #endLocalIndexes(int[])} is called.
+     * This way, several threads can create the instructions of different classes in parallel.
+     * The local index spaces of one thread can be nested.
+     *
+     * @return the previous local index space of this thread, which has to be passed to
+     *         {@link #endLocalIndexes(int[])}
+     */
+    public static int[] beginLocalIndexes() {
+        final int[] previous = localNextIndex.get();
+        localNextIndex.set(new int[1]);
+        return previous;
+    }
+
+    /**
+     * Leaves the local index space entered by the last call to {@link #beginLocalIndexes()}.
+     *
+     * @param previous the value returned by {@link #beginLocalIndexes()}
+     * @return the number of indexes used in the local index space
+     */
+    public static int endLocalIndexes(final int[] previous) {
+        final int count = localNextIndex.get()[0];
+        localNextIndex.set(previous);
+        return count;
+    }
+
+    /**
+     * Moves this instruction to other instruction and trace sequence indexes, e.g. from
+     * the local index space it was created in (see {@link #beginLocalIndexes()}) to a
+     * reserved global range. Subclasses referencing trace sequences relocate them, too.
+     */
+    public void relocate(final int instructionIndexOffset, final int traceSeqIndexOffset) {
+        this.index += instructionIndexOffset;
+    }
+
+    /**
+     * Relocates a trace sequence index. The index -1 (meaning "no sequence") is left unchanged.
+     */
+    protected static int relocateTraceSeqIndex(final int traceSeqIndex, final int traceSeqIndexOffset) {
+        return traceSeqIndex == -1 ? -1 : traceSeqIndex + traceSeqIndexOffset;
     }
 
     @Override
@@ -151,26 +219,43 @@ public abstract class AbstractInstruction implements Instruction {
             final StringCacheInput stringCache) throws IOException {
         // first determine the type
         final byte type = in.readByte();
-        if (type < 0 || type >= readMethods.length)
-            throw new IOException("corrupted data");
-        final int index = OptimizedDataInputStream.readInt0(in);
+        final int index = OptimizedDataInputStream.readInt0(in) + methodInfo.getInstructionIndexOffset();
         final int lineNumber = OptimizedDataInputStream.readInt0(in);
         final int opcode = OptimizedDataInputStream.readInt0(in);
 
-        final Method readFromMethod = readMethods[type];
-        try {
-            final Object o = readFromMethod.invoke(null, in, methodInfo, stringCache, opcode, index, lineNumber);
-            if (o instanceof AbstractInstruction)
-                return (AbstractInstruction)o;
-            throw new RuntimeException("readFrom does not return AbstractInstruction");
-        } catch (final IllegalArgumentException e) {
-            throw new RuntimeException(e);
-        } catch (final IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } catch (final InvocationTargetException e) {
-            if (e.getCause() instanceof IOException)
-                throw (IOException)e.getCause();
-            throw new RuntimeException(e);
+        switch (type) {
+        case TYPE_ARRAY:
+            return ArrayInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_FIELD:
+            return FieldInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_IINC:
+            return IIncInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_INT_PUSH:
+            return IntPush.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_JUMP:
+            return JumpInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_LABEL_MARKER:
+            return LabelMarker.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_LDC:
+            return LdcInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_LOOKUP_SWITCH:
+            return LookupSwitchInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_METHOD_INVOCATION:
+            return MethodInvocationInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_MULTIANEWARRAY:
+            return MultiANewArrayInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_NEW_ARRAY:
+            return NewArrayInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_SIMPLE:
+            return SimpleInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_TABLE_SWITCH:
+            return TableSwitchInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_TYPE:
+            return TypeInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        case TYPE_VAR:
+            return VarInstruction.readFrom(in, methodInfo, stringCache, opcode, index, lineNumber);
+        default:
+            throw new IOException("corrupted data");
         }
     }
 
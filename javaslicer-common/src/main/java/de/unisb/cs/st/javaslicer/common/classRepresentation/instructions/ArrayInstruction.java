@@ -101,8 +101,8 @@ public class ArrayInstruction extends AbstractInstruction {
 
     }
 
-    private final int arrayTraceSeqIndex;
-    private final int indexTraceSeqIndex;
+    private int arrayTraceSeqIndex;
+    private int indexTraceSeqIndex;
 
     public ArrayInstruction(ReadMethod readMethod, int opcode,
             int lineNumber,
@@ -137,6 +137,13 @@ public class ArrayInstruction extends AbstractInstruction {
         return InstructionType.ARRAY;
     }
 
+    @Override
+    public void relocate(int instructionIndexOffset, int traceSeqIndexOffset) {
+        super.relocate(instructionIndexOffset, traceSeqIndexOffset);
+        this.arrayTraceSeqIndex = relocateTraceSeqIndex(this.arrayTraceSeqIndex, traceSeqIndexOffset);
+        this.indexTraceSeqIndex = relocateTraceSeqIndex(this.indexTraceSeqIndex, traceSeqIndexOffset);
+    }
+
     @Override
     public void writeOut(DataOutputStream out, StringCacheOutput stringCache) throws IOException {
         super.writeOut(out, stringCache);
@@ -147,8 +154,8 @@ public class ArrayInstruction extends AbstractInstruction {
     public static ArrayInstruction readFrom(DataInputStream in, MethodReadInformation methodInfo,
             @SuppressWarnings("unused") StringCacheInput stringCache,
             int opcode, int index, int lineNumber) throws IOException {
-        int arrayTraceSeqIndex = OptimizedDataInputStream.readInt0(in);
-        int indexTraceSeqIndex = OptimizedDataInputStream.readInt0(in);
+        int arrayTraceSeqIndex = methodInfo.relocateTraceSeqIndex(OptimizedDataInputStream.readInt0(in));
+        int indexTraceSeqIndex = methodInfo.relocateTraceSeqIndex(OptimizedDataInputStream.readInt0(in));
         return new ArrayInstruction(methodInfo.getMethod(), lineNumber, opcode, arrayTraceSeqIndex, indexTraceSeqIndex, index);
     }
 
@@ -92,7 +92,7 @@ public class FieldInstruction extends AbstractInstruction {
     private final String ownerInternalClassName;
     private final String fieldName;
     private final String fieldDesc;
-    private final int objectTraceSeqIndex;
+    private int objectTraceSeqIndex;
     private final boolean longValue;
 
     public FieldInstruction(ReadMethod readMethod, int opcode,
@@ -181,6 +181,12 @@ public class FieldInstruction extends AbstractInstruction {
         return sb.toString();
     }
 
+    @Override
+    public void relocate(int instructionIndexOffset, int traceSeqIndexOffset) {
+        super.relocate(instructionIndexOffset, traceSeqIndexOffset);
+        this.objectTraceSeqIndex = relocateTraceSeqIndex(this.objectTraceSeqIndex, traceSeqIndexOffset);
+    }
+
     @Override
     public void writeOut(DataOutputStream out, StringCacheOutput stringCache) throws IOException {
         super.writeOut(out, stringCache);
@@ -195,7 +201,7 @@ public class FieldInstruction extends AbstractInstruction {
             int opcode, int index, int lineNumber) throws IOException {
         String fieldDesc = stringCache.readString(in);
         String fieldName = stringCache.readString(in);
-        int objectTraceSeqIndex = OptimizedDataInputStream.readInt0(in);
+        int objectTraceSeqIndex = methodInfo.relocateTraceSeqIndex(OptimizedDataInputStream.readInt0(in));
         String ownerInternalClassName = stringCache.readString(in);
         return new FieldInstruction(methodInfo.getMethod(), opcode, lineNumber, ownerInternalClassName, fieldName, fieldDesc, objectTraceSeqIndex, index);
     }
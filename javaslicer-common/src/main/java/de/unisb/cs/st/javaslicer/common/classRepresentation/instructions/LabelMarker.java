@@ -43,7 +43,7 @@ import de.unisb.cs.st.javaslicer.common.classRepresentation.TraceIterator;
  */
 public class LabelMarker extends AbstractInstruction {
 
-    private final int traceSeqIndex;
+    private int traceSeqIndex;
     private final boolean isAdditionalLabel;
     private int labelNr;
     private final boolean isCatchBlock;
@@ -99,6 +99,12 @@ public class LabelMarker extends AbstractInstruction {
         return infoProv.getNextInteger(this.traceSeqIndex);
     }
 
+    @Override
+    public void relocate(final int instructionIndexOffset, final int traceSeqIndexOffset) {
+        super.relocate(instructionIndexOffset, traceSeqIndexOffset);
+        this.traceSeqIndex = relocateTraceSeqIndex(this.traceSeqIndex, traceSeqIndexOffset);
+    }
+
     @Override
     public void writeOut(final DataOutputStream out, final StringCacheOutput stringCache) throws IOException {
         super.writeOut(out, stringCache);
@@ -111,7 +117,7 @@ public class LabelMarker extends AbstractInstruction {
             @SuppressWarnings("unused") final StringCacheInput stringCache,
             @SuppressWarnings("unused") final int opcode,
             final int index, final int lineNumber) throws IOException {
-        final int traceSeqIndex = OptimizedDataInputStream.readInt0(in);
+        final int traceSeqIndex = methodInfo.relocateTraceSeqIndex(OptimizedDataInputStream.readInt0(in));
         final byte booleans = in.readByte();
         final boolean isAdditionalLabel = (booleans & 2) != 0;
         final boolean isCatchBlock = (booleans & 1) != 0;
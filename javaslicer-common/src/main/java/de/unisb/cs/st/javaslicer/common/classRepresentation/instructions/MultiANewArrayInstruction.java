@@ -101,8 +101,8 @@ public class MultiANewArrayInstruction extends AbstractInstruction {
 
     private final String typeDesc;
     private final int dims;
-    private final int numNewObjectIdentifiersSeqIndex;
-    private final int newObjectIdentifierSeqIndex;
+    private int numNewObjectIdentifiersSeqIndex;
+    private int newObjectIdentifierSeqIndex;
 
     public MultiANewArrayInstruction(final ReadMethod readMethod, final int lineNumber,
             final String desc, final int dims, int numNewObjIdSeqIndex, int newObjIdSeqIndex) {
@@ -150,6 +150,15 @@ public class MultiANewArrayInstruction extends AbstractInstruction {
             new MultiANewArrayInstrInstanceInfo(newObjects));
     }
 
+    @Override
+    public void relocate(final int instructionIndexOffset, final int traceSeqIndexOffset) {
+        super.relocate(instructionIndexOffset, traceSeqIndexOffset);
+        this.numNewObjectIdentifiersSeqIndex = relocateTraceSeqIndex(this.numNewObjectIdentifiersSeqIndex,
+            traceSeqIndexOffset);
+        this.newObjectIdentifierSeqIndex = relocateTraceSeqIndex(this.newObjectIdentifierSeqIndex,
+            traceSeqIndexOffset);
+    }
+
     @Override
     public void writeOut(final DataOutputStream out, final StringCacheOutput stringCache) throws IOException {
         super.writeOut(out, stringCache);
@@ -165,8 +174,8 @@ public class MultiANewArrayInstruction extends AbstractInstruction {
             final int index, final int lineNumber) throws IOException {
         final String typeDesc = stringCache.readString(in);
         final int dims = OptimizedDataInputStream.readInt0(in);
-        int numNewObjIdSeqIndex = OptimizedDataInputStream.readInt0(in);
-        int newObjIdSeqIndex = OptimizedDataInputStream.readInt0(in);
+        int numNewObjIdSeqIndex = methodInfo.relocateTraceSeqIndex(OptimizedDataInputStream.readInt0(in));
+        int newObjIdSeqIndex = methodInfo.relocateTraceSeqIndex(OptimizedDataInputStream.readInt0(in));
         return new MultiANewArrayInstruction(methodInfo.getMethod(), typeDesc, dims, lineNumber, index, numNewObjIdSeqIndex, newObjIdSeqIndex);
     }
 
@@ -93,7 +93,7 @@ public class NewArrayInstruction extends AbstractInstruction {
     }
 
     private final int arrayElemType;
-    private final int newObjectIdentifierSequenceIndex;
+    private int newObjectIdentifierSequenceIndex;
 
     public NewArrayInstruction(final ReadMethod readMethod, final int lineNumber,
             final int arrayElemType, int newObjIdSeqIndex) {
@@ -163,6 +163,13 @@ public class NewArrayInstruction extends AbstractInstruction {
             stackDepth, instanceNr, new NewArrayInstrInstanceInfo(objectId));
     }
 
+    @Override
+    public void relocate(final int instructionIndexOffset, final int traceSeqIndexOffset) {
+        super.relocate(instructionIndexOffset, traceSeqIndexOffset);
+        this.newObjectIdentifierSequenceIndex = relocateTraceSeqIndex(this.newObjectIdentifierSequenceIndex,
+            traceSeqIndexOffset);
+    }
+
     @Override
     public void writeOut(final DataOutputStream out, final StringCacheOutput stringCache) throws IOException {
         super.writeOut(out, stringCache);
@@ -175,7 +182,7 @@ public class NewArrayInstruction extends AbstractInstruction {
             @SuppressWarnings("unused") final int opcode,
             final int index, final int lineNumber) throws IOException {
         final int arrayElemType = OptimizedDataInputStream.readInt0(in);
-        int newObjIdSeqIndex = OptimizedDataInputStream.readInt0(in);
+        int newObjIdSeqIndex = methodInfo.relocateTraceSeqIndex(OptimizedDataInputStream.readInt0(in));
         return new NewArrayInstruction(methodInfo.getMethod(), lineNumber, arrayElemType, index, newObjIdSeqIndex);
     }
 
@@ -92,7 +92,7 @@ public class TypeInstruction extends AbstractInstruction {
 
     private final String className;
     private String javaClassName = null;
-    private final int newObjectIdentifierSeqIndex;
+    private int newObjectIdentifierSeqIndex;
 
     public TypeInstruction(final ReadMethod readMethod, final int opcode, final int lineNumber,
             final String className, int newObjIdSeqIndex) {
@@ -159,6 +159,13 @@ public class TypeInstruction extends AbstractInstruction {
             instanceNr, info);
     }
 
+    @Override
+    public void relocate(final int instructionIndexOffset, final int traceSeqIndexOffset) {
+        super.relocate(instructionIndexOffset, traceSeqIndexOffset);
+        this.newObjectIdentifierSeqIndex = relocateTraceSeqIndex(this.newObjectIdentifierSeqIndex,
+            traceSeqIndexOffset);
+    }
+
     @Override
     public void writeOut(final DataOutputStream out, final StringCacheOutput stringCache) throws IOException {
         super.writeOut(out, stringCache);
@@ -171,7 +178,7 @@ public class TypeInstruction extends AbstractInstruction {
             final int opcode, final int index, final int lineNumber) throws IOException {
         final String type = stringCache.readString(in);
         int newObjIdSeqIndex = opcode == Opcodes.NEW || opcode == Opcodes.ANEWARRAY
-            ? OptimizedDataInputStream.readInt0(in) : -1;
+            ? methodInfo.relocateTraceSeqIndex(OptimizedDataInputStream.readInt0(in)) : -1;
         return new TypeInstruction(methodInfo.getMethod(), lineNumber, opcode, type, index, newObjIdSeqIndex);
     }
 
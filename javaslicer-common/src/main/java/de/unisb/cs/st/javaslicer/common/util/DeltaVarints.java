@@ -0,0 +1,132 @@
+/** License information:
+ *    Component: javaslicer-common
+ *    Package:   de.unisb.cs.st.javaslicer.common.util
+ *    Class:     DeltaVarints
+ *    Filename:  javaslicer-common/src/main/java/de/unisb/cs/st/javaslicer/common/util/DeltaVarints.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.common.util;
+
+import java.io.IOException;
+
+/**
+ * Encodes and decodes the differences between consecutive values, zigzag- and
+ * varint-encoded (7 bits per byte, the highest bit set on all but the last byte).
+ * This is the encoding of the values in the blocks of the packed and the LZ trace
+ * sequences.
+ */
+public class DeltaVarints {
+
+    /** The maximum number of bytes of one encoded int difference. */
+    public static final int MAX_INT_LENGTH = 5;
+    /** The maximum number of bytes of one encoded long difference. */
+    public static final int MAX_LONG_LENGTH = 10;
+
+    private DeltaVarints() {
+        // no instances
+    }
+
+    /**
+     * Writes the given difference to <code>buf</code>, starting at <code>pos</code>.
+     *
+     * @return the position after the written bytes
+     */
+    public static int encodeInt(final int diff, final byte[] buf, final int pos) {
+        int zigzag = (diff << 1) ^ (diff >> 31);
+        int p = pos;
+        while ((zigzag & ~0x7f) != 0) {
+            buf[p++] = (byte) (zigzag | 0x80);
+            zigzag >>>= 7;
+        }
+        buf[p++] = (byte) zigzag;
+        return p;
+    }
+
+    /**
+     * Writes the given difference to <code>buf</code>, starting at <code>pos</code>.
+     *
+     * @return the position after the written bytes
+     */
+    public static int encodeLong(final long diff, final byte[] buf, final int pos) {
+        long zigzag = (diff << 1) ^ (diff >> 63);
+        int p = pos;
+        while ((zigzag & ~0x7fL) != 0) {
+            buf[p++] = (byte) (zigzag | 0x80);
+            zigzag >>>= 7;
+        }
+        buf[p++] = (byte) zigzag;
+        return p;
+    }
+
+    /**
+     * Decodes <code>count</code> values from the first <code>length</code> bytes of
+     * <code>data</code>, adding up the differences starting from 0.
+     *
+     * @throws IOException if the data does not consist of exactly <code>count</code> values
+     */
+    public static void decodeInts(final byte[] data, final int length, final int[] values, final int count)
+            throws IOException {
+        int pos = 0;
+        int last = 0;
+        for (int i = 0; i < count; ++i) {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (pos == length || shift > 28)
+                    throw new IOException("corrupted data (invalid block)");
+                b = data[pos++];
+                zigzag |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            last += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[i] = last;
+        }
+        if (pos != length)
+            throw new IOException("corrupted data (invalid block)");
+    }
+
+    /**
+     * Decodes <code>count</code> values from the first <code>length</code> bytes of
+     * <code>data</code>, adding up the differences starting from 0.
+     *
+     * @throws IOException if the data does not consist of exactly <code>count</code> values
+     */
+    public static void decodeLongs(final byte[] data, final int length, final long[] values, final int count)
+            throws IOException {
+        int pos = 0;
+        long last = 0;
+        for (int i = 0; i < count; ++i) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (pos == length || shift > 63)
+                    throw new IOException("corrupted data (invalid block)");
+                b = data[pos++];
+                zigzag |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            last += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[i] = last;
+        }
+        if (pos != length)
+            throw new IOException("corrupted data (invalid block)");
+    }
+
+}
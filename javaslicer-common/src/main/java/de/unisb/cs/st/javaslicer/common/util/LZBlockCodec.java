@@ -0,0 +1,202 @@
+/** License information:
+ *    Component: javaslicer-common
+ *    Package:   de.unisb.cs.st.javaslicer.common.util
+ *    Class:     LZBlockCodec
+ *    Filename:  javaslicer-common/src/main/java/de/unisb/cs/st/javaslicer/common/util/LZBlockCodec.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.common.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A fast LZ77 compressor for independent blocks of data, using a layout similar
+ * to the LZ4 block format.
+ *
+ * The compressed data is a list of sequences. Each sequence starts with a token
+ * byte whose upper 4 bits are the number of literals and whose lower 4 bits are
+ * the match length minus 4 (15 means that more length bytes follow, each one
+ * adding up to 255). The token is followed by the literals, the 2-byte (little
+ * endian) offset of the match and the additional match length bytes. The last
+ * sequence consists of literals only.
+ */
+public class LZBlockCodec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xffff;
+    private static final int HASH_BITS = 12;
+
+    private LZBlockCodec() {
+        // no instances
+    }
+
+    /**
+     * @return the size of the buffer that has to be passed to {@link #compress}
+     *         for an input of the given length
+     */
+    public static int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * @return a new hash table for {@link #compress(byte[], int, byte[], int[])}
+     */
+    public static int[] newHashTable() {
+        return new int[1 << HASH_BITS];
+    }
+
+    /**
+     * Compresses the first <code>length</code> bytes of <code>src</code> into <code>dest</code>.
+     *
+     * @param dest the destination buffer, at least {@link #maxCompressedLength(int)} bytes long
+     * @return the number of bytes written to <code>dest</code>
+     */
+    public static int compress(final byte[] src, final int length, final byte[] dest) {
+        return compress(src, length, dest, newHashTable());
+    }
+
+    /**
+     * Compresses like {@link #compress(byte[], int, byte[])}, reusing the given hash table
+     * (from {@link #newHashTable()}), so that compressing many blocks allocates nothing.
+     */
+    public static int compress(final byte[] src, final int length, final byte[] dest, final int[] table) {
+        // positions + 1 of the last occurrence of each hash value (0 = none)
+        Arrays.fill(table, 0);
+        int pos = 0;
+        int anchor = 0;
+        int out = 0;
+        final int limit = length - MIN_MATCH;
+        while (pos <= limit) {
+            final int seq = readInt(src, pos);
+            final int hash = (seq * -1640531535) >>> (32 - HASH_BITS);
+            final int ref = table[hash] - 1;
+            table[hash] = pos + 1;
+            if (ref < 0 || pos - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                ++pos;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (pos + matchLength < length && src[ref + matchLength] == src[pos + matchLength])
+                ++matchLength;
+
+            out = writeLiterals(src, anchor, pos - anchor, matchLength - MIN_MATCH, dest, out);
+            final int offset = pos - ref;
+            dest[out++] = (byte) offset;
+            dest[out++] = (byte) (offset >>> 8);
+            if (matchLength - MIN_MATCH >= 15)
+                out = writeLength(matchLength - MIN_MATCH - 15, dest, out);
+            pos += matchLength;
+            anchor = pos;
+        }
+        return writeLiterals(src, anchor, length - anchor, 0, dest, out);
+    }
+
+    /**
+     * Writes the token and the literals of a sequence.
+     */
+    private static int writeLiterals(final byte[] src, final int start, final int literals,
+            final int matchLengthCode, final byte[] dest, final int outPos) {
+        int out = outPos;
+        dest[out++] = (byte) ((Math.min(literals, 15) << 4) | Math.min(matchLengthCode, 15));
+        if (literals >= 15)
+            out = writeLength(literals - 15, dest, out);
+        System.arraycopy(src, start, dest, out, literals);
+        return out + literals;
+    }
+
+    private static int writeLength(final int length, final byte[] dest, final int outPos) {
+        int out = outPos;
+        int remaining = length;
+        while (remaining >= 255) {
+            dest[out++] = (byte) 255;
+            remaining -= 255;
+        }
+        dest[out++] = (byte) remaining;
+        return out;
+    }
+
+    private static int readInt(final byte[] buf, final int pos) {
+        return (buf[pos] & 0xff) | (buf[pos+1] & 0xff) << 8 | (buf[pos+2] & 0xff) << 16 | buf[pos+3] << 24;
+    }
+
+    /**
+     * Decompresses data written by {@link #compress}.
+     *
+     * @param src the buffer holding the compressed data
+     * @param srcOffset the offset of the compressed data in <code>src</code>
+     * @param srcLength the length of the compressed data
+     * @param dest the buffer to decompress to
+     * @param destLength the length of the uncompressed data
+     * @throws IOException if the compressed data is corrupted
+     */
+    public static void decompress(final byte[] src, final int srcOffset, final int srcLength,
+            final byte[] dest, final int destLength) throws IOException {
+        int in = srcOffset;
+        final int inEnd = srcOffset + srcLength;
+        int out = 0;
+        while (true) {
+            if (in >= inEnd)
+                throw new IOException("corrupted data (truncated compressed block)");
+            final int token = src[in++] & 0xff;
+
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    if (in >= inEnd)
+                        throw new IOException("corrupted data (truncated compressed block)");
+                    b = src[in++] & 0xff;
+                    literals += b;
+                } while (b == 255);
+            }
+            if (literals > inEnd - in || literals > destLength - out)
+                throw new IOException("corrupted data (invalid literal length)");
+            System.arraycopy(src, in, dest, out, literals);
+            in += literals;
+            out += literals;
+
+            if (in == inEnd)
+                break;
+
+            if (inEnd - in < 2)
+                throw new IOException("corrupted data (truncated compressed block)");
+            final int offset = (src[in] & 0xff) | (src[in+1] & 0xff) << 8;
+            in += 2;
+            int matchLength = token & 0xf;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (in >= inEnd)
+                        throw new IOException("corrupted data (truncated compressed block)");
+                    b = src[in++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (offset == 0 || offset > out || matchLength > destLength - out)
+                throw new IOException("corrupted data (invalid match)");
+            // the match may overlap the output, so copy byte by byte
+            for (int ref = out - offset, end = out + matchLength; out < end; )
+                dest[out++] = dest[ref++];
+        }
+        if (out != destLength)
+            throw new IOException("corrupted data (wrong uncompressed length)");
+    }
+
+}
@@ -0,0 +1,234 @@
+/** License information:
+ *    Component: javaslicer-common
+ *    Package:   javaslicer-common.src.test.java.de.unisb.cs.st.javaslicer.common.classRepresentation
+ *    Class:     LazyMethodBodiesTest
+ *    Filename:  javaslicer-common/src/test/java/de/unisb/cs/st/javaslicer/common/classRepresentation/LazyMethodBodiesTest.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.common.classRepresentation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+
+import de.hammacher.util.StringCacheInput;
+import de.hammacher.util.StringCacheOutput;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.instructions.AbstractInstruction;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.instructions.IntPush;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.instructions.JumpInstruction;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.instructions.LabelMarker;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.instructions.SimpleInstruction;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.instructions.VarInstruction;
+import de.unisb.cs.st.javaslicer.common.exceptions.TracerException;
+
+/**
+ * Writes a class as a class directory entry and checks that the lazily decoded method
+ * bodies equal those of a class written by {@link ReadClass#writeOut} and read by
+ * {@link ReadClass#readFrom}, and that a failed decoding is reported on every access.
+ */
+public class LazyMethodBodiesTest {
+
+    private static final class ByteArrayBodySource implements ReadClass.BodySource {
+
+        private final byte[] bodies;
+        int numReads = 0;
+
+        public ByteArrayBodySource(final byte[] bodies) {
+            this.bodies = bodies;
+        }
+
+        @Override
+        public byte[] readBodies(final long position, final int length) throws IOException {
+            ++this.numReads;
+            Assert.assertEquals(0, position);
+            Assert.assertEquals(this.bodies.length, length);
+            return this.bodies;
+        }
+
+    }
+
+    private static ReadClass createClass() {
+        final int[] previousIndexes = AbstractInstruction.beginLocalIndexes();
+        try {
+            final ReadClass rc = new ReadClass("test/Lazy", 0, Opcodes.ACC_PUBLIC, "Lazy.java",
+                Collections.<Field>emptyList(), "java/lang/Object");
+
+            // int abs(int x) { try { if (x >= 0) return x; return -x; } catch (Throwable t) { return 0; } }
+            final ReadMethod abs = new ReadMethod(rc, Opcodes.ACC_STATIC, "abs", "(I)I", AbstractInstruction.getNextIndex());
+            // the instructions get their indexes in the order of creation
+            final LabelMarker entry = new LabelMarker(abs, 0, -1, true, false, 0);
+            abs.addInstruction(entry);
+            abs.addInstruction(new VarInstruction(abs, Opcodes.ILOAD, 2, 0));
+            final JumpInstruction jump = new JumpInstruction(abs, Opcodes.IFGE, 2, null);
+            abs.addInstruction(jump);
+            abs.addInstruction(new VarInstruction(abs, Opcodes.ILOAD, 2, 0));
+            abs.addInstruction(new SimpleInstruction(abs, Opcodes.INEG, 2));
+            abs.addInstruction(new SimpleInstruction(abs, Opcodes.IRETURN, 2));
+            final LabelMarker positive = new LabelMarker(abs, 1, 3, false, false, 1);
+            jump.setLabel(positive);
+            abs.addInstruction(positive);
+            abs.addInstruction(new VarInstruction(abs, Opcodes.ILOAD, 3, 0));
+            abs.addInstruction(new SimpleInstruction(abs, Opcodes.IRETURN, 3));
+            final LabelMarker handler = new LabelMarker(abs, 2, 4, false, true, 2);
+            abs.addInstruction(handler);
+            abs.addInstruction(new VarInstruction(abs, Opcodes.ASTORE, 4, 1));
+            abs.addInstruction(new SimpleInstruction(abs, Opcodes.ICONST_0, 4));
+            abs.addInstruction(new SimpleInstruction(abs, Opcodes.IRETURN, 4));
+            final LabelMarker abnormal = new LabelMarker(abs, 3, -1, true, false, 3);
+            abs.addInstruction(abnormal);
+            abs.addTryCatchBlock(new TryCatchBlock(entry, handler, handler, "java/lang/Throwable"));
+            abs.setMethodEntryLabel(entry);
+            abs.setAbnormalTerminationLabel(abnormal);
+            abs.setLocalVariables(new LocalVariable[] { new LocalVariable(0, "x", "I"),
+                new LocalVariable(1, "t", "Ljava/lang/Throwable;") });
+            abs.setInstructionNumberEnd(AbstractInstruction.getNextIndex());
+            abs.ready();
+            rc.addMethod(abs);
+
+            // int answer() { return 42; }
+            final ReadMethod answer = new ReadMethod(rc, 0, "answer", "()I", AbstractInstruction.getNextIndex());
+            answer.addInstruction(new IntPush(answer, Opcodes.BIPUSH, 42, 7));
+            answer.addInstruction(new SimpleInstruction(answer, Opcodes.IRETURN, 7));
+            answer.setInstructionNumberEnd(AbstractInstruction.getNextIndex());
+            answer.ready();
+            rc.addMethod(answer);
+
+            rc.setInstructionNumberEnd(AbstractInstruction.getNextIndex());
+            rc.ready();
+            return rc;
+        } finally {
+            AbstractInstruction.endLocalIndexes(previousIndexes);
+        }
+    }
+
+    private static ReadClass readEagerly(final ReadClass rc) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        rc.writeOut(out, new StringCacheOutput());
+        out.close();
+        return ReadClass.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+            new StringCacheInput());
+    }
+
+    private static ReadClass readLazily(final ReadClass rc, final ReadClass.BodySource bodySource,
+            final int bodiesLength) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final StringCacheOutput stringCache = new StringCacheOutput();
+        stringCache.writeString(ReadClass.DIRECTORY_MARKER, out);
+        rc.writeDirectoryEntry(out, stringCache, 0, bodiesLength);
+        out.close();
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        final StringCacheInput stringCacheIn = new StringCacheInput();
+        Assert.assertEquals(ReadClass.DIRECTORY_MARKER, stringCacheIn.readString(in));
+        return ReadClass.readDirectoryEntry(in, stringCacheIn, stringCacheIn.readString(in), bodySource);
+    }
+
+    private static byte[] getBody(final ReadMethod rm) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        rm.writeBody(out, new StringCacheOutput());
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static List<String> describe(final ReadMethod rm) {
+        final List<String> desc = new ArrayList<String>();
+        for (final AbstractInstruction instr: rm.getInstructions())
+            desc.add(instr.getIndex() + " " + instr.getLineNumber() + " " + instr);
+        for (final TryCatchBlock tcb: rm.getTryCatchBlocks())
+            desc.add(tcb.toString());
+        desc.add(String.valueOf(rm.getMethodEntryLabel()));
+        desc.add(String.valueOf(rm.getAbnormalTerminationLabel()));
+        desc.add(Arrays.toString(rm.getLocalVariables()));
+        return desc;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final ReadClass rc = createClass();
+        final ReadClass eager = readEagerly(rc);
+        final ByteArrayBodySource bodySource = new ByteArrayBodySource(rc.writeBodies());
+        final ReadClass lazy = readLazily(rc, bodySource, bodySource.bodies.length);
+
+        Assert.assertEquals(0, bodySource.numReads);
+        Assert.assertEquals(eager.getName(), lazy.getName());
+        Assert.assertEquals(eager.getInstructionNumberStart(), lazy.getInstructionNumberStart());
+        Assert.assertEquals(eager.getInstructionNumberEnd(), lazy.getInstructionNumberEnd());
+        Assert.assertEquals(eager.getMethods().size(), lazy.getMethods().size());
+        for (int i = 0; i < eager.getMethods().size(); ++i) {
+            final ReadMethod eagerMethod = eager.getMethods().get(i);
+            final ReadMethod lazyMethod = lazy.getMethods().get(i);
+            Assert.assertEquals(eagerMethod.toString(), lazyMethod.toString());
+            Assert.assertEquals(eagerMethod.getInstructionNumberStart(), lazyMethod.getInstructionNumberStart());
+            Assert.assertEquals(eagerMethod.getInstructionNumberEnd(), lazyMethod.getInstructionNumberEnd());
+            Assert.assertEquals(describe(eagerMethod), describe(lazyMethod));
+            Assert.assertTrue(Arrays.equals(getBody(eagerMethod), getBody(lazyMethod)));
+        }
+        // all bodies of the class are decoded at once
+        Assert.assertEquals(1, bodySource.numReads);
+    }
+
+    @Test
+    public void testCorruptedBodies() throws IOException {
+        // a valid compressed block, but the data ends within the first instruction
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+        out.writeByte(0);
+        out.close();
+        checkFailure(readLazily(createClass(), new ByteArrayBodySource(bytes.toByteArray()), bytes.size()));
+    }
+
+    @Test
+    public void testRuntimeExceptionWhileReading() throws IOException {
+        checkFailure(readLazily(createClass(), new ReadClass.BodySource() {
+            @Override
+            public byte[] readBodies(final long position, final int length) {
+                throw new IllegalStateException("no bodies");
+            }
+        }, 0));
+    }
+
+    private static void checkFailure(final ReadClass lazy) {
+        TracerException failure = null;
+        for (final ReadMethod rm: lazy.getMethods()) {
+            try {
+                rm.getInstructions();
+                Assert.fail("corrupted method bodies not detected");
+            } catch (final TracerException e) {
+                if (failure == null)
+                    failure = e;
+                // the same failure is reported on every access
+                Assert.assertSame(failure, e);
+            }
+        }
+    }
+
+}
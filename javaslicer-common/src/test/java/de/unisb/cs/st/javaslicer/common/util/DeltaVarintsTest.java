@@ -0,0 +1,116 @@
+/** License information:
+ *    Component: javaslicer-common
+ *    Package:   javaslicer-common.src.test.java.de.unisb.cs.st.javaslicer.common.util
+ *    Class:     DeltaVarintsTest
+ *    Filename:  javaslicer-common/src/test/java/de/unisb/cs/st/javaslicer/common/util/DeltaVarintsTest.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.common.util;
+
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Encodes values with {@link DeltaVarints} and decodes them again, including the
+ * extreme differences between {@link Integer#MIN_VALUE} and {@link Integer#MAX_VALUE}
+ * (and the long counterparts), which overflow.
+ */
+public class DeltaVarintsTest {
+
+    private static final int[] INT_VALUES = { 0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE,
+        Integer.MAX_VALUE, 0, Integer.MIN_VALUE, Integer.MIN_VALUE, 63, 64, -64, -65, 8191, 8192, 42 };
+
+    private static final long[] LONG_VALUES = { 0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE,
+        Long.MAX_VALUE, 0, Long.MIN_VALUE, Long.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE,
+        1L << 62, -(1L << 62), 42 };
+
+    @Test
+    public void testInts() throws IOException {
+        final byte[] data = new byte[INT_VALUES.length * DeltaVarints.MAX_INT_LENGTH];
+        int length = 0;
+        int last = 0;
+        for (final int value: INT_VALUES) {
+            final int newLength = DeltaVarints.encodeInt(value - last, data, length);
+            Assert.assertTrue(newLength - length <= DeltaVarints.MAX_INT_LENGTH);
+            length = newLength;
+            last = value;
+        }
+        final int[] decoded = new int[INT_VALUES.length];
+        DeltaVarints.decodeInts(data, length, decoded, decoded.length);
+        for (int i = 0; i < INT_VALUES.length; ++i)
+            Assert.assertEquals(INT_VALUES[i], decoded[i]);
+    }
+
+    @Test
+    public void testLongs() throws IOException {
+        final byte[] data = new byte[LONG_VALUES.length * DeltaVarints.MAX_LONG_LENGTH];
+        int length = 0;
+        long last = 0;
+        for (final long value: LONG_VALUES) {
+            final int newLength = DeltaVarints.encodeLong(value - last, data, length);
+            Assert.assertTrue(newLength - length <= DeltaVarints.MAX_LONG_LENGTH);
+            length = newLength;
+            last = value;
+        }
+        final long[] decoded = new long[LONG_VALUES.length];
+        DeltaVarints.decodeLongs(data, length, decoded, decoded.length);
+        for (int i = 0; i < LONG_VALUES.length; ++i)
+            Assert.assertEquals(LONG_VALUES[i], decoded[i]);
+    }
+
+    @Test
+    public void testSmallDifferencesTakeOneByte() {
+        final byte[] data = new byte[DeltaVarints.MAX_INT_LENGTH];
+        Assert.assertEquals(1, DeltaVarints.encodeInt(-64, data, 0));
+        Assert.assertEquals(1, DeltaVarints.encodeInt(63, data, 0));
+        Assert.assertEquals(2, DeltaVarints.encodeInt(64, data, 0));
+        Assert.assertEquals(DeltaVarints.MAX_INT_LENGTH, DeltaVarints.encodeInt(Integer.MIN_VALUE, data, 0));
+    }
+
+    @Test
+    public void testCorruptedData() {
+        final byte[] data = new byte[DeltaVarints.MAX_LONG_LENGTH + 1];
+        final int length = DeltaVarints.encodeInt(1000, data, 0);
+        try {
+            // a truncated value
+            DeltaVarints.decodeInts(data, length - 1, new int[1], 1);
+            Assert.fail("truncated value not detected");
+        } catch (final IOException e) {
+            // expected
+        }
+        try {
+            // bytes left over after the last value
+            DeltaVarints.decodeInts(data, length + 1, new int[1], 1);
+            Assert.fail("trailing bytes not detected");
+        } catch (final IOException e) {
+            // expected
+        }
+        for (int i = 0; i < data.length; ++i)
+            data[i] = (byte) 0x80;
+        try {
+            DeltaVarints.decodeLongs(data, data.length, new long[1], 1);
+            Assert.fail("overlong value not detected");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+/** License information:
+ *    Component: javaslicer-common
+ *    Package:   javaslicer-common.src.test.java.de.unisb.cs.st.javaslicer.common.util
+ *    Class:     LZBlockCodecTest
+ *    Filename:  javaslicer-common/src/test/java/de/unisb/cs/st/javaslicer/common/util/LZBlockCodecTest.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.common.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Compresses and decompresses several kinds of input with the {@link LZBlockCodec}.
+ */
+public class LZBlockCodecTest {
+
+    private static final int LENGTH = 64*1024;
+
+    private static byte[] roundTrip(final byte[] input, final int[] hashTable) throws IOException {
+        final byte[] compressed = new byte[LZBlockCodec.maxCompressedLength(input.length)];
+        final int compressedLength = hashTable == null
+            ? LZBlockCodec.compress(input, input.length, compressed)
+            : LZBlockCodec.compress(input, input.length, compressed, hashTable);
+        Assert.assertTrue("compressed length exceeds the maximum",
+            compressedLength <= compressed.length);
+        final byte[] output = new byte[input.length];
+        LZBlockCodec.decompress(compressed, 0, compressedLength, output, output.length);
+        Assert.assertTrue("decompressed data differs from the input", Arrays.equals(input, output));
+        return Arrays.copyOf(compressed, compressedLength);
+    }
+
+    @Test
+    public void testRandom() throws IOException {
+        final Random random = new Random(42);
+        for (int length = 0; length <= LENGTH; length = length * 3 + 1) {
+            final byte[] input = new byte[length];
+            random.nextBytes(input);
+            roundTrip(input, null);
+        }
+    }
+
+    @Test
+    public void testAllLiterals() throws IOException {
+        // no 4-byte sequence occurs twice, so nothing can be matched
+        final byte[] input = new byte[LENGTH];
+        for (int i = 0; i < input.length; i += 4) {
+            final int value = i * 0x01000193;
+            input[i] = (byte) (i >>> 2);
+            input[i+1] = (byte) (i >>> 10);
+            input[i+2] = (byte) (value >>> 16);
+            input[i+3] = (byte) (value >>> 24);
+        }
+        final byte[] compressed = roundTrip(input, null);
+        Assert.assertTrue(compressed.length > input.length);
+    }
+
+    @Test
+    public void testLongMatches() throws IOException {
+        final byte[] zeros = new byte[LENGTH];
+        Assert.assertTrue(roundTrip(zeros, null).length < 300);
+
+        // a short pattern repeated, i.e. matches overlapping their own output
+        final byte[] pattern = new byte[LENGTH];
+        for (int i = 0; i < pattern.length; ++i)
+            pattern[i] = (byte) (i % 7);
+        Assert.assertTrue(roundTrip(pattern, null).length < 300);
+
+        // a random chunk repeated, i.e. one long match after the literals of the first copy
+        final Random random = new Random(43);
+        final byte[] repeated = new byte[LENGTH];
+        final byte[] chunk = new byte[1000];
+        random.nextBytes(chunk);
+        for (int pos = 0; pos < LENGTH; pos += chunk.length)
+            System.arraycopy(chunk, 0, repeated, pos, Math.min(chunk.length, LENGTH - pos));
+        Assert.assertTrue(roundTrip(repeated, null).length < chunk.length + 600);
+    }
+
+    @Test
+    public void testReusedHashTable() throws IOException {
+        // the entries left by one block must not produce matches in the next one
+        final int[] hashTable = LZBlockCodec.newHashTable();
+        final Random random = new Random(44);
+        final byte[] first = new byte[LENGTH];
+        for (int i = 0; i < first.length; ++i)
+            first[i] = (byte) (i % 13);
+        roundTrip(first, hashTable);
+        final byte[] second = new byte[LENGTH / 2];
+        random.nextBytes(second);
+        roundTrip(second, hashTable);
+        roundTrip(new byte[5], hashTable);
+        roundTrip(first, hashTable);
+    }
+
+    @Test
+    public void testCorruptedData() {
+        final byte[] input = new byte[1000];
+        final byte[] compressed = new byte[LZBlockCodec.maxCompressedLength(input.length)];
+        final int compressedLength = LZBlockCodec.compress(input, input.length, compressed);
+        try {
+            LZBlockCodec.decompress(compressed, 0, compressedLength - 1, new byte[input.length], input.length);
+            Assert.fail("truncated data not detected");
+        } catch (final IOException e) {
+            // expected
+        }
+        try {
+            LZBlockCodec.decompress(compressed, 0, compressedLength, new byte[input.length + 1], input.length + 1);
+            Assert.fail("wrong uncompressed length not detected");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+}
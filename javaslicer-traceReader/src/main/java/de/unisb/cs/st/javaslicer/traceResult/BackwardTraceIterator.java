@@ -35,9 +35,6 @@ import java.util.NoSuchElementException;
 
 import org.objectweb.asm.Opcodes;
 
-import de.hammacher.util.iterators.EmptyIterator;
-import de.hammacher.util.maps.IntegerMap;
-import de.hammacher.util.maps.IntegerToLongMap;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.Instruction;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.InstructionInstance;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.InstructionInstanceFactory;
@@ -45,13 +42,101 @@ import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadMethod;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.TraceIterator;
 import de.unisb.cs.st.javaslicer.common.exceptions.TracerException;
 import de.unisb.cs.st.javaslicer.common.progress.ProgressInformationProvider;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.BackwardCursors;
 import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence;
 import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence.ConstantIntegerTraceSequence;
 import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence.ConstantLongTraceSequence;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.IntBackwardCursor;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.LongBackwardCursor;
 
 public class BackwardTraceIterator<InstanceType extends InstructionInstance>
         implements Iterator<InstanceType>, TraceIterator, ProgressInformationProvider {
 
+    /**
+     * Thrown if a sequence of a truncated trace is exhausted, i.e. the iteration
+     * reached the beginning of the traced window.
+     */
+    private static final class WindowStartReachedException extends TracerException {
+        private static final long serialVersionUID = 4213498723917650192L;
+
+        public static final WindowStartReachedException instance = new WindowStartReachedException();
+
+        private WindowStartReachedException() {
+            super("beginning of the traced window reached");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            // this exception is used for control flow only
+            return this;
+        }
+    }
+
+    /**
+     * An array indexed by (dense, non-negative) sequence or instruction indexes,
+     * whose pages are only allocated when an index on them is first written.
+     */
+    private static final class PagedArray<T> {
+
+        private Object[][] pages = new Object[0][];
+
+        public PagedArray() {
+            // nothing
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(final int index) {
+            final int pageNr = index >>> PAGE_BITS;
+            if (pageNr >= this.pages.length)
+                return null;
+            final Object[] page = this.pages[pageNr];
+            return page == null ? null : (T) page[index & PAGE_MASK];
+        }
+
+        public void set(final int index, final T value) {
+            final int pageNr = index >>> PAGE_BITS;
+            if (pageNr >= this.pages.length)
+                this.pages = Arrays.copyOf(this.pages, Math.max(pageNr + 1, 2 * this.pages.length));
+            Object[] page = this.pages[pageNr];
+            if (page == null)
+                this.pages[pageNr] = page = new Object[PAGE_SIZE];
+            page[index & PAGE_MASK] = value;
+        }
+
+    }
+
+    /**
+     * Like {@link PagedArray}, but holding <code>long</code> counters (initially 0).
+     */
+    private static final class PagedLongArray {
+
+        private long[][] pages = new long[0][];
+
+        public PagedLongArray() {
+            // nothing
+        }
+
+        /**
+         * @return the old value at the given index
+         */
+        public long getAndAdd(final int index, final long delta) {
+            final int pageNr = index >>> PAGE_BITS;
+            if (pageNr >= this.pages.length)
+                this.pages = Arrays.copyOf(this.pages, Math.max(pageNr + 1, 2 * this.pages.length));
+            long[] page = this.pages[pageNr];
+            if (page == null)
+                this.pages[pageNr] = page = new long[PAGE_SIZE];
+            final long old = page[index & PAGE_MASK];
+            page[index & PAGE_MASK] = old + delta;
+            return old;
+        }
+
+    }
+
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
     public static final boolean WRITE_ITERATION_DEBUG_FILE = false;
 
     private final ThreadTraceResult threadTraceResult;
@@ -59,11 +144,18 @@ public class BackwardTraceIterator<InstanceType extends InstructionInstance>
     private final InstructionInstanceFactory<? extends InstanceType> instanceFactory;
 
     private InstanceType nextInstruction;
-    private final IntegerMap<Iterator<Integer>> integerSequenceBackwardIterators;
-    private final IntegerMap<Iterator<Long>> longSequenceBackwardIterators;
-    private final IntegerToLongMap instructionNextOccurenceNumber;
+    // indexed by sequence index
+    private final PagedArray<IntBackwardCursor> integerSequenceBackwardCursors;
+    private final PagedArray<LongBackwardCursor> longSequenceBackwardCursors;
+    // indexed by instruction index
+    private final PagedLongArray instructionNextOccurenceNumber;
 
     private int stackDepth;
+    // the methods on the stack up to stackDepth, starting with the outermost one. only
+    // maintained while instances are skipped or checkpoints are recorded (else null)
+    private ReadMethod[] stackMethods;
+    // the methods on the stack before the first instance which is not skipped
+    private ReadMethod[] initialStackMethods;
 
     private long instancesCount = 0;
     private long filteredInstancesCount = 0;
@@ -72,16 +164,48 @@ public class BackwardTraceIterator<InstanceType extends InstructionInstance>
     // to approximate the percentage done
 	private long numCrossedLabels = 0;
 
+    // instances with a smaller number are skipped (when starting at a checkpoint)
+    private final long skipUntil;
+    // only set while the checkpoints of this thread are built
+    private final TraceCheckpoints.Recorder checkpointRecorder;
+
     public BackwardTraceIterator(final ThreadTraceResult threadTraceResult,
             final InstanceFilter<? super InstanceType> filter,
             InstructionInstanceFactory<? extends InstanceType> instanceFactory)
             throws TracerException {
+        this(threadTraceResult, filter, instanceFactory, null, 0, null);
+    }
+
+    /**
+     * Creates an iterator whose first instance is the one with the given instance number
+     * (or the first one after it which is not filtered). The iteration starts at the given
+     * checkpoint, which must belong to this thread and have a smaller or equal instance
+     * number, or at the end of the thread if the checkpoint is <code>null</code>.
+     */
+    public BackwardTraceIterator(final ThreadTraceResult threadTraceResult,
+            final InstanceFilter<? super InstanceType> filter,
+            InstructionInstanceFactory<? extends InstanceType> instanceFactory,
+            final TraceCheckpoints.Checkpoint checkpoint, final long startInstanceNr)
+            throws TracerException {
+        this(threadTraceResult, filter, instanceFactory, checkpoint, startInstanceNr, null);
+    }
+
+    protected BackwardTraceIterator(final ThreadTraceResult threadTraceResult,
+            final InstanceFilter<? super InstanceType> filter,
+            InstructionInstanceFactory<? extends InstanceType> instanceFactory,
+            final TraceCheckpoints.Checkpoint checkpoint, final long startInstanceNr,
+            final TraceCheckpoints.Recorder checkpointRecorder)
+            throws TracerException {
+        if (checkpoint != null && checkpoint.instanceNr > startInstanceNr)
+            throw new IllegalArgumentException("checkpoint lies behind the start instance");
+        this.skipUntil = startInstanceNr;
+        this.checkpointRecorder = checkpointRecorder;
         this.filter = filter;
         this.threadTraceResult = threadTraceResult;
         this.instanceFactory = instanceFactory;
-        this.integerSequenceBackwardIterators = new IntegerMap<Iterator<Integer>>();
-        this.longSequenceBackwardIterators = new IntegerMap<Iterator<Long>>();
-        this.instructionNextOccurenceNumber = new IntegerToLongMap();
+        this.integerSequenceBackwardCursors = new PagedArray<IntBackwardCursor>();
+        this.longSequenceBackwardCursors = new PagedArray<LongBackwardCursor>();
+        this.instructionNextOccurenceNumber = new PagedLongArray();
         if (WRITE_ITERATION_DEBUG_FILE) {
             PrintWriter debugFileWriterTmp = null;
             try {
@@ -98,8 +222,91 @@ public class BackwardTraceIterator<InstanceType extends InstructionInstance>
             this.debugFileWriter = debugFileWriterTmp;
         } else
             this.debugFileWriter = null;
-        this.stackDepth = this.threadTraceResult.lastStackDepth;
-        this.nextInstruction = getNextInstruction(this.threadTraceResult.lastInstructionIndex);
+        int firstIndex;
+        if (checkpoint == null) {
+            this.stackDepth = this.threadTraceResult.lastStackDepth;
+            firstIndex = this.threadTraceResult.lastInstructionIndex;
+            if (startInstanceNr == 0)
+                this.initialStackMethods = this.threadTraceResult.lastStackMethods;
+            if (startInstanceNr > 0 || checkpointRecorder != null)
+                this.stackMethods = this.threadTraceResult.lastStackMethods.clone();
+        } else {
+            restore(checkpoint);
+            firstIndex = checkpoint.nextIndex;
+        }
+        InstanceType first;
+        try {
+            first = getNextInstruction(firstIndex);
+        } catch (final WindowStartReachedException e) {
+            first = null;
+        }
+        this.nextInstruction = first;
+        if (this.initialStackMethods == null)
+            this.initialStackMethods = Arrays.copyOf(this.stackMethods, Math.max(this.stackDepth, 0));
+    }
+
+    /**
+     * Restores the state of the iteration at the given checkpoint: the stack depth,
+     * the occurrence numbers and the positions in all trace sequences.
+     * Since most checkpoints only store the changes since their predecessor, the
+     * changes of the checkpoints from the last snapshot up to the given one are summed up.
+     */
+    private void restore(final TraceCheckpoints.Checkpoint checkpoint) throws TracerException {
+        this.stackDepth = checkpoint.stackDepth;
+        this.instancesCount = checkpoint.instanceNr;
+        this.numCrossedLabels = checkpoint.numCrossedLabels;
+        try {
+            final int[] stackMethodIndexes = checkpoint.getStackMethodIndexes();
+            this.stackMethods = new ReadMethod[stackMethodIndexes.length];
+            for (int i = 0; i < stackMethodIndexes.length; ++i) {
+                this.stackMethods[i] = this.threadTraceResult.findMethod(stackMethodIndexes[i]);
+                if (this.stackMethods[i] == null)
+                    throw new TracerException("checkpoint does not match the trace");
+            }
+        } catch (final IOException e) {
+            throw new TracerException(e);
+        }
+        final PagedLongArray seqValuesRead = new PagedLongArray();
+        int[] seqIndexes = new int[16];
+        // the last value read from each sequence (in the newest checkpoint which read from it)
+        long[] seqLastValues = new long[16];
+        int numSeqIndexes = 0;
+        for (TraceCheckpoints.Checkpoint cp = checkpoint; cp != null; cp = cp.snapshot ? null : cp.previous) {
+            for (int i = 0; i < cp.instrIndexes.length; ++i)
+                this.instructionNextOccurenceNumber.getAndAdd(cp.instrIndexes[i], cp.instrOccurrences[i]);
+            for (int i = 0; i < cp.seqIndexes.length; ++i) {
+                if (seqValuesRead.getAndAdd(cp.seqIndexes[i], cp.seqValuesRead[i]) == 0) {
+                    if (numSeqIndexes == seqIndexes.length) {
+                        seqIndexes = Arrays.copyOf(seqIndexes, 2*numSeqIndexes);
+                        seqLastValues = Arrays.copyOf(seqLastValues, 2*numSeqIndexes);
+                    }
+                    seqLastValues[numSeqIndexes] = cp.seqLastValues[i];
+                    seqIndexes[numSeqIndexes++] = cp.seqIndexes[i];
+                }
+            }
+        }
+        for (int i = 0; i < numSeqIndexes; ++i) {
+            final int seqIndex = seqIndexes[i];
+            final long toSkip = seqValuesRead.getAndAdd(seqIndex, 0);
+            try {
+                final ConstantTraceSequence sequence = this.threadTraceResult.getSequences().get(seqIndex);
+                if (sequence instanceof ConstantIntegerTraceSequence) {
+                    final IntBackwardCursor cursor = ((ConstantIntegerTraceSequence)sequence).backwardCursor();
+                    if (BackwardCursors.skip(cursor, toSkip, seqLastValues[i]) != toSkip)
+                        throw new TracerException("checkpoint does not match the trace");
+                    this.integerSequenceBackwardCursors.set(seqIndex, cursor.hasNext() ? cursor : IntBackwardCursor.EMPTY);
+                } else if (sequence instanceof ConstantLongTraceSequence) {
+                    final LongBackwardCursor cursor = ((ConstantLongTraceSequence)sequence).backwardCursor();
+                    if (BackwardCursors.skip(cursor, toSkip, seqLastValues[i]) != toSkip)
+                        throw new TracerException("checkpoint does not match the trace");
+                    this.longSequenceBackwardCursors.set(seqIndex, cursor.hasNext() ? cursor : LongBackwardCursor.EMPTY);
+                } else {
+                    throw new TracerException("checkpoint does not match the trace");
+                }
+            } catch (final IOException e) {
+                throw new TracerException(e);
+            }
+        }
     }
 
     @Override
@@ -116,12 +323,21 @@ public class BackwardTraceIterator<InstanceType extends InstructionInstance>
         if (this.nextInstruction == null)
             throw new NoSuchElementException();
         final InstanceType old = this.nextInstruction;
-        this.nextInstruction = getNextInstruction(this.nextInstruction.getInstruction().getBackwardInstructionIndex(this));
+        try {
+            this.nextInstruction = getNextInstruction(this.nextInstruction.getInstruction().getBackwardInstructionIndex(this));
+        } catch (final WindowStartReachedException e) {
+            // the beginning of a truncated trace is reached
+            this.nextInstruction = null;
+        }
         return old;
     }
 
+    /**
+     * @return the methods on the stack before the first instance returned by this iterator,
+     *         starting with the outermost one
+     */
     public List<ReadMethod> getInitialStackMethods() {
-        return Collections.unmodifiableList(Arrays.asList(this.threadTraceResult.lastStackMethods));
+        return Collections.unmodifiableList(Arrays.asList(this.initialStackMethods));
     }
 
     private InstanceType getNextInstruction(final int nextIndex) throws TracerException {
@@ -130,6 +346,14 @@ public class BackwardTraceIterator<InstanceType extends InstructionInstance>
             if (WRITE_ITERATION_DEBUG_FILE) {
                 this.debugFileWriter.println(index);
             }
+            if (this.checkpointRecorder != null)
+                this.checkpointRecorder.instanceReached(this.instancesCount, index, this.stackDepth,
+                    this.stackMethods, this.numCrossedLabels);
+            if (this.initialStackMethods == null && this.instancesCount >= this.skipUntil) {
+                this.initialStackMethods = Arrays.copyOf(this.stackMethods, Math.max(this.stackDepth, 0));
+                if (this.checkpointRecorder == null)
+                    this.stackMethods = null;
+            }
             final Instruction backwardInstruction = this.threadTraceResult.findInstruction(index);
             if (backwardInstruction == null) {
                 assert index == -1;
@@ -146,13 +370,16 @@ public class BackwardTraceIterator<InstanceType extends InstructionInstance>
                             && opcode <= Opcodes.RETURN)) {
                 // info: the return statements opcodes lie between 172 (IRETURN) and 177 (RETURN)
                 this.stackDepth = ++tmpStackDepth;
+                if (this.stackMethods != null)
+                    pushStackMethod(backwardInstruction.getMethod());
             }
             final InstanceType instance = backwardInstruction.getNextInstance(this, tmpStackDepth,
                 this.instancesCount, this.instanceFactory);
             assert instance != null;
 
-            ++this.instancesCount;
-            if (this.filter != null && this.filter.filterInstance(instance)) {
+            if (this.instancesCount++ < this.skipUntil) {
+                // skipped to reach the start instance
+            } else if (this.filter != null && this.filter.filterInstance(instance)) {
                 ++this.filteredInstancesCount;
             } else {
                 return instance;
@@ -161,6 +388,12 @@ public class BackwardTraceIterator<InstanceType extends InstructionInstance>
         }
     }
 
+    private void pushStackMethod(final ReadMethod method) {
+        if (this.stackDepth > this.stackMethods.length)
+            this.stackMethods = Arrays.copyOf(this.stackMethods, Math.max(this.stackDepth, 2*this.stackMethods.length));
+        this.stackMethods[this.stackDepth-1] = method;
+    }
+
     @Override
 	public void remove() {
         throw new UnsupportedOperationException();
@@ -168,49 +401,63 @@ public class BackwardTraceIterator<InstanceType extends InstructionInstance>
 
     @Override
 	public long getNextLong(final int seqIndex) throws TracerException {
-        Iterator<Long> it = this.longSequenceBackwardIterators.get(seqIndex);
-        if (it == null) {
+        LongBackwardCursor cursor = this.longSequenceBackwardCursors.get(seqIndex);
+        if (cursor == null) {
             try {
-                ConstantTraceSequence sequence = this.threadTraceResult.sequences.get(seqIndex);
+                ConstantTraceSequence sequence = this.threadTraceResult.getSequences().get(seqIndex);
                 if (sequence == null)
-                    throw new TracerException("corrupted data (cannot trace backwards)");
-                it = ((ConstantLongTraceSequence)sequence).backwardIterator();
+                    throw exhaustedSequence();
+                cursor = ((ConstantLongTraceSequence)sequence).backwardCursor();
             } catch (final IOException e) {
                 throw new TracerException(e);
             }
-            this.longSequenceBackwardIterators.put(seqIndex, it);
+            this.longSequenceBackwardCursors.set(seqIndex, cursor);
         }
-        if (!it.hasNext())
-            throw new TracerException("corrupted data (cannot trace backwards)");
-        Long ret = it.next();
-        if (!it.hasNext())
-            this.longSequenceBackwardIterators.put(seqIndex, EmptyIterator.<Long>getInstance());
+        if (!cursor.hasNext())
+            throw exhaustedSequence();
+        final long ret = cursor.nextLong();
+        if (this.checkpointRecorder != null)
+            this.checkpointRecorder.valueRead(seqIndex, ret);
+        if (!cursor.hasNext())
+            this.longSequenceBackwardCursors.set(seqIndex, LongBackwardCursor.EMPTY);
         return ret;
     }
 
     @Override
 	public int getNextInteger(final int seqIndex) throws TracerException {
-        Iterator<Integer> it = this.integerSequenceBackwardIterators.get(seqIndex);
-        if (it == null) {
+        IntBackwardCursor cursor = this.integerSequenceBackwardCursors.get(seqIndex);
+        if (cursor == null) {
             try {
-                it = ((ConstantIntegerTraceSequence)this.threadTraceResult.sequences.get(seqIndex)).backwardIterator();
+                ConstantTraceSequence sequence = this.threadTraceResult.getSequences().get(seqIndex);
+                if (sequence == null)
+                    throw exhaustedSequence();
+                cursor = ((ConstantIntegerTraceSequence)sequence).backwardCursor();
             } catch (final IOException e) {
                 throw new TracerException(e);
             }
-            this.integerSequenceBackwardIterators.put(seqIndex, it);
+            this.integerSequenceBackwardCursors.set(seqIndex, cursor);
         }
-        if (!it.hasNext())
-            throw new TracerException("corrupted data (cannot trace backwards)");
-        Integer ret = it.next();
-        if (!it.hasNext())
-            this.integerSequenceBackwardIterators.put(seqIndex, EmptyIterator.<Integer>getInstance());
+        if (!cursor.hasNext())
+            throw exhaustedSequence();
+        final int ret = cursor.nextInt();
+        if (this.checkpointRecorder != null)
+            this.checkpointRecorder.valueRead(seqIndex, ret);
+        if (!cursor.hasNext())
+            this.integerSequenceBackwardCursors.set(seqIndex, IntBackwardCursor.EMPTY);
         return ret;
     }
 
+    private TracerException exhaustedSequence() {
+        if (this.threadTraceResult.truncated)
+            return WindowStartReachedException.instance;
+        return new TracerException("corrupted data (cannot trace backwards)");
+    }
+
     @Override
 	public long getNextInstructionOccurenceNumber(final int instructionIndex) {
-        final long nr = this.instructionNextOccurenceNumber.incrementAndGet(instructionIndex, 1);
-        return nr - 1;
+        if (this.checkpointRecorder != null)
+            this.checkpointRecorder.instructionOccurred(instructionIndex);
+        return this.instructionNextOccurenceNumber.getAndAdd(instructionIndex, 1);
     }
 
     public long getNumInstructions() {
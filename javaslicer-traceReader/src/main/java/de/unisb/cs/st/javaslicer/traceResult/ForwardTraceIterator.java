@@ -24,7 +24,6 @@ package de.unisb.cs.st.javaslicer.traceResult;
 
 import java.io.IOException;
 import java.util.Iterator;
-import java.util.ListIterator;
 import java.util.NoSuchElementException;
 
 import de.hammacher.util.maps.IntegerMap;
@@ -36,6 +35,8 @@ import de.unisb.cs.st.javaslicer.common.classRepresentation.TraceIterator;
 import de.unisb.cs.st.javaslicer.common.exceptions.TracerException;
 import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence.ConstantIntegerTraceSequence;
 import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence.ConstantLongTraceSequence;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.IntForwardCursor;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.LongForwardCursor;
 
 public class ForwardTraceIterator<InstanceType extends InstructionInstance>
         implements Iterator<InstructionInstance>, TraceIterator {
@@ -51,8 +52,8 @@ public class ForwardTraceIterator<InstanceType extends InstructionInstance>
 
     private final IntegerToLongMap occurrences;
     private final ThreadTraceResult threadTraceResult;
-    private final IntegerMap<ListIterator<Integer>> integerSequenceIterators;
-    private final IntegerMap<ListIterator<Long>> longSequenceIterators;
+    private final IntegerMap<IntForwardCursor> integerSequenceIterators;
+    private final IntegerMap<LongForwardCursor> longSequenceIterators;
     private final InstructionInstanceFactory<? extends InstanceType> instanceFactory;
 
     // for progress approximation
@@ -69,8 +70,8 @@ public class ForwardTraceIterator<InstanceType extends InstructionInstance>
         this.stackDepth = 1;
         this.nextJumpNr = forwInfo.jumpInstrNrs.length-1;
         this.occurrences = new IntegerToLongMap();
-        this.integerSequenceIterators = new IntegerMap<ListIterator<Integer>>();
-        this.longSequenceIterators = new IntegerMap<ListIterator<Long>>();
+        this.integerSequenceIterators = new IntegerMap<IntForwardCursor>();
+        this.longSequenceIterators = new IntegerMap<LongForwardCursor>();
         this.instanceFactory = instanceFactory;
     }
 
@@ -116,10 +117,10 @@ public class ForwardTraceIterator<InstanceType extends InstructionInstance>
 
     @Override
 	public long getNextLong(int seqIndex) throws TracerException {
-        ListIterator<Long> it = this.longSequenceIterators.get(seqIndex);
+        LongForwardCursor it = this.longSequenceIterators.get(seqIndex);
         if (it == null) {
             try {
-                it = ((ConstantLongTraceSequence)this.threadTraceResult.sequences.get(seqIndex)).iterator();
+                it = ((ConstantLongTraceSequence)this.threadTraceResult.getSequences().get(seqIndex)).forwardCursor();
             } catch (IOException e) {
                 throw new TracerException(e);
             }
@@ -127,15 +128,15 @@ public class ForwardTraceIterator<InstanceType extends InstructionInstance>
         }
         if (!it.hasNext())
             throw new TracerException("corrupted data (cannot trace backwards)");
-        return it.next();
+        return it.nextLong();
     }
 
     @Override
 	public int getNextInteger(int seqIndex) throws TracerException {
-        ListIterator<Integer> it = this.integerSequenceIterators.get(seqIndex);
+        IntForwardCursor it = this.integerSequenceIterators.get(seqIndex);
         if (it == null) {
             try {
-                it = ((ConstantIntegerTraceSequence)this.threadTraceResult.sequences.get(seqIndex)).iterator();
+                it = ((ConstantIntegerTraceSequence)this.threadTraceResult.getSequences().get(seqIndex)).forwardCursor();
             } catch (IOException e) {
                 throw new TracerException(e);
             }
@@ -143,7 +144,7 @@ public class ForwardTraceIterator<InstanceType extends InstructionInstance>
         }
         if (!it.hasNext())
             throw new TracerException("corrupted data (cannot trace backwards)");
-        return it.next();
+        return it.nextInt();
     }
 
 	@Override
@@ -0,0 +1,138 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult
+ *    Class:     SequenceTable
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/SequenceTable.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import de.hammacher.util.MultiplexedFileReader;
+import de.hammacher.util.MultiplexedFileReader.MultiplexInputStream;
+import de.hammacher.util.maps.IntegerMap;
+import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConcatenatedTraceSequence;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantThreadTraces;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence;
+
+/**
+ * The trace sequences of one thread, or of one segment of its trace.
+ *
+ * The tracer stores the sequence table of each thread in a stream of its own
+ * (see {@link TraceSequenceTypes#FORMAT_TABLE_STREAM}), which is only decoded when
+ * the sequences are requested for the first time. Traces written by older versions
+ * contain the table inline; it is decoded immediately then.
+ */
+public class SequenceTable {
+
+    private final MultiplexedFileReader file;
+    private final int streamIndex;
+    // if not null, the sequences are the concatenation of these segments
+    private final List<SequenceTable> segments;
+
+    // guarded by the monitor of this table
+    private IntegerMap<ConstantTraceSequence> sequences;
+
+    private SequenceTable(final MultiplexedFileReader file, final int streamIndex,
+            final List<SequenceTable> segments, final IntegerMap<ConstantTraceSequence> sequences) {
+        this.file = file;
+        this.streamIndex = streamIndex;
+        this.segments = segments;
+        this.sequences = sequences;
+    }
+
+    /**
+     * Reads the reference to the sequence table (or the whole table, for traces
+     * written by older versions of the tracer).
+     */
+    public static SequenceTable readFrom(final DataInputStream in, final MultiplexedFileReader file)
+            throws IOException {
+        final byte format = in.readByte();
+        if (format == TraceSequenceTypes.FORMAT_TABLE_STREAM)
+            return new SequenceTable(file, in.readInt(), null, null);
+        return new SequenceTable(file, -1, null, readSequences(in, format, file));
+    }
+
+    /**
+     * Creates a table holding the concatenated sequences of the given segments.
+     * The segments are not decoded before the sequences are requested.
+     */
+    public static SequenceTable concat(final List<SequenceTable> segments) {
+        return new SequenceTable(null, -1, segments, null);
+    }
+
+    public synchronized IntegerMap<ConstantTraceSequence> getSequences() throws IOException {
+        if (this.sequences == null) {
+            if (this.segments != null) {
+                this.sequences = concatSegments(this.segments);
+            } else {
+                final MultiplexInputStream stream = this.file.getInputStream(this.streamIndex);
+                if (stream == null)
+                    throw new IOException("corrupted data (missing sequence table)");
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+                try {
+                    this.sequences = readSequences(in, in.readByte(), this.file);
+                } finally {
+                    in.close();
+                }
+            }
+        }
+        return this.sequences;
+    }
+
+    private static IntegerMap<ConstantTraceSequence> readSequences(final DataInputStream in,
+            final byte format, final MultiplexedFileReader file) throws IOException {
+        final ConstantThreadTraces threadTraces = ConstantThreadTraces.readFrom(in, format);
+        int numSequences = in.readInt();
+        final IntegerMap<ConstantTraceSequence> sequences =
+            new IntegerMap<ConstantTraceSequence>(numSequences*4/3+1);
+        while (numSequences-- > 0) {
+            final int nr = in.readInt();
+            final ConstantTraceSequence seq = threadTraces.readSequence(in, file);
+            if (sequences.put(nr, seq) != null)
+                throw new IOException("corrupted data");
+        }
+        return sequences;
+    }
+
+    private static IntegerMap<ConstantTraceSequence> concatSegments(final List<SequenceTable> segments)
+            throws IOException {
+        final IntegerMap<List<ConstantTraceSequence>> parts = new IntegerMap<List<ConstantTraceSequence>>();
+        for (final SequenceTable segment: segments) {
+            for (final Entry<Integer, ConstantTraceSequence> e: segment.getSequences().entrySet()) {
+                List<ConstantTraceSequence> seqParts = parts.get(e.getKey());
+                if (seqParts == null)
+                    parts.put(e.getKey(), seqParts = new ArrayList<ConstantTraceSequence>(segments.size()));
+                seqParts.add(e.getValue());
+            }
+        }
+        final IntegerMap<ConstantTraceSequence> sequences =
+            new IntegerMap<ConstantTraceSequence>(parts.size()*4/3+1);
+        for (final Entry<Integer, List<ConstantTraceSequence>> e: parts.entrySet())
+            sequences.put(e.getKey(), ConcatenatedTraceSequence.concat(e.getValue()));
+        return sequences;
+    }
+
+}
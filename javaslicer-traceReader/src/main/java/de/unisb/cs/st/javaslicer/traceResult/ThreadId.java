@@ -26,10 +26,16 @@ public class ThreadId implements Comparable<ThreadId> {
 
     private final long threadId;
     private final String threadName;
+    private final boolean virtual;
 
     public ThreadId(final long threadId, final String threadName) {
+        this(threadId, threadName, false);
+    }
+
+    public ThreadId(final long threadId, final String threadName, final boolean virtual) {
         this.threadId = threadId;
         this.threadName = threadName;
+        this.virtual = virtual;
     }
 
     public long getJavaThreadId() {
@@ -40,13 +46,26 @@ public class ThreadId implements Comparable<ThreadId> {
         return this.threadName;
     }
 
+    /**
+     * @return whether this thread was a virtual thread traced with lightweight tracers
+     */
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
     @Override
     public String toString() {
-        return this.threadId + ": " + this.threadName;
+        return this.threadId + ": " + this.threadName + (this.virtual ? " (virtual)" : "");
     }
 
+    /**
+     * Platform threads are ordered before all virtual threads, so that the (usually few)
+     * platform threads stay grouped at the beginning of the list of all threads.
+     */
     @Override
 	public int compareTo(final ThreadId other) {
+        if (this.virtual != other.virtual)
+            return this.virtual ? 1 : -1;
         if (this.threadId == other.threadId) {
             final int nameCmp = this.threadName.compareTo(other.threadName);
             if (nameCmp == 0 && this != other)
@@ -63,6 +82,7 @@ public class ThreadId implements Comparable<ThreadId> {
         result = prime * result
                 + (int) (this.threadId ^ (this.threadId >>> 32));
         result = prime * result + this.threadName.hashCode();
+        result = prime * result + (this.virtual ? 1231 : 1237);
         return result;
     }
 
@@ -77,6 +97,8 @@ public class ThreadId implements Comparable<ThreadId> {
         final ThreadId other = (ThreadId) obj;
         if (this.threadId != other.threadId)
             return false;
+        if (this.virtual != other.virtual)
+            return false;
         if (!this.threadName.equals(other.threadName))
             return false;
         return true;
@@ -25,8 +25,12 @@ package de.unisb.cs.st.javaslicer.traceResult;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 import de.hammacher.util.MultiplexedFileReader;
 import de.hammacher.util.maps.IntegerMap;
@@ -36,15 +40,16 @@ import de.unisb.cs.st.javaslicer.common.classRepresentation.Instruction;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.InstructionInstance;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.InstructionInstanceFactory;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadMethod;
-import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantThreadTraces;
 import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence;
 
 public class ThreadTraceResult implements Comparable<ThreadTraceResult> {
 
     private final ThreadId id;
-    protected final IntegerMap<ConstantTraceSequence> sequences;
+    private final SequenceTable sequences;
     protected final int lastInstructionIndex;
     protected final long numCrossedLabels;
+    // true if the trace only contains the last events of the thread (ring mode)
+    protected final boolean truncated;
     protected final int lastStackDepth;
     protected final ReadMethod[] lastStackMethods;
 
@@ -54,18 +59,28 @@ public class ThreadTraceResult implements Comparable<ThreadTraceResult> {
         = new SoftReference<ForwardIterationInformation>(null);
     private final Object forwardIterationInfoLock = new Object();
 
-    public ThreadTraceResult(long threadId, String threadName,
-            IntegerMap<ConstantTraceSequence> sequences, int lastInstructionIndex,
-            long numCrossedLabels, TraceResult traceResult, int lastStackDepth, ReadMethod[] lastStackMethods) {
-        this.id = new ThreadId(threadId, threadName);
+    public ThreadTraceResult(long threadId, String threadName, boolean virtual,
+            SequenceTable sequences, int lastInstructionIndex,
+            long numCrossedLabels, boolean truncated, TraceResult traceResult, int lastStackDepth,
+            ReadMethod[] lastStackMethods) {
+        this.id = new ThreadId(threadId, threadName, virtual);
         this.sequences = sequences;
         this.numCrossedLabels = numCrossedLabels;
+        this.truncated = truncated;
         this.lastInstructionIndex = lastInstructionIndex;
         this.traceResult = traceResult;
         this.lastStackDepth = lastStackDepth;
         this.lastStackMethods = lastStackMethods;
     }
 
+    /**
+     * Returns the trace sequences of this thread. They are decoded from the trace file
+     * when requested for the first time.
+     */
+    public IntegerMap<ConstantTraceSequence> getSequences() throws IOException {
+        return this.sequences.getSequences();
+    }
+
     public ThreadId getId() {
         return this.id;
     }
@@ -78,29 +93,93 @@ public class ThreadTraceResult implements Comparable<ThreadTraceResult> {
         return getId().getThreadName();
     }
 
+    /**
+     * @return whether this trace only contains the last part of the thread's execution
+     *         (i.e. it was traced in ring mode and events have been dropped).
+     *         Backward iteration of such a trace just ends at the oldest traced event.
+     */
+    public boolean isTruncated() {
+        return this.truncated;
+    }
+
+    /**
+     * The segments of a thread whose remaining trace has not been read yet.
+     */
+    public static class Segments {
+
+        private final ThreadId threadId;
+        protected final List<SequenceTable> tables = new ArrayList<SequenceTable>();
+
+        public Segments(final ThreadId threadId) {
+            this.threadId = threadId;
+        }
+
+        public ThreadId getThreadId() {
+            return this.threadId;
+        }
+
+        public int getNumSegments() {
+            return this.tables.size();
+        }
+
+    }
+
     public static ThreadTraceResult readFrom(DataInputStream in, TraceResult traceResult, MultiplexedFileReader file) throws IOException {
-        long threadId = in.readLong();
+        ThreadTraceResult result = readFrom(in, traceResult, file, new HashMap<Long, Segments>());
+        if (result == null)
+            throw new IOException("unexpected segment of a thread trace");
+        return result;
+    }
+
+    /**
+     * Reads the trace of one thread, or one segment of it.
+     *
+     * Long-living threads may write their trace in several segments (see the
+     * "segment" option of the tracer), each followed by the remaining part of
+     * the trace. The segments are collected in <code>segments</code>, and the
+     * sequences of all segments are concatenated when the remaining part is read.
+     * The sequence tables themselves are only decoded when the sequences are used
+     * (see {@link SequenceTable}).
+     *
+     * @return the trace of the thread, or <code>null</code> if a segment was read
+     */
+    public static ThreadTraceResult readFrom(DataInputStream in, TraceResult traceResult, MultiplexedFileReader file,
+            Map<Long, Segments> segments) throws IOException {
+        final long storedThreadId = in.readLong();
+        long threadId = storedThreadId;
+        // virtual threads are stored with the complement of their thread id
+        boolean virtual = threadId < 0;
+        if (virtual)
+            threadId = ~threadId;
         String name = in.readUTF();
-        ConstantThreadTraces threadTraces = ConstantThreadTraces.readFrom(in);
-        int numSequences = in.readInt();
-        IntegerMap<ConstantTraceSequence> sequences = new IntegerMap<ConstantTraceSequence>(numSequences*4/3+1);
-        while (numSequences-- > 0) {
-            int nr = in.readInt();
-            ConstantTraceSequence seq = threadTraces.readSequence(in, file);
-            if (sequences.put(nr, seq) != null)
-                throw new IOException("corrupted data");
-        }
+        SequenceTable sequences = SequenceTable.readFrom(in, file);
         int lastInstructionIndex = in.readInt();
         long numCrossedLabels = in.readLong();
+        // truncated traces are stored with the complement of the number of crossed labels
+        boolean truncated = numCrossedLabels < 0;
+        if (truncated)
+            numCrossedLabels = ~numCrossedLabels;
         int lastStackDepth = in.readInt();
+        if (lastStackDepth == -1) {
+            // this is a segment, the rest of the trace follows later
+            Segments threadSegments = segments.get(storedThreadId);
+            if (threadSegments == null)
+                segments.put(storedThreadId, threadSegments = new Segments(new ThreadId(threadId, name, virtual)));
+            threadSegments.tables.add(sequences);
+            return null;
+        }
+        Segments threadSegments = segments.remove(storedThreadId);
+        if (threadSegments != null) {
+            threadSegments.tables.add(sequences);
+            sequences = SequenceTable.concat(threadSegments.tables);
+        }
         ReadMethod[] lastStackMethods = new ReadMethod[lastStackDepth];
         for (int i = 0; i < lastStackDepth; ++i) {
-            Instruction instr = traceResult.getInstruction(in.readInt());
-            if (instr == null)
+            lastStackMethods[i] = traceResult.findMethod(in.readInt());
+            if (lastStackMethods[i] == null)
                 throw new IOException("corrupted data");
-            lastStackMethods[i] = instr .getMethod();
         }
-        return new ThreadTraceResult(threadId, name, sequences, lastInstructionIndex, numCrossedLabels, traceResult, lastStackDepth, lastStackMethods);
+        return new ThreadTraceResult(threadId, name, virtual, sequences, lastInstructionIndex, numCrossedLabels, truncated, traceResult, lastStackDepth, lastStackMethods);
     }
 
     /**
@@ -123,6 +202,20 @@ public class ThreadTraceResult implements Comparable<ThreadTraceResult> {
         return new BackwardTraceIterator<InstanceType>(this, filter, instanceFactory);
     }
 
+    /**
+     * Returns an iterator that iterates backwards through the execution trace, starting at
+     * the instance with the given number. The iteration starts at the last checkpoint before
+     * that instance (if <code>checkpoints</code> is not <code>null</code>).
+     *
+     * @see TraceResult#getBackwardIterator(ThreadId, InstanceFilter, InstructionInstanceFactory, TraceCheckpoints, long)
+     */
+    public <InstanceType extends InstructionInstance> BackwardTraceIterator<InstanceType> getBackwardIterator(
+            InstanceFilter<? super InstanceType> filter, InstructionInstanceFactory<? extends InstanceType> instanceFactory,
+            TraceCheckpoints checkpoints, long startInstanceNr) {
+        TraceCheckpoints.Checkpoint checkpoint = checkpoints == null ? null : checkpoints.findCheckpoint(getId(), startInstanceNr);
+        return new BackwardTraceIterator<InstanceType>(this, filter, instanceFactory, checkpoint, startInstanceNr);
+    }
+
     /**
      * Returns an iterator that is able to iterate in any direction through the execution trace.
      *
@@ -203,6 +296,13 @@ public class ThreadTraceResult implements Comparable<ThreadTraceResult> {
         return this.traceResult.getInstruction(instructionIndex);
     }
 
+    /**
+     * @see TraceResult#findMethod(int)
+     */
+    public ReadMethod findMethod(final int instructionIndex) {
+        return this.traceResult.findMethod(instructionIndex);
+    }
+
     @Override
 	public int compareTo(ThreadTraceResult o) {
         return this.getId().compareTo(o.getId());
@@ -0,0 +1,508 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult
+ *    Class:     TraceCheckpoints
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/TraceCheckpoints.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import de.hammacher.util.streams.OptimizedDataInputStream;
+import de.hammacher.util.streams.OptimizedDataOutputStream;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.AbstractInstructionInstance;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.AbstractInstructionInstanceFactory;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadMethod;
+
+/**
+ * An index of periodic checkpoints of the backward iteration of thread traces.
+ *
+ * It is built by one backward pass over each thread (see {@link #build(TraceResult, long)})
+ * and usually stored next to the trace file (see {@link #getSidecarFile(File)}).
+ * A {@link BackwardTraceIterator} can then start at any instance number by restoring
+ * the last checkpoint before it, instead of iterating from the end of the thread.
+ *
+ * Most checkpoints only store the counters which changed since the previous one
+ * (the number of values read from the end of each trace sequence, and the number
+ * of occurrences of each instruction), so the index grows linearly with the trace.
+ * Every {@link #SNAPSHOT_INTERVAL}th checkpoint is a snapshot which stores all
+ * counters and the whole stack instead. Restoring a checkpoint sums up the changes
+ * of the checkpoints back to the last snapshot, and then moves each trace sequence
+ * to its position. Packed, LZ and uncompressed sequences
+ * seek to the right block there. Sequitur compressed sequences seek in the grammar,
+ * starting from the last value read before the checkpoint (which is stored as well,
+ * since their values are delta encoded). Only gzip compressed sequences have to skip
+ * over the values.
+ *
+ * The methods on the stack are stored by the index of their first instruction. Each
+ * checkpoint but the snapshots only stores the part of the stack which differs from
+ * the previous one.
+ */
+public class TraceCheckpoints {
+
+    private static final int MAGIC = 0x4a534334; // "JSC4"
+
+    public static final long DEFAULT_INTERVAL = 1000*1000;
+
+    /**
+     * The number of checkpoints from one snapshot to the next one (see {@link Checkpoint#isSnapshot()}).
+     */
+    public static final int SNAPSHOT_INTERVAL = 16;
+
+    /**
+     * The state of a backward iteration just before the instance with number
+     * {@link #getInstanceNr()} is created.
+     */
+    public static final class Checkpoint {
+
+        protected final long instanceNr;
+        // if true, the counters are absolute instead of the changes since the previous
+        // checkpoint, and the whole stack is stored
+        protected final boolean snapshot;
+        protected final int nextIndex;
+        protected final int stackDepth;
+        protected final long numCrossedLabels;
+        // the first sharedStackPrefix methods on the stack are the same as in the previous
+        // checkpoint, the others are given by the index of their first instruction
+        protected final int sharedStackPrefix;
+        protected final int[] stackTail;
+        // the number of values read from the end of each trace sequence since the previous
+        // checkpoint, and the last value read from it
+        protected final int[] seqIndexes;
+        protected final long[] seqValuesRead;
+        protected final long[] seqLastValues;
+        // the number of occurrences of each instruction since the previous checkpoint
+        protected final int[] instrIndexes;
+        protected final long[] instrOccurrences;
+        // the previous checkpoint of the same thread, or null
+        protected final Checkpoint previous;
+
+        protected Checkpoint(final Checkpoint previous, final long instanceNr, final boolean snapshot, final int nextIndex,
+                final int stackDepth, final long numCrossedLabels, final int sharedStackPrefix,
+                final int[] stackTail, final int[] seqIndexes, final long[] seqValuesRead,
+                final long[] seqLastValues, final int[] instrIndexes, final long[] instrOccurrences) {
+            this.previous = previous;
+            this.instanceNr = instanceNr;
+            this.snapshot = snapshot;
+            this.nextIndex = nextIndex;
+            this.stackDepth = stackDepth;
+            this.numCrossedLabels = numCrossedLabels;
+            this.sharedStackPrefix = sharedStackPrefix;
+            this.stackTail = stackTail;
+            this.seqIndexes = seqIndexes;
+            this.seqValuesRead = seqValuesRead;
+            this.seqLastValues = seqLastValues;
+            this.instrIndexes = instrIndexes;
+            this.instrOccurrences = instrOccurrences;
+        }
+
+        public long getInstanceNr() {
+            return this.instanceNr;
+        }
+
+        public int getStackDepth() {
+            return this.stackDepth;
+        }
+
+        /**
+         * @return whether this checkpoint stores the absolute state of the iteration, so that
+         *         it can be restored without looking at its predecessors
+         */
+        public boolean isSnapshot() {
+            return this.snapshot;
+        }
+
+        /**
+         * @return the index of the first instruction of each method on the stack,
+         *         starting with the outermost one
+         */
+        public int[] getStackMethodIndexes() throws IOException {
+            final int[] stack = new int[this.stackDepth];
+            // the entries from this position on are known. the last snapshot stores the
+            // whole stack, so at most the checkpoints back to it are visited
+            int known = this.stackDepth;
+            for (Checkpoint cp = this; known > 0; cp = cp.previous) {
+                if (cp == null)
+                    throw new IOException("corrupted data");
+                if (cp.sharedStackPrefix < known) {
+                    System.arraycopy(cp.stackTail, 0, stack, cp.sharedStackPrefix, known - cp.sharedStackPrefix);
+                    known = cp.sharedStackPrefix;
+                }
+            }
+            return stack;
+        }
+
+        protected void writeOut(final DataOutputStream out) throws IOException {
+            OptimizedDataOutputStream.writeLong0(this.instanceNr, out);
+            out.writeBoolean(this.snapshot);
+            OptimizedDataOutputStream.writeInt0(this.nextIndex, out);
+            OptimizedDataOutputStream.writeInt0(this.stackDepth, out);
+            OptimizedDataOutputStream.writeLong0(this.numCrossedLabels, out);
+            OptimizedDataOutputStream.writeInt0(this.sharedStackPrefix, out);
+            for (final int methodIndex: this.stackTail)
+                OptimizedDataOutputStream.writeInt0(methodIndex, out);
+            OptimizedDataOutputStream.writeInt0(this.seqIndexes.length, out);
+            for (int i = 0; i < this.seqIndexes.length; ++i) {
+                OptimizedDataOutputStream.writeInt0(this.seqIndexes[i], out);
+                OptimizedDataOutputStream.writeLong0(this.seqValuesRead[i], out);
+                OptimizedDataOutputStream.writeLong0(this.seqLastValues[i], out);
+            }
+            OptimizedDataOutputStream.writeInt0(this.instrIndexes.length, out);
+            for (int i = 0; i < this.instrIndexes.length; ++i) {
+                OptimizedDataOutputStream.writeInt0(this.instrIndexes[i], out);
+                OptimizedDataOutputStream.writeLong0(this.instrOccurrences[i], out);
+            }
+        }
+
+        protected static Checkpoint readFrom(final DataInputStream in, final Checkpoint previous) throws IOException {
+            final long instanceNr = OptimizedDataInputStream.readLong0(in);
+            final boolean snapshot = in.readBoolean();
+            if (previous == null && !snapshot)
+                throw new IOException("corrupted data");
+            final int nextIndex = OptimizedDataInputStream.readInt0(in);
+            final int stackDepth = OptimizedDataInputStream.readInt0(in);
+            final long numCrossedLabels = OptimizedDataInputStream.readLong0(in);
+            final int sharedStackPrefix = OptimizedDataInputStream.readInt0(in);
+            if (sharedStackPrefix < 0 || sharedStackPrefix > stackDepth
+                    || sharedStackPrefix > (snapshot ? 0 : previous.stackDepth))
+                throw new IOException("corrupted data");
+            final int[] stackTail = new int[stackDepth - sharedStackPrefix];
+            for (int i = 0; i < stackTail.length; ++i)
+                stackTail[i] = OptimizedDataInputStream.readInt0(in);
+            final int numSeqs = OptimizedDataInputStream.readInt0(in);
+            if (numSeqs < 0)
+                throw new IOException("corrupted data");
+            final int[] seqIndexes = new int[numSeqs];
+            final long[] seqValuesRead = new long[numSeqs];
+            final long[] seqLastValues = new long[numSeqs];
+            for (int i = 0; i < numSeqs; ++i) {
+                seqIndexes[i] = OptimizedDataInputStream.readInt0(in);
+                seqValuesRead[i] = OptimizedDataInputStream.readLong0(in);
+                seqLastValues[i] = OptimizedDataInputStream.readLong0(in);
+            }
+            final int numInstrs = OptimizedDataInputStream.readInt0(in);
+            if (numInstrs < 0)
+                throw new IOException("corrupted data");
+            final int[] instrIndexes = new int[numInstrs];
+            final long[] instrOccurrences = new long[numInstrs];
+            for (int i = 0; i < numInstrs; ++i) {
+                instrIndexes[i] = OptimizedDataInputStream.readInt0(in);
+                instrOccurrences[i] = OptimizedDataInputStream.readLong0(in);
+            }
+            return new Checkpoint(previous, instanceNr, snapshot, nextIndex, stackDepth, numCrossedLabels,
+                sharedStackPrefix, stackTail, seqIndexes, seqValuesRead, seqLastValues,
+                instrIndexes, instrOccurrences);
+        }
+
+    }
+
+    /**
+     * Collects the checkpoints while a {@link BackwardTraceIterator} runs over a thread.
+     */
+    protected static final class Recorder {
+
+        private final long interval;
+        private long nextCheckpoint = 0;
+        // the counters since the last checkpoint, and the indexes of the non-zero ones
+        private long[] seqValuesRead = new long[16];
+        private long[] seqLastValues = new long[16];
+        private int[] changedSeqs = new int[16];
+        private int numChangedSeqs = 0;
+        private long[] instrOccurrences = new long[1024];
+        private int[] changedInstrs = new int[1024];
+        private int numChangedInstrs = 0;
+        // the counters up to the last checkpoint (for the snapshots)
+        private long[] totalSeqValuesRead = new long[16];
+        private long[] totalInstrOccurrences = new long[1024];
+        // the stack of the last checkpoint
+        private int[] lastStack = new int[0];
+        protected final List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
+
+        public Recorder(final long interval) {
+            this.interval = interval;
+        }
+
+        public void valueRead(final int seqIndex, final long value) {
+            if (seqIndex >= this.seqValuesRead.length) {
+                this.seqValuesRead = Arrays.copyOf(this.seqValuesRead, Math.max(seqIndex + 1, 2*this.seqValuesRead.length));
+                this.seqLastValues = Arrays.copyOf(this.seqLastValues, this.seqValuesRead.length);
+                this.totalSeqValuesRead = Arrays.copyOf(this.totalSeqValuesRead, this.seqValuesRead.length);
+            }
+            this.seqLastValues[seqIndex] = value;
+            if (this.seqValuesRead[seqIndex]++ == 0) {
+                if (this.numChangedSeqs == this.changedSeqs.length)
+                    this.changedSeqs = Arrays.copyOf(this.changedSeqs, 2*this.numChangedSeqs);
+                this.changedSeqs[this.numChangedSeqs++] = seqIndex;
+            }
+        }
+
+        public void instructionOccurred(final int instrIndex) {
+            if (instrIndex >= this.instrOccurrences.length) {
+                this.instrOccurrences = Arrays.copyOf(this.instrOccurrences, Math.max(instrIndex + 1, 2*this.instrOccurrences.length));
+                this.totalInstrOccurrences = Arrays.copyOf(this.totalInstrOccurrences, this.instrOccurrences.length);
+            }
+            if (this.instrOccurrences[instrIndex]++ == 0) {
+                if (this.numChangedInstrs == this.changedInstrs.length)
+                    this.changedInstrs = Arrays.copyOf(this.changedInstrs, 2*this.numChangedInstrs);
+                this.changedInstrs[this.numChangedInstrs++] = instrIndex;
+            }
+        }
+
+        /**
+         * Called before the instruction with the given index is visited.
+         *
+         * @param stackMethods the methods on the stack (starting with the outermost one),
+         *                     up to the given stack depth
+         */
+        public void instanceReached(final long instanceNr, final int nextIndex, final int stackDepth,
+                final ReadMethod[] stackMethods, final long numCrossedLabels) {
+            if (instanceNr < this.nextCheckpoint)
+                return;
+            this.nextCheckpoint = instanceNr + this.interval;
+            final boolean snapshot = this.checkpoints.size() % SNAPSHOT_INTERVAL == 0;
+            int[] seqIndexes = Arrays.copyOf(this.changedSeqs, this.numChangedSeqs);
+            int[] instrIndexes = Arrays.copyOf(this.changedInstrs, this.numChangedInstrs);
+            this.numChangedSeqs = 0;
+            this.numChangedInstrs = 0;
+            long[] seqValuesRead = takeValues(this.seqValuesRead, seqIndexes, this.totalSeqValuesRead);
+            long[] instrOccurrences = takeValues(this.instrOccurrences, instrIndexes, this.totalInstrOccurrences);
+            if (snapshot) {
+                seqIndexes = getNonZeroIndexes(this.totalSeqValuesRead);
+                seqValuesRead = getValues(this.totalSeqValuesRead, seqIndexes);
+                instrIndexes = getNonZeroIndexes(this.totalInstrOccurrences);
+                instrOccurrences = getValues(this.totalInstrOccurrences, instrIndexes);
+            }
+            final long[] seqLastValues = getValues(this.seqLastValues, seqIndexes);
+            final int[] stack = new int[stackDepth];
+            for (int i = 0; i < stackDepth; ++i)
+                stack[i] = stackMethods[i].getInstructionNumberStart();
+            int sharedStackPrefix = 0;
+            if (!snapshot)
+                while (sharedStackPrefix < stackDepth && sharedStackPrefix < this.lastStack.length
+                        && stack[sharedStackPrefix] == this.lastStack[sharedStackPrefix])
+                    ++sharedStackPrefix;
+            this.lastStack = stack;
+            final Checkpoint previous = this.checkpoints.isEmpty() ? null : this.checkpoints.get(this.checkpoints.size()-1);
+            this.checkpoints.add(new Checkpoint(previous, instanceNr, snapshot, nextIndex, stackDepth, numCrossedLabels,
+                sharedStackPrefix, Arrays.copyOfRange(stack, sharedStackPrefix, stackDepth),
+                seqIndexes, seqValuesRead, seqLastValues, instrIndexes, instrOccurrences));
+        }
+
+        /**
+         * Returns the values at the given indexes, adds them to the totals, and resets
+         * them to zero.
+         */
+        private static long[] takeValues(final long[] values, final int[] indexes, final long[] totals) {
+            Arrays.sort(indexes);
+            final long[] taken = new long[indexes.length];
+            for (int i = 0; i < indexes.length; ++i) {
+                taken[i] = values[indexes[i]];
+                totals[indexes[i]] += taken[i];
+                values[indexes[i]] = 0;
+            }
+            return taken;
+        }
+
+        private static int[] getNonZeroIndexes(final long[] values) {
+            int num = 0;
+            for (final long value: values)
+                if (value != 0)
+                    ++num;
+            final int[] indexes = new int[num];
+            num = 0;
+            for (int i = 0; i < values.length; ++i)
+                if (values[i] != 0)
+                    indexes[num++] = i;
+            return indexes;
+        }
+
+        private static long[] getValues(final long[] values, final int[] indexes) {
+            final long[] result = new long[indexes.length];
+            for (int i = 0; i < indexes.length; ++i)
+                result[i] = values[indexes[i]];
+            return result;
+        }
+
+    }
+
+    private final long interval;
+    private final Map<ThreadId, Checkpoint[]> checkpoints;
+
+    protected TraceCheckpoints(final long interval, final Map<ThreadId, Checkpoint[]> checkpoints) {
+        this.interval = interval;
+        this.checkpoints = checkpoints;
+    }
+
+    public long getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * Builds the checkpoints of all threads of the given trace, by one backward
+     * iteration over each thread.
+     *
+     * @param interval the number of instances between two checkpoints
+     */
+    public static TraceCheckpoints build(final TraceResult traceResult, final long interval) throws IOException {
+        if (interval <= 0)
+            throw new IllegalArgumentException("interval must be positive");
+        final Map<ThreadId, Checkpoint[]> checkpoints = new HashMap<ThreadId, Checkpoint[]>();
+        for (final ThreadId threadId: traceResult.getThreads()) {
+            final Recorder recorder = new Recorder(interval);
+            final BackwardTraceIterator<AbstractInstructionInstance> it = new BackwardTraceIterator<AbstractInstructionInstance>(
+                traceResult.findThreadTraceResult(threadId), null, new AbstractInstructionInstanceFactory(), null, 0, recorder);
+            while (it.hasNext())
+                it.next();
+            checkpoints.put(threadId, recorder.checkpoints.toArray(new Checkpoint[recorder.checkpoints.size()]));
+        }
+        return new TraceCheckpoints(interval, checkpoints);
+    }
+
+    /**
+     * @return the last checkpoint of the given thread before (or at) the given instance
+     *         number, or <code>null</code> if there is none
+     */
+    public Checkpoint findCheckpoint(final ThreadId threadId, final long instanceNr) {
+        final Checkpoint[] threadCheckpoints = this.checkpoints.get(threadId);
+        if (threadCheckpoints == null)
+            return null;
+        // binary search
+        int left = 0;
+        int right = threadCheckpoints.length - 1;
+        Checkpoint found = null;
+        while (left <= right) {
+            final int mid = (left + right) >>> 1;
+            if (threadCheckpoints[mid].instanceNr <= instanceNr) {
+                found = threadCheckpoints[mid];
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the number of checkpoints stored for the given thread
+     */
+    public int getNumCheckpoints(final ThreadId threadId) {
+        final Checkpoint[] threadCheckpoints = this.checkpoints.get(threadId);
+        return threadCheckpoints == null ? 0 : threadCheckpoints.length;
+    }
+
+    /**
+     * @return the file where the checkpoints of the given trace file are stored by default
+     */
+    public static File getSidecarFile(final File traceFile) {
+        return new File(traceFile.getPath() + ".checkpoints");
+    }
+
+    public void writeTo(final File file) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new GZIPOutputStream(new FileOutputStream(file))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeLong(this.interval);
+            out.writeInt(this.checkpoints.size());
+            for (final Entry<ThreadId, Checkpoint[]> e: this.checkpoints.entrySet()) {
+                out.writeLong(e.getKey().getJavaThreadId());
+                out.writeUTF(e.getKey().getThreadName());
+                out.writeBoolean(e.getKey().isVirtual());
+                out.writeInt(e.getValue().length);
+                for (final Checkpoint cp: e.getValue())
+                    cp.writeOut(out);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static TraceCheckpoints readFrom(final File file) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException("not a checkpoint file: " + file);
+            final long interval = in.readLong();
+            int numThreads = in.readInt();
+            final Map<ThreadId, Checkpoint[]> checkpoints = new HashMap<ThreadId, Checkpoint[]>();
+            while (numThreads-- > 0) {
+                final long javaThreadId = in.readLong();
+                final String threadName = in.readUTF();
+                final boolean virtual = in.readBoolean();
+                final Checkpoint[] threadCheckpoints = new Checkpoint[in.readInt()];
+                for (int i = 0; i < threadCheckpoints.length; ++i)
+                    threadCheckpoints[i] = Checkpoint.readFrom(in, i == 0 ? null : threadCheckpoints[i-1]);
+                checkpoints.put(new ThreadId(javaThreadId, threadName, virtual), threadCheckpoints);
+            }
+            return new TraceCheckpoints(interval, checkpoints);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Builds the checkpoint index of a trace file and stores it next to the file.
+     */
+    public static void main(final String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: " + TraceCheckpoints.class.getName() + " <trace file> [<interval>]");
+            System.exit(-1);
+        }
+        long interval = DEFAULT_INTERVAL;
+        if (args.length > 1) {
+            try {
+                interval = Long.parseLong(args[1]);
+            } catch (final NumberFormatException e) {
+                interval = -1;
+            }
+            if (interval <= 0) {
+                System.err.println("Illegal interval: " + args[1]);
+                System.exit(-1);
+            }
+        }
+        final File traceFile = new File(args[0]);
+        try {
+            final TraceResult traceResult = TraceResult.readFrom(traceFile);
+            final TraceCheckpoints checkpoints = build(traceResult, interval);
+            final File sidecar = getSidecarFile(traceFile);
+            checkpoints.writeTo(sidecar);
+            System.out.println("Checkpoints written to " + sidecar);
+        } catch (final IOException e) {
+            System.err.println("Error building the checkpoints: " + e);
+            System.exit(-1);
+        }
+    }
+
+}
@@ -31,10 +31,14 @@ import java.io.PrintWriter;
 import java.io.PushbackInputStream;
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.cli.CommandLine;
@@ -48,6 +52,7 @@ import org.apache.commons.cli.ParseException;
 import de.hammacher.util.MultiplexedFileReader;
 import de.hammacher.util.MultiplexedFileReader.MultiplexInputStream;
 import de.hammacher.util.StringCacheInput;
+import de.hammacher.util.streams.OptimizedDataInputStream;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.AbstractInstructionInstance;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.AbstractInstructionInstanceFactory;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.Instruction;
@@ -55,7 +60,6 @@ import de.unisb.cs.st.javaslicer.common.classRepresentation.InstructionInstance;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.InstructionInstanceFactory;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadClass;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadMethod;
-import de.unisb.cs.st.javaslicer.common.classRepresentation.instructions.AbstractInstruction;
 import de.unisb.cs.st.javaslicer.common.exceptions.TracerException;
 import de.unisb.cs.st.javaslicer.common.progress.ConsoleProgressMonitor;
 import de.unisb.cs.st.javaslicer.common.progress.ProgressMonitor;
@@ -81,10 +85,46 @@ public class TraceResult {
         }
     }
 
+    /**
+     * Reads the method bodies of a class directory from their stream.
+     */
+    private final static class MethodBodies implements ReadClass.BodySource {
+
+        private final MultiplexInputStream inputStream;
+        private final DataInputStream dataIn;
+
+        public MethodBodies(final MultiplexInputStream inputStream) {
+            this.inputStream = inputStream;
+            this.dataIn = new DataInputStream(inputStream);
+        }
+
+        @Override
+        public synchronized byte[] readBodies(final long position, final int length) throws IOException {
+            final byte[] bodies = new byte[length];
+            this.inputStream.seek(position);
+            this.dataIn.readFully(bodies);
+            return bodies;
+        }
+
+    }
+
+    // the buffer size of the (compressed) readClasses and threadTracers streams
+    private static final int STREAM_BUFFER_SIZE = 1<<16;
+
     private final List<ReadClass> readClasses;
     private final List<ThreadTraceResult> threadTraces;
-
-    private final Instruction[] instructions;
+    // virtual threads are sorted after all platform threads, starting at this index
+    private final int firstVirtualThread;
+    // threads of which only segments have been written, but not the rest of the trace
+    private final List<ThreadTraceResult.Segments> incompleteThreads;
+
+    // all methods containing instructions, sorted by their first instruction index
+    private final ReadMethod[] methods;
+    private final int[] methodStarts;
+    // the method of the last instruction looked up. consecutive instructions are usually
+    // in the same method. races between threads are harmless (all methods are reachable
+    // from the final fields, so any value read is a completely initialized method)
+    private ReadMethod lastMethod;
 
     public TraceResult(File filename) throws IOException {
         final MultiplexedFileReader file = new MultiplexedFileReader(filename);
@@ -95,58 +135,99 @@ public class TraceResult {
             throw new IOException("corrupted data");
         PushbackInputStream pushBackInput =
             new PushbackInputStream(new BufferedInputStream(
-                    new GZIPInputStream(readClassesStream, 512), 512), 1);
+                    new GZIPInputStream(readClassesStream, STREAM_BUFFER_SIZE), STREAM_BUFFER_SIZE), 1);
         final DataInputStream readClassesInputStream = new DataInputStream(
                 pushBackInput);
         final ArrayList<ReadClass> readClasses0 = new ArrayList<ReadClass>();
         final StringCacheInput stringCache = new StringCacheInput();
         int testRead;
-        while ((testRead = pushBackInput.read()) != -1) {
+        if ((testRead = pushBackInput.read()) != -1) {
             pushBackInput.unread(testRead);
-            readClasses0.add(ReadClass.readFrom(readClassesInputStream, stringCache));
+            final String firstName = stringCache.readString(readClassesInputStream);
+            if (firstName == null || ReadClass.DIRECTORY_MARKER.equals(firstName)) {
+                // a class directory: the method bodies are decoded when they are first accessed
+                final MultiplexInputStream bodiesStream = file.getInputStream(
+                    OptimizedDataInputStream.readInt0(readClassesInputStream));
+                if (bodiesStream == null)
+                    throw new IOException("corrupted data");
+                final ReadClass.BodySource bodySource = new MethodBodies(bodiesStream);
+                while ((testRead = pushBackInput.read()) != -1) {
+                    pushBackInput.unread(testRead);
+                    readClasses0.add(ReadClass.readDirectoryEntry(readClassesInputStream, stringCache,
+                        stringCache.readString(readClassesInputStream), bodySource));
+                }
+            } else {
+                // written by older versions, with all method bodies inline
+                readClasses0.add(ReadClass.readFrom(readClassesInputStream, stringCache, firstName));
+                while ((testRead = pushBackInput.read()) != -1) {
+                    pushBackInput.unread(testRead);
+                    readClasses0.add(ReadClass.readFrom(readClassesInputStream, stringCache));
+                }
+            }
         }
         readClasses0.trimToSize();
         Collections.sort(readClasses0);
         this.readClasses = readClasses0;
-        this.instructions = getInstructionArray(readClasses0);
+        this.methods = getMethodArray(readClasses0);
+        this.methodStarts = new int[this.methods.length];
+        for (int i = 0; i < this.methods.length; ++i)
+            this.methodStarts[i] = this.methods[i].getInstructionNumberStart();
 
         final MultiplexInputStream threadTracersStream = file.getInputStream(1);
         if (threadTracersStream == null)
             throw new IOException("corrupted data");
         pushBackInput = new PushbackInputStream(new BufferedInputStream(
-                new GZIPInputStream(threadTracersStream, 512), 512), 1);
+                new GZIPInputStream(threadTracersStream, STREAM_BUFFER_SIZE), STREAM_BUFFER_SIZE), 1);
         final DataInputStream threadTracersInputStream = new DataInputStream(
                 pushBackInput);
 
         final ArrayList<ThreadTraceResult> threadTraces0 = new ArrayList<ThreadTraceResult>();
+        // segments of threads whose remaining trace has not been read yet
+        final Map<Long, ThreadTraceResult.Segments> segments = new HashMap<Long, ThreadTraceResult.Segments>();
         while ((testRead = pushBackInput.read()) != -1) {
             pushBackInput.unread(testRead);
-            threadTraces0.add(ThreadTraceResult.readFrom(threadTracersInputStream, this, file));
+            final ThreadTraceResult threadTrace = ThreadTraceResult.readFrom(threadTracersInputStream, this, file, segments);
+            if (threadTrace != null)
+                threadTraces0.add(threadTrace);
         }
         threadTraces0.trimToSize();
         Collections.sort(threadTraces0);
         this.threadTraces = threadTraces0;
+        int firstVirtual = threadTraces0.size();
+        while (firstVirtual > 0 && threadTraces0.get(firstVirtual-1).getId().isVirtual())
+            --firstVirtual;
+        this.firstVirtualThread = firstVirtual;
+        // these segments cannot be iterated, since the state of the thread at their end is unknown
+        final ArrayList<ThreadTraceResult.Segments> incompleteThreads0 = new ArrayList<ThreadTraceResult.Segments>(segments.values());
+        Collections.sort(incompleteThreads0, new Comparator<ThreadTraceResult.Segments>() {
+            @Override
+            public int compare(final ThreadTraceResult.Segments o1, final ThreadTraceResult.Segments o2) {
+                return o1.getThreadId().compareTo(o2.getThreadId());
+            }
+        });
+        this.incompleteThreads = incompleteThreads0;
     }
 
-    private static Instruction[] getInstructionArray(final List<ReadClass> classes) throws IOException {
-        int numInstructions = 0;
+    private static ReadMethod[] getMethodArray(final List<ReadClass> classes) throws IOException {
+        final ArrayList<ReadMethod> methods = new ArrayList<ReadMethod>();
         for (final ReadClass c: classes)
-            if (c.getInstructionNumberEnd() > numInstructions)
-                numInstructions = c.getInstructionNumberEnd();
-        final Instruction[] instructions = new Instruction[numInstructions];
-        for (final ReadClass c: classes) {
-            for (final ReadMethod m: c.getMethods()) {
-                for (final AbstractInstruction instr: m.getInstructions()) {
-                    if (instructions[instr.getIndex()] != null)
-                        throw new IOException("Same instruction index given twice.");
-                    instructions[instr.getIndex()] = instr;
-                }
+            for (final ReadMethod m: c.getMethods())
+                if (m.getInstructionNumberEnd() > m.getInstructionNumberStart())
+                    methods.add(m);
+        final ReadMethod[] methodArray = methods.toArray(new ReadMethod[methods.size()]);
+        Arrays.sort(methodArray, new Comparator<ReadMethod>() {
+            @Override
+            public int compare(final ReadMethod o1, final ReadMethod o2) {
+                return Integer.compare(o1.getInstructionNumberStart(), o2.getInstructionNumberStart());
             }
-        }
-
-        return instructions;
+        });
+        for (int i = 1; i < methodArray.length; ++i)
+            if (methodArray[i].getInstructionNumberStart() < methodArray[i-1].getInstructionNumberEnd())
+                throw new IOException("Same instruction index given twice.");
+        return methodArray;
     }
 
+
     public static TraceResult readFrom(final File filename) throws IOException {
         return new TraceResult(filename);
     }
@@ -173,6 +254,25 @@ public class TraceResult {
         return res == null ? null : res.getBackwardIterator(filter, instanceFactory);
     }
 
+    /**
+     * Returns an iterator that iterates backwards through the execution trace, starting
+     * at the instance with the given number (see {@link InstructionInstance#getInstanceNr()}).
+     *
+     * The iteration is started at the last checkpoint before that instance, so that only
+     * the instances between the checkpoint and the start instance have to be skipped.
+     *
+     * @param checkpoints the checkpoint index of this trace (see {@link TraceCheckpoints}).
+     *                    may be <code>null</code>, then the iteration starts at the end of the thread.
+     * @param startInstanceNr the number of the first instance returned by the iterator
+     * @see #getBackwardIterator(ThreadId, InstanceFilter, InstructionInstanceFactory)
+     */
+    public <InstanceType extends InstructionInstance> BackwardTraceIterator<InstanceType> getBackwardIterator(final ThreadId threadId,
+            final InstanceFilter<? super InstanceType> filter, InstructionInstanceFactory<? extends InstanceType> instanceFactory,
+            final TraceCheckpoints checkpoints, final long startInstanceNr) {
+        final ThreadTraceResult res = findThreadTraceResult(threadId);
+        return res == null ? null : res.getBackwardIterator(filter, instanceFactory, checkpoints, startInstanceNr);
+    }
+
     /**
      * @see #getBackwardIterator(ThreadId, InstanceFilter)
      */
@@ -245,7 +345,7 @@ public class TraceResult {
         return id == null ? null : getForwardIterator(id, instanceFactory);
     }
 
-    private ThreadTraceResult findThreadTraceResult(final ThreadId threadId) {
+    ThreadTraceResult findThreadTraceResult(final ThreadId threadId) {
         // binary search
         int left = 0;
         int right = this.threadTraces.size();
@@ -273,6 +373,45 @@ public class TraceResult {
         return new ThreadIdList(this.threadTraces);
     }
 
+    /**
+     * Returns the sorted List of all platform (i.e. non-virtual) threads
+     * that are represented by traces in this TraceResult.
+     *
+     * @return the sorted list of {@link ThreadId}s of platform threads.
+     */
+    public List<ThreadId> getPlatformThreads() {
+        return new ThreadIdList(this.threadTraces.subList(0, this.firstVirtualThread));
+    }
+
+    /**
+     * Returns the sorted List of all virtual threads that are represented
+     * by traces in this TraceResult. There may be very many of them.
+     *
+     * @return the sorted list of {@link ThreadId}s of virtual threads.
+     */
+    public List<ThreadId> getVirtualThreads() {
+        return new ThreadIdList(this.threadTraces.subList(this.firstVirtualThread, this.threadTraces.size()));
+    }
+
+    /**
+     * Returns the threads of which only segments (see the "segment" option of the
+     * tracer) are contained in the trace file, but not the rest of the trace, e.g.
+     * because writing the trace failed. They are not contained in {@link #getThreads()},
+     * since their traces cannot be iterated.
+     *
+     * @return the sorted list of the segments of incomplete threads
+     */
+    public List<ThreadTraceResult.Segments> getIncompleteThreads() {
+        return Collections.unmodifiableList(this.incompleteThreads);
+    }
+
+    /**
+     * @return the number of virtual threads represented by traces in this TraceResult
+     */
+    public int getNumVirtualThreads() {
+        return this.threadTraces.size() - this.firstVirtualThread;
+    }
+
     /**
      * Returns a sorted List of all {@link ReadClass}es.
      *
@@ -341,9 +480,27 @@ public class TraceResult {
     }
 
     public Instruction getInstruction(final int index) {
-        if (index < 0 || index >= this.instructions.length)
+        final ReadMethod method = findMethod(index);
+        return method == null ? null : method.getInstructions().get(index - method.getInstructionNumberStart());
+    }
+
+    /**
+     * Returns the method containing the instruction with the given index, without
+     * decoding its body.
+     *
+     * @return the method, or <code>null</code> if there is no instruction with this index
+     */
+    public ReadMethod findMethod(final int instructionIndex) {
+        final ReadMethod last = this.lastMethod;
+        if (last != null && instructionIndex >= last.getInstructionNumberStart()
+                && instructionIndex < last.getInstructionNumberEnd())
+            return last;
+        int pos = Arrays.binarySearch(this.methodStarts, instructionIndex);
+        if (pos < 0)
+            pos = -pos - 2;
+        if (pos < 0 || instructionIndex >= this.methods[pos].getInstructionNumberEnd())
             return null;
-        return this.instructions[index];
+        return this.lastMethod = this.methods[pos];
     }
 
     public static void main(final String[] args) {
@@ -408,6 +565,10 @@ public class TraceResult {
             return;
         }
 
+        for (final ThreadTraceResult.Segments incomplete: tr.getIncompleteThreads())
+            System.err.format("WARNING: the trace of thread %d (%s) is incomplete, ignoring %d segments%n",
+                incomplete.getThreadId().getJavaThreadId(), incomplete.getThreadId().getThreadName(),
+                incomplete.getNumSegments());
         final List<ThreadId> threads = tr.getThreads();
         if (threads.size() == 0) {
             System.err.println("The trace file contains no tracing information.");
@@ -416,7 +577,7 @@ public class TraceResult {
 
         System.out.println("The trace file contains traces for these threads:");
         ThreadId tracing = null;
-        for (final ThreadId t: threads) {
+        for (final ThreadId t: tr.getPlatformThreads()) {
             if (threadToTrace == null) {
                 if ("main".equals(t.getThreadName()) && (tracing == null || t.getJavaThreadId() < tracing.getJavaThreadId()))
                     tracing = t;
@@ -425,6 +586,12 @@ public class TraceResult {
             }
             System.out.format("%15d: %s%n", t.getJavaThreadId(), t.getThreadName());
         }
+        // there may be millions of virtual threads, so they are only counted
+        final int numVirtualThreads = tr.getNumVirtualThreads();
+        if (tracing == null && threadToTrace != null)
+            tracing = tr.getThreadId(threadToTrace.longValue(), true);
+        if (numVirtualThreads > 0)
+            System.out.format("%15s  (and %d virtual threads, select them by their id)%n", "", numVirtualThreads);
         System.out.println();
 
         if (tracing == null) {
@@ -528,21 +695,28 @@ public class TraceResult {
     }
 
     public ThreadId getThreadId(final long javaThreadId) {
-        // binary search
+        final ThreadId found = getThreadId(javaThreadId, false);
+        return found != null ? found : getThreadId(javaThreadId, true);
+    }
+
+    private ThreadId getThreadId(final long javaThreadId, final boolean virtual) {
+        // binary search (platform threads are sorted before virtual threads)
         int left = 0;
         int right = this.threadTraces.size();
         int mid;
 
         while ((mid = (left + right) / 2) != left) {
-            final ThreadTraceResult midVal = this.threadTraces.get(mid);
-            if (midVal.getJavaThreadId() <= javaThreadId)
+            final ThreadId midVal = this.threadTraces.get(mid).getId();
+            if (midVal.isVirtual() == virtual ? midVal.getJavaThreadId() <= javaThreadId : virtual)
                 left = mid;
             else
                 right = mid;
         }
 
+        if (this.threadTraces.isEmpty())
+            return null;
         final ThreadId found = this.threadTraces.get(mid).getId();
-        return found.getJavaThreadId() == javaThreadId ? found : null;
+        return found.getJavaThreadId() == javaThreadId && found.isVirtual() == virtual ? found : null;
     }
 
 }
@@ -0,0 +1,93 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     BackwardCursors
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/BackwardCursors.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.io.IOException;
+
+/**
+ * Skips values of arbitrary backward cursors: by seeking if the cursor is a
+ * {@link SkippableBackwardCursor} (or a {@link DeltaSkippableBackwardCursor} and
+ * the last skipped value is known), and by reading the values otherwise (as for
+ * gzip compressed sequences).
+ */
+public final class BackwardCursors {
+
+    private BackwardCursors() {
+        // no instances
+    }
+
+    /**
+     * Skips the next <code>n</code> values of the cursor, or all remaining ones if there are fewer.
+     *
+     * @return the number of values skipped
+     */
+    public static long skip(final IntBackwardCursor cursor, final long n) throws IOException {
+        if (cursor instanceof SkippableBackwardCursor)
+            return ((SkippableBackwardCursor) cursor).skip(n);
+        long skipped = 0;
+        while (skipped < n && cursor.hasNext()) {
+            cursor.nextInt();
+            ++skipped;
+        }
+        return skipped;
+    }
+
+    /**
+     * Skips the next <code>n</code> values of the cursor, or all remaining ones if there are fewer.
+     *
+     * @return the number of values skipped
+     */
+    public static long skip(final LongBackwardCursor cursor, final long n) throws IOException {
+        if (cursor instanceof SkippableBackwardCursor)
+            return ((SkippableBackwardCursor) cursor).skip(n);
+        long skipped = 0;
+        while (skipped < n && cursor.hasNext()) {
+            cursor.nextLong();
+            ++skipped;
+        }
+        return skipped;
+    }
+
+    /**
+     * Like {@link #skip(IntBackwardCursor, long)}, but the last of the <code>n</code>
+     * values is known, so that {@link DeltaSkippableBackwardCursor}s can seek as well.
+     */
+    public static long skip(final IntBackwardCursor cursor, final long n, final long lastSkippedValue)
+            throws IOException {
+        if (n > 0 && cursor instanceof DeltaSkippableBackwardCursor)
+            return ((DeltaSkippableBackwardCursor) cursor).skip(n, lastSkippedValue);
+        return skip(cursor, n);
+    }
+
+    /**
+     * Like {@link #skip(LongBackwardCursor, long)}, but the last of the <code>n</code>
+     * values is known, so that {@link DeltaSkippableBackwardCursor}s can seek as well.
+     */
+    public static long skip(final LongBackwardCursor cursor, final long n, final long lastSkippedValue)
+            throws IOException {
+        if (n > 0 && cursor instanceof DeltaSkippableBackwardCursor)
+            return ((DeltaSkippableBackwardCursor) cursor).skip(n, lastSkippedValue);
+        return skip(cursor, n);
+    }
+
+}
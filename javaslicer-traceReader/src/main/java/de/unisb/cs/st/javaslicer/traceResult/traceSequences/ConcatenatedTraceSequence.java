@@ -0,0 +1,402 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     ConcatenatedTraceSequence
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/ConcatenatedTraceSequence.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A trace sequence which consists of the sequences with the same index in
+ * several segments of a thread's trace.
+ *
+ * @param <T> the type of the values of the sequence
+ */
+public abstract class ConcatenatedTraceSequence<T> implements ConstantTraceSequence {
+
+    private static abstract class SkippableIntBackwardCursor implements IntBackwardCursor, SkippableBackwardCursor {
+        // just to implement both interfaces in an anonymous class
+    }
+
+    private static abstract class SkippableLongBackwardCursor implements LongBackwardCursor, SkippableBackwardCursor {
+        // just to implement both interfaces in an anonymous class
+    }
+
+    public static class IntegerSequence extends ConcatenatedTraceSequence<Integer>
+            implements ConstantIntegerTraceSequence {
+
+        private final ConstantIntegerTraceSequence[] parts;
+
+        public IntegerSequence(final ConstantIntegerTraceSequence[] parts) {
+            super(parts.length);
+            this.parts = parts;
+        }
+
+        @Override
+        protected ListIterator<Integer> partIterator(final int part) throws IOException {
+            return this.parts[part].iterator();
+        }
+
+        @Override
+        protected Iterator<Integer> partBackwardIterator(final int part) throws IOException {
+            return this.parts[part].backwardIterator();
+        }
+
+        @Override
+        public IntBackwardCursor backwardCursor() {
+            return new SkippableIntBackwardCursor() {
+
+                private int part = IntegerSequence.this.parts.length;
+                private IntBackwardCursor cursor = IntBackwardCursor.EMPTY;
+
+                @Override
+                public boolean hasNext() {
+                    while (!this.cursor.hasNext()) {
+                        if (this.part == 0)
+                            return false;
+                        try {
+                            this.cursor = IntegerSequence.this.parts[--this.part].backwardCursor();
+                        } catch (final IOException e) {
+                            this.part = 0;
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    return this.cursor.nextInt();
+                }
+
+                @Override
+                public long skip(final long n) throws IOException {
+                    long skipped = 0;
+                    while (skipped < n && hasNext())
+                        skipped += BackwardCursors.skip(this.cursor, n - skipped);
+                    return skipped;
+                }
+
+            };
+        }
+
+        @Override
+        public IntForwardCursor forwardCursor() {
+            return new IntForwardCursor() {
+
+                private int part = -1;
+                private IntForwardCursor cursor = IntForwardCursor.EMPTY;
+
+                @Override
+                public boolean hasNext() {
+                    while (!this.cursor.hasNext()) {
+                        if (this.part == IntegerSequence.this.parts.length - 1)
+                            return false;
+                        try {
+                            this.cursor = IntegerSequence.this.parts[++this.part].forwardCursor();
+                        } catch (final IOException e) {
+                            this.part = IntegerSequence.this.parts.length - 1;
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    return this.cursor.nextInt();
+                }
+
+            };
+        }
+
+    }
+
+    public static class LongSequence extends ConcatenatedTraceSequence<Long>
+            implements ConstantLongTraceSequence {
+
+        private final ConstantLongTraceSequence[] parts;
+
+        public LongSequence(final ConstantLongTraceSequence[] parts) {
+            super(parts.length);
+            this.parts = parts;
+        }
+
+        @Override
+        protected ListIterator<Long> partIterator(final int part) throws IOException {
+            return this.parts[part].iterator();
+        }
+
+        @Override
+        protected Iterator<Long> partBackwardIterator(final int part) throws IOException {
+            return this.parts[part].backwardIterator();
+        }
+
+        @Override
+        public LongBackwardCursor backwardCursor() {
+            return new SkippableLongBackwardCursor() {
+
+                private int part = LongSequence.this.parts.length;
+                private LongBackwardCursor cursor = LongBackwardCursor.EMPTY;
+
+                @Override
+                public boolean hasNext() {
+                    while (!this.cursor.hasNext()) {
+                        if (this.part == 0)
+                            return false;
+                        try {
+                            this.cursor = LongSequence.this.parts[--this.part].backwardCursor();
+                        } catch (final IOException e) {
+                            this.part = 0;
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public long nextLong() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    return this.cursor.nextLong();
+                }
+
+                @Override
+                public long skip(final long n) throws IOException {
+                    long skipped = 0;
+                    while (skipped < n && hasNext())
+                        skipped += BackwardCursors.skip(this.cursor, n - skipped);
+                    return skipped;
+                }
+
+            };
+        }
+
+        @Override
+        public LongForwardCursor forwardCursor() {
+            return new LongForwardCursor() {
+
+                private int part = -1;
+                private LongForwardCursor cursor = LongForwardCursor.EMPTY;
+
+                @Override
+                public boolean hasNext() {
+                    while (!this.cursor.hasNext()) {
+                        if (this.part == LongSequence.this.parts.length - 1)
+                            return false;
+                        try {
+                            this.cursor = LongSequence.this.parts[++this.part].forwardCursor();
+                        } catch (final IOException e) {
+                            this.part = LongSequence.this.parts.length - 1;
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public long nextLong() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    return this.cursor.nextLong();
+                }
+
+            };
+        }
+
+    }
+
+    private class BackwardIterator implements Iterator<T> {
+
+        private int part = ConcatenatedTraceSequence.this.numParts;
+        private Iterator<T> it = null;
+
+        public BackwardIterator() {
+            // nothing
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.it == null || !this.it.hasNext()) {
+                if (this.part == 0)
+                    return false;
+                try {
+                    this.it = partBackwardIterator(--this.part);
+                } catch (final IOException e) {
+                    this.part = 0;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return this.it.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    private class ForwardIterator implements ListIterator<T> {
+
+        // the iterators of all parts up to the current one
+        private final ListIterator<T>[] iterators;
+        private int part = 0;
+        // the number of elements in the parts before the current one
+        private int offset = 0;
+
+        @SuppressWarnings("unchecked")
+        public ForwardIterator() throws IOException {
+            this.iterators = new ListIterator[ConcatenatedTraceSequence.this.numParts];
+            this.iterators[0] = partIterator(0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!this.iterators[this.part].hasNext()) {
+                if (this.part == this.iterators.length - 1)
+                    return false;
+                if (this.iterators[this.part + 1] == null) {
+                    try {
+                        this.iterators[this.part + 1] = partIterator(this.part + 1);
+                    } catch (final IOException e) {
+                        return false;
+                    }
+                }
+                this.offset += this.iterators[this.part].nextIndex();
+                ++this.part;
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return this.iterators[this.part].next();
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            while (!this.iterators[this.part].hasPrevious()) {
+                if (this.part == 0)
+                    return false;
+                --this.part;
+                this.offset -= this.iterators[this.part].nextIndex();
+            }
+            return true;
+        }
+
+        @Override
+        public T previous() {
+            if (!hasPrevious())
+                throw new NoSuchElementException();
+            return this.iterators[this.part].previous();
+        }
+
+        @Override
+        public int nextIndex() {
+            return this.offset + this.iterators[this.part].nextIndex();
+        }
+
+        @Override
+        public int previousIndex() {
+            return nextIndex() - 1;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add(final T e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void set(final T e) {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    protected final int numParts;
+
+    protected ConcatenatedTraceSequence(final int numParts) {
+        if (numParts == 0)
+            throw new IllegalArgumentException("no parts");
+        this.numParts = numParts;
+    }
+
+    protected abstract ListIterator<T> partIterator(int part) throws IOException;
+
+    protected abstract Iterator<T> partBackwardIterator(int part) throws IOException;
+
+    public ListIterator<T> iterator() throws IOException {
+        return new ForwardIterator();
+    }
+
+    public Iterator<T> backwardIterator() throws IOException {
+        return new BackwardIterator();
+    }
+
+    /**
+     * Concatenates the given sequences, which must be either all integer or all long
+     * sequences.
+     */
+    public static ConstantTraceSequence concat(final List<ConstantTraceSequence> parts) throws IOException {
+        if (parts.size() == 1)
+            return parts.get(0);
+        if (parts.get(0) instanceof ConstantIntegerTraceSequence) {
+            final ConstantIntegerTraceSequence[] intParts = new ConstantIntegerTraceSequence[parts.size()];
+            for (int i = 0; i < intParts.length; ++i) {
+                if (!(parts.get(i) instanceof ConstantIntegerTraceSequence))
+                    throw new IOException("corrupted data (inconsistent sequence types in segments)");
+                intParts[i] = (ConstantIntegerTraceSequence) parts.get(i);
+            }
+            return new IntegerSequence(intParts);
+        }
+        final ConstantLongTraceSequence[] longParts = new ConstantLongTraceSequence[parts.size()];
+        for (int i = 0; i < longParts.length; ++i) {
+            if (!(parts.get(i) instanceof ConstantLongTraceSequence))
+                throw new IOException("corrupted data (inconsistent sequence types in segments)");
+            longParts[i] = (ConstantLongTraceSequence) parts.get(i);
+        }
+        return new LongSequence(longParts);
+    }
+
+}
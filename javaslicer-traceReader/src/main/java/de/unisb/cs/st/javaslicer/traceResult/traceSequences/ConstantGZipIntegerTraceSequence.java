@@ -29,6 +29,7 @@ import java.io.InputStream;
 import java.io.PushbackInputStream;
 import java.util.Iterator;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
 import java.util.zip.GZIPInputStream;
 
 import de.hammacher.util.MultiplexedFileReader;
@@ -59,11 +60,26 @@ public class ConstantGZipIntegerTraceSequence implements ConstantIntegerTraceSeq
         }
     }
 
+    @Override
+	public IntBackwardCursor backwardCursor() {
+        try {
+            return this.gzipped ? new GZippedBackwardIterator(this.file, this.streamIndex)
+                : new NoGzipBackwardIterator(this.file, this.streamIndex);
+        } catch (final IOException e) {
+            return IntBackwardCursor.EMPTY;
+        }
+    }
+
     @Override
 	public ListIterator<Integer> iterator() {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+	public IntForwardCursor forwardCursor() {
+        throw new UnsupportedOperationException();
+    }
+
     public static ConstantGZipIntegerTraceSequence readFrom(final DataInput in, final MultiplexedFileReader file,
             final byte format)
             throws IOException {
@@ -74,7 +90,7 @@ public class ConstantGZipIntegerTraceSequence implements ConstantIntegerTraceSeq
         return new ConstantGZipIntegerTraceSequence(file, gzipped, streamIndex);
     }
 
-    private static class GZippedBackwardIterator implements Iterator<Integer> {
+    private static class GZippedBackwardIterator implements Iterator<Integer>, IntBackwardCursor {
 
         private final MultiplexInputStream multiplexedStream;
         private final OptimizedDataInputStream dataIn;
@@ -106,15 +122,20 @@ public class ConstantGZipIntegerTraceSequence implements ConstantIntegerTraceSeq
         }
 
         @Override
-		public Integer next() {
+		public int nextInt() {
             try {
                 return this.dataIn.readInt();
             } catch (final IOException e) {
                 this.error = true;
-                return null;
+                throw new NoSuchElementException(e.toString());
             }
         }
 
+        @Override
+        public Integer next() {
+            return nextInt();
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
@@ -122,7 +143,7 @@ public class ConstantGZipIntegerTraceSequence implements ConstantIntegerTraceSeq
 
     }
 
-    private static class NoGzipBackwardIterator implements Iterator<Integer> {
+    private static class NoGzipBackwardIterator implements Iterator<Integer>, IntBackwardCursor {
 
         private final MultiplexInputStream multiplexedStream;
         private final OptimizedDataInputStream dataIn;
@@ -146,15 +167,20 @@ public class ConstantGZipIntegerTraceSequence implements ConstantIntegerTraceSeq
         }
 
         @Override
-		public Integer next() {
+		public int nextInt() {
             try {
                 return this.dataIn.readInt();
             } catch (final IOException e) {
                 this.error = true;
-                return null;
+                throw new NoSuchElementException(e.toString());
             }
         }
 
+        @Override
+        public Integer next() {
+            return nextInt();
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
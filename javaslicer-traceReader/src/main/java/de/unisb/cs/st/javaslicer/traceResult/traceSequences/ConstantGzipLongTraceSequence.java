@@ -29,6 +29,7 @@ import java.io.InputStream;
 import java.io.PushbackInputStream;
 import java.util.Iterator;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
 import java.util.zip.GZIPInputStream;
 
 import de.hammacher.util.MultiplexedFileReader;
@@ -59,11 +60,26 @@ public class ConstantGzipLongTraceSequence implements ConstantLongTraceSequence
         }
     }
 
+    @Override
+	public LongBackwardCursor backwardCursor() {
+        try {
+            return this.gzipped ? new GZippedBackwardIterator(this.file, this.streamIndex)
+                : new NoGzipBackwardIterator(this.file, this.streamIndex);
+        } catch (final IOException e) {
+            return LongBackwardCursor.EMPTY;
+        }
+    }
+
     @Override
 	public ListIterator<Long> iterator() {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+	public LongForwardCursor forwardCursor() {
+        throw new UnsupportedOperationException();
+    }
+
     public static ConstantGzipLongTraceSequence readFrom(final DataInput in, final MultiplexedFileReader file,
             final byte format)
             throws IOException {
@@ -74,7 +90,7 @@ public class ConstantGzipLongTraceSequence implements ConstantLongTraceSequence
         return new ConstantGzipLongTraceSequence(file, gzipped, streamIndex);
     }
 
-    private static class GZippedBackwardIterator implements Iterator<Long> {
+    private static class GZippedBackwardIterator implements Iterator<Long>, LongBackwardCursor {
 
         private final MultiplexInputStream multiplexedStream;
         private final OptimizedDataInputStream dataIn;
@@ -106,15 +122,20 @@ public class ConstantGzipLongTraceSequence implements ConstantLongTraceSequence
         }
 
         @Override
-		public Long next() {
+		public long nextLong() {
             try {
                 return this.dataIn.readLong();
             } catch (final IOException e) {
                 this.error = true;
-                return null;
+                throw new NoSuchElementException(e.toString());
             }
         }
 
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
@@ -122,7 +143,7 @@ public class ConstantGzipLongTraceSequence implements ConstantLongTraceSequence
 
     }
 
-    private static class NoGzipBackwardIterator implements Iterator<Long> {
+    private static class NoGzipBackwardIterator implements Iterator<Long>, LongBackwardCursor {
 
         private final MultiplexInputStream multiplexedStream;
         private final OptimizedDataInputStream dataIn;
@@ -146,15 +167,20 @@ public class ConstantGzipLongTraceSequence implements ConstantLongTraceSequence
         }
 
         @Override
-		public Long next() {
+		public long nextLong() {
             try {
                 return this.dataIn.readLong();
             } catch (final IOException e) {
                 this.error = true;
-                return null;
+                throw new NoSuchElementException(e.toString());
             }
         }
 
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
@@ -0,0 +1,116 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     ConstantInlineLongTraceSequence
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/ConstantInlineLongTraceSequence.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import de.hammacher.util.iterators.LongArrayIterator;
+import de.hammacher.util.iterators.ReverseLongArrayIterator;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence.ConstantLongTraceSequence;
+
+public class ConstantInlineLongTraceSequence implements ConstantLongTraceSequence {
+
+    protected final long[] values;
+
+    public ConstantInlineLongTraceSequence(final long[] values) {
+        this.values = values;
+    }
+
+    @Override
+	public Iterator<Long> backwardIterator() {
+        return new ReverseLongArrayIterator(this.values);
+    }
+
+    @Override
+	public LongBackwardCursor backwardCursor() {
+        return new BackwardCursor(this.values);
+    }
+
+    @Override
+	public ListIterator<Long> iterator() {
+        return new LongArrayIterator(this.values);
+    }
+
+    @Override
+	public LongForwardCursor forwardCursor() {
+        return new ForwardCursor(this.values);
+    }
+
+    private static class BackwardCursor implements LongBackwardCursor, SkippableBackwardCursor {
+
+        private final long[] values;
+        private int pos;
+
+        public BackwardCursor(final long[] values) {
+            this.values = values;
+            this.pos = values.length;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.pos > 0;
+        }
+
+        @Override
+        public long nextLong() {
+            if (this.pos == 0)
+                throw new NoSuchElementException();
+            return this.values[--this.pos];
+        }
+
+        @Override
+        public long skip(final long n) {
+            final int skipped = (int) Math.min(n, this.pos);
+            this.pos -= skipped;
+            return skipped;
+        }
+
+    }
+
+    private static class ForwardCursor implements LongForwardCursor {
+
+        private final long[] values;
+        private int pos;
+
+        public ForwardCursor(final long[] values) {
+            this.values = values;
+            this.pos = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.pos < this.values.length;
+        }
+
+        @Override
+        public long nextLong() {
+            if (this.pos == this.values.length)
+                throw new NoSuchElementException();
+            return this.values[this.pos++];
+        }
+
+    }
+
+}
@@ -0,0 +1,287 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     ConstantLZLongTraceSequence
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/ConstantLZLongTraceSequence.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import de.hammacher.util.MultiplexedFileReader;
+import de.hammacher.util.MultiplexedFileReader.MultiplexInputStream;
+import de.unisb.cs.st.javaslicer.common.util.DeltaVarints;
+import de.unisb.cs.st.javaslicer.common.util.LZBlockCodec;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantLZIntegerTraceSequence.BlockIndex;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence.ConstantLongTraceSequence;
+
+/**
+ * Reads the LZ-compressed blocks written by the LZLongTraceSequence of the tracer.
+ * The block index at the end of the stream allows to decompress the blocks in
+ * any order.
+ */
+public class ConstantLZLongTraceSequence implements ConstantLongTraceSequence {
+
+    protected final MultiplexedFileReader file;
+    protected final int streamIndex;
+
+    public ConstantLZLongTraceSequence(final MultiplexedFileReader file, final int streamIndex) {
+        this.file = file;
+        this.streamIndex = streamIndex;
+    }
+
+    @Override
+	public Iterator<Long> backwardIterator() throws IOException {
+        return new BackwardIterator(this.file, this.streamIndex);
+    }
+
+    @Override
+	public LongBackwardCursor backwardCursor() throws IOException {
+        return new BackwardIterator(this.file, this.streamIndex);
+    }
+
+    @Override
+	public ListIterator<Long> iterator() throws IOException {
+        return new ForwardIterator(this.file, this.streamIndex);
+    }
+
+    @Override
+	public LongForwardCursor forwardCursor() throws IOException {
+        return new ForwardIterator(this.file, this.streamIndex);
+    }
+
+    public static ConstantLZLongTraceSequence readFrom(final DataInput in, final MultiplexedFileReader file)
+            throws IOException {
+        final int streamIndex = in.readInt();
+        if (!file.getStreamIds().contains(streamIndex))
+            throw new IOException("corrupted data");
+        return new ConstantLZLongTraceSequence(file, streamIndex);
+    }
+
+    protected static class BlockDecoder {
+
+        private final MultiplexInputStream inputStream;
+        private final DataInputStream dataIn;
+        private final BlockIndex index;
+        private byte[] compressed = new byte[0];
+        private byte[] data = new byte[0];
+        public long[] values = new long[0];
+
+        public BlockDecoder(final MultiplexInputStream inputStream, final DataInputStream dataIn, final BlockIndex index) {
+            this.inputStream = inputStream;
+            this.dataIn = dataIn;
+            this.index = index;
+        }
+
+        public void decode(final int blockNr) throws IOException {
+            final int compressedLength = this.index.compressedLengths[blockNr];
+            final int length = this.index.lengths[blockNr];
+            final int count = this.index.counts[blockNr];
+            if (this.data.length < length)
+                this.data = new byte[length];
+            if (this.values.length < count)
+                this.values = new long[count];
+            this.inputStream.seek(this.index.offsets[blockNr]);
+            if (compressedLength == length) {
+                this.dataIn.readFully(this.data, 0, length);
+            } else {
+                if (this.compressed.length < compressedLength)
+                    this.compressed = new byte[compressedLength];
+                this.dataIn.readFully(this.compressed, 0, compressedLength);
+                LZBlockCodec.decompress(this.compressed, 0, compressedLength, this.data, length);
+            }
+
+            DeltaVarints.decodeLongs(this.data, length, this.values, count);
+        }
+    }
+
+    private static class BackwardIterator implements Iterator<Long>, LongBackwardCursor, SkippableBackwardCursor {
+
+        private int blockNr;
+        private int bufPos;
+        private final MultiplexInputStream inputStream;
+        private final BlockDecoder decoder;
+
+        public BackwardIterator(final MultiplexedFileReader file, final int streamIndex) throws IOException {
+            this.inputStream = file.getInputStream(streamIndex);
+            final DataInputStream dataIn = new DataInputStream(this.inputStream);
+            final BlockIndex index = new BlockIndex(this.inputStream, dataIn);
+            this.decoder = new BlockDecoder(this.inputStream, dataIn, index);
+            this.blockNr = index.numBlocks;
+            this.bufPos = -1;
+        }
+
+        @Override
+		public boolean hasNext() {
+            try {
+                if (this.bufPos >= 0)
+                    return true;
+                if (this.blockNr == 0)
+                    return false;
+                this.decoder.decode(--this.blockNr);
+                this.bufPos = this.decoder.index.counts[this.blockNr] - 1;
+                return true;
+            } catch (final IOException e) {
+                close();
+                return false;
+            }
+        }
+
+        @Override
+		public long nextLong() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return this.decoder.values[this.bufPos--];
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            if (n <= this.bufPos) {
+                this.bufPos -= (int) n;
+                return n;
+            }
+            long remaining = n - (this.bufPos + 1);
+            this.bufPos = -1;
+            // whole blocks are skipped using the block index
+            final int[] counts = this.decoder.index.counts;
+            while (remaining > 0 && this.blockNr != 0) {
+                final int count = counts[--this.blockNr];
+                if (remaining < count) {
+                    this.decoder.decode(this.blockNr);
+                    this.bufPos = count - 1 - (int) remaining;
+                    return n;
+                }
+                remaining -= count;
+            }
+            return n - remaining;
+        }
+
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
+        @Override
+		public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+            this.bufPos = -1;
+            this.blockNr = 0;
+            this.inputStream.close();
+        }
+    }
+
+    private static class ForwardIterator implements ListIterator<Long>, LongForwardCursor {
+
+        private final BlockIndex index;
+        private final BlockDecoder decoder;
+
+        private int blockNr = -1;
+        private int blockCount = 0;
+        private int bufPos = 0;
+
+        public ForwardIterator(final MultiplexedFileReader file, final int streamIndex) throws IOException {
+            final MultiplexInputStream inputStream = file.getInputStream(streamIndex);
+            final DataInputStream dataIn = new DataInputStream(inputStream);
+            this.index = new BlockIndex(inputStream, dataIn);
+            this.decoder = new BlockDecoder(inputStream, dataIn, this.index);
+        }
+
+        private void loadBlock(final int nr) {
+            try {
+                this.decoder.decode(nr);
+            } catch (final IOException e) {
+                throw new NoSuchElementException(e.toString());
+            }
+            this.blockNr = nr;
+            this.blockCount = this.index.counts[nr];
+        }
+
+        @Override
+		public boolean hasNext() {
+            return this.bufPos < this.blockCount || this.blockNr < this.index.numBlocks - 1;
+        }
+
+        @Override
+		public long nextLong() {
+            if (this.bufPos == this.blockCount) {
+                if (this.blockNr >= this.index.numBlocks - 1)
+                    throw new NoSuchElementException();
+                loadBlock(this.blockNr + 1);
+                this.bufPos = 0;
+            }
+            return this.decoder.values[this.bufPos++];
+        }
+
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
+        @Override
+		public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+		public void add(final Long e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+		public boolean hasPrevious() {
+            return this.bufPos > 0 || this.blockNr > 0;
+        }
+
+        @Override
+		public int nextIndex() {
+            final long idx = this.blockNr < 0 ? 0 : this.index.startIndexes[this.blockNr] + this.bufPos;
+            return (int) Math.min(Integer.MAX_VALUE, idx);
+        }
+
+        @Override
+		public Long previous() {
+            if (this.bufPos == 0) {
+                if (this.blockNr <= 0)
+                    throw new NoSuchElementException();
+                loadBlock(this.blockNr - 1);
+                this.bufPos = this.blockCount;
+            }
+            return this.decoder.values[--this.bufPos];
+        }
+
+        @Override
+		public int previousIndex() {
+            return nextIndex() - 1;
+        }
+
+        @Override
+		public void set(final Long e) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -0,0 +1,292 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     ConstantPackedLongTraceSequence
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/ConstantPackedLongTraceSequence.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import de.hammacher.util.MultiplexedFileReader;
+import de.hammacher.util.MultiplexedFileReader.MultiplexInputStream;
+import de.unisb.cs.st.javaslicer.common.util.DeltaVarints;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantPackedIntegerTraceSequence.Block;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence.ConstantLongTraceSequence;
+
+/**
+ * Reads the blocks of zigzag- and varint-encoded differences written by the
+ * PackedLongTraceSequence of the tracer.
+ */
+public class ConstantPackedLongTraceSequence implements ConstantLongTraceSequence {
+
+    protected final MultiplexedFileReader file;
+    protected final int streamIndex;
+
+    public ConstantPackedLongTraceSequence(final MultiplexedFileReader file, final int streamIndex) {
+        this.file = file;
+        this.streamIndex = streamIndex;
+    }
+
+    @Override
+	public Iterator<Long> backwardIterator() throws IOException {
+        return new BackwardIterator(this.file, this.streamIndex);
+    }
+
+    @Override
+	public LongBackwardCursor backwardCursor() throws IOException {
+        return new BackwardIterator(this.file, this.streamIndex);
+    }
+
+    @Override
+	public ListIterator<Long> iterator() throws IOException {
+        return new ForwardIterator(this.file, this.streamIndex);
+    }
+
+    @Override
+	public LongForwardCursor forwardCursor() throws IOException {
+        return new ForwardIterator(this.file, this.streamIndex);
+    }
+
+    public static ConstantPackedLongTraceSequence readFrom(final DataInput in, final MultiplexedFileReader file)
+            throws IOException {
+        final int streamIndex = in.readInt();
+        if (!file.getStreamIds().contains(streamIndex))
+            throw new IOException("corrupted data");
+        return new ConstantPackedLongTraceSequence(file, streamIndex);
+    }
+
+    protected static class BlockDecoder {
+
+        private final MultiplexInputStream inputStream;
+        private final DataInputStream dataIn;
+        private byte[] data = new byte[0];
+        public long[] values = new long[0];
+
+        public BlockDecoder(final MultiplexInputStream inputStream, final DataInputStream dataIn) {
+            this.inputStream = inputStream;
+            this.dataIn = dataIn;
+        }
+
+        public void decode(final Block block) throws IOException {
+            if (this.data.length < block.length)
+                this.data = new byte[block.length];
+            if (this.values.length < block.count)
+                this.values = new long[block.count];
+            this.inputStream.seek(block.start);
+            this.dataIn.readFully(this.data, 0, block.length);
+
+            DeltaVarints.decodeLongs(this.data, block.length, this.values, block.count);
+        }
+    }
+
+    private static class BackwardIterator implements Iterator<Long>, LongBackwardCursor, SkippableBackwardCursor {
+
+        private long offset;
+        private int bufPos;
+        private final MultiplexInputStream inputStream;
+        private final DataInputStream dataIn;
+        private final BlockDecoder decoder;
+
+        public BackwardIterator(final MultiplexedFileReader file, final int streamIndex) throws IOException {
+            this.inputStream = file.getInputStream(streamIndex);
+            this.dataIn = new DataInputStream(this.inputStream);
+            this.decoder = new BlockDecoder(this.inputStream, this.dataIn);
+            this.offset = this.inputStream.getDataLength();
+            this.bufPos = -1;
+        }
+
+        @Override
+		public boolean hasNext() {
+            try {
+                if (this.bufPos >= 0)
+                    return true;
+                if (this.offset == 0)
+                    return false;
+                final Block block = Block.readBefore(this.inputStream, this.dataIn, this.offset);
+                this.decoder.decode(block);
+                this.offset = block.start;
+                this.bufPos = block.count - 1;
+                return true;
+            } catch (final IOException e) {
+                close();
+                return false;
+            }
+        }
+
+        @Override
+		public long nextLong() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return this.decoder.values[this.bufPos--];
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            if (n <= this.bufPos) {
+                this.bufPos -= (int) n;
+                return n;
+            }
+            long remaining = n - (this.bufPos + 1);
+            this.bufPos = -1;
+            // whole blocks are skipped by only reading their trailers
+            while (remaining > 0 && this.offset != 0) {
+                final Block block = Block.readBefore(this.inputStream, this.dataIn, this.offset);
+                this.offset = block.start;
+                if (remaining < block.count) {
+                    this.decoder.decode(block);
+                    this.bufPos = block.count - 1 - (int) remaining;
+                    return n;
+                }
+                remaining -= block.count;
+            }
+            return n - remaining;
+        }
+
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
+        @Override
+		public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void close() {
+            this.bufPos = -1;
+            this.offset = 0;
+            this.inputStream.close();
+        }
+    }
+
+    private static class ForwardIterator implements ListIterator<Long>, LongForwardCursor {
+
+        private final Block[] blocks;
+        // index of the first value of each block
+        private final long[] blockStartIndexes;
+        private final BlockDecoder decoder;
+
+        private int blockNr = -1;
+        private int blockCount = 0;
+        private int bufPos = 0;
+
+        public ForwardIterator(final MultiplexedFileReader file, final int streamIndex) throws IOException {
+            final MultiplexInputStream inputStream = file.getInputStream(streamIndex);
+            final DataInputStream dataIn = new DataInputStream(inputStream);
+            final List<Block> blockList = new ArrayList<Block>();
+            for (long end = inputStream.getDataLength(); end != 0; ) {
+                final Block block = Block.readBefore(inputStream, dataIn, end);
+                blockList.add(block);
+                end = block.start;
+            }
+            Collections.reverse(blockList);
+            this.blocks = blockList.toArray(new Block[blockList.size()]);
+            this.blockStartIndexes = new long[this.blocks.length];
+            long index = 0;
+            for (int i = 0; i < this.blocks.length; ++i) {
+                this.blockStartIndexes[i] = index;
+                index += this.blocks[i].count;
+            }
+            this.decoder = new BlockDecoder(inputStream, dataIn);
+        }
+
+        private void loadBlock(final int nr) {
+            try {
+                this.decoder.decode(this.blocks[nr]);
+            } catch (final IOException e) {
+                throw new NoSuchElementException(e.toString());
+            }
+            this.blockNr = nr;
+            this.blockCount = this.blocks[nr].count;
+        }
+
+        @Override
+		public boolean hasNext() {
+            return this.bufPos < this.blockCount || this.blockNr < this.blocks.length - 1;
+        }
+
+        @Override
+		public long nextLong() {
+            if (this.bufPos == this.blockCount) {
+                if (this.blockNr >= this.blocks.length - 1)
+                    throw new NoSuchElementException();
+                loadBlock(this.blockNr + 1);
+                this.bufPos = 0;
+            }
+            return this.decoder.values[this.bufPos++];
+        }
+
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
+        @Override
+		public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+		public void add(final Long e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+		public boolean hasPrevious() {
+            return this.bufPos > 0 || this.blockNr > 0;
+        }
+
+        @Override
+		public int nextIndex() {
+            final long index = this.blockNr < 0 ? 0 : this.blockStartIndexes[this.blockNr] + this.bufPos;
+            return (int) Math.min(Integer.MAX_VALUE, index);
+        }
+
+        @Override
+		public Long previous() {
+            if (this.bufPos == 0) {
+                if (this.blockNr <= 0)
+                    throw new NoSuchElementException();
+                loadBlock(this.blockNr - 1);
+                this.bufPos = this.blockCount;
+            }
+            return this.decoder.values[--this.bufPos];
+        }
+
+        @Override
+		public int previousIndex() {
+            return nextIndex() - 1;
+        }
+
+        @Override
+		public void set(final Long e) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -35,9 +35,9 @@ import de.unisb.cs.st.sequitur.input.InputSequence;
 
 public class ConstantSequiturIntegerTraceSequence implements ConstantIntegerTraceSequence {
 
-    private static class BackwardIterator implements Iterator<Integer> {
+    private class BackwardIterator implements Iterator<Integer>, IntBackwardCursor, DeltaSkippableBackwardCursor {
 
-        private final ListIterator<Integer> it;
+        private ListIterator<Integer> it;
         private int lastValue;
         private int count;
 
@@ -57,7 +57,7 @@ public class ConstantSequiturIntegerTraceSequence implements ConstantIntegerTrac
         }
 
         @Override
-		public Integer next() {
+		public int nextInt() {
             if (this.count == 0)
                 throw new NoSuchElementException();
             final int oldValue = this.lastValue;
@@ -66,6 +66,23 @@ public class ConstantSequiturIntegerTraceSequence implements ConstantIntegerTrac
             return oldValue;
         }
 
+        @Override
+        public Integer next() {
+            return nextInt();
+        }
+
+        @Override
+        public long skip(final long n, final long lastSkippedValue) {
+            // the iterator is always positioned after the delta of the value to return next
+            final int skip = (int) Math.min(n, this.count);
+            this.count -= skip;
+            if (this.count != 0) {
+                this.it = sequenceIterator(this.count + 1);
+                this.lastValue = (int) lastSkippedValue - this.it.previous();
+            }
+            return skip;
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
@@ -73,7 +90,7 @@ public class ConstantSequiturIntegerTraceSequence implements ConstantIntegerTrac
 
     }
 
-    private static class ForwardIterator implements ListIterator<Integer> {
+    private static class ForwardIterator implements ListIterator<Integer>, IntForwardCursor {
 
         private final ListIterator<Integer> it;
         private int lastValue;
@@ -95,7 +112,7 @@ public class ConstantSequiturIntegerTraceSequence implements ConstantIntegerTrac
         }
 
         @Override
-		public Integer next() {
+		public int nextInt() {
             if (!hasNext())
                 throw new NoSuchElementException();
             this.lastValue += this.it.next();
@@ -103,6 +120,11 @@ public class ConstantSequiturIntegerTraceSequence implements ConstantIntegerTrac
             return this.lastValue;
         }
 
+        @Override
+        public Integer next() {
+            return nextInt();
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
@@ -148,44 +170,78 @@ public class ConstantSequiturIntegerTraceSequence implements ConstantIntegerTrac
     private final long offset;
     private final int count;
     private final InputSequence<Integer> sequence;
+    // if the sequence consists of several segments of the input sequence (else null)
+    private final long[] segmentOffsets;
+    private final int[] segmentLengths;
 
     public ConstantSequiturIntegerTraceSequence(final long offset,
             final int count, final InputSequence<Integer> inputSequence) {
         this.offset = offset;
         this.count = count;
         this.sequence = inputSequence;
+        this.segmentOffsets = null;
+        this.segmentLengths = null;
+    }
+
+    public ConstantSequiturIntegerTraceSequence(final long[] segmentOffsets, final int[] segmentLengths,
+            final int count, final InputSequence<Integer> inputSequence) {
+        this.offset = 0;
+        this.count = count;
+        this.sequence = inputSequence;
+        this.segmentOffsets = segmentOffsets;
+        this.segmentLengths = segmentLengths;
+    }
+
+    private ListIterator<Integer> sequenceIterator(final long position) {
+        if (this.segmentOffsets == null)
+            return this.sequence.iterator(this.offset + position);
+        return new SegmentedListIterator<Integer>(this.sequence, this.segmentOffsets, this.segmentLengths, position);
     }
 
     @Override
 	public Iterator<Integer> backwardIterator() throws IOException {
         if (this.count <= 10) {
             if (this.count == 1)
-                return new SingletonIterator<Integer>(this.sequence.iterator(this.offset).next());
+                return new SingletonIterator<Integer>(sequenceIterator(0).next());
             final int[] values = new int[this.count];
-            final ListIterator<Integer> it = this.sequence.iterator(this.offset);
+            final ListIterator<Integer> it = sequenceIterator(0);
             int last = 0;
             for (int i = 0; i < this.count; ++i) {
                 values[i] = last += it.next();
             }
             return new ReverseIntArrayIterator(values);
         }
-        return new BackwardIterator(this.sequence.iterator(this.offset+this.count+1), this.count);
+        return new BackwardIterator(sequenceIterator(this.count+1), this.count);
+    }
+
+    @Override
+	public IntBackwardCursor backwardCursor() throws IOException {
+        if (this.count <= 10)
+            return new IntBackwardCursor.FromIterator(backwardIterator());
+        return new BackwardIterator(sequenceIterator(this.count+1), this.count);
     }
 
     @Override
 	public ListIterator<Integer> iterator() throws IOException {
         if (this.count <= 10) {
             if (this.count == 1)
-                return new SingletonIterator<Integer>(this.sequence.iterator(this.offset).next());
+                return new SingletonIterator<Integer>(sequenceIterator(0).next());
             final int[] values = new int[this.count];
-            final ListIterator<Integer> it = this.sequence.iterator(this.offset);
+            final ListIterator<Integer> it = sequenceIterator(0);
             int last = 0;
             for (int i = 0; i < this.count; ++i) {
                 values[i] = last += it.next();
             }
             return new IntArrayIterator(values);
         }
-        return new ForwardIterator(this.sequence.iterator(this.offset), this.count);
+        return new ForwardIterator(sequenceIterator(0), this.count);
+    }
+
+    @Override
+	public IntForwardCursor forwardCursor() throws IOException {
+        if (this.count <= 10)
+            return new IntForwardCursor.FromIterator(iterator());
+        return new ForwardIterator(sequenceIterator(0), this.count);
     }
 
 }
@@ -35,9 +35,9 @@ import de.unisb.cs.st.sequitur.input.InputSequence;
 
 public class ConstantSequiturLongTraceSequence implements ConstantLongTraceSequence {
 
-    private static class BackwardIterator implements Iterator<Long> {
+    private class BackwardIterator implements Iterator<Long>, LongBackwardCursor, DeltaSkippableBackwardCursor {
 
-        private final ListIterator<Long> it;
+        private ListIterator<Long> it;
         private long lastValue;
         private int count;
 
@@ -57,7 +57,7 @@ public class ConstantSequiturLongTraceSequence implements ConstantLongTraceSeque
         }
 
         @Override
-		public Long next() {
+		public long nextLong() {
             if (this.count == 0)
                 throw new NoSuchElementException();
             final long oldValue = this.lastValue;
@@ -66,6 +66,23 @@ public class ConstantSequiturLongTraceSequence implements ConstantLongTraceSeque
             return oldValue;
         }
 
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
+        @Override
+        public long skip(final long n, final long lastSkippedValue) {
+            // the iterator is always positioned after the delta of the value to return next
+            final int skip = (int) Math.min(n, this.count);
+            this.count -= skip;
+            if (this.count != 0) {
+                this.it = sequenceIterator(this.count + 1);
+                this.lastValue = lastSkippedValue - this.it.previous();
+            }
+            return skip;
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
@@ -73,7 +90,7 @@ public class ConstantSequiturLongTraceSequence implements ConstantLongTraceSeque
 
     }
 
-    private static class ForwardIterator implements ListIterator<Long> {
+    private static class ForwardIterator implements ListIterator<Long>, LongForwardCursor {
 
         private final ListIterator<Long> it;
         private long lastValue;
@@ -95,7 +112,7 @@ public class ConstantSequiturLongTraceSequence implements ConstantLongTraceSeque
         }
 
         @Override
-		public Long next() {
+		public long nextLong() {
             if (!hasNext())
                 throw new NoSuchElementException();
             this.lastValue += this.it.next();
@@ -103,6 +120,11 @@ public class ConstantSequiturLongTraceSequence implements ConstantLongTraceSeque
             return this.lastValue;
         }
 
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
@@ -148,44 +170,78 @@ public class ConstantSequiturLongTraceSequence implements ConstantLongTraceSeque
     private final long offset;
     private final int count;
     private final InputSequence<Long> sequence;
+    // if the sequence consists of several segments of the input sequence (else null)
+    private final long[] segmentOffsets;
+    private final int[] segmentLengths;
 
     public ConstantSequiturLongTraceSequence(final long offset, final int count,
             final InputSequence<Long> inputSequence) {
         this.offset = offset;
         this.count = count;
         this.sequence = inputSequence;
+        this.segmentOffsets = null;
+        this.segmentLengths = null;
+    }
+
+    public ConstantSequiturLongTraceSequence(final long[] segmentOffsets, final int[] segmentLengths,
+            final int count, final InputSequence<Long> inputSequence) {
+        this.offset = 0;
+        this.count = count;
+        this.sequence = inputSequence;
+        this.segmentOffsets = segmentOffsets;
+        this.segmentLengths = segmentLengths;
+    }
+
+    private ListIterator<Long> sequenceIterator(final long position) {
+        if (this.segmentOffsets == null)
+            return this.sequence.iterator(this.offset + position);
+        return new SegmentedListIterator<Long>(this.sequence, this.segmentOffsets, this.segmentLengths, position);
     }
 
     @Override
 	public Iterator<Long> backwardIterator() throws IOException {
         if (this.count <= 10) {
             if (this.count == 1)
-                return new SingletonIterator<Long>(this.sequence.iterator(this.offset).next());
+                return new SingletonIterator<Long>(sequenceIterator(0).next());
             final long[] values = new long[this.count];
-            final ListIterator<Long> it = this.sequence.iterator(this.offset);
+            final ListIterator<Long> it = sequenceIterator(0);
             int last = 0;
             for (int i = 0; i < this.count; ++i) {
                 values[i] = last += it.next();
             }
             return new ReverseLongArrayIterator(values);
         }
-        return new BackwardIterator(this.sequence.iterator(this.offset+this.count+1), this.count);
+        return new BackwardIterator(sequenceIterator(this.count+1), this.count);
+    }
+
+    @Override
+	public LongBackwardCursor backwardCursor() throws IOException {
+        if (this.count <= 10)
+            return new LongBackwardCursor.FromIterator(backwardIterator());
+        return new BackwardIterator(sequenceIterator(this.count+1), this.count);
     }
 
     @Override
 	public ListIterator<Long> iterator() throws IOException {
         if (this.count <= 10) {
             if (this.count == 1)
-                return new SingletonIterator<Long>(this.sequence.iterator(this.offset).next());
+                return new SingletonIterator<Long>(sequenceIterator(0).next());
             final long[] values = new long[this.count];
-            final ListIterator<Long> it = this.sequence.iterator(this.offset);
+            final ListIterator<Long> it = sequenceIterator(0);
             long last = 0;
             for (int i = 0; i < this.count; ++i) {
                 values[i] = last += it.next();
             }
             return new LongArrayIterator(values);
         }
-        return new ForwardIterator(this.sequence.iterator(this.offset), this.count);
+        return new ForwardIterator(sequenceIterator(0), this.count);
+    }
+
+    @Override
+	public LongForwardCursor forwardCursor() throws IOException {
+        if (this.count <= 10)
+            return new LongForwardCursor.FromIterator(iterator());
+        return new ForwardIterator(sequenceIterator(0), this.count);
     }
 
 }
@@ -37,7 +37,13 @@ public class ConstantThreadTraces {
     }
 
     public static ConstantThreadTraces readFrom(final DataInputStream in) throws IOException {
-        final byte format = in.readByte();
+        return readFrom(in, in.readByte());
+    }
+
+    /**
+     * Like {@link #readFrom(DataInputStream)}, but with the format byte already read.
+     */
+    public static ConstantThreadTraces readFrom(final DataInputStream in, final byte format) throws IOException {
         switch (format) {
         case 0:
             // just for debugging (NullThreadTracer)
@@ -51,8 +57,20 @@ public class ConstantThreadTraces {
                 // this exception can occur in the ObjectInputStream that the sequences are read from
                 throw new IOException(e.toString());
             }
+        case TraceSequenceTypes.FORMAT_SEQUITUR_SHARDED:
+            try {
+                return new ShardedSequiturThreadTraces(in);
+            } catch (final ClassNotFoundException e) {
+                throw new IOException(e.toString());
+            }
         case TraceSequenceTypes.FORMAT_UNCOMPRESSED:
             return new ConstantThreadTraces(TraceSequenceTypes.FORMAT_UNCOMPRESSED);
+        case TraceSequenceTypes.FORMAT_PACKED:
+            return new ConstantThreadTraces(TraceSequenceTypes.FORMAT_PACKED);
+        case TraceSequenceTypes.FORMAT_LZ:
+            return new ConstantThreadTraces(TraceSequenceTypes.FORMAT_LZ);
+        case TraceSequenceTypes.FORMAT_INLINE:
+            return new InlineThreadTraces(in);
         default:
             throw new IOException("corrupted data (unknown trace sequence format)");
         }
@@ -66,6 +84,10 @@ public class ConstantThreadTraces {
                 return ConstantGZipIntegerTraceSequence.readFrom(in, file, type);
             case TraceSequenceTypes.FORMAT_UNCOMPRESSED:
                 return ConstantUncompressedIntegerTraceSequence.readFrom(in, file);
+            case TraceSequenceTypes.FORMAT_PACKED:
+                return ConstantPackedIntegerTraceSequence.readFrom(in, file);
+            case TraceSequenceTypes.FORMAT_LZ:
+                return ConstantLZIntegerTraceSequence.readFrom(in, file);
             default:
                 throw new AssertionError("should not get here");
             }
@@ -75,6 +97,10 @@ public class ConstantThreadTraces {
                 return ConstantGzipLongTraceSequence.readFrom(in, file, type);
             case TraceSequenceTypes.FORMAT_UNCOMPRESSED:
                 return ConstantUncompressedLongTraceSequence.readFrom(in, file);
+            case TraceSequenceTypes.FORMAT_PACKED:
+                return ConstantPackedLongTraceSequence.readFrom(in, file);
+            case TraceSequenceTypes.FORMAT_LZ:
+                return ConstantLZLongTraceSequence.readFrom(in, file);
             default:
                 throw new AssertionError("should not get here");
             }
@@ -32,6 +32,8 @@ public interface ConstantTraceSequence {
 
         ListIterator<Integer> iterator() throws IOException;
         Iterator<Integer> backwardIterator() throws IOException;
+        IntBackwardCursor backwardCursor() throws IOException;
+        IntForwardCursor forwardCursor() throws IOException;
 
     }
 
@@ -39,6 +41,8 @@ public interface ConstantTraceSequence {
 
         ListIterator<Long> iterator() throws IOException;
         Iterator<Long> backwardIterator() throws IOException;
+        LongBackwardCursor backwardCursor() throws IOException;
+        LongForwardCursor forwardCursor() throws IOException;
 
     }
 
@@ -48,11 +48,21 @@ public class ConstantUncompressedIntegerTraceSequence implements ConstantInteger
         return new BackwardIterator(this.file, this.streamIndex, 8*1024);
     }
 
+    @Override
+	public IntBackwardCursor backwardCursor() throws IOException {
+        return new BackwardIterator(this.file, this.streamIndex, 8*1024);
+    }
+
     @Override
 	public ListIterator<Integer> iterator() throws IOException {
         return new ForwardIterator(this.file, this.streamIndex);
     }
 
+    @Override
+	public IntForwardCursor forwardCursor() throws IOException {
+        return new ForwardIterator(this.file, this.streamIndex);
+    }
+
     public static ConstantUncompressedIntegerTraceSequence readFrom(final DataInput in, final MultiplexedFileReader file)
             throws IOException {
         final int streamIndex = in.readInt();
@@ -61,7 +71,7 @@ public class ConstantUncompressedIntegerTraceSequence implements ConstantInteger
         return new ConstantUncompressedIntegerTraceSequence(file, streamIndex);
     }
 
-    private static class BackwardIterator implements Iterator<Integer> {
+    private static class BackwardIterator implements Iterator<Integer>, IntBackwardCursor, SkippableBackwardCursor {
 
         private long offset;
         private final int[] buf;
@@ -107,12 +117,42 @@ public class ConstantUncompressedIntegerTraceSequence implements ConstantInteger
         }
 
         @Override
-		public Integer next() {
+		public int nextInt() {
             if (!hasNext())
                 throw new NoSuchElementException();
             return this.buf[this.bufPos--];
         }
 
+        @Override
+        public long skip(final long n) throws IOException {
+            if (n <= this.bufPos) {
+                this.bufPos -= (int) n;
+                return n;
+            }
+            // the index of the value to continue with
+            final long newPos = this.offset / 4 + this.bufPos - n;
+            if (newPos < 0) {
+                final long skipped = this.offset / 4 + this.bufPos + 1;
+                this.bufPos = -1;
+                this.offset = 0;
+                return skipped;
+            }
+            // buffers always start at a multiple of the buffer size
+            final long start = newPos / this.buf.length * this.buf.length;
+            this.offset = start * 4;
+            this.inputStream.seek(this.offset);
+            for (int i = 0; i < this.buf.length; ++i) {
+                this.buf[i] = this.dataIn.readInt();
+            }
+            this.bufPos = (int) (newPos - start);
+            return n;
+        }
+
+        @Override
+        public Integer next() {
+            return nextInt();
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
@@ -125,7 +165,7 @@ public class ConstantUncompressedIntegerTraceSequence implements ConstantInteger
         }
     }
 
-    private static class ForwardIterator implements ListIterator<Integer> {
+    private static class ForwardIterator implements ListIterator<Integer>, IntForwardCursor {
 
         private final MultiplexInputStream inputStream;
         private final DataInputStream dataIn;
@@ -145,7 +185,7 @@ public class ConstantUncompressedIntegerTraceSequence implements ConstantInteger
         }
 
         @Override
-		public Integer next() {
+		public int nextInt() {
             if (!hasNext())
                 throw new NoSuchElementException();
             try {
@@ -155,6 +195,11 @@ public class ConstantUncompressedIntegerTraceSequence implements ConstantInteger
             }
         }
 
+        @Override
+        public Integer next() {
+            return nextInt();
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
@@ -48,11 +48,21 @@ public class ConstantUncompressedLongTraceSequence implements ConstantLongTraceS
         return new BackwardIterator(this.file, this.streamIndex, 4*1024);
     }
 
+    @Override
+	public LongBackwardCursor backwardCursor() throws IOException {
+        return new BackwardIterator(this.file, this.streamIndex, 4*1024);
+    }
+
     @Override
 	public ListIterator<Long> iterator() throws IOException {
         return new ForwardIterator(this.file, this.streamIndex);
     }
 
+    @Override
+	public LongForwardCursor forwardCursor() throws IOException {
+        return new ForwardIterator(this.file, this.streamIndex);
+    }
+
     public static ConstantUncompressedLongTraceSequence readFrom(final DataInput in, final MultiplexedFileReader file)
             throws IOException {
         final int streamIndex = in.readInt();
@@ -61,7 +71,7 @@ public class ConstantUncompressedLongTraceSequence implements ConstantLongTraceS
         return new ConstantUncompressedLongTraceSequence(file, streamIndex);
     }
 
-    private static class BackwardIterator implements Iterator<Long> {
+    private static class BackwardIterator implements Iterator<Long>, LongBackwardCursor, SkippableBackwardCursor {
 
         private long offset;
         private final long[] buf;
@@ -107,12 +117,42 @@ public class ConstantUncompressedLongTraceSequence implements ConstantLongTraceS
         }
 
         @Override
-		public Long next() {
+		public long nextLong() {
             if (!hasNext())
                 throw new NoSuchElementException();
             return this.buf[this.bufPos--];
         }
 
+        @Override
+        public long skip(final long n) throws IOException {
+            if (n <= this.bufPos) {
+                this.bufPos -= (int) n;
+                return n;
+            }
+            // the index of the value to continue with
+            final long newPos = this.offset / 8 + this.bufPos - n;
+            if (newPos < 0) {
+                final long skipped = this.offset / 8 + this.bufPos + 1;
+                this.bufPos = -1;
+                this.offset = 0;
+                return skipped;
+            }
+            // buffers always start at a multiple of the buffer size
+            final long start = newPos / this.buf.length * this.buf.length;
+            this.offset = start * 8;
+            this.inputStream.seek(this.offset);
+            for (int i = 0; i < this.buf.length; ++i) {
+                this.buf[i] = this.dataIn.readLong();
+            }
+            this.bufPos = (int) (newPos - start);
+            return n;
+        }
+
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
@@ -125,7 +165,7 @@ public class ConstantUncompressedLongTraceSequence implements ConstantLongTraceS
         }
     }
 
-    private static class ForwardIterator implements ListIterator<Long> {
+    private static class ForwardIterator implements ListIterator<Long>, LongForwardCursor {
 
         private final MultiplexInputStream inputStream;
         private final DataInputStream dataIn;
@@ -145,7 +185,7 @@ public class ConstantUncompressedLongTraceSequence implements ConstantLongTraceS
         }
 
         @Override
-		public Long next() {
+		public long nextLong() {
             if (!hasNext())
                 throw new NoSuchElementException();
             try {
@@ -155,6 +195,11 @@ public class ConstantUncompressedLongTraceSequence implements ConstantLongTraceS
             }
         }
 
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
         @Override
 		public void remove() {
             throw new UnsupportedOperationException();
@@ -0,0 +1,42 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     DeltaSkippableBackwardCursor
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/DeltaSkippableBackwardCursor.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.io.IOException;
+
+/**
+ * Implemented by {@link IntBackwardCursor}s and {@link LongBackwardCursor}s over delta
+ * encoded values (the Sequitur compressed sequences). They can seek to the value to
+ * continue with, but need the last skipped value to decode the values from there on.
+ */
+public interface DeltaSkippableBackwardCursor {
+
+    /**
+     * Skips the next <code>n</code> values, or all remaining ones if there are fewer.
+     *
+     * @param lastSkippedValue the <code>n</code>th value from the current position
+     * @return the number of values skipped
+     */
+    long skip(long n, long lastSkippedValue) throws IOException;
+
+}
@@ -0,0 +1,67 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     InlineThreadTraces
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/InlineThreadTraces.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import de.hammacher.util.MultiplexedFileReader;
+import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes;
+
+/**
+ * The sequences of a thread whose short sequences are stored directly in the
+ * sequence table (lightweight traced virtual threads). The longer ones are
+ * stored in the nested format.
+ */
+public class InlineThreadTraces extends ConstantThreadTraces {
+
+    private final ConstantThreadTraces nested;
+
+    public InlineThreadTraces(final DataInputStream in) throws IOException {
+        super(TraceSequenceTypes.FORMAT_INLINE);
+        this.nested = ConstantThreadTraces.readFrom(in);
+    }
+
+    @Override
+    public ConstantTraceSequence readSequence(final DataInputStream in, final MultiplexedFileReader file) throws IOException {
+        final byte type = in.readByte();
+        if (type == 0)
+            return this.nested.readSequence(in, file);
+        final int count = in.readInt();
+        if (count < 0)
+            throw new IOException("corrupted data (negative length)");
+        if (type == TraceSequenceTypes.TYPE_INTEGER) {
+            final int[] values = new int[count];
+            for (int i = 0; i < count; ++i)
+                values[i] = in.readInt();
+            return new ConstantInlineIntegerTraceSequence(values);
+        } else if (type == TraceSequenceTypes.TYPE_LONG) {
+            final long[] values = new long[count];
+            for (int i = 0; i < count; ++i)
+                values[i] = in.readLong();
+            return new ConstantInlineLongTraceSequence(values);
+        } else
+            throw new IOException("corrupted data (unknown trace type)");
+    }
+
+}
@@ -0,0 +1,79 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     LongBackwardCursor
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/LongBackwardCursor.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates backwards over the values of a {@link ConstantTraceSequence.ConstantLongTraceSequence}
+ * without boxing them.
+ */
+public interface LongBackwardCursor {
+
+    /**
+     * A cursor without any values.
+     */
+    public static final LongBackwardCursor EMPTY = new LongBackwardCursor() {
+        @Override
+        public boolean hasNext() {
+            return false;
+        }
+        @Override
+        public long nextLong() {
+            throw new NoSuchElementException();
+        }
+    };
+
+    /**
+     * Adapts an iterator (over values which are boxed anyway) to the cursor interface.
+     */
+    public static class FromIterator implements LongBackwardCursor {
+
+        private final Iterator<Long> it;
+
+        public FromIterator(final Iterator<Long> it) {
+            this.it = it;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.it.hasNext();
+        }
+
+        @Override
+        public long nextLong() {
+            return this.it.next();
+        }
+
+    }
+
+    boolean hasNext();
+
+    /**
+     * @return the next value (i.e. the one before the previously returned one)
+     * @throws NoSuchElementException if there are no more values
+     */
+    long nextLong();
+
+}
@@ -0,0 +1,130 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     SegmentedListIterator
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/SegmentedListIterator.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+import de.unisb.cs.st.sequitur.input.InputSequence;
+
+/**
+ * Iterates over several segments of an {@link InputSequence} as if they were
+ * one contiguous sequence.
+ *
+ * @param <T> the type of the elements of the sequence
+ */
+public class SegmentedListIterator<T> implements ListIterator<T> {
+
+    private final InputSequence<T> sequence;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private int segment;
+    private int posInSegment;
+    private long index;
+    private ListIterator<T> it;
+
+    /**
+     * @param position the index of the element that is returned by the first call to {@link #next()}
+     */
+    public SegmentedListIterator(final InputSequence<T> sequence, final long[] offsets,
+            final int[] lengths, final long position) {
+        this.sequence = sequence;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.index = position;
+        this.segment = 0;
+        long pos = position;
+        while (this.segment < offsets.length - 1 && pos >= lengths[this.segment]) {
+            pos -= lengths[this.segment];
+            ++this.segment;
+        }
+        this.posInSegment = (int) pos;
+        this.it = offsets.length == 0 ? null : sequence.iterator(offsets[this.segment] + pos);
+    }
+
+    @Override
+	public boolean hasNext() {
+        return this.it != null && (this.posInSegment < this.lengths[this.segment]
+            || this.segment < this.offsets.length - 1);
+    }
+
+    @Override
+	public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        if (this.posInSegment == this.lengths[this.segment]) {
+            ++this.segment;
+            this.posInSegment = 0;
+            this.it = this.sequence.iterator(this.offsets[this.segment]);
+        }
+        ++this.posInSegment;
+        ++this.index;
+        return this.it.next();
+    }
+
+    @Override
+	public boolean hasPrevious() {
+        return this.it != null && (this.posInSegment > 0 || this.segment > 0);
+    }
+
+    @Override
+	public T previous() {
+        if (!hasPrevious())
+            throw new NoSuchElementException();
+        if (this.posInSegment == 0) {
+            --this.segment;
+            this.posInSegment = this.lengths[this.segment];
+            this.it = this.sequence.iterator(this.offsets[this.segment] + this.posInSegment);
+        }
+        --this.posInSegment;
+        --this.index;
+        return this.it.previous();
+    }
+
+    @Override
+	public int nextIndex() {
+        return (int) Math.min(Integer.MAX_VALUE, this.index);
+    }
+
+    @Override
+	public int previousIndex() {
+        return nextIndex() - 1;
+    }
+
+    @Override
+	public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+	public void add(final T e) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+	public void set(final T e) {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,92 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     ShardedSequiturThreadTraces
+ *    Filename:  javaslicer-traceReader/src/main/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/ShardedSequiturThreadTraces.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import de.hammacher.util.MultiplexedFileReader;
+import de.hammacher.util.streams.OptimizedDataInputStream;
+import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes;
+import de.unisb.cs.st.sequitur.input.InputSequence;
+import de.unisb.cs.st.sequitur.input.ObjectReader;
+
+/**
+ * The sequences of a thread traced with several Sequitur grammars (shards).
+ * Each sequence references its shard and the segments of the shard's grammar
+ * that it consists of.
+ */
+public class ShardedSequiturThreadTraces extends ConstantThreadTraces {
+
+    private static final ObjectReader<Integer> INT_READER = new ObjectReader<Integer>() {
+        @Override
+		public Integer readObject(final ObjectInputStream inputStream) throws IOException {
+            return OptimizedDataInputStream.readInt0(inputStream);
+        }
+    };
+    private static final ObjectReader<Long> LONG_READER = new ObjectReader<Long>() {
+        @Override
+		public Long readObject(final ObjectInputStream inputStream) throws IOException {
+            return OptimizedDataInputStream.readLong0(inputStream);
+        }
+    };
+
+    private final InputSequence<Integer>[] intSequences;
+    private final InputSequence<Long>[] longSequences;
+
+    @SuppressWarnings("unchecked")
+    public ShardedSequiturThreadTraces(final DataInputStream in) throws IOException, ClassNotFoundException {
+        super(TraceSequenceTypes.FORMAT_SEQUITUR_SHARDED);
+        final ObjectInputStream objIn = new ObjectInputStream(in);
+        final int numShards = objIn.readInt();
+        if (numShards < 0)
+            throw new IOException("corrupted data (negative number of shards)");
+        this.intSequences = new InputSequence[numShards];
+        this.longSequences = new InputSequence[numShards];
+        for (int i = 0; i < numShards; ++i) {
+            this.intSequences[i] = InputSequence.readFrom(objIn, INT_READER);
+            this.longSequences[i] = InputSequence.readFrom(objIn, LONG_READER);
+        }
+    }
+
+    @Override
+    public ConstantTraceSequence readSequence(final DataInputStream in, final MultiplexedFileReader file) throws IOException {
+        final int shardAndType = OptimizedDataInputStream.readInt0(in);
+        final int count = OptimizedDataInputStream.readInt0(in);
+        final int numSegments = OptimizedDataInputStream.readInt0(in);
+        final int shard = shardAndType / 2;
+        if (shard < 0 || shard >= this.intSequences.length || count < 0 || numSegments < 0)
+            throw new IOException("corrupted data (invalid sequitur sequence)");
+        final long[] segmentOffsets = new long[numSegments];
+        final int[] segmentLengths = new int[numSegments];
+        for (int i = 0; i < numSegments; ++i) {
+            segmentOffsets[i] = OptimizedDataInputStream.readLong0(in);
+            segmentLengths[i] = OptimizedDataInputStream.readInt0(in);
+        }
+        return (shardAndType & 1) != 0
+            ? new ConstantSequiturLongTraceSequence(segmentOffsets, segmentLengths, count, this.longSequences[shard])
+            : new ConstantSequiturIntegerTraceSequence(segmentOffsets, segmentLengths, count, this.intSequences[shard]);
+    }
+
+}
@@ -0,0 +1,203 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   javaslicer-traceReader.src.test.java.de.unisb.cs.st.javaslicer.traceResult
+ *    Class:     TraceCheckpointsTest
+ *    Filename:  javaslicer-traceReader/src/test/java/de/unisb/cs/st/javaslicer/traceResult/TraceCheckpointsTest.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import de.unisb.cs.st.javaslicer.common.classRepresentation.Field;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadClass;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadMethod;
+
+/**
+ * Records checkpoints with changing stacks and checks that the stack of each
+ * checkpoint is restored from the parts stored in it and its predecessors, and
+ * that a late checkpoint of a long iteration is restored from the checkpoints
+ * back to the last snapshot only.
+ */
+public class TraceCheckpointsTest {
+
+    private static final int INTERVAL = 10;
+
+    private static ReadMethod[] createMethods(final int number) {
+        final ReadClass readClass = new ReadClass("Test", 0, 0, "Test.java",
+            Collections.<Field>emptyList(), "java/lang/Object");
+        final ReadMethod[] methods = new ReadMethod[number];
+        for (int i = 0; i < methods.length; ++i)
+            methods[i] = new ReadMethod(readClass, 0, "m" + i, "()V", 100 * i);
+        return methods;
+    }
+
+    @Test
+    public void testStackMethods() throws IOException {
+        final ReadMethod[] methods = createMethods(5);
+        final ReadMethod a = methods[0], b = methods[1], c = methods[2], d = methods[3], e = methods[4];
+        final ReadMethod[][] stacks = {
+            { a, b, c }, { a, b, c }, { a, b }, { a, d, e, c }, {}, { e }, { e, b, c, d, a }, { e, b }
+        };
+
+        final TraceCheckpoints.Recorder recorder = new TraceCheckpoints.Recorder(INTERVAL);
+        for (int i = 0; i < stacks.length; ++i) {
+            // values read in between do not influence the stack
+            recorder.valueRead(i % 2, i);
+            recorder.instanceReached(i * INTERVAL, i, stacks[i].length, stacks[i], 0);
+        }
+
+        Assert.assertEquals(stacks.length, recorder.checkpoints.size());
+        for (int i = 0; i < stacks.length; ++i) {
+            final TraceCheckpoints.Checkpoint checkpoint = recorder.checkpoints.get(i);
+            final int[] stack = checkpoint.getStackMethodIndexes();
+            Assert.assertEquals(stacks[i].length, stack.length);
+            for (int j = 0; j < stack.length; ++j)
+                Assert.assertEquals(stacks[i][j].getInstructionNumberStart(), stack[j]);
+        }
+        // the second checkpoint shares the whole stack with the first one
+        Assert.assertEquals(0, recorder.checkpoints.get(1).stackTail.length);
+    }
+
+    @Test
+    public void testLastValues() {
+        final TraceCheckpoints.Recorder recorder = new TraceCheckpoints.Recorder(INTERVAL);
+        final ReadMethod[] noMethods = new ReadMethod[0];
+        recorder.instanceReached(0, 0, 0, noMethods, 0);
+        recorder.valueRead(3, 30);
+        recorder.valueRead(1, 12);
+        recorder.valueRead(3, 31);
+        recorder.instanceReached(INTERVAL, 0, 0, noMethods, 0);
+
+        final TraceCheckpoints.Checkpoint checkpoint = recorder.checkpoints.get(1);
+        Assert.assertEquals(2, checkpoint.seqIndexes.length);
+        Assert.assertEquals(1, checkpoint.seqIndexes[0]);
+        Assert.assertEquals(1, checkpoint.seqValuesRead[0]);
+        Assert.assertEquals(12, checkpoint.seqLastValues[0]);
+        Assert.assertEquals(3, checkpoint.seqIndexes[1]);
+        Assert.assertEquals(2, checkpoint.seqValuesRead[1]);
+        Assert.assertEquals(31, checkpoint.seqLastValues[1]);
+    }
+
+    @Test
+    public void testRestoreLateCheckpoint() throws IOException {
+        final int numCheckpoints = 50 * TraceCheckpoints.SNAPSHOT_INTERVAL + 7;
+        final int numSeqs = 40;
+        final int numInstrs = 300;
+        final ReadMethod[] methods = createMethods(8);
+        final Random random = new Random(42);
+
+        // the counters at the last checkpoint, as they would be restored by iterating
+        // over the whole trace
+        final long[] seqValuesRead = new long[numSeqs];
+        final long[] seqLastValues = new long[numSeqs];
+        final long[] instrOccurrences = new long[numInstrs];
+        final ReadMethod[] stack = new ReadMethod[methods.length];
+        int stackDepth = 0;
+
+        final TraceCheckpoints.Recorder recorder = new TraceCheckpoints.Recorder(INTERVAL);
+        for (int i = 0; i < numCheckpoints; ++i) {
+            recorder.instanceReached(i * INTERVAL, i, stackDepth, stack, i);
+            // the last checkpoint does not see the following changes
+            if (i == numCheckpoints - 1)
+                break;
+            for (int j = 0; j < INTERVAL; ++j) {
+                final int seqIndex = random.nextInt(numSeqs);
+                final long value = random.nextLong();
+                recorder.valueRead(seqIndex, value);
+                ++seqValuesRead[seqIndex];
+                seqLastValues[seqIndex] = value;
+                final int instrIndex = random.nextInt(numInstrs);
+                recorder.instructionOccurred(instrIndex);
+                ++instrOccurrences[instrIndex];
+            }
+            stackDepth = random.nextInt(stack.length + 1);
+            for (int j = 0; j < stackDepth; ++j)
+                if (random.nextInt(4) == 0)
+                    stack[j] = methods[random.nextInt(methods.length)];
+                else if (stack[j] == null)
+                    stack[j] = methods[j];
+        }
+
+        final ThreadId threadId = new ThreadId(1, "main");
+        final Map<ThreadId, TraceCheckpoints.Checkpoint[]> threadCheckpoints =
+            new HashMap<ThreadId, TraceCheckpoints.Checkpoint[]>();
+        threadCheckpoints.put(threadId,
+            recorder.checkpoints.toArray(new TraceCheckpoints.Checkpoint[recorder.checkpoints.size()]));
+        final File file = File.createTempFile("checkpoints", null);
+        final TraceCheckpoints checkpoints;
+        try {
+            new TraceCheckpoints(INTERVAL, threadCheckpoints).writeTo(file);
+            checkpoints = TraceCheckpoints.readFrom(file);
+        } finally {
+            file.delete();
+        }
+        Assert.assertEquals(numCheckpoints, checkpoints.getNumCheckpoints(threadId));
+        final TraceCheckpoints.Checkpoint checkpoint =
+            checkpoints.findCheckpoint(threadId, (numCheckpoints - 1) * INTERVAL);
+        Assert.assertEquals((numCheckpoints - 1) * INTERVAL, checkpoint.getInstanceNr());
+
+        // sum up the changes like BackwardTraceIterator does when restoring the checkpoint
+        final Map<Integer, Long> restoredSeqValuesRead = new HashMap<Integer, Long>();
+        final Map<Integer, Long> restoredSeqLastValues = new HashMap<Integer, Long>();
+        final Map<Integer, Long> restoredInstrOccurrences = new HashMap<Integer, Long>();
+        int numVisited = 0;
+        for (TraceCheckpoints.Checkpoint cp = checkpoint; cp != null; cp = cp.isSnapshot() ? null : cp.previous) {
+            ++numVisited;
+            for (int i = 0; i < cp.seqIndexes.length; ++i) {
+                add(restoredSeqValuesRead, cp.seqIndexes[i], cp.seqValuesRead[i]);
+                if (!restoredSeqLastValues.containsKey(cp.seqIndexes[i]))
+                    restoredSeqLastValues.put(cp.seqIndexes[i], cp.seqLastValues[i]);
+            }
+            for (int i = 0; i < cp.instrIndexes.length; ++i)
+                add(restoredInstrOccurrences, cp.instrIndexes[i], cp.instrOccurrences[i]);
+        }
+        Assert.assertEquals(7, numVisited);
+
+        for (int seqIndex = 0; seqIndex < numSeqs; ++seqIndex) {
+            Assert.assertEquals(seqValuesRead[seqIndex], get(restoredSeqValuesRead, seqIndex));
+            if (seqValuesRead[seqIndex] != 0)
+                Assert.assertEquals(seqLastValues[seqIndex], get(restoredSeqLastValues, seqIndex));
+        }
+        for (int instrIndex = 0; instrIndex < numInstrs; ++instrIndex)
+            Assert.assertEquals(instrOccurrences[instrIndex], get(restoredInstrOccurrences, instrIndex));
+        final int[] stackMethodIndexes = checkpoint.getStackMethodIndexes();
+        Assert.assertEquals(stackDepth, stackMethodIndexes.length);
+        for (int i = 0; i < stackDepth; ++i)
+            Assert.assertEquals(stack[i].getInstructionNumberStart(), stackMethodIndexes[i]);
+    }
+
+    private static void add(final Map<Integer, Long> counters, final int index, final long delta) {
+        counters.put(index, get(counters, index) + delta);
+    }
+
+    private static long get(final Map<Integer, Long> counters, final int index) {
+        final Long value = counters.get(index);
+        return value == null ? 0 : value.longValue();
+    }
+
+}
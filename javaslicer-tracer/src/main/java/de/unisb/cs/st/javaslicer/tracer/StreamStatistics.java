@@ -0,0 +1,96 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer
+ *    Class:     StreamStatistics
+ *    Filename:  javaslicer-tracer/src/main/java/de/unisb/cs/st/javaslicer/tracer/StreamStatistics.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.hammacher.util.MultiplexedFileWriter.MultiplexOutputStream;
+
+/**
+ * Counts the bytes written to the streams of the trace file (see {@link TracerMetrics}).
+ *
+ * Only up to {@link #MAX_TRACKED_STREAMS} open streams are remembered, so that their
+ * current length can be reported. The bytes of all other streams are only counted
+ * once they are finished, and finished streams are not referenced any more.
+ */
+public class StreamStatistics {
+
+    public static final int MAX_TRACKED_STREAMS = 1024;
+
+    // guarded by "this"
+    private final MultiplexOutputStream[] openStreams = new MultiplexOutputStream[MAX_TRACKED_STREAMS];
+    private int numOpenStreams = 0;
+    private long finishedBytes = 0;
+    private long finishedStreams = 0;
+
+    public synchronized void streamOpened(final MultiplexOutputStream stream) {
+        if (this.numOpenStreams < MAX_TRACKED_STREAMS)
+            this.openStreams[this.numOpenStreams++] = stream;
+    }
+
+    /**
+     * Called when no more bytes are written to the given stream.
+     *
+     * @param removed whether the stream has been removed from the file (its bytes
+     *                are not counted then)
+     */
+    public synchronized void streamFinished(final MultiplexOutputStream stream, final boolean removed) {
+        for (int i = this.numOpenStreams - 1; i >= 0; --i) {
+            if (this.openStreams[i] == stream) {
+                this.openStreams[i] = this.openStreams[--this.numOpenStreams];
+                this.openStreams[this.numOpenStreams] = null;
+                break;
+            }
+        }
+        if (!removed) {
+            this.finishedBytes += stream.length();
+            ++this.finishedStreams;
+        }
+    }
+
+    /**
+     * @return the bytes of all finished streams plus the current length of the tracked open streams
+     */
+    public synchronized long getBytesWritten() {
+        long bytes = this.finishedBytes;
+        for (int i = 0; i < this.numOpenStreams; ++i)
+            bytes += this.openStreams[i].length();
+        return bytes;
+    }
+
+    public synchronized long getFinishedStreams() {
+        return this.finishedStreams;
+    }
+
+    /**
+     * @return the current length of the tracked open streams, by stream id
+     */
+    public synchronized Map<Integer, Long> getBytesWrittenPerOpenStream() {
+        final Map<Integer, Long> bytes = new TreeMap<Integer, Long>();
+        for (int i = 0; i < this.numOpenStreams; ++i)
+            bytes.put(this.openStreams[i].getId(), this.openStreams[i].length());
+        return bytes;
+    }
+
+}
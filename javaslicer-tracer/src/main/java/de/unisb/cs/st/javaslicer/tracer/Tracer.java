@@ -36,6 +36,7 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -51,10 +52,13 @@ import de.hammacher.util.StringCacheOutput;
 import de.hammacher.util.maps.ConcurrentReferenceHashMap;
 import de.hammacher.util.maps.ConcurrentReferenceHashMap.Option;
 import de.hammacher.util.maps.ConcurrentReferenceHashMap.ReferenceType;
+import de.hammacher.util.streams.OptimizedDataOutputStream;
 import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadClass;
 import de.unisb.cs.st.javaslicer.common.exceptions.TracerException;
 import de.unisb.cs.st.javaslicer.common.util.UntracedArrayList;
+import de.unisb.cs.st.javaslicer.tracer.instrumentation.ClassFilter;
+import de.unisb.cs.st.javaslicer.tracer.instrumentation.MethodTrigger;
 import de.unisb.cs.st.javaslicer.tracer.instrumentation.TracingMethodInstrumenter;
 import de.unisb.cs.st.javaslicer.tracer.instrumentation.Transformer;
 import de.unisb.cs.st.javaslicer.tracer.traceSequences.ObjectIdentifier;
@@ -66,11 +70,54 @@ public class Tracer {
 
     public final boolean debug;
     public final boolean check;
+    // if != 0, only the last ringWindowSize integer and long events of each thread are
+    // kept ("ring" or flight-recorder mode)
+    public final long ringWindowSize;
+    // user-defined include / exclude patterns for the instrumentation
+    public final ClassFilter classFilter;
+
+    // the tracing window, which may be opened and closed by trigger methods.
+    // it only moves forward: WINDOW_BEFORE -> WINDOW_OPEN -> WINDOW_CLOSED.
+    // all ThreadTracers are paused while the window is not open (see TracingThreadTracer.isPaused)
+    public static final int WINDOW_BEFORE = 0;
+    public static final int WINDOW_OPEN = 1;
+    public static final int WINDOW_CLOSED = 2;
+    public volatile int windowState;
+    public final MethodTrigger startTrigger;
+    public final MethodTrigger stopTrigger;
+
+    // how the classes which were loaded before the tracer was added are retransformed
+    // (see setRetransformation). classes needed by the tracer itself (see
+    // Transformer.isRequiredClass) are always retransformed immediately.
+    public static final int RETRANSFORM_ALL = 0;
+    public static final int RETRANSFORM_BACKGROUND = 1;
+    public static final int RETRANSFORM_NONE = 2;
+    private int retransformMode = RETRANSFORM_ALL;
+    private ClassFilter retransformFilter = new ClassFilter();
+
+    // the number of classes retransformed per call in the background thread
+    private static final int BACKGROUND_RETRANSFORM_BATCH_SIZE = 64;
+
+    // if != 0, each thread seals a segment of its trace after about this many events
+    // (see setSegmentSize)
+    private volatile long segmentSize = 0;
+
+    // whether full event caches are moved to direct buffers when handed to the
+    // trace writers (see setOffHeapBuffers)
+    private volatile boolean offHeapBuffers = false;
 
     protected final TraceSequenceFactory seqFactory;
 
     private final Map<Thread, ThreadTracer> threadTracers;
 
+    // caches the entry of threadTracers for the current thread, so that the lookup in
+    // the (weak, concurrent) map is only necessary once per thread.
+    // note that ThreadLocal is excluded from instrumentation (see Transformer.isExcluded).
+    // finish() replaces it by a fresh ThreadLocal, so that the cached (finished) tracers
+    // are dropped from all threads: the entries of the old one become stale and are
+    // expunged by the ThreadLocalMaps of the threads.
+    private volatile ThreadLocal<ThreadTracer> currentThreadTracer = new ThreadLocal<ThreadTracer>();
+
     // an (untraced) list that holds ThreadTracers that can be finished. They are added to this
     // list first, because if they would be finished immediately, it would leed to an recursive
     // loop...
@@ -78,11 +125,22 @@ public class Tracer {
 
     protected final List<TraceSequenceTypes.Type> traceSequenceTypes
         = Collections.synchronizedList(new UntracedArrayList<TraceSequenceTypes.Type>());
+    // if set, the trace sequences created by this thread are numbered in a local index
+    // space (see beginLocalTraceSequences)
+    private final ThreadLocal<List<TraceSequenceTypes.Type>> localTraceSequenceTypes
+        = new ThreadLocal<List<TraceSequenceTypes.Type>>();
 
     public volatile boolean tracingStarted = false;
     public volatile boolean tracingReady = false;
 
+    // the buffer size of the (compressed) readClasses and threadTracers streams
+    private static final int STREAM_BUFFER_SIZE = 1<<16;
+
     private final MultiplexedFileWriter file;
+    // only set if statistics are requested (see TracerMetrics)
+    private volatile StreamStatistics streamStatistics = null;
+    private final MultiplexOutputStream readClassesMultiplexedStream;
+    private final MultiplexOutputStream threadTracersMultiplexedStream;
     private final ConcurrentLinkedQueue<ReadClass> readClasses = new ConcurrentLinkedQueue<ReadClass>();
     private final StringCacheOutput readClassesStringCache = new StringCacheOutput();
     private final DataOutputStream readClassesOutputStream;
@@ -114,24 +172,32 @@ public class Tracer {
 
 
     private Tracer(final File filename, final boolean debug, final boolean check,
-            final TraceSequenceFactory seqFac, final Instrumentation instrumentation) throws IOException {
+            final TraceSequenceFactory seqFac, final Instrumentation instrumentation,
+            final long ringWindowSize,
+            final ClassFilter classFilter, final MethodTrigger startTrigger,
+            final MethodTrigger stopTrigger) throws IOException {
         this.debug = debug;
         this.check = check;
+        this.ringWindowSize = ringWindowSize;
+        this.classFilter = classFilter;
+        this.startTrigger = startTrigger;
+        this.stopTrigger = stopTrigger;
+        this.windowState = startTrigger == null ? WINDOW_OPEN : WINDOW_BEFORE;
         this.seqFactory = seqFac;
         this.transformer = new Transformer(this, instrumentation, this.readClasses, this.notRedefinedClasses);
         this.file = new MultiplexedFileWriter(filename, 512, MultiplexedFileWriter.is64bitVM,
                 ByteOrder.nativeOrder(), seqFac.shouldAutoFlushFile());
         this.file.setReuseStreamIds(true);
-        final MultiplexOutputStream readClassesMultiplexedStream = this.file.newOutputStream();
-        if (readClassesMultiplexedStream.getId() != 0)
+        this.readClassesMultiplexedStream = newOutputStream();
+        if (this.readClassesMultiplexedStream.getId() != 0)
             throw new AssertionError("MultiplexedFileWriter does not initially return stream id 0");
         this.readClassesOutputStream = new DataOutputStream(new BufferedOutputStream(
-                new GZIPOutputStream(readClassesMultiplexedStream, 512), 512));
-        final MultiplexOutputStream threadTracersMultiplexedStream = this.file.newOutputStream();
-        if (threadTracersMultiplexedStream.getId() != 1)
+                new GZIPOutputStream(this.readClassesMultiplexedStream, STREAM_BUFFER_SIZE), STREAM_BUFFER_SIZE));
+        this.threadTracersMultiplexedStream = newOutputStream();
+        if (this.threadTracersMultiplexedStream.getId() != 1)
             throw new AssertionError("MultiplexedFileWriter does not monotonously increase stream ids");
         this.threadTracersOutputStream = new DataOutputStream(new BufferedOutputStream(
-                new GZIPOutputStream(threadTracersMultiplexedStream, 512), 512));
+                new GZIPOutputStream(this.threadTracersMultiplexedStream, STREAM_BUFFER_SIZE), STREAM_BUFFER_SIZE));
         final ConcurrentReferenceHashMap<Thread, ThreadTracer> threadTracersMap =
             new ConcurrentReferenceHashMap<Thread, ThreadTracer>(
                     32, .75f, 16, ReferenceType.WEAK, ReferenceType.STRONG,
@@ -162,10 +228,46 @@ public class Tracer {
     }
 
     public static void newInstance(final File filename, final boolean debug, final boolean check,
-            final TraceSequenceFactory seqFac, final Instrumentation instrumentation) throws IOException {
+            final TraceSequenceFactory seqFac, final Instrumentation instrumentation,
+            final long ringWindowSize,
+            final ClassFilter classFilter, final MethodTrigger startTrigger,
+            final MethodTrigger stopTrigger) throws IOException {
         if (instance != null)
             throw new IllegalStateException("Tracer instance already exists");
-        instance = new Tracer(filename, debug, check, seqFac, instrumentation);
+        instance = new Tracer(filename, debug, check, seqFac, instrumentation, ringWindowSize, classFilter, startTrigger, stopTrigger);
+    }
+
+    /**
+     * Called by the start trigger method (see {@link MethodTrigger}).
+     * All threads start tracing on their next method entry.
+     */
+    public void openTracingWindow() {
+        if (this.windowState != WINDOW_BEFORE)
+            return;
+        synchronized (this) {
+            if (this.windowState != WINDOW_BEFORE)
+                return;
+            this.windowState = WINDOW_OPEN;
+        }
+        if (this.debug)
+            System.out.println("Tracing window opened by " + this.startTrigger);
+    }
+
+    /**
+     * Called by the stop trigger method (see {@link MethodTrigger}).
+     * All threads stop tracing on their next method entry. A stop trigger firing before
+     * the window was opened is ignored.
+     */
+    public void closeTracingWindow() {
+        if (this.windowState != WINDOW_OPEN)
+            return;
+        synchronized (this) {
+            if (this.windowState != WINDOW_OPEN)
+                return;
+            this.windowState = WINDOW_CLOSED;
+        }
+        if (this.debug)
+            System.out.println("Tracing window closed by " + this.stopTrigger);
     }
 
     public static Tracer getInstance() {
@@ -174,6 +276,54 @@ public class Tracer {
         return instance;
     }
 
+    /**
+     * Sets how the classes which are already loaded when the tracer is added are
+     * retransformed. Must be called before {@link #add(Instrumentation, boolean)}.
+     *
+     * @param mode {@link #RETRANSFORM_ALL} to retransform them before the program starts,
+     *             {@link #RETRANSFORM_BACKGROUND} to retransform them in a background thread
+     *             while the program already runs, or {@link #RETRANSFORM_NONE} to leave them
+     *             uninstrumented
+     * @param allowlist if not empty, only the classes matching this filter are retransformed
+     */
+    public void setRetransformation(final int mode, final ClassFilter allowlist) {
+        this.retransformMode = mode;
+        this.retransformFilter = allowlist;
+    }
+
+    /**
+     * Lets each thread periodically seal a segment of its trace: after about
+     * <code>events</code> traced events, all its trace sequences are finished and
+     * written to the trace file, and the thread continues with new sequences.
+     * This bounds the memory needed for long-living threads. Segments are not
+     * used in ring mode.
+     *
+     * @param events the number of events per segment, or 0 to trace each thread
+     *               in one piece
+     */
+    public void setSegmentSize(final long events) {
+        this.segmentSize = this.ringWindowSize == 0 ? events : 0;
+    }
+
+    public long getSegmentSize() {
+        return this.segmentSize;
+    }
+
+    /**
+     * Lets the threads move their full event caches to direct (off-heap) buffers
+     * when handing them to the trace writers, which read them in place. This only
+     * moves the blocks waiting to be written (or retained in ring mode): the cache
+     * currently filled by each thread stays on the heap.
+     * Only affects threads which are traced for the first time after this call.
+     */
+    public void setOffHeapBuffers(final boolean offHeap) {
+        this.offHeapBuffers = offHeap;
+    }
+
+    public boolean useOffHeapBuffers() {
+        return this.offHeapBuffers;
+    }
+
     public void add(final Instrumentation inst, final boolean retransformClasses) throws TracerException {
 
         // check the JRE version we run on
@@ -217,13 +367,25 @@ public class Tracer {
 
         if (retransformClasses) {
             final ArrayList<Class<?>> classesToRetransform = new ArrayList<Class<?>>();
+            final ArrayList<Class<?>> deferredClasses = new ArrayList<Class<?>>();
             for (final Class<?> class1: inst.getAllLoadedClasses()) {
                 final boolean isModifiable = inst.isModifiableClass(class1);
                 if (this.debug && !isModifiable && !class1.isPrimitive() && !class1.isArray())
                     System.out.println("not modifiable: " + class1);
                 boolean modify = isModifiable && !class1.isInterface();
                 modify &= !class1.getName().startsWith("de.unisb.cs.st.javaslicer.tracer");
-                if (modify)
+                // classes filtered out by the user would not be changed anyway
+                modify &= !this.transformer.isFilteredOut(class1.getName());
+                if (!modify)
+                    continue;
+                if (this.transformer.isRequiredClass(class1.getName()))
+                    classesToRetransform.add(class1);
+                else if (this.retransformMode == RETRANSFORM_NONE
+                        || this.retransformFilter.isExcluded(class1.getName()))
+                    continue;
+                else if (this.retransformMode == RETRANSFORM_BACKGROUND)
+                    deferredClasses.add(class1);
+                else
                     classesToRetransform.add(class1);
             }
             for (final Class<?> class1: additionalClassesToRetransform) {
@@ -234,6 +396,7 @@ public class Tracer {
                 modify &= !class1.getName().startsWith("de.unisb.cs.st.javaslicer.tracer");
                 if (modify && !classesToRetransform.contains(class1)) {
                     classesToRetransform.add(class1);
+                    deferredClasses.remove(class1);
                 }
             }
 
@@ -257,6 +420,9 @@ public class Tracer {
                 // print statistics once now and once when all finished (in finish() method)
                 TracingMethodInstrumenter.printStats(System.out);
             }
+
+            if (!deferredClasses.isEmpty())
+                startBackgroundRetransformation(inst, deferredClasses);
         }
 
         synchronized (this.threadTracers) {
@@ -268,10 +434,49 @@ public class Tracer {
         }
     }
 
+    /**
+     * Retransforms the given classes in an (untraced) background thread, in small batches,
+     * so that the program can already run meanwhile. Until a class is retransformed, calls
+     * to its methods show up as calls to uninstrumented code in the trace.
+     */
+    private void startBackgroundRetransformation(final Instrumentation inst, final List<Class<?>> classes) {
+        if (this.debug)
+            System.out.println("retransforming " + classes.size() + " classes in the background");
+        final Thread retransformer = new UntracedThread(new Runnable() {
+            @Override
+            public void run() {
+                final long startTime = System.nanoTime();
+                int numRetransformed = 0;
+                for (int start = 0; start < classes.size() && !Tracer.this.tracingReady;
+                        start += BACKGROUND_RETRANSFORM_BATCH_SIZE) {
+                    final List<Class<?>> batch = classes.subList(start,
+                        Math.min(start + BACKGROUND_RETRANSFORM_BATCH_SIZE, classes.size()));
+                    try {
+                        inst.retransformClasses(batch.toArray(new Class<?>[batch.size()]));
+                        numRetransformed += batch.size();
+                    } catch (final UnmodifiableClassException e) {
+                        error(e);
+                    } catch (final RuntimeException e) {
+                        error(e);
+                    }
+                }
+                if (Tracer.this.debug)
+                    System.out.format((Locale)null, "Background retransformation of %d classes took %.3f seconds.%n",
+                        numRetransformed, 1e-9*(System.nanoTime() - startTime));
+            }
+        }, "JavaSlicer background retransformer");
+        retransformer.setDaemon(true);
+        retransformer.start();
+    }
+
     public int getNextSequenceIndex() {
         return this.traceSequenceTypes.size();
     }
 
+    public TraceSequenceTypes.Type getTraceSequenceType(final int index) {
+        return this.traceSequenceTypes.get(index);
+    }
+
     public int newIntegerTraceSequence() {
         return newTraceSequence(TraceSequenceTypes.Type.INTEGER);
     }
@@ -280,10 +485,55 @@ public class Tracer {
         return newTraceSequence(TraceSequenceTypes.Type.LONG);
     }
 
-    private synchronized int newTraceSequence(final TraceSequenceTypes.Type type) {
-        final int nextIndex = getNextSequenceIndex();
-        this.traceSequenceTypes.add(type);
-        return nextIndex;
+    private int newTraceSequence(final TraceSequenceTypes.Type type) {
+        final List<TraceSequenceTypes.Type> local = this.localTraceSequenceTypes.get();
+        if (local != null) {
+            local.add(type);
+            return local.size() - 1;
+        }
+        synchronized (this) {
+            final int nextIndex = getNextSequenceIndex();
+            this.traceSequenceTypes.add(type);
+            return nextIndex;
+        }
+    }
+
+    /**
+     * Reserves a contiguous range of trace sequences with the given types.
+     *
+     * @return the index of the first reserved trace sequence
+     */
+    public synchronized int reserveTraceSequences(final List<TraceSequenceTypes.Type> types) {
+        final int firstIndex = getNextSequenceIndex();
+        this.traceSequenceTypes.addAll(types);
+        return firstIndex;
+    }
+
+    /**
+     * Lets the trace sequences created by the current thread be numbered from 0, until
+     * {@link #endLocalTraceSequences(List)} is called. This is used to instrument classes
+     * in parallel (see {@link Transformer}). The local index spaces of one thread can be nested.
+     *
+     * @return the previous local index space, which has to be passed to
+     *         {@link #endLocalTraceSequences(List)}
+     */
+    public List<TraceSequenceTypes.Type> beginLocalTraceSequences() {
+        final List<TraceSequenceTypes.Type> previous = this.localTraceSequenceTypes.get();
+        this.localTraceSequenceTypes.set(new UntracedArrayList<TraceSequenceTypes.Type>());
+        return previous;
+    }
+
+    /**
+     * Leaves the local index space entered by the last call to {@link #beginLocalTraceSequences()}.
+     *
+     * @param previous the value returned by {@link #beginLocalTraceSequences()}
+     * @return the types of the trace sequences created in the local index space; they still
+     *         have to be reserved by {@link #reserveTraceSequences(List)}
+     */
+    public List<TraceSequenceTypes.Type> endLocalTraceSequences(final List<TraceSequenceTypes.Type> previous) {
+        final List<TraceSequenceTypes.Type> local = this.localTraceSequenceTypes.get();
+        this.localTraceSequenceTypes.set(previous);
+        return local;
     }
 
     /**
@@ -292,16 +542,32 @@ public class Tracer {
      * If no {@link ThreadTracer} exists so far, a new one is created, or a
      * {@link NullThreadTracer} is returned if the Thread implements {@link UntracedThread}.
      *
+     * This method is called at the entry of each instrumented method, so the common case
+     * is answered by a thread-local cache. The map of all thread tracers is only consulted
+     * on the first call per thread.
+     *
      * @return the {@link ThreadTracer} associated with the current (calling) thread
      */
     public ThreadTracer getThreadTracer() {
+        final ThreadLocal<ThreadTracer> cache = this.currentThreadTracer;
+        final ThreadTracer cachedTracer = cache.get();
+        if (cachedTracer != null)
+            return cachedTracer;
+        return getThreadTracerSlow(cache);
+    }
+
+    private ThreadTracer getThreadTracerSlow(final ThreadLocal<ThreadTracer> cache) {
         final Thread currentThread = Thread.currentThread();
         // exclude all (internal) untraced threads
-        if (currentThread instanceof UntracedThread)
+        if (currentThread instanceof UntracedThread) {
+            cache.set(NullThreadTracer.instance);
             return NullThreadTracer.instance;
+        }
         ThreadTracer tracer = this.threadTracers.get(currentThread);
-        if (tracer != null)
+        if (tracer != null) {
+            cache.set(tracer);
             return tracer;
+        }
         final ThreadTracer newTracer;
         synchronized (this.threadTracers) {
             // check if it's present now (should not be the case)...
@@ -324,6 +590,8 @@ public class Tracer {
                 newTracer.pauseTracing();
                 final ThreadTracer oldTracer = this.threadTracers.put(currentThread, newTracer);
                 assert oldTracer == null;
+                // if finish() replaced the cache meanwhile, newTracer is a NullThreadTracer
+                cache.set(newTracer);
             } finally {
                 assert this.threadTracerBeingCreated == currentThread;
                 this.threadTracerBeingCreated = null;
@@ -336,8 +604,13 @@ public class Tracer {
             if (this.readyThreadTracers.size() > 0) {
                 newTracer.pauseTracing();
                 try {
+                    // the threads of these tracers are dead. they are written by the writer
+                    // pool, so that this (unrelated) thread does not wait for that.
+                    // the list is cleared, otherwise it would grow with every thread (and be
+                    // iterated for every new one).
                     for (final TracingThreadTracer t: this.readyThreadTracers)
-                        writeOutIfNecessary(t);
+                        writeOutInBackground(t);
+                    this.readyThreadTracers.clear();
                 } finally {
                     newTracer.resumeTracing();
                 }
@@ -358,11 +631,22 @@ public class Tracer {
                 writeOutIfNecessary(ttt);
             }
             this.threadTracers.put(exitingThread, NullThreadTracer.instance);
+            this.currentThreadTracer.set(NullThreadTracer.instance);
         } catch (final Throwable t) {
             t.printStackTrace();
         }
     }
 
+    /**
+     * Writes a sealed segment of the trace of the given thread. Called by the
+     * TraceWriter of the thread.
+     */
+    protected void writeOutSegment(final TracingThreadTracer threadTracer) throws IOException {
+        synchronized (this.threadTracersOutputStream) {
+            threadTracer.writeOutSegment(this.threadTracersOutputStream);
+        }
+    }
+
     private void writeOutIfNecessary(final TracingThreadTracer threadTracer) {
         final CountDownLatch latch = new CountDownLatch(1);
         final CountDownLatch oldLatch = this.writtenThreadTracers.putIfAbsent(threadTracer, latch);
@@ -387,6 +671,43 @@ public class Tracer {
         }
     }
 
+    /**
+     * Writes the trace of a dead thread once the writer pool has finished all its
+     * sequences. Does not block, except if the TraceWriter of the thread still has
+     * too many pending jobs.
+     */
+    private void writeOutInBackground(final TracingThreadTracer threadTracer) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        if (this.writtenThreadTracers.putIfAbsent(threadTracer, latch) != null)
+            return;
+        final boolean started = threadTracer.finishInBackground(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronized (Tracer.this.threadTracersOutputStream) {
+                        threadTracer.writeOut(Tracer.this.threadTracersOutputStream);
+                    }
+                } catch (final IOException e) {
+                    error(e);
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        if (!started) {
+            // finished by someone else (who did not write it out), so write it here
+            try {
+                synchronized (this.threadTracersOutputStream) {
+                    threadTracer.writeOut(this.threadTracersOutputStream);
+                }
+            } catch (final IOException e) {
+                error(e);
+            } finally {
+                latch.countDown();
+            }
+        }
+    }
+
     private final Object finishLock = new Object();
     public void finish() throws IOException {
         synchronized (this.finishLock) {
@@ -402,26 +723,122 @@ public class Tracer {
                     if (t instanceof TracingThreadTracer)
                         allThreadTracers.add((TracingThreadTracer) t);
                 }
+                // all threads now resolve to the NullThreadTracer in the map on their next call
+                this.currentThreadTracer = new ThreadLocal<ThreadTracer>();
             }
             synchronized (this.readyThreadTracers) {
                 allThreadTracers.addAll(this.readyThreadTracers);
                 this.readyThreadTracers.clear();
             }
+            // let all traced threads hand off their caches concurrently (see TracingThreadTracer.finish())
+            for (final TracingThreadTracer t: allThreadTracers)
+                t.requestFinish();
             for (final TracingThreadTracer t: allThreadTracers) {
                 writeOutIfNecessary(t);
             }
+            // wait for the traces of dead threads which are still written in the background
+            for (final CountDownLatch latch: this.writtenThreadTracers.values()) {
+                try {
+                    latch.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
             this.threadTracersOutputStream.close();
+            streamFinished(this.threadTracersMultiplexedStream);
 
-            ReadClass rc;
-            while ((rc = this.readClasses.poll()) != null)
-                rc.writeOut(this.readClassesOutputStream, this.readClassesStringCache);
-            this.readClassesOutputStream.close();
+            writeReadClasses();
             this.file.close();
         }
     }
 
+    /**
+     * Writes a directory of all classes and methods into the readClasses stream, and the
+     * method bodies of each class as a separate block into another stream. That way,
+     * the bodies are only decoded for the classes which are actually used when reading
+     * the trace (see ReadClass#readDirectoryEntry).
+     */
+    private void writeReadClasses() throws IOException {
+        final MultiplexOutputStream bodiesStream = newOutputStream();
+        this.readClassesStringCache.writeString(ReadClass.DIRECTORY_MARKER, this.readClassesOutputStream);
+        OptimizedDataOutputStream.writeInt0(bodiesStream.getId(), this.readClassesOutputStream);
+        long bodiesPosition = 0;
+        ReadClass rc;
+        while ((rc = this.readClasses.poll()) != null) {
+            final byte[] bodies = rc.writeBodies();
+            bodiesStream.write(bodies);
+            rc.writeDirectoryEntry(this.readClassesOutputStream, this.readClassesStringCache,
+                bodiesPosition, bodies.length);
+            bodiesPosition += bodies.length;
+        }
+        bodiesStream.close();
+        streamFinished(bodiesStream);
+        this.readClassesOutputStream.close();
+        streamFinished(this.readClassesMultiplexedStream);
+    }
+
+    /**
+     * Opens a new stream in the trace file. When nothing more is written to it,
+     * {@link #streamFinished} or {@link #streamRemoved} has to be called.
+     */
     public MultiplexOutputStream newOutputStream() {
-        return this.file.newOutputStream();
+        final MultiplexOutputStream stream = this.file.newOutputStream();
+        final StreamStatistics statistics = this.streamStatistics;
+        if (statistics != null)
+            statistics.streamOpened(stream);
+        return stream;
+    }
+
+    public void streamFinished(final MultiplexOutputStream stream) {
+        final StreamStatistics statistics = this.streamStatistics;
+        if (statistics != null)
+            statistics.streamFinished(stream, false);
+    }
+
+    /**
+     * Removes a (temporary) stream from the trace file.
+     */
+    public void streamRemoved(final MultiplexOutputStream stream) throws IOException {
+        stream.remove();
+        final StreamStatistics statistics = this.streamStatistics;
+        if (statistics != null)
+            statistics.streamFinished(stream, true);
+    }
+
+    /**
+     * Starts counting the bytes written to the streams of the trace file.
+     * Streams opened before are only counted when they are finished.
+     */
+    public synchronized StreamStatistics enableStreamStatistics() {
+        if (this.streamStatistics == null) {
+            final StreamStatistics statistics = new StreamStatistics();
+            statistics.streamOpened(this.readClassesMultiplexedStream);
+            statistics.streamOpened(this.threadTracersMultiplexedStream);
+            this.streamStatistics = statistics;
+        }
+        return this.streamStatistics;
+    }
+
+    /**
+     * @return the statistics of the written streams, or <code>null</code> if they are not counted
+     */
+    public StreamStatistics getStreamStatistics() {
+        return this.streamStatistics;
+    }
+
+    /**
+     * @return a snapshot of the ThreadTracers of all threads that are currently traced
+     */
+    public List<TracingThreadTracer> getTracingThreadTracers() {
+        final List<TracingThreadTracer> tracers = new UntracedArrayList<TracingThreadTracer>();
+        for (final ThreadTracer tt: this.threadTracers.values())
+            if (tt instanceof TracingThreadTracer)
+                tracers.add((TracingThreadTracer) tt);
+        return tracers;
+    }
+
+    public Transformer getTransformer() {
+        return this.transformer;
     }
 
     public void printFinalUserInfo() {
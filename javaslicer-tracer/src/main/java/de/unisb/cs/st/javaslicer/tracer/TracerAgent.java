@@ -28,9 +28,16 @@ import java.io.IOException;
 import java.lang.instrument.Instrumentation;
 import java.net.URL;
 
+import javax.management.JMException;
+
 import de.unisb.cs.st.javaslicer.common.exceptions.TracerException;
+import de.unisb.cs.st.javaslicer.tracer.instrumentation.ClassFilter;
+import de.unisb.cs.st.javaslicer.tracer.instrumentation.InstrumentationCache;
+import de.unisb.cs.st.javaslicer.tracer.instrumentation.MethodTrigger;
 import de.unisb.cs.st.javaslicer.tracer.traceSequences.TraceSequenceFactory;
 import de.unisb.cs.st.javaslicer.tracer.traceSequences.gzip.GZipTraceSequenceFactory;
+import de.unisb.cs.st.javaslicer.tracer.traceSequences.lz.LZTraceSequenceFactory;
+import de.unisb.cs.st.javaslicer.tracer.traceSequences.packed.PackedTraceSequenceFactory;
 import de.unisb.cs.st.javaslicer.tracer.traceSequences.sequitur.SequiturTraceSequenceFactory;
 import de.unisb.cs.st.javaslicer.tracer.traceSequences.uncompressed.UncompressedTraceSequenceFactory;
 
@@ -57,6 +64,34 @@ public class TracerAgent {
 
     }
 
+    // the window is kept for integer and long events separately, so by default each
+    // thread retains up to 80 MB + 120 MB (plus a few blocks) of events in ring mode
+    private static final long DEFAULT_RING_WINDOW_SIZE = 10*1000*1000;
+
+    /**
+     * Parses a size given as a number with an optional suffix k, m or g
+     * (meaning thousands, millions, billions).
+     *
+     * @return the parsed size, or -1 if the string is not a valid size
+     */
+    private static long parseSize(final String str) {
+        long factor = 1;
+        String number = str;
+        switch (str.isEmpty() ? ' ' : Character.toLowerCase(str.charAt(str.length()-1))) {
+        case 'k': factor = 1000; break;
+        case 'm': factor = 1000*1000; break;
+        case 'g': factor = 1000*1000*1000; break;
+        default: break;
+        }
+        if (factor != 1)
+            number = str.substring(0, str.length()-1);
+        try {
+            return Long.parseLong(number) * factor;
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
     public static void premain(String agentArgs, Instrumentation inst) {
         try {
             // find the name of the jar file
@@ -92,11 +127,24 @@ public class TracerAgent {
             */
 
             String logFilename = null;
+            String cacheDirname = null;
             final String[] args = agentArgs == null || agentArgs.length() == 0 ? new String[0] : agentArgs.split(",");
 
             boolean debug = false;
             boolean check = false;
+            boolean jmx = false;
+            boolean jfr = false;
+            boolean ringMode = false;
+            long ringWindowSize = DEFAULT_RING_WINDOW_SIZE;
+            long segmentSize = 0;
+            // null: direct buffers in ring mode (which retains the whole window), heap otherwise
+            Boolean offHeapBuffers = null;
             TraceSequenceFactory seqFac = null;
+            final ClassFilter classFilter = new ClassFilter();
+            MethodTrigger startTrigger = null;
+            MethodTrigger stopTrigger = null;
+            int retransformMode = Tracer.RETRANSFORM_ALL;
+            final ClassFilter retransformAllowlist = new ClassFilter();
 
             for (final String arg : args) {
                 final int colonPos = arg.indexOf(':');
@@ -107,10 +155,23 @@ public class TracerAgent {
                 	String format = "%20s     %s%n";
                     System.out.println("Use the java agent this way: java -javaagent:tracer.jar=<option[:value]>,<option[:value]>,... -jar program.jar <programoptions>");
                 	System.out.println("These are the available agent options:");
+                	System.out.format(format, "buffers", "(heap/offheap): keep the event blocks waiting to be written (or retained in ring mode) on the heap, or in direct buffers (default: offheap in ring mode, heap otherwise); the block currently filled by each thread always stays on the heap");
+                	System.out.format(format, "cache", "a directory for caching instrumented classes between runs");
                 	System.out.format(format, "check", "(true/false): do check the instrumented bytecode using ASM validators");
-                	System.out.format(format, "compression", "(none/gzip/sequitur): select the compression algorithm for the trace file");
+                	System.out.format(format, "compression", "(none/packed/lz/gzip/sequitur): select the compression algorithm for the trace file");
                 	System.out.format(format, "debug", "(true/false): do additional checks and verbose output");
+                	System.out.format(format, "exclude", "do not instrument these classes (patterns like com.foo.* or com.foo.Bar, separated by ';')");
                 	System.out.format(format, "help", "print this help");
+                	System.out.format(format, "include", "only instrument these classes (same patterns as for exclude; the longest matching pattern wins)");
+                	System.out.format(format, "jfr", "(true/false): emit JFR events for class transformations, write stalls and the tracer statistics (needs Java 8u262 or later)");
+                	System.out.format(format, "jmx", "(true/false): export live statistics of the tracer as MBean " + TracerMetrics.OBJECT_NAME + " (its operation dumpTrace finishes tracing and writes the trace file at once, e.g. the current window in ring mode)");
+                	System.out.format(format, "mode", "(full/ring): trace the whole execution, or only the last events of each thread");
+                	System.out.format(format, "retransform", "(all/background/none): retransform the classes loaded before the tracer before the program starts, in the background, or not at all");
+                	System.out.format(format, "retransformOnly", "only retransform these already loaded classes (same patterns as for include)");
+                	System.out.format(format, "window", "the number of events per thread to keep in ring mode (suffixes k/m/g allowed, default: 10m); each thread then holds up to about 20 bytes per event of the window (8 for integer, 12 for long events), in direct buffers unless buffers:heap is given, so -XX:MaxDirectMemorySize may have to be raised");
+                	System.out.format(format, "segment", "seal a finished segment of each thread's trace after this many events (suffixes k/m/g allowed, default: off)");
+                	System.out.format(format, "startAt", "<class>.<method>[:entry/:exit]: start tracing when this (instrumented) method is entered or left");
+                	System.out.format(format, "stopAt", "<class>.<method>[:entry/:exit]: stop tracing when this (instrumented) method is entered or left");
                 	System.out.format(format, "tracefile", "the output destination for the trace file");
                 } else if ("logfile".equalsIgnoreCase(key) || "tracefile".equalsIgnoreCase(key)) {
                     if (value == null) {
@@ -118,6 +179,12 @@ public class TracerAgent {
                         System.exit(1);
                     }
                     logFilename = value;
+                } else if ("cache".equalsIgnoreCase(key)) {
+                    if (value == null) {
+                        System.err.println("ERROR: expecting value for \"cache\" argument");
+                        System.exit(1);
+                    }
+                    cacheDirname = value;
                 } else if ("debug".equalsIgnoreCase(key)) {
                     if (value == null || "true".equalsIgnoreCase(value)) {
                         debug = true;
@@ -136,9 +203,97 @@ public class TracerAgent {
                         System.err.println("ERROR: illegal value for \"check\" argument: \"" + value + "\"");
                         System.exit(1);
                     }
+                } else if ("jmx".equalsIgnoreCase(key)) {
+                    if (value == null || "true".equalsIgnoreCase(value)) {
+                        jmx = true;
+                    } else if ("false".equalsIgnoreCase(value)) {
+                        jmx = false;
+                    } else {
+                        System.err.println("ERROR: illegal value for \"jmx\" argument: \"" + value + "\"");
+                        System.exit(1);
+                    }
+                } else if ("jfr".equalsIgnoreCase(key)) {
+                    if (value == null || "true".equalsIgnoreCase(value)) {
+                        jfr = true;
+                    } else if ("false".equalsIgnoreCase(value)) {
+                        jfr = false;
+                    } else {
+                        System.err.println("ERROR: illegal value for \"jfr\" argument: \"" + value + "\"");
+                        System.exit(1);
+                    }
+                } else if ("mode".equalsIgnoreCase(key)) {
+                    if ("full".equalsIgnoreCase(value)) {
+                        ringMode = false;
+                    } else if ("ring".equalsIgnoreCase(value)) {
+                        ringMode = true;
+                    } else {
+                        System.err.println("ERROR: illegal value for \"mode\" argument: \"" + value + "\"");
+                        System.exit(1);
+                    }
+                } else if ("window".equalsIgnoreCase(key)) {
+                    ringWindowSize = value == null ? -1 : parseSize(value);
+                    if (ringWindowSize <= 0) {
+                        System.err.println("ERROR: illegal value for \"window\" argument: \"" + value + "\"");
+                        System.exit(1);
+                    }
+                } else if ("segment".equalsIgnoreCase(key)) {
+                    segmentSize = value == null ? -1 : parseSize(value);
+                    if (segmentSize <= 0) {
+                        System.err.println("ERROR: illegal value for \"segment\" argument: \"" + value + "\"");
+                        System.exit(1);
+                    }
+                } else if ("buffers".equalsIgnoreCase(key)) {
+                    if ("heap".equalsIgnoreCase(value)) {
+                        offHeapBuffers = Boolean.FALSE;
+                    } else if ("offheap".equalsIgnoreCase(value)) {
+                        offHeapBuffers = Boolean.TRUE;
+                    } else {
+                        System.err.println("ERROR: illegal value for \"buffers\" argument: \"" + value + "\"");
+                        System.exit(1);
+                    }
+                } else if ("include".equalsIgnoreCase(key) || "exclude".equalsIgnoreCase(key)) {
+                    if (value == null) {
+                        System.err.println("ERROR: expecting value for \"" + key + "\" argument");
+                        System.exit(1);
+                    }
+                    if ("include".equalsIgnoreCase(key))
+                        classFilter.addIncludes(value);
+                    else
+                        classFilter.addExcludes(value);
+                } else if ("retransform".equalsIgnoreCase(key)) {
+                    if ("all".equalsIgnoreCase(value)) {
+                        retransformMode = Tracer.RETRANSFORM_ALL;
+                    } else if ("background".equalsIgnoreCase(value)) {
+                        retransformMode = Tracer.RETRANSFORM_BACKGROUND;
+                    } else if ("none".equalsIgnoreCase(value)) {
+                        retransformMode = Tracer.RETRANSFORM_NONE;
+                    } else {
+                        System.err.println("ERROR: illegal value for \"retransform\" argument: \"" + value + "\"");
+                        System.exit(1);
+                    }
+                } else if ("retransformOnly".equalsIgnoreCase(key)) {
+                    if (value == null) {
+                        System.err.println("ERROR: expecting value for \"retransformOnly\" argument");
+                        System.exit(1);
+                    }
+                    retransformAllowlist.addIncludes(value);
+                } else if ("startAt".equalsIgnoreCase(key) || "stopAt".equalsIgnoreCase(key)) {
+                    final MethodTrigger trigger = value == null ? null : MethodTrigger.parse(value);
+                    if (trigger == null) {
+                        System.err.println("ERROR: illegal value for \"" + key + "\" argument: \"" + value + "\"");
+                        System.exit(1);
+                    }
+                    if ("startAt".equalsIgnoreCase(key))
+                        startTrigger = trigger;
+                    else
+                        stopTrigger = trigger;
                 } else if ("compression".equalsIgnoreCase(key)) {
                     if ("none".equalsIgnoreCase(value) || "uncompressed".equalsIgnoreCase(value)) {
                         seqFac = new UncompressedTraceSequenceFactory();
+                    } else if ("packed".equalsIgnoreCase(value)) {
+                        seqFac = new PackedTraceSequenceFactory();
+                    } else if ("lz".equalsIgnoreCase(value)) {
+                        seqFac = new LZTraceSequenceFactory();
                     } else if ("gzip".equalsIgnoreCase(value)) {
                         seqFac = new GZipTraceSequenceFactory();
                     } else if ("sequitur".equalsIgnoreCase(value)) {
@@ -167,12 +322,31 @@ public class TracerAgent {
             if (seqFac == null)
                 seqFac = new UncompressedTraceSequenceFactory();
 
+            if (ringMode && segmentSize != 0) {
+                System.err.println("ERROR: segments cannot be used in ring mode");
+                System.exit(1);
+            }
+
             try {
-                Tracer.newInstance(logFile, debug, check, seqFac, inst);
+                Tracer.newInstance(logFile, debug, check, seqFac, inst,
+                    ringMode ? ringWindowSize : 0, classFilter, startTrigger, stopTrigger);
             } catch (final FileNotFoundException e) {
                 System.err.println("ERROR: cannot create trace file: " + e.getMessage());
             }
             final Tracer tracer = Tracer.getInstance();
+            if (cacheDirname != null) {
+                try {
+                    // entries of another tracer.jar must not be used
+                    final String tracerVersion = tracerJarFile.length() + "-" + tracerJarFile.lastModified();
+                    tracer.getTransformer().setInstrumentationCache(
+                        new InstrumentationCache(new File(cacheDirname), tracerVersion));
+                } catch (final IOException e) {
+                    System.err.println("ERROR: cannot use the instrumentation cache: " + e.getMessage());
+                }
+            }
+            tracer.setRetransformation(retransformMode, retransformAllowlist);
+            tracer.setSegmentSize(segmentSize);
+            tracer.setOffHeapBuffers(offHeapBuffers == null ? ringMode : offHeapBuffers.booleanValue());
             try {
                 tracer.add(inst, true);
             } catch (final TracerException e) {
@@ -183,6 +357,15 @@ public class TracerAgent {
             final ThreadTracer tt = tracer.getThreadTracer();
             tt.pauseTracing();
             Runtime.getRuntime().addShutdownHook(new WriteTracefileThread(tracer));
+            if (jmx) {
+                try {
+                    TracerMetrics.register(tracer);
+                } catch (final JMException e) {
+                    System.err.println("ERROR: could not register the tracer MBean: " + e);
+                }
+            }
+            if (jfr && !JfrEvents.enable(tracer))
+                System.err.println("WARNING: the flight recorder is not available in this JVM (or the tracer was built without JFR support), no JFR events are emitted");
             tt.resumeTracing();
         } catch (final Throwable t) {
             System.err.println("ERROR in premain method:");
@@ -0,0 +1,248 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer
+ *    Class:     TracerMetrics
+ *    Filename:  javaslicer-tracer/src/main/java/de/unisb/cs/st/javaslicer/tracer/TracerMetrics.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import de.unisb.cs.st.javaslicer.tracer.instrumentation.Transformer;
+import de.unisb.cs.st.javaslicer.tracer.traceSequences.ObjectIdentifier;
+
+/**
+ * The implementation of {@link TracerMetricsMXBean}.
+ *
+ * The methods are called by JMX threads, which are traced themselves, so all methods
+ * pause tracing while collecting the values.
+ */
+public class TracerMetrics implements TracerMetricsMXBean {
+
+    public static final String OBJECT_NAME = "de.unisb.cs.st.javaslicer:type=Tracer";
+
+    private final Tracer tracer;
+    private final StreamStatistics streamStatistics;
+
+    // thread id -> { number of events, System.nanoTime() } at the last call of getEventsPerSecondPerThread
+    private Map<Long, long[]> lastEventCounts = new HashMap<Long, long[]>();
+
+    /**
+     * Creating the metrics makes the tracer count the written bytes and remember
+     * per-class transformation times, which it does not do otherwise.
+     */
+    public TracerMetrics(final Tracer tracer) {
+        this.tracer = tracer;
+        this.streamStatistics = tracer.enableStreamStatistics();
+        tracer.getTransformer().recordTransformationTimes();
+    }
+
+    /**
+     * Registers a new TracerMetrics instance at the platform MBean server.
+     */
+    public static void register(final Tracer tracer) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new TracerMetrics(tracer),
+            new ObjectName(OBJECT_NAME));
+    }
+
+    private static String getThreadKey(final TracingThreadTracer tt) {
+        return tt.getThreadName() + " [" + tt.getThreadId() + "]";
+    }
+
+    @Override
+    public long getTracedEvents() {
+        final ThreadTracer self = this.tracer.getThreadTracer();
+        self.pauseTracing();
+        try {
+            long events = 0;
+            for (final TracingThreadTracer tt: this.tracer.getTracingThreadTracers())
+                events += tt.getTracedEvents();
+            return events;
+        } finally {
+            self.resumeTracing();
+        }
+    }
+
+    @Override
+    public Map<String, Long> getTracedEventsPerThread() {
+        final ThreadTracer self = this.tracer.getThreadTracer();
+        self.pauseTracing();
+        try {
+            final Map<String, Long> events = new TreeMap<String, Long>();
+            for (final TracingThreadTracer tt: this.tracer.getTracingThreadTracers())
+                events.put(getThreadKey(tt), tt.getTracedEvents());
+            return events;
+        } finally {
+            self.resumeTracing();
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Double> getEventsPerSecondPerThread() {
+        final ThreadTracer self = this.tracer.getThreadTracer();
+        self.pauseTracing();
+        try {
+            final Map<String, Double> rates = new TreeMap<String, Double>();
+            final Map<Long, long[]> newEventCounts = new HashMap<Long, long[]>();
+            for (final TracingThreadTracer tt: this.tracer.getTracingThreadTracers()) {
+                final long[] now = new long[] { tt.getTracedEvents(), System.nanoTime() };
+                final long[] last = this.lastEventCounts.get(tt.getThreadId());
+                newEventCounts.put(tt.getThreadId(), now);
+                if (last != null && now[1] > last[1])
+                    rates.put(getThreadKey(tt), 1e9 * (now[0] - last[0]) / (now[1] - last[1]));
+                else
+                    rates.put(getThreadKey(tt), 0.);
+            }
+            this.lastEventCounts = newEventCounts;
+            return rates;
+        } finally {
+            self.resumeTracing();
+        }
+    }
+
+    @Override
+    public int getWriteQueueDepth() {
+        final ThreadTracer self = this.tracer.getThreadTracer();
+        self.pauseTracing();
+        try {
+            int depth = 0;
+            for (final TracingThreadTracer tt: this.tracer.getTracingThreadTracers())
+                depth += tt.getWriteQueueDepth();
+            return depth;
+        } finally {
+            self.resumeTracing();
+        }
+    }
+
+    @Override
+    public long getWriteStalls() {
+        return TracingThreadTracer.getTotalWriteStalls();
+    }
+
+    @Override
+    public double getWriteStallSeconds() {
+        return 1e-9 * TracingThreadTracer.getTotalWriteStallTime();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return this.streamStatistics.getBytesWritten();
+    }
+
+    @Override
+    public long getFinishedStreams() {
+        return this.streamStatistics.getFinishedStreams();
+    }
+
+    @Override
+    public Map<Integer, Long> getBytesWrittenPerStream() {
+        final ThreadTracer self = this.tracer.getThreadTracer();
+        self.pauseTracing();
+        try {
+            return this.streamStatistics.getBytesWrittenPerOpenStream();
+        } finally {
+            self.resumeTracing();
+        }
+    }
+
+    @Override
+    public int getTransformedClasses() {
+        return this.tracer.getTransformer().getTotalTransformedClasses();
+    }
+
+    @Override
+    public double getTransformationSeconds() {
+        return 1e-9 * this.tracer.getTransformer().getTotalTransformationTime();
+    }
+
+    @Override
+    public double getAverageTransformationMillis() {
+        final Transformer transformer = this.tracer.getTransformer();
+        final int classes = transformer.getTotalTransformedClasses();
+        return classes == 0 ? 0 : 1e-6 * transformer.getTotalTransformationTime() / classes;
+    }
+
+    @Override
+    public double getMaxTransformationMillis() {
+        return 1e-6 * this.tracer.getTransformer().getMaxTransformationTime();
+    }
+
+    @Override
+    public String getSlowestTransformedClass() {
+        final String className = this.tracer.getTransformer().getSlowestTransformedClass();
+        return className == null ? null : className.replace('/', '.');
+    }
+
+    @Override
+    public Map<String, Double> getTransformationMillisPerClass() {
+        final ThreadTracer self = this.tracer.getThreadTracer();
+        self.pauseTracing();
+        try {
+            final Map<String, Double> millis = new TreeMap<String, Double>();
+            for (final Map.Entry<String, Long> e: this.tracer.getTransformer().getRecentTransformationTimes().entrySet())
+                millis.put(e.getKey().replace('/', '.'), 1e-6 * e.getValue());
+            return millis;
+        } finally {
+            self.resumeTracing();
+        }
+    }
+
+    @Override
+    public int getObjectIdTableSize() {
+        return ObjectIdentifier.instance.size();
+    }
+
+    /**
+     * Runs the same {@link Tracer#finish()} as the end of the execution, so all traced
+     * threads hand over their last events before the file is written, and tracing stops.
+     */
+    @Override
+    public boolean dumpTrace() {
+        if (this.tracer.tracingReady)
+            return false;
+        final ThreadTracer self = this.tracer.getThreadTracer();
+        self.pauseTracing();
+        try {
+            // the writing must not be traced, so it is done in an untraced thread
+            final TracerAgent.WriteTracefileThread writer = new TracerAgent.WriteTracefileThread(this.tracer);
+            writer.start();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    writer.join();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            return true;
+        } finally {
+            self.resumeTracing();
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer
+ *    Class:     TracerMetricsMXBean
+ *    Filename:  javaslicer-tracer/src/main/java/de/unisb/cs/st/javaslicer/tracer/TracerMetricsMXBean.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer;
+
+import java.util.Map;
+
+/**
+ * Live statistics of the tracer, exported via JMX (agent option "jmx").
+ *
+ * The per-thread values only cover threads which are currently traced.
+ */
+public interface TracerMetricsMXBean {
+
+    /**
+     * @return the number of integer and long values traced by all live threads
+     */
+    long getTracedEvents();
+
+    /**
+     * @return the number of traced values per live thread (keys are "name [id]")
+     */
+    Map<String, Long> getTracedEventsPerThread();
+
+    /**
+     * @return the number of traced values per second and live thread, measured since the
+     *         last call of this method (or since the thread was first seen)
+     */
+    Map<String, Double> getEventsPerSecondPerThread();
+
+    /**
+     * @return the number of blocks waiting to be written, summed up over all threads
+     */
+    int getWriteQueueDepth();
+
+    /**
+     * @return how often a traced thread had to wait for the writers
+     */
+    long getWriteStalls();
+
+    /**
+     * @return the total time (in seconds) which traced threads waited for the writers
+     */
+    double getWriteStallSeconds();
+
+    /**
+     * @return the number of bytes written to the streams of the trace file (streams opened
+     *         before the MBean was registered are only counted once they are finished)
+     */
+    long getBytesWritten();
+
+    /**
+     * @return the number of streams of the trace file which have been completely written
+     */
+    long getFinishedStreams();
+
+    /**
+     * @return the number of bytes written per open stream of the trace file (by stream id,
+     *         for at most {@link StreamStatistics#MAX_TRACKED_STREAMS} streams)
+     */
+    Map<Integer, Long> getBytesWrittenPerStream();
+
+    int getTransformedClasses();
+
+    double getTransformationSeconds();
+
+    double getAverageTransformationMillis();
+
+    double getMaxTransformationMillis();
+
+    String getSlowestTransformedClass();
+
+    /**
+     * @return the transformation time in milliseconds of each of the last
+     *         {@link de.unisb.cs.st.javaslicer.tracer.instrumentation.Transformer#RECENT_CLASSES}
+     *         transformed classes
+     */
+    Map<String, Double> getTransformationMillisPerClass();
+
+    /**
+     * @return the number of live objects that have been assigned an object id
+     */
+    int getObjectIdTableSize();
+
+    /**
+     * Finishes the trace and writes the trace file now instead of at the end of the
+     * execution, e.g. to keep the current window of a ring mode trace when a problem
+     * has been noticed.
+     *
+     * This is a one-shot final dump, not a snapshot: tracing ends with this call, and
+     * the rest of the execution is not traced. The trace file is written once, so
+     * later calls (and the end of the execution) do not write it again.
+     *
+     * @return <code>false</code> if the trace file had already been written
+     */
+    boolean dumpTrace();
+
+}
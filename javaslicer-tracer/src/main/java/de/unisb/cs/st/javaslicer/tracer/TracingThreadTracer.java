@@ -22,15 +22,24 @@
  */
 package de.unisb.cs.st.javaslicer.tracer;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
@@ -42,8 +51,12 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
 
+import de.hammacher.util.MultiplexedFileWriter.MultiplexOutputStream;
 import de.hammacher.util.maps.IntegerMap;
+import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes;
 import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes.Type;
 import de.unisb.cs.st.javaslicer.tracer.traceSequences.Identifiable;
 import de.unisb.cs.st.javaslicer.tracer.traceSequences.ObjectIdentifier;
@@ -75,28 +88,125 @@ public class TracingThreadTracer implements ThreadTracer {
         public final long[] longSeqVal;
         public final int count;
 
+        // used instead of the arrays if the job was moved off-heap (see Tracer.setOffHeapBuffers)
+        public final IntBuffer offHeapSeqNr;
+        public final IntBuffer offHeapIntSeqVal;
+        public final LongBuffer offHeapLongSeqVal;
+
         public WriteOutJob(final int[] seqNr, final int[] intSeqVal, final long[] longSeqVal, final int count) {
+            this(seqNr, intSeqVal, longSeqVal, null, null, null, count);
+        }
+
+        private WriteOutJob(final int[] seqNr, final int[] intSeqVal, final long[] longSeqVal,
+                final IntBuffer offHeapSeqNr, final IntBuffer offHeapIntSeqVal,
+                final LongBuffer offHeapLongSeqVal, final int count) {
             super();
             this.seqNr = seqNr;
             this.intSeqVal = intSeqVal;
             this.longSeqVal = longSeqVal;
+            this.offHeapSeqNr = offHeapSeqNr;
+            this.offHeapIntSeqVal = offHeapIntSeqVal;
+            this.offHeapLongSeqVal = offHeapLongSeqVal;
             this.count = count;
         }
 
+        /**
+         * Copies the first <code>count</code> events of the given arrays into direct buffers.
+         * The buffers of <code>reuse</code> are used if it is an off-heap job of the same
+         * type and size, otherwise new ones are allocated.
+         * Must only be called while tracing is paused, since the buffers are instrumented
+         * classes.
+         */
+        public static WriteOutJob moveOffHeap(final int[] seqNr, final int[] intSeqVal,
+                final long[] longSeqVal, final int count, final WriteOutJob reuse) {
+            IntBuffer offHeapSeqNr;
+            IntBuffer offHeapIntSeqVal = null;
+            LongBuffer offHeapLongSeqVal = null;
+            if (reuse != null && reuse.offHeapSeqNr != null && reuse.offHeapSeqNr.capacity() == seqNr.length) {
+                offHeapSeqNr = reuse.offHeapSeqNr;
+                offHeapIntSeqVal = reuse.offHeapIntSeqVal;
+                offHeapLongSeqVal = reuse.offHeapLongSeqVal;
+            } else {
+                offHeapSeqNr = allocateDirect(seqNr.length, 4).asIntBuffer();
+                if (intSeqVal != null)
+                    offHeapIntSeqVal = allocateDirect(seqNr.length, 4).asIntBuffer();
+                else
+                    offHeapLongSeqVal = allocateDirect(seqNr.length, 8).asLongBuffer();
+            }
+            offHeapSeqNr.clear();
+            offHeapSeqNr.put(seqNr, 0, count);
+            if (intSeqVal != null) {
+                offHeapIntSeqVal.clear();
+                offHeapIntSeqVal.put(intSeqVal, 0, count);
+            } else {
+                offHeapLongSeqVal.clear();
+                offHeapLongSeqVal.put(longSeqVal, 0, count);
+            }
+            return new WriteOutJob(null, null, null, offHeapSeqNr, offHeapIntSeqVal, offHeapLongSeqVal, count);
+        }
+
+        private static ByteBuffer allocateDirect(final int numValues, final int bytesPerValue) {
+            return ByteBuffer.allocateDirect(numValues * bytesPerValue).order(ByteOrder.nativeOrder());
+        }
+
+        public boolean isIntJob() {
+            return this.intSeqVal != null || this.offHeapIntSeqVal != null;
+        }
+
+        public boolean isLongJob() {
+            return this.longSeqVal != null || this.offHeapLongSeqVal != null;
+        }
+
+        public int capacity() {
+            return this.seqNr != null ? this.seqNr.length : this.offHeapSeqNr.capacity();
+        }
+
+    }
+
+    /**
+     * The last job of a {@link TraceWriter}. Its (optional) action is run by the writer
+     * thread once all sequences are finished.
+     */
+    private static class FinishJob extends WriteOutJob {
+        public final Runnable whenFinished;
+
+        public FinishJob(final Runnable whenFinished) {
+            super(null, null, null, 0);
+            this.whenFinished = whenFinished;
+        }
     }
-    private static class WriteOutThread extends UntracedThread {
 
-        private static final ThreadPoolExecutor finishers;
-        static {
-            final int numThreads = Runtime.getRuntime().availableProcessors()+1;
-            finishers = new ThreadPoolExecutor(numThreads, numThreads,
+    // tells the TraceWriter to seal the current segment (see Tracer.setSegmentSize)
+    private static final WriteOutJob SEGMENT_END = new WriteOutJob(null, null, null, 0);
+
+    /**
+     * Writes the jobs of one {@link TracingThreadTracer} into its trace sequences.
+     *
+     * There is no dedicated thread per traced thread. Instead, a TraceWriter is scheduled
+     * on the shared {@link #writers} pool whenever it has pending jobs, and it is never
+     * scheduled twice at the same time. So the jobs of one tracer are processed in order,
+     * while the number of writer threads is independent of the number of traced threads.
+     */
+    private static class TraceWriter implements Runnable {
+
+        private static final ThreadPoolExecutor finishers = newUntracedPool("sequence finisher ",
+            Runtime.getRuntime().availableProcessors()+1);
+
+        private static final ThreadPoolExecutor writers = newUntracedPool("trace writer ",
+            Runtime.getRuntime().availableProcessors());
+
+        // a writer processes at most this many jobs before it gives other writers a chance
+        private static final int MAX_JOBS_PER_RUN = MAX_CACHED_BLOCKS;
+
+        private static ThreadPoolExecutor newUntracedPool(final String namePrefix, final int numThreads) {
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(numThreads, numThreads,
                     30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
                     new ThreadFactory() {
                         private final AtomicInteger nextId = new AtomicInteger(0);
 
                         @Override
 						public Thread newThread(final Runnable r) {
-                            final Thread t = new UntracedThread(r, "sequence finisher " + this.nextId.getAndIncrement());
+                            final Thread t = new UntracedThread(r, namePrefix + this.nextId.getAndIncrement());
                             if (!t.isDaemon())
                                 t.setDaemon(true);
                             if (t.getPriority() != Thread.NORM_PRIORITY)
@@ -104,99 +214,314 @@ public class TracingThreadTracer implements ThreadTracer {
                             return t;
                         }
                     });
-            finishers.allowCoreThreadTimeOut(true);
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
         }
 
 
         public final BlockingQueue<WriteOutJob> jobs = new ArrayBlockingQueue<WriteOutJob>(MAX_CACHED_BLOCKS);
 
-        private final TraceSequenceFactory.PerThread traceSequenceFactory;
-        private final IntegerMap<TraceSequence> sequences = new IntegerMap<TraceSequence>();
+        // how often (and how long, in nanoseconds) traced threads had to wait in addJob
+        // because the writers could not keep up. summed up over all TraceWriters.
+        protected static final AtomicLong totalStalls = new AtomicLong(0);
+        protected static final AtomicLong totalStallTime = new AtomicLong(0);
+
+        // drained jobs whose arrays (or direct buffers) can be reused by the ThreadTracer.
+        // in ring mode, these also take all blocks dropped from the window, so that no
+        // block is left to the garbage collector (see the constructor)
+        private final BlockingQueue<WriteOutJob> freeIntJobs;
+        private final BlockingQueue<WriteOutJob> freeLongJobs;
+
+        private final TraceSequenceFactory seqFactory;
+        // both are replaced when a segment is sealed
+        private TraceSequenceFactory.PerThread traceSequenceFactory;
+        private IntegerMap<TraceSequence> sequences = new IntegerMap<TraceSequence>();
         private final List<Type> threadSequenceTypes;
 
         private final Tracer tracer;
+        private final TracingThreadTracer owner;
 
         public CountDownLatch ready = new CountDownLatch(1);
 
-        private final int minPrio;
-        private final int maxPrio;
-
-        public WriteOutThread(final String threadName, final TraceSequenceFactory.PerThread traceSequenceFactory,
-                final List<Type> threadSequenceTypes, final Tracer tracer, final int minPrio, final int maxPrio) {
-            super("Trace Writer for " + threadName);
-            setDaemon(true);
-            setPriority(minPrio);
-            this.minPrio = minPrio;
-            this.maxPrio = maxPrio;
-            this.traceSequenceFactory = traceSequenceFactory;
+        private final int cacheSize;
+
+        // in ring mode (windowSize != 0), only the last windowSize integer and long events
+        // are kept (in the retained jobs), and written to the sequences when finishing.
+        // the memory needed for that is bounded: there are at most
+        // windowSize/cacheSize + 2 + MAX_CACHED_BLOCKS blocks of each type per thread (the
+        // retained ones, the one being filled and the queued ones), since a new block is only
+        // allocated if no dropped one is free. a block holds cacheSize events of 8 (integer)
+        // or 12 (long) bytes.
+        private final long windowSize;
+        private final Queue<WriteOutJob> retainedIntJobs = new ArrayDeque<WriteOutJob>();
+        private long retainedIntEvents = 0;
+        private final Queue<WriteOutJob> retainedLongJobs = new ArrayDeque<WriteOutJob>();
+        private long retainedLongEvents = 0;
+        // whether events have been dropped (in ring mode)
+        public boolean truncated = false;
+
+        // guarded by the monitor of the owner (see addJob)
+        private boolean finishJobAdded = false;
+        // guarded by the monitor of this TraceWriter
+        private boolean scheduled = false;
+        // only accessed by the (single) writer thread currently running this TraceWriter
+        private boolean failed = false;
+
+        public TraceWriter(final TracingThreadTracer owner, final TraceSequenceFactory seqFactory,
+                final List<Type> threadSequenceTypes, final Tracer tracer, final int cacheSize,
+                final long windowSize) {
+            this.owner = owner;
+            this.seqFactory = seqFactory;
+            this.traceSequenceFactory = seqFactory.forThreadTracer(owner);
+            this.cacheSize = cacheSize;
+            this.windowSize = windowSize;
             this.threadSequenceTypes = threadSequenceTypes;
             this.tracer = tracer;
+            if (windowSize == 0) {
+                this.freeIntJobs = new ArrayBlockingQueue<WriteOutJob>(MAX_FREE_BLOCKS);
+                this.freeLongJobs = new ArrayBlockingQueue<WriteOutJob>(MAX_FREE_BLOCKS);
+            } else {
+                // room for every block that can exist, so recycle never drops one
+                final int maxBlocks = (int) Math.min(windowSize / cacheSize + 2 + MAX_CACHED_BLOCKS,
+                    Integer.MAX_VALUE);
+                this.freeIntJobs = new LinkedBlockingQueue<WriteOutJob>(maxBlocks);
+                this.freeLongJobs = new LinkedBlockingQueue<WriteOutJob>(maxBlocks);
+            }
         }
 
         @Override
         public void run() {
+            for (int processed = 0; processed < MAX_JOBS_PER_RUN; ++processed) {
+                final WriteOutJob job = this.jobs.poll();
+                if (job == null) {
+                    synchronized (this) {
+                        // recheck while holding the lock, addJob might just have added a job
+                        if (this.jobs.isEmpty()) {
+                            this.scheduled = false;
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                processJob(job);
+            }
+            // there may be more jobs, but let the other writers do their work first.
+            // we stay scheduled, so this is the only instance working on our jobs.
+            writers.execute(this);
+        }
+
+        private void processJob(final WriteOutJob job) {
             try {
-                while (true) {
-                    WriteOutJob job;
-                    try {
-                        job = this.jobs.take();
-                    } catch (final InterruptedException e) {
-                        this.tracer.error(e);
+                if (job == SEGMENT_END) {
+                    if (!this.failed)
+                        sealSegment();
+                } else if (job.isIntJob()) {
+                    if (this.failed)
                         return;
+                    if (this.windowSize == 0) {
+                        writeIntJob(job, 0);
+                        recycle(job);
+                    } else {
+                        this.retainedIntJobs.add(job);
+                        this.retainedIntEvents += job.count;
+                        this.retainedIntEvents -= dropOldJobs(this.retainedIntJobs, this.retainedIntEvents);
                     }
-                    adjustPriority();
-                    final int count = job.count;
-                    final int[] seqNr = job.seqNr;
-                    if (job.intSeqVal != null) {
-                        final int[] intSeqVal = job.intSeqVal;
-                        for (int i = 0; i < count; ++i) {
-                            TraceSequence seq = this.sequences.get(seqNr[i]);
-                            if (seq == null) {
-                                seq = this.traceSequenceFactory.createTraceSequence(
-                                        this.threadSequenceTypes.get(seqNr[i]), this.tracer);
-                                this.sequences.put(seqNr[i], seq);
-                            }
-                            assert seq instanceof IntegerTraceSequence;
-
-                            ((IntegerTraceSequence) seq).trace(intSeqVal[i]);
-                        }
-                    } else if (job.longSeqVal != null) {
-                        final long[] longSeqVal = job.longSeqVal;
-                        for (int i = 0; i < count; ++i) {
-                            TraceSequence seq = this.sequences.get(seqNr[i]);
-                            if (seq == null) {
-                                seq = this.traceSequenceFactory.createTraceSequence(
-                                        this.threadSequenceTypes.get(seqNr[i]), this.tracer);
-                                this.sequences.put(seqNr[i], seq);
-                            }
-                            assert seq instanceof LongTraceSequence;
-
-                            ((LongTraceSequence) seq).trace(longSeqVal[i]);
-                        }
+                } else if (job.isLongJob()) {
+                    if (this.failed)
+                        return;
+                    if (this.windowSize == 0) {
+                        writeLongJob(job, 0);
+                        recycle(job);
                     } else {
-                        finish();
-                        break;
+                        this.retainedLongJobs.add(job);
+                        this.retainedLongEvents += job.count;
+                        this.retainedLongEvents -= dropOldJobs(this.retainedLongJobs, this.retainedLongEvents);
+                    }
+                } else {
+                    try {
+                        if (!this.failed) {
+                            if (this.windowSize != 0)
+                                writeRetainedJobs();
+                            finish();
+                        }
+                    } finally {
+                        this.ready.countDown();
+                        final Runnable whenFinished = ((FinishJob) job).whenFinished;
+                        if (whenFinished != null)
+                            whenFinished.run();
                     }
                 }
             } catch (final IOException e) {
                 System.err.println("Error writing the trace: " + e);
                 this.tracer.error(e);
+                this.failed = true;
+            }
+        }
+
+        /**
+         * Finishes all current sequences, writes them out as a segment and continues
+         * with new sequences.
+         */
+        private void sealSegment() throws IOException {
+            finish();
+            this.tracer.writeOutSegment(this.owner);
+            this.sequences = new IntegerMap<TraceSequence>();
+            this.traceSequenceFactory = this.seqFactory.forThreadTracer(this.owner);
+        }
+
+        private void writeIntJob(final WriteOutJob job, final int from) throws IOException {
+            final int count = job.count;
+            if (job.offHeapSeqNr != null) {
+                // read the direct buffers in place, so that no heap arrays are needed for them
+                final IntBuffer seqNr = job.offHeapSeqNr;
+                final IntBuffer intSeqVal = job.offHeapIntSeqVal;
+                for (int i = from; i < count; ++i)
+                    getIntSequence(seqNr.get(i)).trace(intSeqVal.get(i));
+                return;
+            }
+            final int[] seqNr = job.seqNr;
+            final int[] intSeqVal = job.intSeqVal;
+            for (int i = from; i < count; ++i)
+                getIntSequence(seqNr[i]).trace(intSeqVal[i]);
+        }
+
+        private void writeLongJob(final WriteOutJob job, final int from) throws IOException {
+            final int count = job.count;
+            if (job.offHeapSeqNr != null) {
+                final IntBuffer seqNr = job.offHeapSeqNr;
+                final LongBuffer longSeqVal = job.offHeapLongSeqVal;
+                for (int i = from; i < count; ++i)
+                    getLongSequence(seqNr.get(i)).trace(longSeqVal.get(i));
+                return;
+            }
+            final int[] seqNr = job.seqNr;
+            final long[] longSeqVal = job.longSeqVal;
+            for (int i = from; i < count; ++i)
+                getLongSequence(seqNr[i]).trace(longSeqVal[i]);
+        }
+
+        private TraceSequence getSequence(final int index) throws IOException {
+            TraceSequence seq = this.sequences.get(index);
+            if (seq == null) {
+                seq = this.traceSequenceFactory.createTraceSequence(
+                        this.threadSequenceTypes.get(index), this.tracer);
+                this.sequences.put(index, seq);
+            }
+            return seq;
+        }
+
+        private IntegerTraceSequence getIntSequence(final int index) throws IOException {
+            final TraceSequence seq = getSequence(index);
+            assert seq instanceof IntegerTraceSequence;
+            return (IntegerTraceSequence) seq;
+        }
+
+        private LongTraceSequence getLongSequence(final int index) throws IOException {
+            final TraceSequence seq = getSequence(index);
+            assert seq instanceof LongTraceSequence;
+            return (LongTraceSequence) seq;
+        }
+
+        private void recycle(final WriteOutJob job) {
+            if (job.capacity() == this.cacheSize) {
+                if (job.isIntJob())
+                    this.freeIntJobs.offer(job);
+                else
+                    this.freeLongJobs.offer(job);
+            }
+        }
+
+        /**
+         * Drops the oldest retained jobs as long as the remaining ones still contain
+         * at least {@link #windowSize} events. The dropped blocks are recycled, so the
+         * traced thread fills them again instead of allocating new ones.
+         *
+         * @return the number of events dropped
+         */
+        private long dropOldJobs(final Queue<WriteOutJob> retainedJobs, final long retainedEvents) {
+            long dropped = 0;
+            WriteOutJob oldest;
+            while ((oldest = retainedJobs.peek()) != null
+                    && retainedEvents - dropped - oldest.count >= this.windowSize) {
+                retainedJobs.poll();
+                dropped += oldest.count;
+                recycle(oldest);
             }
+            if (dropped != 0)
+                this.truncated = true;
+            return dropped;
+        }
 
+        /**
+         * In ring mode, writes the last {@link #windowSize} events of the retained jobs
+         * to the trace sequences.
+         */
+        private void writeRetainedJobs() throws IOException {
+            long skip = this.retainedIntEvents - this.windowSize;
+            for (final WriteOutJob job: this.retainedIntJobs) {
+                writeIntJob(job, skip > 0 ? (int) skip : 0);
+                skip -= job.count;
+            }
+            if (this.retainedIntEvents > this.windowSize)
+                this.truncated = true;
+            this.retainedIntJobs.clear();
+
+            skip = this.retainedLongEvents - this.windowSize;
+            for (final WriteOutJob job: this.retainedLongJobs) {
+                writeLongJob(job, skip > 0 ? (int) skip : 0);
+                skip -= job.count;
+            }
+            if (this.retainedLongEvents > this.windowSize)
+                this.truncated = true;
+            this.retainedLongJobs.clear();
         }
 
+        /**
+         * Queues a job for writing. Jobs are only added while holding the monitor of the
+         * owning ThreadTracer, and jobs arriving after the {@link FinishJob} are rejected,
+         * since their sequences are already finished when they would be processed.
+         */
         public void addJob(final WriteOutJob job) {
+            if (this.finishJobAdded)
+                return;
+            if (job instanceof FinishJob)
+                this.finishJobAdded = true;
             try {
-                this.jobs.put(job);
-                adjustPriority();
+                if (!this.jobs.offer(job)) {
+                    final long startTime = System.nanoTime();
+                    this.jobs.put(job);
+                    final long stallTime = System.nanoTime() - startTime;
+                    totalStalls.incrementAndGet();
+                    totalStallTime.addAndGet(stallTime);
+                    JfrEvents.writeStall(stallTime);
+                }
             } catch (final InterruptedException e) {
                 System.err.println(e);
                 this.tracer.error(e);
+                return;
+            }
+            synchronized (this) {
+                if (this.scheduled)
+                    return;
+                this.scheduled = true;
             }
+            writers.execute(this);
         }
 
-        private void adjustPriority() {
-            this.setPriority(this.minPrio + (this.maxPrio - this.minPrio) * this.jobs.size() / MAX_CACHED_BLOCKS);
+        /**
+         * Returns a drained integer job whose arrays can be reused, or <code>null</code>
+         * if there is none.
+         */
+        public WriteOutJob pollFreeIntJob() {
+            return this.freeIntJobs.poll();
+        }
+
+        /**
+         * Returns a drained long job whose arrays can be reused, or <code>null</code>
+         * if there is none.
+         */
+        public WriteOutJob pollFreeLongJob() {
+            return this.freeLongJobs.poll();
         }
 
         private void finish() throws IOException {
@@ -223,11 +548,24 @@ public class TracingThreadTracer implements ThreadTracer {
             }
 
             this.traceSequenceFactory.finish();
-
-            this.ready.countDown();
         }
 
+        /**
+         * Writes the sequence table into a stream of its own, and only the id of that
+         * stream to <code>out</code>. This way, readers only have to decode the table
+         * of a thread when its trace is actually used.
+         */
         public void writeOut(final DataOutputStream out) throws IOException {
+            final MultiplexOutputStream tableStream = this.tracer.newOutputStream();
+            final DataOutputStream tableOut = new DataOutputStream(new BufferedOutputStream(tableStream));
+            writeTable(tableOut);
+            tableOut.close();
+            this.tracer.streamFinished(tableStream);
+            out.writeByte(TraceSequenceTypes.FORMAT_TABLE_STREAM);
+            out.writeInt(tableStream.getId());
+        }
+
+        private void writeTable(final DataOutputStream out) throws IOException {
             this.traceSequenceFactory.writeOut(out);
             out.writeInt(this.sequences.size());
             for (final Entry<Integer, TraceSequence> seq: this.sequences.entrySet()) {
@@ -242,25 +580,76 @@ public class TracingThreadTracer implements ThreadTracer {
 
     private final long threadId;
     private final String threadName;
+    // weak, since the ThreadTracer is the value of a map with weak thread keys
+    private final WeakReference<Thread> thread;
 
+    // all the following fields are only written by the traced thread itself, so the
+    // tracing methods do not need any synchronization. Other threads only read them
+    // when finishing a thread which does not respond (see finish()); for them, each
+    // event ends with a release store of lastInstructionIndex or of a cache index.
     private volatile int lastInstructionIndex = -1;
     private int[] objectAllocationTraceSequence = new int[4];
     private int uninitializedObjects = 0;
 
     private final Tracer tracer;
     private volatile int paused = 0;
+    // the state of the tracing window (see Tracer.windowState) that is reflected in the
+    // paused counter of this ThreadTracer
+    private int windowState = Tracer.WINDOW_OPEN;
+
+    // the handshake with which other threads finish this ThreadTracer (see finish()).
+    // only changed while holding the monitor of this ThreadTracer.
+    private static final int RUNNING = 0;
+    private static final int FINISH_REQUESTED = 1;
+    private static final int FINISHED = 2;
+    private volatile int finishState = RUNNING;
+    private long finishRequestTime;
+    // how long a finishing thread waits for the traced thread before taking over
+    private static final long FINISH_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // set by the traced thread while it hands off a cache, so that it does not react on
+    // a finish request in between (the instrumented classes used there trace events)
+    private boolean handingOff = false;
+
+    // set (while holding the monitor of this ThreadTracer) when the final jobs have been
+    // handed to the TraceWriter; no further jobs may be added afterwards
+    private boolean writeOutFinished = false;
+    // the state of the traced thread at that point, written by writeOut
+    private int finalLastInstructionIndex;
+    private long finalNumCrossedLabels;
+    private int[] finalMethodStack;
 
     protected static final int MAX_CACHED_BLOCKS = 5;
-
-    private static int CACHE_SIZE = 1<<18;
-    private int[] intSeqNr = new int[CACHE_SIZE];
-    private int[] intSeqVal = new int[CACHE_SIZE];
-    private int intSeqIndex = 0;
-    private int[] longSeqNr = new int[CACHE_SIZE];
-    private long[] longSeqVal = new long[CACHE_SIZE];
-    private int longSeqIndex = 0;
-
-    private final WriteOutThread writeOutThread;
+    // the maximum number of drained blocks (per type) which are kept for reuse
+    protected static final int MAX_FREE_BLOCKS = 2;
+
+    private static final int CACHE_SIZE = 1<<18;
+
+    private final int cacheSize;
+    // if true, full caches are copied to direct buffers when handed off, and the
+    // arrays are kept (see Tracer.setOffHeapBuffers)
+    private final boolean offHeap;
+    // the arrays are only exchanged while holding the monitor of this ThreadTracer.
+    // the traced thread publishes the indexes with release stores (see finish()).
+    private int[] intSeqNr;
+    private int[] intSeqVal;
+    private volatile int intSeqIndex = 0;
+    private int[] longSeqNr;
+    private long[] longSeqVal;
+    private volatile int longSeqIndex = 0;
+
+    private static final AtomicIntegerFieldUpdater<TracingThreadTracer> INT_SEQ_INDEX =
+        AtomicIntegerFieldUpdater.newUpdater(TracingThreadTracer.class, "intSeqIndex");
+    private static final AtomicIntegerFieldUpdater<TracingThreadTracer> LONG_SEQ_INDEX =
+        AtomicIntegerFieldUpdater.newUpdater(TracingThreadTracer.class, "longSeqIndex");
+    private static final AtomicIntegerFieldUpdater<TracingThreadTracer> LAST_INSTRUCTION_INDEX =
+        AtomicIntegerFieldUpdater.newUpdater(TracingThreadTracer.class, "lastInstructionIndex");
+
+    private final TraceWriter traceWriter;
+
+    // the number of events in all blocks handed to the traceWriter
+    private volatile long handedOffEvents = 0;
+    // the value of handedOffEvents when the last segment was sealed (guarded by the monitor)
+    private long segmentStartEvents = 0;
 
     // an array holding the index of one instruction of each method that we are in
     private int stackSize = 0;
@@ -288,82 +677,204 @@ public class TracingThreadTracer implements ThreadTracer {
         debugFile = tmpDebugFile;
     }
 
+    /**
+     * Creates a new TracingThreadTracer for the given thread.
+     *
+     * @param thread the thread to trace
+     * @param threadSequenceTypes the types of all trace sequences (shared by all threads)
+     * @param tracer the Tracer this ThreadTracer belongs to
+     */
     public TracingThreadTracer(final Thread thread,
             final List<Type> threadSequenceTypes, final Tracer tracer) {
         this.threadId = thread.getId();
         this.threadName = thread.getName();
+        this.thread = new WeakReference<Thread>(thread);
         this.tracer = tracer;
-        this.writeOutThread = new WriteOutThread(this.threadName, tracer.seqFactory.forThreadTracer(this),
-                threadSequenceTypes, tracer, Thread.MIN_PRIORITY, Thread.MAX_PRIORITY);
-        this.writeOutThread.start();
+        this.cacheSize = CACHE_SIZE;
+        this.offHeap = tracer.useOffHeapBuffers();
+        this.intSeqNr = new int[this.cacheSize];
+        this.intSeqVal = new int[this.cacheSize];
+        this.longSeqNr = new int[this.cacheSize];
+        this.longSeqVal = new long[this.cacheSize];
+        this.traceWriter = new TraceWriter(this, tracer.seqFactory,
+            threadSequenceTypes, tracer, this.cacheSize, tracer.ringWindowSize);
+        updateWindowState();
     }
 
     @Override
-	public synchronized void traceInt(final int value, final int traceSequenceIndex) {
-        if (this.paused > 0)
+	public void traceInt(final int value, final int traceSequenceIndex) {
+        if (this.paused > 0) {
+            pausedEvent();
             return;
+        }
+        traceIntUnchecked(value, traceSequenceIndex);
+    }
 
-        this.intSeqNr[this.intSeqIndex] = traceSequenceIndex;
-        this.intSeqVal[this.intSeqIndex] = value;
-        if (++this.intSeqIndex == CACHE_SIZE) {
-            pauseTracing();
-            this.writeOutThread.addJob(new WriteOutJob(this.intSeqNr, this.intSeqVal, null, CACHE_SIZE));
+    /**
+     * No check for pause. For internal use only!!
+     */
+    private void traceIntUnchecked(final int value, final int traceSequenceIndex) {
+        final int index = this.intSeqIndex;
+        this.intSeqNr[index] = traceSequenceIndex;
+        this.intSeqVal[index] = value;
+        INT_SEQ_INDEX.lazySet(this, index + 1);
+        if (index + 1 == this.cacheSize)
+            handOffIntSeqs();
+    }
+
+    /**
+     * Hands the full integer cache over to the {@link TraceWriter} and starts a new one.
+     * This is the only point where the tracing thread synchronizes with other threads,
+     * i.e. once per full cache. The BlockingQueue of the TraceWriter
+     * safely publishes the arrays to the writer.
+     */
+    private void handOffIntSeqs() {
+        this.handingOff = true;
+        pauseTracing();
+        try {
+            synchronized (this) {
+                this.intSeqIndex = 0;
+                // if the tracer has already been finished by another thread, the
+                // events are dropped
+                if (this.writeOutFinished)
+                    return;
+                this.handedOffEvents += this.cacheSize;
+                if (this.offHeap) {
+                    // the buffers of an already written block are reused if possible,
+                    // and the arrays are kept
+                    this.traceWriter.addJob(WriteOutJob.moveOffHeap(this.intSeqNr, this.intSeqVal, null,
+                        this.cacheSize, this.traceWriter.pollFreeIntJob()));
+                    sealSegmentIfNecessary();
+                    return;
+                }
+                this.traceWriter.addJob(new WriteOutJob(this.intSeqNr, this.intSeqVal, null, this.cacheSize));
+                // reuse the arrays of an already written block if possible
+                final WriteOutJob free = this.traceWriter.pollFreeIntJob();
+                if (free != null) {
+                    this.intSeqNr = free.seqNr;
+                    this.intSeqVal = free.intSeqVal;
+                } else {
+                    this.intSeqNr = new int[this.cacheSize];
+                    this.intSeqVal = new int[this.cacheSize];
+                }
+                sealSegmentIfNecessary();
+            }
+        } finally {
             resumeTracing();
-            this.intSeqIndex = 0;
-            this.intSeqNr = new int[CACHE_SIZE];
-            this.intSeqVal = new int[CACHE_SIZE];
+            this.handingOff = false;
+        }
+    }
+
+    /**
+     * Lets the TraceWriter seal a segment if enough events have been handed off since
+     * the last one (see {@link Tracer#setSegmentSize(long)}). Must be called while
+     * holding the monitor of this ThreadTracer.
+     */
+    private void sealSegmentIfNecessary() {
+        final long segmentSize = this.tracer.getSegmentSize();
+        if (segmentSize != 0 && this.handedOffEvents - this.segmentStartEvents >= segmentSize) {
+            this.segmentStartEvents = this.handedOffEvents;
+            this.traceWriter.addJob(SEGMENT_END);
         }
     }
 
     @Override
-	public synchronized void traceObject(final Object obj, final int traceSequenceIndex) {
-        if (this.paused > 0)
+	public void traceObject(final Object obj, final int traceSequenceIndex) {
+        if (this.paused > 0) {
+            pausedEvent();
             return;
+        }
+        traceObjectUnchecked(obj, traceSequenceIndex);
+    }
 
+    /**
+     * No check for pause. For internal use only!!
+     */
+    private void traceObjectUnchecked(final Object obj, final int traceSequenceIndex) {
         final long objId;
         if (obj instanceof Identifiable) {
             objId = ((Identifiable)obj).__tracing_get_object_id();
         } else if (obj == null) {
             objId = 0;
         } else {
-            pauseTracing();
+            // no need to pause tracing here, the ObjectIdentifier does not use instrumented classes
             objId = ObjectIdentifier.instance.getObjectId(obj);
-            resumeTracing();
         }
         assert obj == null || objId != 0;
         traceLong(traceSequenceIndex, objId);
     }
 
     /**
-     * Unsynchronized, no check for pause. For internal use only!!
+     * No check for pause. For internal use only!!
      */
     private void traceLong(final int traceSequenceIndex, final long value) {
-        this.longSeqNr[this.longSeqIndex] = traceSequenceIndex;
-        this.longSeqVal[this.longSeqIndex] = value;
-        if (++this.longSeqIndex == CACHE_SIZE) {
-            pauseTracing();
-            this.writeOutThread.addJob(new WriteOutJob(this.longSeqNr, null, this.longSeqVal, CACHE_SIZE));
+        final int index = this.longSeqIndex;
+        this.longSeqNr[index] = traceSequenceIndex;
+        this.longSeqVal[index] = value;
+        LONG_SEQ_INDEX.lazySet(this, index + 1);
+        if (index + 1 == this.cacheSize)
+            handOffLongSeqs();
+    }
+
+    /**
+     * The long counterpart of {@link #handOffIntSeqs()}.
+     */
+    private void handOffLongSeqs() {
+        this.handingOff = true;
+        pauseTracing();
+        try {
+            synchronized (this) {
+                this.longSeqIndex = 0;
+                if (this.writeOutFinished)
+                    return;
+                this.handedOffEvents += this.cacheSize;
+                if (this.offHeap) {
+                    this.traceWriter.addJob(WriteOutJob.moveOffHeap(this.longSeqNr, null, this.longSeqVal,
+                        this.cacheSize, this.traceWriter.pollFreeLongJob()));
+                    sealSegmentIfNecessary();
+                    return;
+                }
+                this.traceWriter.addJob(new WriteOutJob(this.longSeqNr, null, this.longSeqVal, this.cacheSize));
+                final WriteOutJob free = this.traceWriter.pollFreeLongJob();
+                if (free != null) {
+                    this.longSeqNr = free.seqNr;
+                    this.longSeqVal = free.longSeqVal;
+                } else {
+                    this.longSeqNr = new int[this.cacheSize];
+                    this.longSeqVal = new long[this.cacheSize];
+                }
+                sealSegmentIfNecessary();
+            }
+        } finally {
             resumeTracing();
-            this.longSeqIndex = 0;
-            this.longSeqNr = new int[CACHE_SIZE];
-            this.longSeqVal = new long[CACHE_SIZE];
+            this.handingOff = false;
         }
     }
 
     @Override
-	public synchronized void traceLastInstructionIndex(final int traceSequenceIndex) {
-        if (this.paused > 0)
+	public void traceLastInstructionIndex(final int traceSequenceIndex) {
+        if (this.paused > 0) {
+            pausedEvent();
             return;
+        }
 
     	this.numCrossedLabels++;
-        traceInt(this.lastInstructionIndex, traceSequenceIndex);
+        traceIntUnchecked(this.lastInstructionIndex, traceSequenceIndex);
     }
 
     @Override
 	public void passInstruction(final int instructionIndex) {
-        if (this.paused > 0)
+        if (this.paused > 0) {
+            pausedEvent();
             return;
+        }
+        passInstructionUnchecked(instructionIndex);
+    }
 
+    /**
+     * No check for pause. For internal use only!!
+     */
+    private void passInstructionUnchecked(final int instructionIndex) {
         if (DEBUG_TRACE_FILE) {
             if (this.threadId == 1) {
                 pauseTracing();
@@ -372,45 +883,179 @@ public class TracingThreadTracer implements ThreadTracer {
             }
         }
 
-        this.lastInstructionIndex = instructionIndex;
+        LAST_INSTRUCTION_INDEX.lazySet(this, instructionIndex);
     }
 
+    /**
+     * Called by the traced thread on each event while tracing is paused. If another
+     * thread requested to finish this ThreadTracer (see {@link #finish()}), the cached
+     * events are handed off here, by the thread which traced them.
+     */
+    private void pausedEvent() {
+        if (this.finishState == FINISH_REQUESTED && !this.handingOff)
+            finishByOwner();
+    }
+
+    private synchronized void finishByOwner() {
+        if (this.finishState == FINISH_REQUESTED)
+            addFinalJobs(null);
+    }
+
+    /**
+     * Finishes this ThreadTracer and waits until all traced events are written.
+     *
+     * If this is called by another thread than the traced one (e.g. by the shutdown
+     * hook while the traced thread is still running), finishing is a handshake: after
+     * {@link #requestFinish()}, the traced thread hands off its cached events itself on
+     * its next event. Only if it is dead or does not respond within
+     * {@link #FINISH_TIMEOUT_NANOS} (e.g. because it is blocked), the calling thread takes
+     * over and hands off copies of the caches (see {@link #addFinalJobs}). Events traced
+     * concurrently to such a takeover are lost, but no event is ever written out
+     * partially or twice, and no cache is handed off after the final jobs.
+     */
     @Override
-	public synchronized void finish() {
-        pauseTracing();
+	public void finish() {
+        if (this.thread.get() == Thread.currentThread()) {
+            synchronized (this) {
+                requestFinish();
+                if (this.finishState == FINISH_REQUESTED)
+                    addFinalJobs(null);
+            }
+        } else {
+            requestFinish();
+            awaitFinalJobs();
+        }
+        try {
+            this.traceWriter.ready.await();
+        } catch (final InterruptedException e) {
+            this.tracer.error(e);
+        }
+    }
 
-        // this ensures that the finishing tasks are only done once!
-        if (this.writeOutThread.ready.getCount() == 0)
+    /**
+     * Pauses tracing for good and asks the traced thread to hand off its cached events
+     * (see {@link #finish()}). Returns immediately, so that the Tracer can request all
+     * ThreadTracers to finish before waiting for any of them.
+     */
+    protected synchronized void requestFinish() {
+        if (this.finishState != RUNNING)
             return;
+        ++this.paused;
+        this.finishRequestTime = System.nanoTime();
+        this.finishState = FINISH_REQUESTED;
+    }
 
-        while (this.uninitializedObjects > 0) {
-            assert this.objectAllocationTraceSequence[this.uninitializedObjects-1] != 0;
-            traceLong(this.objectAllocationTraceSequence[--this.uninitializedObjects], 0);
+    /**
+     * Waits until the traced thread has reacted on the finish request, or takes over if
+     * it is dead or does not respond in time.
+     */
+    private synchronized void awaitFinalJobs() {
+        while (this.finishState == FINISH_REQUESTED) {
+            final Thread traced = this.thread.get();
+            final long remaining = this.finishRequestTime + FINISH_TIMEOUT_NANOS - System.nanoTime();
+            // isAlive() returning false also makes all actions of the thread visible
+            if (traced == null || !traced.isAlive() || remaining <= 0) {
+                addFinalJobs(null);
+                return;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (final InterruptedException e) {
+                this.tracer.error(e);
+                addFinalJobs(null);
+                return;
+            }
         }
+    }
 
-        if (this.intSeqIndex != 0)
-            this.writeOutThread.addJob(new WriteOutJob(this.intSeqNr, this.intSeqVal, null, this.intSeqIndex));
-        if (this.longSeqIndex != 0)
-            this.writeOutThread.addJob(new WriteOutJob(this.longSeqNr, null, this.longSeqVal, this.longSeqIndex));
+    /**
+     * Finishes the ThreadTracer of a dead thread without waiting for the written events.
+     * The TraceWriter runs <code>whenFinished</code> on the writer pool as soon as all
+     * sequences are finished, so that no application thread has to wait for that.
+     *
+     * @return <code>false</code> if this ThreadTracer had already been finished before,
+     *         in which case <code>whenFinished</code> is not run
+     */
+    protected synchronized boolean finishInBackground(final Runnable whenFinished) {
+        requestFinish();
+        if (this.finishState != FINISH_REQUESTED)
+            return false;
+        // the thread is dead, so there is nobody to wait for
+        addFinalJobs(whenFinished);
+        return true;
+    }
 
-        this.writeOutThread.addJob(new WriteOutJob(null, null, null, 0));
-        try {
-            this.writeOutThread.ready.await();
-        } catch (final InterruptedException e) {
-            this.tracer.error(e);
+    /**
+     * Hands copies of the remaining cached events and the final job to the TraceWriter,
+     * and keeps the state of the traced thread for {@link #writeOut}. Must be called
+     * while holding the monitor of this ThreadTracer, by the traced thread or by a thread
+     * taking over (see {@link #finish()}). The latter only sees the events up to the
+     * last release store of the traced thread, so the (volatile) indexes are read
+     * first, and only the slots below them are copied.
+     */
+    private void addFinalJobs(final Runnable whenFinished) {
+        // set first, so that the events traced by the instrumented classes used below
+        // do not finish again
+        this.finishState = FINISHED;
+        this.finalLastInstructionIndex = this.lastInstructionIndex;
+        final int intCount = this.intSeqIndex;
+        final int longCount = this.longSeqIndex;
+        this.finalNumCrossedLabels = this.numCrossedLabels;
+        // the bound only matters if the traced thread is running concurrently
+        this.finalMethodStack = Arrays.copyOf(this.methodStack, Math.min(this.stackSize, this.methodStack.length));
+
+        if (intCount != 0)
+            this.traceWriter.addJob(new WriteOutJob(Arrays.copyOf(this.intSeqNr, intCount),
+                Arrays.copyOf(this.intSeqVal, intCount), null, intCount));
+
+        final int pendingAllocations = this.uninitializedObjects;
+        if (longCount + pendingAllocations > 0) {
+            // the uninitialized objects are traced as null (id 0)
+            final int[] seqNr = Arrays.copyOf(this.longSeqNr, longCount + pendingAllocations);
+            final long[] seqVal = Arrays.copyOf(this.longSeqVal, longCount + pendingAllocations);
+            for (int i = 0; i < pendingAllocations; ++i) {
+                assert this.objectAllocationTraceSequence[pendingAllocations-1-i] != 0;
+                seqNr[longCount + i] = this.objectAllocationTraceSequence[pendingAllocations-1-i];
+                seqVal[longCount + i] = 0;
+            }
+            this.traceWriter.addJob(new WriteOutJob(seqNr, null, seqVal, longCount + pendingAllocations));
         }
+
+        this.traceWriter.addJob(new FinishJob(whenFinished));
+        this.writeOutFinished = true;
+        notifyAll();
     }
 
     public synchronized void writeOut(final DataOutputStream out) throws IOException {
         finish();
         out.writeLong(this.threadId);
         out.writeUTF(this.threadName);
-        this.writeOutThread.writeOut(out);
-        out.writeInt(this.lastInstructionIndex);
-        out.writeLong(this.numCrossedLabels);
-        out.writeInt(this.stackSize);
-        for (int i = 0; i < this.stackSize; ++i)
-            out.writeInt(this.methodStack[i]);
+        this.traceWriter.writeOut(out);
+        out.writeInt(this.finalLastInstructionIndex);
+        // a trace which only contains the last events (ring mode) is marked by writing the
+        // complement of the number of crossed labels
+        out.writeLong(this.traceWriter.truncated ? ~this.finalNumCrossedLabels : this.finalNumCrossedLabels);
+        out.writeInt(this.finalMethodStack.length);
+        for (final int instructionIndex: this.finalMethodStack)
+            out.writeInt(instructionIndex);
+    }
+
+    /**
+     * Writes the sequences of the segment that has just been sealed by the TraceWriter.
+     * A segment has the same layout as the whole thread trace (see {@link #writeOut}),
+     * but carries no information about the last instruction and is marked by a stack
+     * size of -1.
+     *
+     * This is called by the TraceWriter, so it must not synchronize on this ThreadTracer
+     * (the traced thread may be waiting for the TraceWriter while holding the monitor).
+     */
+    protected void writeOutSegment(final DataOutputStream out) throws IOException {
+        out.writeLong(this.threadId);
+        out.writeUTF(this.threadName);
+        this.traceWriter.writeOut(out);
+        out.writeInt(-1);
+        out.writeLong(0);
+        out.writeInt(-1);
     }
 
     @Override
@@ -424,19 +1069,72 @@ public class TracingThreadTracer implements ThreadTracer {
         assert this.paused >= 0: "resumed more than paused";
     }
 
+    /**
+     * This is called on each method entry (the instrumented code then decides whether to
+     * execute the traced or the untraced version of the method), so this is where
+     * ThreadTracers follow the opening and closing of the tracing window.
+     */
     @Override
 	public boolean isPaused() {
-        return this.paused > 0;
+        if (this.windowState != this.tracer.windowState)
+            updateWindowState();
+        if (this.paused > 0) {
+            pausedEvent();
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void updateWindowState() {
+        final boolean wasPausedByWindow = this.windowState != Tracer.WINDOW_OPEN;
+        this.windowState = this.tracer.windowState;
+        final boolean pausedByWindow = this.windowState != Tracer.WINDOW_OPEN;
+        if (pausedByWindow && !wasPausedByWindow)
+            ++this.paused;
+        else if (wasPausedByWindow && !pausedByWindow)
+            --this.paused;
     }
 
     public long getThreadId() {
         return this.threadId;
     }
 
+    public String getThreadName() {
+        return this.threadName;
+    }
+
+    /**
+     * @return the number of integer and long values traced so far. Since this is read
+     *         without synchronization, the value is only approximate.
+     */
+    public long getTracedEvents() {
+        return this.handedOffEvents + this.intSeqIndex + this.longSeqIndex;
+    }
+
+    /**
+     * @return the number of blocks waiting to be written by the TraceWriter
+     */
+    public int getWriteQueueDepth() {
+        return this.traceWriter.jobs.size();
+    }
+
+    public static long getTotalWriteStalls() {
+        return TraceWriter.totalStalls.get();
+    }
+
+    /**
+     * @return the total time (in nanoseconds) which traced threads waited for the writers
+     */
+    public static long getTotalWriteStallTime() {
+        return TraceWriter.totalStallTime.get();
+    }
+
     @Override
-    public synchronized void enterMethod(final int instructionIndex) {
-        if (this.paused > 0)
+    public void enterMethod(final int instructionIndex) {
+        if (this.paused > 0) {
+            pausedEvent();
             return;
+        }
 
         if (this.stackSize == this.methodStack.length) {
         	int[] newMethodStack = new int[2*this.stackSize];
@@ -446,22 +1144,26 @@ public class TracingThreadTracer implements ThreadTracer {
         this.methodStack[this.stackSize] = instructionIndex;
         ++this.stackSize;
 
-        passInstruction(instructionIndex);
+        passInstructionUnchecked(instructionIndex);
     }
 
     @Override
-    public synchronized void leaveMethod(final int instructionIndex) {
-        if (this.paused > 0)
+    public void leaveMethod(final int instructionIndex) {
+        if (this.paused > 0) {
+            pausedEvent();
             return;
+        }
         --this.stackSize;
 
-        passInstruction(instructionIndex);
+        passInstructionUnchecked(instructionIndex);
     }
 
     @Override
-    public synchronized void objectAllocated(final int instructionIndex, final int traceSequenceNr) {
-        if (this.paused > 0)
+    public void objectAllocated(final int instructionIndex, final int traceSequenceNr) {
+        if (this.paused > 0) {
+            pausedEvent();
             return;
+        }
 
         if (this.uninitializedObjects == this.objectAllocationTraceSequence.length) {
         	int[] newArr = new int[2*this.uninitializedObjects];
@@ -471,15 +1173,17 @@ public class TracingThreadTracer implements ThreadTracer {
         this.objectAllocationTraceSequence[this.uninitializedObjects++] = traceSequenceNr;
         assert traceSequenceNr != 0;
 
-        passInstruction(instructionIndex);
+        passInstructionUnchecked(instructionIndex);
     }
 
     @Override
-    public synchronized void objectInitialized(final Object obj) {
-        if (this.paused == 0) {
-            assert this.uninitializedObjects > 0 && this.objectAllocationTraceSequence[this.uninitializedObjects-1] != 0;
-            traceObject(obj, this.objectAllocationTraceSequence[--this.uninitializedObjects]);
+    public void objectInitialized(final Object obj) {
+        if (this.paused > 0) {
+            pausedEvent();
+            return;
         }
+        assert this.uninitializedObjects > 0 && this.objectAllocationTraceSequence[this.uninitializedObjects-1] != 0;
+        traceObjectUnchecked(obj, this.objectAllocationTraceSequence[--this.uninitializedObjects]);
     }
 
 }
@@ -0,0 +1,196 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer.instrumentation
+ *    Class:     ClassFilter
+ *    Filename:  javaslicer-tracer/src/main/java/de/unisb/cs/st/javaslicer/tracer/instrumentation/ClassFilter.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer.instrumentation;
+
+
+/**
+ * Decides which classes are instrumented, based on user-given include and exclude patterns.
+ *
+ * Patterns are java class names, optionally ending with a <code>*</code>:
+ * <ul>
+ *  <li><code>com.foo.*</code> (or <code>com.foo.</code>) matches all classes in the package
+ *      <code>com.foo</code> and its subpackages,</li>
+ *  <li><code>com.foo.Bar*</code> matches all classes whose name starts with <code>com.foo.Bar</code>,</li>
+ *  <li><code>com.foo.Bar</code> matches the class <code>com.foo.Bar</code> and its nested classes,</li>
+ *  <li><code>*</code> matches all classes.</li>
+ * </ul>
+ * If several patterns match a class, the longest one decides (on a tie, exclusion wins).
+ * If there are include patterns, classes not matching any pattern are excluded.
+ *
+ * All patterns are compiled into a prefix trie, so a lookup only needs one pass
+ * over the class name.
+ */
+public class ClassFilter {
+
+    private static final byte NONE = 0;
+    private static final byte INCLUDE = 1;
+    private static final byte EXCLUDE = 2;
+
+    private static final class Node {
+
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        // sorted
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+
+        // applies to all names having this prefix
+        protected byte prefixVerdict = NONE;
+        // applies to exactly this name and names continuing with '$' (nested classes)
+        protected byte classVerdict = NONE;
+
+        public Node() {
+            // nothing
+        }
+
+        public Node getChild(final char c) {
+            int low = 0;
+            int high = this.keys.length - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final char midKey = this.keys[mid];
+                if (midKey < c)
+                    low = mid + 1;
+                else if (midKey > c)
+                    high = mid - 1;
+                else
+                    return this.children[mid];
+            }
+            return null;
+        }
+
+        public Node getOrAddChild(final char c) {
+            int pos = 0;
+            while (pos < this.keys.length && this.keys[pos] < c)
+                ++pos;
+            if (pos < this.keys.length && this.keys[pos] == c)
+                return this.children[pos];
+
+            final int oldLen = this.keys.length;
+            final char[] newKeys = new char[oldLen + 1];
+            final Node[] newChildren = new Node[oldLen + 1];
+            System.arraycopy(this.keys, 0, newKeys, 0, pos);
+            System.arraycopy(this.children, 0, newChildren, 0, pos);
+            System.arraycopy(this.keys, pos, newKeys, pos + 1, oldLen - pos);
+            System.arraycopy(this.children, pos, newChildren, pos + 1, oldLen - pos);
+            final Node child = new Node();
+            newKeys[pos] = c;
+            newChildren[pos] = child;
+            this.keys = newKeys;
+            this.children = newChildren;
+            return child;
+        }
+
+    }
+
+    private final Node root = new Node();
+    private boolean empty = true;
+    private boolean hasIncludes = false;
+
+    public void addInclude(final String pattern) {
+        add(pattern, INCLUDE);
+        this.hasIncludes = true;
+    }
+
+    public void addExclude(final String pattern) {
+        add(pattern, EXCLUDE);
+    }
+
+    /**
+     * Adds several patterns at once, separated by <code>;</code>.
+     */
+    public void addIncludes(final String patterns) {
+        for (final String pattern: patterns.split(";"))
+            if (pattern.trim().length() > 0)
+                addInclude(pattern);
+    }
+
+    /**
+     * Adds several patterns at once, separated by <code>;</code>.
+     */
+    public void addExcludes(final String patterns) {
+        for (final String pattern: patterns.split(";"))
+            if (pattern.trim().length() > 0)
+                addExclude(pattern);
+    }
+
+    private void add(final String pattern, final byte verdict) {
+        String name = pattern.trim().replace('/', '.');
+        boolean prefix = false;
+        if (name.endsWith("*")) {
+            name = name.substring(0, name.length() - 1);
+            prefix = true;
+        } else if (name.length() == 0 || name.endsWith(".")) {
+            prefix = true;
+        }
+
+        Node node = this.root;
+        for (int i = 0; i < name.length(); ++i)
+            node = node.getOrAddChild(name.charAt(i));
+
+        if (prefix) {
+            if (node.prefixVerdict != EXCLUDE)
+                node.prefixVerdict = verdict;
+        } else {
+            if (node.classVerdict != EXCLUDE)
+                node.classVerdict = verdict;
+        }
+        this.empty = false;
+    }
+
+    public boolean isEmpty() {
+        return this.empty;
+    }
+
+    /**
+     * @param javaClassName the class name in java notation (e.g. <code>java.lang.String</code>)
+     * @return whether the given class should not be instrumented
+     */
+    public boolean isExcluded(final String javaClassName) {
+        if (this.empty)
+            return false;
+
+        byte verdict = NONE;
+        Node node = this.root;
+        final int len = javaClassName.length();
+        for (int i = 0; node != null; ++i) {
+            if (node.prefixVerdict != NONE)
+                verdict = node.prefixVerdict;
+            if (i == len) {
+                if (node.classVerdict != NONE)
+                    verdict = node.classVerdict;
+                break;
+            }
+            final char c = javaClassName.charAt(i);
+            if (c == '$' && node.classVerdict != NONE)
+                verdict = node.classVerdict;
+            node = node.getChild(c);
+        }
+
+        if (verdict == NONE)
+            return this.hasIncludes;
+        return verdict == EXCLUDE;
+    }
+
+}
@@ -0,0 +1,244 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer.instrumentation
+ *    Class:     IndexRelocator
+ *    Filename:  javaslicer-tracer/src/main/java/de/unisb/cs/st/javaslicer/tracer/instrumentation/IndexRelocator.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer.instrumentation;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+
+/**
+ * Moves instrumented code to other instruction indexes and trace sequence indexes.
+ *
+ * Classes are instrumented using indexes starting at 0 (see {@link Transformer}) and then
+ * relocated to a globally reserved range. The instrumenters obtain every index constant
+ * they emit from {@link #instructionIndex(int)} or {@link #traceSeqIndex(int)}. These
+ * return ldc instructions whose constant is a fresh Integer object, which marks them
+ * explicitly: the relocating visitor recognizes them by identity (also if they were
+ * duplicated by the {@link JSRInliner}), and never touches any other constant.
+ *
+ * While relocating, the positions of all relocated constants are recorded
+ * (see {@link #getRelocatedConstants()}), so that classes stored in the
+ * {@link InstrumentationCache} can be relocated again without instrumenting them.
+ */
+public class IndexRelocator implements Opcodes {
+
+    private static final int INSTRUCTION_INDEX = 0;
+    private static final int TRACE_SEQUENCE_INDEX = 1;
+
+    /**
+     * Relocates the index constants of one method and passes all other instructions
+     * on unchanged. The index constants are either identified by the marker objects,
+     * or by their position among the int constants of the method.
+     */
+    private static class RelocatingMethodVisitor extends MethodVisitor {
+
+        private final IndexRelocator relocator;
+        private final int methodNr;
+        private final int instructionIndexOffset;
+        private final int traceSeqIndexOffset;
+
+        // the number of int constants visited so far
+        private int constantNr = 0;
+
+        public RelocatingMethodVisitor(final MethodVisitor mv, final IndexRelocator relocator,
+                final int methodNr, final int instructionIndexOffset, final int traceSeqIndexOffset) {
+            super(ASM5, mv);
+            this.relocator = relocator;
+            this.methodNr = methodNr;
+            this.instructionIndexOffset = instructionIndexOffset;
+            this.traceSeqIndexOffset = traceSeqIndexOffset;
+        }
+
+        private void visitIntConstant(final int value, final Object cst) {
+            final int kind = this.relocator.getKind(this.methodNr, this.constantNr++, cst);
+            if (kind == INSTRUCTION_INDEX)
+                pushConstant(value + this.instructionIndexOffset);
+            else if (kind == TRACE_SEQUENCE_INDEX)
+                pushConstant(value + this.traceSeqIndexOffset);
+            else
+                pushConstant(value);
+        }
+
+        private void pushConstant(final int value) {
+            if (value >= -1 && value <= 5)
+                super.visitInsn(ICONST_0 + value);
+            else if ((byte)value == value)
+                super.visitIntInsn(BIPUSH, value);
+            else if ((short)value == value)
+                super.visitIntInsn(SIPUSH, value);
+            else
+                super.visitLdcInsn(Integer.valueOf(value));
+        }
+
+        @Override
+        public void visitInsn(final int opcode) {
+            if (opcode >= ICONST_M1 && opcode <= ICONST_5)
+                visitIntConstant(opcode - ICONST_0, null);
+            else
+                super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(final int opcode, final int operand) {
+            if (opcode == BIPUSH || opcode == SIPUSH)
+                visitIntConstant(operand, null);
+            else
+                super.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitLdcInsn(final Object cst) {
+            if (cst instanceof Integer)
+                visitIntConstant(((Integer) cst).intValue(), cst);
+            else
+                super.visitLdcInsn(cst);
+        }
+
+    }
+
+    // the marker constants emitted into the instrumented code, with their kind
+    private final Map<Object, Integer> markers;
+
+    // pairs of (method number, constant number << 1 | kind), sorted
+    private int[] positions;
+    private int numPositions;
+    private int nextPosition = 0;
+
+    public IndexRelocator() {
+        this.markers = new IdentityHashMap<Object, Integer>();
+        this.positions = new int[16];
+        this.numPositions = 0;
+    }
+
+    private IndexRelocator(final int[] positions) {
+        this.markers = null;
+        this.positions = positions;
+        this.numPositions = positions.length / 2;
+    }
+
+    /**
+     * Returns an instruction pushing the given (local) instruction index, which is
+     * moved to the reserved range when the class is relocated.
+     */
+    public AbstractInsnNode instructionIndex(final int index) {
+        return new LdcInsnNode(mark(index, INSTRUCTION_INDEX));
+    }
+
+    /**
+     * Returns an instruction pushing the given (local) trace sequence index, which is
+     * moved to the reserved range when the class is relocated.
+     */
+    public AbstractInsnNode traceSeqIndex(final int index) {
+        return new LdcInsnNode(mark(index, TRACE_SEQUENCE_INDEX));
+    }
+
+    @SuppressWarnings("deprecation")
+    private Integer mark(final int value, final int kind) {
+        // a new object, *not* Integer.valueOf, so that it can be recognized by identity
+        final Integer constant = new Integer(value);
+        this.markers.put(constant, kind);
+        return constant;
+    }
+
+    /**
+     * @return the kind of the given int constant, or -1 if it is not relocated
+     */
+    int getKind(final int methodNr, final int constantNr, final Object cst) {
+        if (this.markers != null) {
+            final Integer kind = cst == null ? null : this.markers.get(cst);
+            if (kind == null)
+                return -1;
+            if (this.numPositions * 2 == this.positions.length)
+                this.positions = Arrays.copyOf(this.positions, 2 * this.positions.length);
+            this.positions[2 * this.numPositions] = methodNr;
+            this.positions[2 * this.numPositions + 1] = (constantNr << 1) | kind.intValue();
+            ++this.numPositions;
+            return kind.intValue();
+        }
+        if (this.nextPosition == this.numPositions
+                || this.positions[2 * this.nextPosition] != methodNr
+                || (this.positions[2 * this.nextPosition + 1] >>> 1) != constantNr)
+            return -1;
+        return this.positions[2 * this.nextPosition++ + 1] & 1;
+    }
+
+    /**
+     * Returns a visitor that relocates the visited instrumented code and passes it on to
+     * the given visitor.
+     * This visitor has to be placed behind all visitors which may change the
+     * instructions (like the {@link JSRInliner}), so that the recorded positions
+     * match the written class.
+     */
+    public ClassVisitor relocate(final ClassVisitor cv, final int instructionIndexOffset,
+            final int traceSeqIndexOffset) {
+        return new ClassVisitor(ASM5, cv) {
+            private int nextMethodNr = 0;
+            @Override
+            public MethodVisitor visitMethod(final int access, final String name, final String desc,
+                    final String signature, final String[] exceptions) {
+                final int methodNr = this.nextMethodNr++;
+                final MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+                return mv == null ? null : new RelocatingMethodVisitor(mv, IndexRelocator.this,
+                    methodNr, instructionIndexOffset, traceSeqIndexOffset);
+            }
+        };
+    }
+
+    /**
+     * Returns the positions of all constants which have been relocated by the visitor
+     * returned by {@link #relocate(ClassVisitor, int, int)}. They can be passed to
+     * {@link #relocate(byte[], int[], int, int)} to relocate the written class again.
+     */
+    public int[] getRelocatedConstants() {
+        return Arrays.copyOf(this.positions, 2 * this.numPositions);
+    }
+
+    /**
+     * Relocates an instrumented class file again.
+     *
+     * @param relocatedConstants the positions of the index constants, as returned by
+     *                           {@link #getRelocatedConstants()} when the class was written
+     * @throws IllegalArgumentException if the positions do not match the class
+     */
+    public static byte[] relocate(final byte[] classfileBuffer, final int[] relocatedConstants,
+            final int instructionIndexOffset, final int traceSeqIndexOffset) {
+        if (instructionIndexOffset == 0 && traceSeqIndexOffset == 0)
+            return classfileBuffer;
+        final IndexRelocator relocator = new IndexRelocator(relocatedConstants);
+        final ClassReader reader = new ClassReader(classfileBuffer);
+        final ClassWriter writer = new ClassWriter(0);
+        reader.accept(relocator.relocate(writer, instructionIndexOffset, traceSeqIndexOffset), 0);
+        if (relocator.nextPosition != relocator.numPositions)
+            throw new IllegalArgumentException("index constants do not match the class file");
+        return writer.toByteArray();
+    }
+
+}
@@ -0,0 +1,323 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer.instrumentation
+ *    Class:     InstrumentationCache
+ *    Filename:  javaslicer-tracer/src/main/java/de/unisb/cs/st/javaslicer/tracer/instrumentation/InstrumentationCache.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer.instrumentation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import de.hammacher.util.StringCacheInput;
+import de.hammacher.util.StringCacheOutput;
+import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadClass;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.instructions.AbstractInstruction;
+import de.unisb.cs.st.javaslicer.tracer.Tracer;
+
+/**
+ * An on-disk cache of instrumented classes, so that the (expensive) instrumentation
+ * only has to be done once per class.
+ *
+ * The cache is keyed by a hash over the original class file, the tracer version and
+ * all settings that influence the instrumentation of the class.
+ * Each entry contains the instrumented class file and the {@link ReadClass}.
+ * Since instruction indexes and trace sequence indexes are assigned globally in the
+ * order in which classes are loaded, a cached class is relocated to freshly reserved
+ * indexes when it is loaded again. The positions of the index constants in the class
+ * file are stored along with it (see {@link IndexRelocator#getRelocatedConstants()}).
+ *
+ * Each entry starts with the length and a CRC32 checksum of its contents, so that
+ * truncated or otherwise corrupted entries are detected (and ignored).
+ *
+ * All methods are thread safe.
+ */
+public class InstrumentationCache {
+
+    private static final int MAGIC = 0x4a534933; // "JSI3"
+
+    private static final String FILE_SUFFIX = ".jsc";
+
+    public static class CachedClass {
+
+        public final ReadClass readClass;
+        public final byte[] classfileBuffer;
+
+        public CachedClass(final ReadClass readClass, final byte[] classfileBuffer) {
+            this.readClass = readClass;
+            this.classfileBuffer = classfileBuffer;
+        }
+
+    }
+
+    private final File directory;
+    private final String tracerVersion;
+
+    private final AtomicInteger hits = new AtomicInteger(0);
+    private final AtomicInteger misses = new AtomicInteger(0);
+
+    /**
+     * @param directory the directory holding the cache entries (created if necessary)
+     * @param tracerVersion a string identifying the version of the tracer; entries
+     *                      written by another version are never used
+     */
+    public InstrumentationCache(final File directory, final String tracerVersion) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("cannot create cache directory " + directory);
+        this.directory = directory;
+        this.tracerVersion = tracerVersion;
+        // make sure that the digest is available, and all needed classes are loaded
+        newDigest();
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException("no SHA-1 message digest available", e);
+        }
+    }
+
+    /**
+     * Computes the cache key of a class.
+     *
+     * @param javaClassName the name of the class
+     * @param classfileBuffer the original (uninstrumented) class file
+     * @param settings the settings which influence the instrumentation of this class
+     * @return the key, or <code>null</code> if it cannot be computed
+     */
+    public String getKey(final String javaClassName, final byte[] classfileBuffer, final String settings) {
+        final MessageDigest digest;
+        try {
+            digest = newDigest();
+        } catch (final IOException e) {
+            return null;
+        }
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final DataOutputStream headerOut = new DataOutputStream(header);
+        try {
+            headerOut.writeUTF(this.tracerVersion);
+            headerOut.writeUTF(javaClassName);
+            headerOut.writeUTF(settings);
+        } catch (final IOException e) {
+            // cannot happen on a ByteArrayOutputStream
+            return null;
+        }
+        digest.update(header.toByteArray());
+        digest.update(classfileBuffer);
+        final byte[] hash = digest.digest();
+        final char[] hex = new char[2*hash.length];
+        for (int i = 0; i < hash.length; ++i) {
+            hex[2*i] = Character.forDigit((hash[i] >> 4) & 0xf, 16);
+            hex[2*i+1] = Character.forDigit(hash[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    private File getFile(final String key) {
+        return new File(this.directory, key + FILE_SUFFIX);
+    }
+
+    /**
+     * Loads a cached class, and relocates it to freshly reserved instruction and trace
+     * sequence indexes.
+     *
+     * @return the cached class, or <code>null</code> if it is not in the cache
+     */
+    public CachedClass load(final String key, final Tracer tracer) {
+        final File file = getFile(key);
+        if (!file.isFile()) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+
+        DataInputStream in = null;
+        final int oldInstrStart;
+        final int numInstructions;
+        final TraceSequenceTypes.Type[] seqTypes;
+        final int oldSeqStart;
+        final byte[] readClassData;
+        final byte[] classData;
+        final int[] relocatedConstants;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            if (in.readInt() != MAGIC) {
+                this.misses.incrementAndGet();
+                return null;
+            }
+            final int length = in.readInt();
+            final long checksum = in.readLong();
+            if (length < 0 || length != file.length() - 16)
+                throw new IOException("corrupted entry (wrong length)");
+            final byte[] data = new byte[length];
+            in.readFully(data);
+            in.close();
+            final CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            if (crc.getValue() != checksum)
+                throw new IOException("corrupted entry (wrong checksum)");
+            in = new DataInputStream(new ByteArrayInputStream(data));
+            oldInstrStart = in.readInt();
+            numInstructions = in.readInt();
+            oldSeqStart = in.readInt();
+            seqTypes = new TraceSequenceTypes.Type[in.readInt()];
+            for (int i = 0; i < seqTypes.length; ++i)
+                seqTypes[i] = in.readBoolean() ? TraceSequenceTypes.Type.LONG : TraceSequenceTypes.Type.INTEGER;
+            readClassData = new byte[in.readInt()];
+            in.readFully(readClassData);
+            classData = new byte[in.readInt()];
+            in.readFully(classData);
+            relocatedConstants = new int[in.readInt()];
+            for (int i = 0; i < relocatedConstants.length; ++i)
+                relocatedConstants[i] = in.readInt();
+        } catch (final IOException e) {
+            System.err.println("Error reading cached class " + file + ": " + e);
+            this.misses.incrementAndGet();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+        // reserve the indexes first. the class may not be relocated to other indexes
+        // afterwards, since classes may be loaded (and instrumented) while reading.
+        final int newInstrStart = AbstractInstruction.reserveIndexes(numInstructions);
+        final int newSeqStart = tracer.reserveTraceSequences(Arrays.asList(seqTypes));
+        final int instructionIndexOffset = newInstrStart - oldInstrStart;
+        final int traceSeqIndexOffset = newSeqStart - oldSeqStart;
+
+        final ReadClass readClass;
+        final byte[] relocatedClassData;
+        try {
+            readClass = ReadClass.readFrom(new DataInputStream(new ByteArrayInputStream(readClassData)),
+                new StringCacheInput(), instructionIndexOffset, traceSeqIndexOffset);
+            relocatedClassData = IndexRelocator.relocate(classData, relocatedConstants,
+                instructionIndexOffset, traceSeqIndexOffset);
+        } catch (final IOException e) {
+            // the reserved indexes are lost, but that does not harm
+            System.err.println("Error reading cached class " + file + ": " + e);
+            this.misses.incrementAndGet();
+            return null;
+        } catch (final IllegalArgumentException e) {
+            System.err.println("Error relocating cached class " + file + ": " + e.getMessage());
+            this.misses.incrementAndGet();
+            return null;
+        }
+
+        this.hits.incrementAndGet();
+        return new CachedClass(readClass, relocatedClassData);
+    }
+
+    /**
+     * Stores an instrumented class in the cache.
+     *
+     * @param key the key computed by {@link #getKey}
+     * @param readClass the ReadClass built while instrumenting the class
+     * @param numInstructions the number of instruction indexes used by this class
+     * @param seqStart the first trace sequence index used by this class
+     * @param seqEnd the first trace sequence index not used by this class any more
+     * @param tracer the tracer which assigned the trace sequences
+     * @param classfileBuffer the instrumented class
+     * @param relocatedConstants the positions of the index constants in the instrumented class
+     */
+    public void store(final String key, final ReadClass readClass, final int numInstructions,
+            final int seqStart, final int seqEnd, final Tracer tracer, final byte[] classfileBuffer,
+            final int[] relocatedConstants) {
+        final File file = getFile(key);
+        File tmpFile = null;
+        DataOutputStream out = null;
+        try {
+            final ByteArrayOutputStream readClassData = new ByteArrayOutputStream();
+            final DataOutputStream readClassOut = new DataOutputStream(readClassData);
+            readClass.writeOut(readClassOut, new StringCacheOutput());
+            readClassOut.close();
+
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            out = new DataOutputStream(data);
+            out.writeInt(readClass.getInstructionNumberStart());
+            out.writeInt(numInstructions);
+            out.writeInt(seqStart);
+            out.writeInt(seqEnd - seqStart);
+            for (int seq = seqStart; seq < seqEnd; ++seq)
+                out.writeBoolean(tracer.getTraceSequenceType(seq) == TraceSequenceTypes.Type.LONG);
+            out.writeInt(readClassData.size());
+            readClassData.writeTo(out);
+            out.writeInt(classfileBuffer.length);
+            out.write(classfileBuffer);
+            out.writeInt(relocatedConstants.length);
+            for (final int pos: relocatedConstants)
+                out.writeInt(pos);
+            out.close();
+            final CRC32 crc = new CRC32();
+            final byte[] bytes = data.toByteArray();
+            crc.update(bytes, 0, bytes.length);
+
+            // the name of the temporary file must be unique across all JVMs using this cache
+            tmpFile = File.createTempFile(key, ".tmp", this.directory);
+            out = new DataOutputStream(new FileOutputStream(tmpFile));
+            out.writeInt(MAGIC);
+            out.writeInt(bytes.length);
+            out.writeLong(crc.getValue());
+            out.write(bytes);
+            out.close();
+            out = null;
+            // another JVM may have written the same entry in the meantime, which is fine
+            if (!tmpFile.renameTo(file) && !file.isFile())
+                System.err.println("Error storing cached class " + file);
+        } catch (final IOException e) {
+            System.err.println("Error storing cached class " + file + ": " + e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (final IOException e) {
+                    // ignore
+                }
+            }
+            if (tmpFile != null)
+                tmpFile.delete();
+        }
+    }
+
+    public int getHits() {
+        return this.hits.get();
+    }
+
+    public int getMisses() {
+        return this.misses.get();
+    }
+
+}
@@ -0,0 +1,121 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer.instrumentation
+ *    Class:     MethodTrigger
+ *    Filename:  javaslicer-tracer/src/main/java/de/unisb/cs/st/javaslicer/tracer/instrumentation/MethodTrigger.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer.instrumentation;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import de.unisb.cs.st.javaslicer.tracer.Tracer;
+
+/**
+ * A method whose entry or (normal) exit opens or closes the tracing window.
+ *
+ * The trigger is given as <code>&lt;class&gt;.&lt;method&gt;[:entry|:exit]</code>, e.g.
+ * <code>com.foo.Handler.process:exit</code>. It applies to all overloads of the method.
+ */
+public class MethodTrigger implements Opcodes {
+
+    private final String javaClassName;
+    private final String methodName;
+    private final boolean onExit;
+
+    public MethodTrigger(final String javaClassName, final String methodName, final boolean onExit) {
+        this.javaClassName = javaClassName;
+        this.methodName = methodName;
+        this.onExit = onExit;
+    }
+
+    /**
+     * @return the parsed trigger, or <code>null</code> if the string is not a valid trigger
+     */
+    public static MethodTrigger parse(final String str) {
+        String method = str.trim();
+        boolean onExit = false;
+        final int colonPos = method.indexOf(':');
+        if (colonPos != -1) {
+            final String when = method.substring(colonPos + 1);
+            if ("exit".equalsIgnoreCase(when))
+                onExit = true;
+            else if (!"entry".equalsIgnoreCase(when))
+                return null;
+            method = method.substring(0, colonPos);
+        }
+        final int dotPos = method.lastIndexOf('.');
+        if (dotPos <= 0 || dotPos == method.length() - 1)
+            return null;
+        return new MethodTrigger(method.substring(0, dotPos).replace('/', '.'),
+            method.substring(dotPos + 1), onExit);
+    }
+
+    public String getJavaClassName() {
+        return this.javaClassName;
+    }
+
+    /**
+     * Inserts a call to the given (parameterless) method of the {@link Tracer} instance
+     * at the entry or before each return of the trigger method, if it is contained in
+     * the given class.
+     *
+     * This has to be done after the tracing instrumentation, because on method entry,
+     * the call has to precede the check whether tracing is paused.
+     */
+    public void transform(final ClassNode classNode, final String javaClassNameOfNode, final String tracerMethod) {
+        if (!this.javaClassName.equals(javaClassNameOfNode))
+            return;
+
+        for (final Object methodObj: classNode.methods) {
+            final MethodNode method = (MethodNode) methodObj;
+            if (!this.methodName.equals(method.name) || method.instructions.size() == 0)
+                continue;
+            if (this.onExit) {
+                for (final AbstractInsnNode insn: method.instructions.toArray()) {
+                    // info: the return statements opcodes lie between 172 (IRETURN) and 177 (RETURN)
+                    if (insn.getOpcode() >= IRETURN && insn.getOpcode() <= RETURN)
+                        method.instructions.insertBefore(insn, getTracerCall(tracerMethod));
+                }
+            } else {
+                method.instructions.insert(getTracerCall(tracerMethod));
+            }
+        }
+    }
+
+    private static InsnList getTracerCall(final String tracerMethod) {
+        final InsnList call = new InsnList();
+        call.add(new MethodInsnNode(INVOKESTATIC, Type.getInternalName(Tracer.class),
+                "getInstance", "()L"+Type.getInternalName(Tracer.class)+";", false));
+        call.add(new MethodInsnNode(INVOKEVIRTUAL, Type.getInternalName(Tracer.class),
+                tracerMethod, "()V", false));
+        return call;
+    }
+
+    @Override
+    public String toString() {
+        return this.javaClassName + "." + this.methodName + (this.onExit ? ":exit" : ":entry");
+    }
+
+}
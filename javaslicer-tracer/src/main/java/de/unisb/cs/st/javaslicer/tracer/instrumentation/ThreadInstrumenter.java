@@ -38,8 +38,9 @@ import de.unisb.cs.st.javaslicer.tracer.Tracer;
 
 public class ThreadInstrumenter extends TracingClassInstrumenter {
 
-    public ThreadInstrumenter(final ReadClass readClass, final Tracer tracer) {
-        super(readClass, tracer, false);
+    public ThreadInstrumenter(final ReadClass readClass, final Tracer tracer,
+            final IndexRelocator indexRelocator) {
+        super(readClass, tracer, indexRelocator, false);
         if (tracer.debug && readClass != null)
             System.out.println("instrumenting " + readClass.getName() + " (special)");
     }
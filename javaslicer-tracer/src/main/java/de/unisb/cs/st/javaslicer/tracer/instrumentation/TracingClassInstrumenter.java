@@ -48,17 +48,24 @@ import de.unisb.cs.st.javaslicer.tracer.Tracer;
 public class TracingClassInstrumenter implements Opcodes {
 
     private final Tracer tracer;
+    private final IndexRelocator indexRelocator;
     private final ReadClass readClass;
 
-    public TracingClassInstrumenter(final ReadClass readClass, final Tracer tracer) {
-        this(readClass, tracer, true);
+    /**
+     * @param indexRelocator receives all instruction and trace sequence indexes which
+     *                       are emitted into the instrumented code
+     */
+    public TracingClassInstrumenter(final ReadClass readClass, final Tracer tracer,
+            final IndexRelocator indexRelocator) {
+        this(readClass, tracer, indexRelocator, true);
     }
 
     protected TracingClassInstrumenter(final ReadClass readClass, final Tracer tracer,
-            final boolean printDebug) {
+            final IndexRelocator indexRelocator, final boolean printDebug) {
         if (tracer.debug && printDebug)
             System.out.println("instrumenting " + readClass.getName());
         this.tracer = tracer;
+        this.indexRelocator = indexRelocator;
         this.readClass = readClass;
     }
 
@@ -92,7 +99,7 @@ public class TracingClassInstrumenter implements Opcodes {
             oldMethod = null;
         }
 
-        new TracingMethodInstrumenter(this.tracer, readMethod, classNode, method).transform(methodIt);
+        new TracingMethodInstrumenter(this.tracer, this.indexRelocator, readMethod, classNode, method).transform(methodIt);
 
         // test the size of the instrumented method
         final ClassWriter testCW = new ClassWriter(0);
@@ -164,6 +164,7 @@ public class TracingMethodInstrumenter implements Opcodes {
     private static enum InstructionType { METHODENTRY, METHODEXIT, SAFE, UNSAFE }
 
     private final Tracer tracer;
+    private final IndexRelocator indexRelocator;
     private final ReadMethod readMethod;
     private final ClassNode classNode;
     private final MethodNode methodNode;
@@ -181,7 +182,7 @@ public class TracingMethodInstrumenter implements Opcodes {
     private final Map<TableSwitchInstruction, Pair<LabelNode, List<LabelNode>>> tableSwitchInstructions
         = new HashMap<TableSwitchInstruction, Pair<LabelNode, List<LabelNode>>>();
 
-    // statistics
+    // statistics (not synchronized, so they are only approximate if classes are instrumented in parallel)
     private static ReadClass lastClass = null;
     private static int statsClasses = 0;
     private static int statsMethods = 0;
@@ -200,8 +201,10 @@ public class TracingMethodInstrumenter implements Opcodes {
     private int firstLine = -1;
     private int outstandingInitializations = 0;
 
-    public TracingMethodInstrumenter(final Tracer tracer, final ReadMethod readMethod, final ClassNode classNode, final MethodNode methodNode) {
+    public TracingMethodInstrumenter(final Tracer tracer, final IndexRelocator indexRelocator,
+            final ReadMethod readMethod, final ClassNode classNode, final MethodNode methodNode) {
         this.tracer = tracer;
+        this.indexRelocator = indexRelocator;
         this.readMethod = readMethod;
         this.classNode = classNode;
         this.methodNode = methodNode;
@@ -648,7 +651,7 @@ public class TracingMethodInstrumenter implements Opcodes {
         if (objectTraceSeqIndex != -1) {
             this.instructionIterator.add(new VarInsnNode(ALOAD, this.tracerLocalVarIndex));
             this.instructionIterator.add(new InsnNode(SWAP));
-            this.instructionIterator.add(getIntConstInsn(objectTraceSeqIndex));
+            this.instructionIterator.add(this.indexRelocator.traceSeqIndex(objectTraceSeqIndex));
             this.instructionIterator.add(new MethodInsnNode(
                     INVOKEINTERFACE, Type.getInternalName(ThreadTracer.class),
                     "traceObject", "(Ljava/lang/Object;I)V", true));
@@ -781,12 +784,12 @@ public class TracingMethodInstrumenter implements Opcodes {
             // the top two words on the stack are the array index and the array reference
             this.instructionIterator.add(new VarInsnNode(ALOAD, this.tracerLocalVarIndex));
             this.instructionIterator.add(new InsnNode(SWAP));
-            this.instructionIterator.add(getIntConstInsn(indexTraceSeqIndex));
+            this.instructionIterator.add(this.indexRelocator.traceSeqIndex(indexTraceSeqIndex));
             this.instructionIterator.add(new MethodInsnNode(INVOKEINTERFACE,
                     Type.getInternalName(ThreadTracer.class), "traceInt", "(II)V", true));
             this.instructionIterator.add(new VarInsnNode(ALOAD, this.tracerLocalVarIndex));
             this.instructionIterator.add(new InsnNode(SWAP));
-            this.instructionIterator.add(getIntConstInsn(arrayTraceSeqIndex));
+            this.instructionIterator.add(this.indexRelocator.traceSeqIndex(arrayTraceSeqIndex));
             this.instructionIterator.add(new MethodInsnNode(INVOKEINTERFACE,
                     Type.getInternalName(ThreadTracer.class), "traceObject", "(Ljava/lang/Object;I)V", true));
             // and move to the position where it was before entering this method
@@ -828,7 +831,7 @@ public class TracingMethodInstrumenter implements Opcodes {
         this.instructionIterator.add(new InsnNode(DUP));
         this.instructionIterator.add(new VarInsnNode(ALOAD, this.tracerLocalVarIndex));
         this.instructionIterator.add(new InsnNode(SWAP));
-        this.instructionIterator.add(getIntConstInsn(newObjectIdSeqIndex));
+        this.instructionIterator.add(this.indexRelocator.traceSeqIndex(newObjectIdSeqIndex));
         this.instructionIterator.add(new MethodInsnNode(INVOKEINTERFACE,
             Type.getInternalName(ThreadTracer.class), "traceObject",
             "(Ljava/lang/Object;I)V", true));
@@ -841,7 +844,7 @@ public class TracingMethodInstrumenter implements Opcodes {
         this.instructionIterator.add(handlerLabel);
         this.instructionIterator.add(new VarInsnNode(ALOAD, this.tracerLocalVarIndex));
         this.instructionIterator.add(new InsnNode(ACONST_NULL));
-        this.instructionIterator.add(getIntConstInsn(newObjectIdSeqIndex));
+        this.instructionIterator.add(this.indexRelocator.traceSeqIndex(newObjectIdSeqIndex));
         this.instructionIterator.add(new MethodInsnNode(INVOKEINTERFACE,
             Type.getInternalName(ThreadTracer.class), "traceObject",
                 "(Ljava/lang/Object;I)V", true));
@@ -903,8 +906,8 @@ public class TracingMethodInstrumenter implements Opcodes {
         // created multi-dimensional array, and the sequence ids
         this.instructionIterator.add(new InsnNode(DUP_X1));
         this.instructionIterator.add(new VarInsnNode(ALOAD, this.tracerLocalVarIndex));
-        this.instructionIterator.add(getIntConstInsn(newObjCountSeqIndex));
-        this.instructionIterator.add(getIntConstInsn(newObjIdSeqIndex));
+        this.instructionIterator.add(this.indexRelocator.traceSeqIndex(newObjCountSeqIndex));
+        this.instructionIterator.add(this.indexRelocator.traceSeqIndex(newObjIdSeqIndex));
         this.instructionIterator.add(new MethodInsnNode(INVOKESTATIC,
             Type.getInternalName(TracingMethodInstrumenter.class), "traceMultiANewArray",
             "([I[Ljava/lang/Object;"+Type.getDescriptor(ThreadTracer.class)+"II)V", false));
@@ -1012,8 +1015,8 @@ public class TracingMethodInstrumenter implements Opcodes {
             this.readMethod.addInstruction(instruction);
             this.instructionIterator.previous();
             this.instructionIterator.add(new VarInsnNode(ALOAD, this.tracerLocalVarIndex));
-            this.instructionIterator.add(getIntConstInsn(instruction.getIndex()));
-            this.instructionIterator.add(getIntConstInsn(newObjectIdSeqIndex));
+            this.instructionIterator.add(this.indexRelocator.instructionIndex(instruction.getIndex()));
+            this.instructionIterator.add(this.indexRelocator.traceSeqIndex(newObjectIdSeqIndex));
             this.instructionIterator.add(new MethodInsnNode(INVOKEINTERFACE,
                     Type.getInternalName(ThreadTracer.class), "objectAllocated",
                     "(II)V", true));
@@ -1061,7 +1064,7 @@ public class TracingMethodInstrumenter implements Opcodes {
 
             // at runtime: push sequence index on the stack and call method to trace last executed instruction
             this.instructionIterator.add(new VarInsnNode(ALOAD, this.tracerLocalVarIndex));
-            this.instructionIterator.add(getIntConstInsn(lm.getTraceSeqIndex()));
+            this.instructionIterator.add(this.indexRelocator.traceSeqIndex(lm.getTraceSeqIndex()));
             this.instructionIterator.add(new MethodInsnNode(INVOKEINTERFACE,
                     Type.getInternalName(ThreadTracer.class), "traceLastInstructionIndex", "(I)V", true));
 
@@ -1091,7 +1094,7 @@ public class TracingMethodInstrumenter implements Opcodes {
             }
             if (methodName != null) {
                 this.instructionIterator.add(new VarInsnNode(ALOAD, this.tracerLocalVarIndex));
-                this.instructionIterator.add(getIntConstInsn(lm.getIndex()));
+                this.instructionIterator.add(this.indexRelocator.instructionIndex(lm.getIndex()));
                 this.instructionIterator.add(new MethodInsnNode(INVOKEINTERFACE,
                         Type.getInternalName(ThreadTracer.class), methodName, "(I)V", true));
             }
@@ -1122,7 +1125,7 @@ public class TracingMethodInstrumenter implements Opcodes {
         if (methodName != null) {
             this.instructionIterator.previous();
             this.instructionIterator.add(new VarInsnNode(ALOAD, this.tracerLocalVarIndex));
-            this.instructionIterator.add(getIntConstInsn(instruction.getIndex()));
+            this.instructionIterator.add(this.indexRelocator.instructionIndex(instruction.getIndex()));
             this.instructionIterator.add(new MethodInsnNode(INVOKEINTERFACE,
                     Type.getInternalName(ThreadTracer.class), methodName, "(I)V", true));
             this.instructionIterator.next();
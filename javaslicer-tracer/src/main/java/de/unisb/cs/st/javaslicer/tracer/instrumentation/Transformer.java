@@ -31,7 +31,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -52,10 +54,12 @@ import org.objectweb.asm.util.CheckClassAdapter;
 import org.objectweb.asm.util.Textifier;
 import org.objectweb.asm.util.TraceMethodVisitor;
 
+import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.Field;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadClass;
 import de.unisb.cs.st.javaslicer.common.classRepresentation.instructions.AbstractInstruction;
 import de.unisb.cs.st.javaslicer.common.exceptions.TracerException;
+import de.unisb.cs.st.javaslicer.tracer.JfrEvents;
 import de.unisb.cs.st.javaslicer.tracer.ThreadTracer;
 import de.unisb.cs.st.javaslicer.tracer.Tracer;
 
@@ -91,18 +95,30 @@ public class Transformer implements ClassFileTransformer {
     private final Set<String> notRedefinedClasses;
 
     private static final boolean COMPUTE_FRAMES = true;
-    private final Object transformationLock = new Object();
+    private final Object statisticsLock = new Object();
 
     private final AtomicLong totalBytecodeParsingTime = new AtomicLong(0);
     private final AtomicLong totalRawTransformationTime = new AtomicLong(0);
     private final AtomicLong totalBytecodeWritingTime = new AtomicLong(0);
     private final AtomicLong totalTransformationTime = new AtomicLong(0);
     private final AtomicInteger totalTransformedClasses = new AtomicInteger(0);
+    // guarded by statisticsLock
+    private long maxTransformationTime = 0;
+    private String slowestTransformedClass = null;
+    // the transformation times of the last RECENT_CLASSES classes (ring buffers),
+    // only recorded if requested (see TracerMetrics). guarded by statisticsLock
+    public static final int RECENT_CLASSES = 1024;
+    private String[] recentClassNames = null;
+    private long[] recentClassTimes = null;
+    private int numRecentClasses = 0;
 
     private final Instrumentation instrumentation;
     private final Tracer tracer;
     private final ConcurrentLinkedQueue<ReadClass> readClasses;
 
+    // may be null
+    private volatile InstrumentationCache cache = null;
+
     public Transformer(final Tracer tracer, final Instrumentation instrumentation, final ConcurrentLinkedQueue<ReadClass> readClasses, final Set<String> notRedefinedClasses) {
         this.tracer = tracer;
         this.instrumentation = instrumentation;
@@ -140,12 +156,25 @@ public class Transformer implements ClassFileTransformer {
             e.printStackTrace(System.err);
             return null;
         } finally {
+            // the statistics are also exported via JMX (see TracerMetrics)
+            final long nanoSecs = System.nanoTime() - startTime;
+            this.totalTransformationTime.addAndGet(nanoSecs);
+            this.totalTransformedClasses.incrementAndGet();
+            synchronized (this.statisticsLock) {
+                if (nanoSecs > this.maxTransformationTime) {
+                    this.maxTransformationTime = nanoSecs;
+                    this.slowestTransformedClass = className;
+                }
+                if (this.recentClassNames != null) {
+                    final int pos = this.numRecentClasses++ % RECENT_CLASSES;
+                    this.recentClassNames[pos] = className;
+                    this.recentClassTimes[pos] = nanoSecs;
+                }
+            }
+            JfrEvents.classTransformed(className, nanoSecs);
             if (this.tracer.debug) {
                 // first build the string, then print it. otherwise the output may be interrupted
                 // when new classes need to be loaded to format the output
-                final long nanoSecs = System.nanoTime() - startTime;
-                this.totalTransformationTime.addAndGet(nanoSecs);
-                this.totalTransformedClasses.incrementAndGet();
                 final String text = String.format((Locale)null, "Transforming %s took %.2f msec.%n",
                         className, 1e-6*nanoSecs);
                 System.out.print(text);
@@ -155,6 +184,35 @@ public class Transformer implements ClassFileTransformer {
         }
    }
 
+    /**
+     * Checks whether the given class needs special instrumentation for the tracer to work
+     * (like {@link Thread}), or contains a trigger method. These classes are never filtered
+     * out, and always retransformed if they were loaded before the tracer was added.
+     */
+    public boolean isRequiredClass(final String javaClassName) {
+        if ("java.lang.Thread".equals(javaClassName)
+                || javaClassName.startsWith("java.security.")
+                || Arrays.asList(this.pauseTracingClasses).contains(javaClassName))
+            return true;
+        if ((this.tracer.startTrigger != null && javaClassName.equals(this.tracer.startTrigger.getJavaClassName()))
+                || (this.tracer.stopTrigger != null && javaClassName.equals(this.tracer.stopTrigger.getJavaClassName())))
+            return true;
+        return false;
+    }
+
+    /**
+     * Checks whether the given class is excluded from instrumentation by the user-defined
+     * include / exclude patterns.
+     * Required classes (see {@link #isRequiredClass(String)}) are never filtered out.
+     */
+    public boolean isFilteredOut(final String javaClassName) {
+        if (this.tracer.classFilter.isEmpty())
+            return false;
+        if (isRequiredClass(javaClassName))
+            return false;
+        return this.tracer.classFilter.isExcluded(javaClassName);
+    }
+
     private boolean isExcluded(final String javaClassName) {
         if (javaClassName.startsWith("de.unisb.cs.st.javaslicer.tracer."))
             return true;
@@ -164,6 +222,9 @@ public class Transformer implements ClassFileTransformer {
             return true;
         if (javaClassName.startsWith("de.unisb.cs.st.sequitur"))
             return true;
+        // the flight recorder emits our events (see JfrEvents)
+        if (javaClassName.startsWith("jdk.jfr."))
+            return true;
 
         //////////////////////////////////////////////////////////////////
         // NOTE: these will be cleaned up when the system runs stable
@@ -201,11 +262,45 @@ public class Transformer implements ClassFileTransformer {
         if (javaClassName.startsWith("java.lang.ref."))
             return true;
 
+        // calls into classes excluded by the user show up as untraced calls in the trace
+        if (isFilteredOut(javaClassName))
+            return true;
+
         return false;
     }
 
+    /**
+     * Sets the cache for instrumented classes. Must be called before the transformer
+     * is added to the instrumentation.
+     */
+    public void setInstrumentationCache(final InstrumentationCache cache) {
+        this.cache = cache;
+    }
+
+    public InstrumentationCache getInstrumentationCache() {
+        return this.cache;
+    }
+
+    private String getCacheKey(final String javaClassName, final byte[] classfileBuffer) {
+        // everything that influences the instrumentation of this class, besides the class itself
+        final String settings = this.tracer.wasRedefined(javaClassName)
+            + ";" + this.tracer.startTrigger + ";" + this.tracer.stopTrigger;
+        return this.cache.getKey(javaClassName, classfileBuffer, settings);
+    }
+
     private byte[] transform0(final String className, final String javaClassName, final byte[] classfileBuffer) {
 
+        final InstrumentationCache instrumentationCache = this.tracer.check ? null : this.cache;
+        final String cacheKey = instrumentationCache == null ? null
+            : getCacheKey(javaClassName, classfileBuffer);
+        if (cacheKey != null) {
+            final InstrumentationCache.CachedClass cached = instrumentationCache.load(cacheKey, this.tracer);
+            if (cached != null) {
+                this.readClasses.add(cached.readClass);
+                return cached.classfileBuffer;
+            }
+        }
+
     	long startNanos = System.nanoTime();
 
         final ClassReader reader = new ClassReader(classfileBuffer);
@@ -220,19 +315,24 @@ public class Transformer implements ClassFileTransformer {
             checkClass(classfileBuffer, className, classfileBuffer);
         }
 
-        // we have to synchronize on System.out first.
-        // otherwise it may lead to a deadlock if a thread calls removeStale() on ConcurrentReferenceHashMap
-        // while he holds the lock for System.out, but another thread is inside the transformation step and
-        // waits for the lock of System.out
-        synchronized (System.out) { synchronized (this.transformationLock) {
-
+        // the class is instrumented using instruction indexes and trace sequence indexes
+        // starting at 0. afterwards, contiguous ranges of global indexes are reserved and
+        // the class is relocated to them. this way, several threads can instrument classes
+        // in parallel, and classes loaded while instrumenting this one do not interfere.
+        final int[] outerIndexes = AbstractInstruction.beginLocalIndexes();
+        final List<TraceSequenceTypes.Type> outerTraceSequences = this.tracer.beginLocalTraceSequences();
+        final IndexRelocator indexRelocator = new IndexRelocator();
+        final ReadClass readClass;
+        int numInstructions;
+        List<TraceSequenceTypes.Type> traceSequenceTypes;
+        try {
             // register that class for later reconstruction of the trace
             List<Field> fields = classNode.fields.isEmpty()
             	? Collections.<Field>emptyList()
             	: new ArrayList<Field>(classNode.fields.size());
 
             final String javaSuperName = Type.getObjectType(classNode.superName).getClassName();
-            final ReadClass readClass = new ReadClass(
+            readClass = new ReadClass(
                 className, AbstractInstruction.getNextIndex(), classNode.access,
                 classNode.sourceFile, fields, javaSuperName);
             for (final Object fieldObj: classNode.fields) {
@@ -247,35 +347,56 @@ public class Transformer implements ClassFileTransformer {
                 new PauseTracingInstrumenter(readClass, this.tracer).transform(classNode);
             } else {
                 if ("java/lang/Thread".equals(className))
-                    new ThreadInstrumenter(readClass, this.tracer).transform(classNode);
+                    new ThreadInstrumenter(readClass, this.tracer, indexRelocator).transform(classNode);
                 else
-                    new TracingClassInstrumenter(readClass, this.tracer).transform(classNode);
+                    new TracingClassInstrumenter(readClass, this.tracer, indexRelocator).transform(classNode);
             }
 
             new IdentifiableInstrumenter(readClass, this.tracer).transform(classNode);
 
-            long nanosAfterTransformation = System.nanoTime();
-            this.totalRawTransformationTime.addAndGet(nanosAfterTransformation - nanosBeforeTransformation);
+            if (this.tracer.startTrigger != null)
+                this.tracer.startTrigger.transform(classNode, javaClassName, "openTracingWindow");
+            if (this.tracer.stopTrigger != null)
+                this.tracer.stopTrigger.transform(classNode, javaClassName, "closeTracingWindow");
 
-            writer = new FixedClassWriter(COMPUTE_FRAMES ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS);
-            ClassVisitor output = this.tracer.check ? new CheckClassAdapter(writer, false) : writer;
+            readClass.setInstructionNumberEnd(AbstractInstruction.getNextIndex());
 
-            classNode.accept(COMPUTE_FRAMES ? new JSRInliner(output) : output);
+            this.totalRawTransformationTime.addAndGet(System.nanoTime() - nanosBeforeTransformation);
+        } finally {
+            numInstructions = AbstractInstruction.endLocalIndexes(outerIndexes);
+            traceSequenceTypes = this.tracer.endLocalTraceSequences(outerTraceSequences);
+        }
 
-            this.totalBytecodeWritingTime.addAndGet(System.nanoTime() - nanosAfterTransformation);
+        final int instructionIndexStart = AbstractInstruction.reserveIndexes(numInstructions);
+        final int traceSeqIndexStart = this.tracer.reserveTraceSequences(traceSequenceTypes);
+        readClass.relocate(instructionIndexStart, traceSeqIndexStart);
 
-            readClass.setInstructionNumberEnd(AbstractInstruction.getNextIndex());
+        long nanosBeforeWriting = System.nanoTime();
+
+        writer = new FixedClassWriter(COMPUTE_FRAMES ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS);
+        ClassVisitor output = this.tracer.check ? new CheckClassAdapter(writer, false) : writer;
+        // the relocation comes after the JSRInliner, which may duplicate index constants
+        output = indexRelocator.relocate(output, instructionIndexStart, traceSeqIndexStart);
+        if (COMPUTE_FRAMES)
+            output = new JSRInliner(output);
 
-            // now we can write the class out
-            // NOTE: we do not write it out immediately, because this sometimes leads
-            // to circular dependencies!
-            //readClass.writeOut(this.readClassesOutputStream, this.readClassesStringCache);
-            this.readClasses.add(readClass);
+        classNode.accept(output);
 
-        }}
+        this.totalBytecodeWritingTime.addAndGet(System.nanoTime() - nanosBeforeWriting);
+
+        // now we can write the class out
+        // NOTE: we do not write it out immediately, because this sometimes leads
+        // to circular dependencies!
+        //readClass.writeOut(this.readClassesOutputStream, this.readClassesStringCache);
+        this.readClasses.add(readClass);
 
         final byte[] newClassfileBuffer = writer.toByteArray();
 
+        if (cacheKey != null)
+            instrumentationCache.store(cacheKey, readClass, numInstructions, traceSeqIndexStart,
+                traceSeqIndexStart + traceSequenceTypes.size(), this.tracer, newClassfileBuffer,
+                indexRelocator.getRelocatedConstants());
+
         if (this.tracer.check) {
             checkClass(newClassfileBuffer, className, classfileBuffer);
         }
@@ -425,6 +546,62 @@ public class Transformer implements ClassFileTransformer {
         return n == -1 ? name : name.substring(n + 1, k);
     }
 
+    public int getTotalTransformedClasses() {
+        return this.totalTransformedClasses.get();
+    }
+
+    /**
+     * @return the total time spent in {@link #transform}, in nanoseconds
+     */
+    public long getTotalTransformationTime() {
+        return this.totalTransformationTime.get();
+    }
+
+    /**
+     * @return the longest time spent for transforming one class, in nanoseconds
+     */
+    public long getMaxTransformationTime() {
+        synchronized (this.statisticsLock) {
+            return this.maxTransformationTime;
+        }
+    }
+
+    public String getSlowestTransformedClass() {
+        synchronized (this.statisticsLock) {
+            return this.slowestTransformedClass;
+        }
+    }
+
+    /**
+     * Starts remembering the transformation times of single classes
+     * (see {@link #getRecentTransformationTimes()}).
+     */
+    public void recordTransformationTimes() {
+        synchronized (this.statisticsLock) {
+            if (this.recentClassNames == null) {
+                this.recentClassNames = new String[RECENT_CLASSES];
+                this.recentClassTimes = new long[RECENT_CLASSES];
+            }
+        }
+    }
+
+    /**
+     * @return the transformation times (in nanoseconds) of the last {@link #RECENT_CLASSES}
+     *         classes transformed since {@link #recordTransformationTimes()} was called,
+     *         by internal class name
+     */
+    public Map<String, Long> getRecentTransformationTimes() {
+        final Map<String, Long> times = new TreeMap<String, Long>();
+        synchronized (this.statisticsLock) {
+            if (this.recentClassNames == null)
+                return times;
+            final int num = Math.min(this.numRecentClasses, RECENT_CLASSES);
+            for (int i = 0; i < num; ++i)
+                times.put(this.recentClassNames[i], this.recentClassTimes[i]);
+        }
+        return times;
+    }
+
     public void finish() {
         this.instrumentation.removeTransformer(this);
         if (this.tracer.debug) {
@@ -433,6 +610,10 @@ public class Transformer implements ClassFileTransformer {
                     this.totalTransformedClasses.get(), 1e-9*this.totalTransformationTime.get());
             System.out.format((Locale)null, "  - %7.3f seconds for parsing bytecode\n  - %7.3f seconds for transformations\n  - %7.3f seconds for writing bytecode\n",
             	1e-9*this.totalBytecodeParsingTime.get(), 1e-9*this.totalRawTransformationTime.get(), 1e-9*this.totalBytecodeWritingTime.get());
+            final InstrumentationCache instrumentationCache = this.cache;
+            if (instrumentationCache != null)
+                System.out.format((Locale)null, "Instrumentation cache: %d hits, %d misses%n",
+                    instrumentationCache.getHits(), instrumentationCache.getMisses());
         }
     }
 
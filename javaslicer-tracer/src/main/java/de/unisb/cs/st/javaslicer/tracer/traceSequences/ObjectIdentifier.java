@@ -22,51 +22,186 @@
  */
 package de.unisb.cs.st.javaslicer.tracer.traceSequences;
 
-import java.util.EnumSet;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicLong;
-
-import de.hammacher.util.maps.ConcurrentReferenceHashMap;
+import java.lang.ref.WeakReference;
 
+/**
+ * Assigns unique ids to objects that do not implement {@link Identifiable}.
+ *
+ * The objects are stored in a striped open-addressing table which is keyed by
+ * the identity hash code of the objects and holds them via weak references.
+ * Slots of collected objects are reused when inserting new objects, and dropped
+ * when a stripe is rehashed.
+ *
+ * This class must not use any instrumented (JDK) classes except java.lang.ref and
+ * java.lang.System, which are excluded from instrumentation. This way, it can be
+ * called while tracing without pausing the thread tracer.
+ */
 public class ObjectIdentifier {
 
     public final static ObjectIdentifier instance = new ObjectIdentifier();
 
-    private final ConcurrentMap<Object, Long> objectMap =
-        new ConcurrentReferenceHashMap<Object, Long>(65536, 0.75f, 16, ConcurrentReferenceHashMap.ReferenceType.WEAK,
-                ConcurrentReferenceHashMap.ReferenceType.STRONG, EnumSet.of(ConcurrentReferenceHashMap.Option.IDENTITY_COMPARISONS));
+    // the number of stripes must be a power of two
+    private static final int STRIPE_BITS = 6;
+    private static final int NUM_STRIPES = 1 << STRIPE_BITS;
+    private static final int INITIAL_STRIPE_CAPACITY = 1024;
+    // a stripe reserves this many ids at once, so it rarely has to take the global lock
+    private static final int ID_BLOCK_SIZE = 1024;
+
+    private final Stripe[] stripes = new Stripe[NUM_STRIPES];
+
+    // guarded by the monitor of this ObjectIdentifier
+    private long nextIdBlock = 1;
+
+    private final class Stripe {
+
+        // the keys are WeakReferences to the objects; a slot is empty if the key is null
+        private WeakReference<?>[] keys = new WeakReference<?>[INITIAL_STRIPE_CAPACITY];
+        private long[] ids = new long[INITIAL_STRIPE_CAPACITY];
+        // the number of non-empty slots (including those whose object has been collected)
+        private int usedSlots = 0;
+
+        private long nextId = 0;
+        private long idBlockEnd = 0;
+
+        public Stripe() {
+            super();
+        }
+
+        public synchronized long getId(final Object obj, final int hash) {
+            final WeakReference<?>[] keys0 = this.keys;
+            final int mask = keys0.length - 1;
+            int firstCleared = -1;
+            int slot = hash & mask;
+            WeakReference<?> ref;
+            while ((ref = keys0[slot]) != null) {
+                final Object o = ref.get();
+                if (o == obj)
+                    return this.ids[slot];
+                if (o == null && firstCleared == -1)
+                    firstCleared = slot;
+                slot = (slot + 1) & mask;
+            }
+
+            // not found: insert it (into the slot of a collected object if possible)
+            final long newId = newId();
+            if (firstCleared != -1) {
+                slot = firstCleared;
+            } else if (++this.usedSlots > (keys0.length >>> 1)) {
+                rehash();
+                return insertNew(obj, hash, newId);
+            }
+            keys0[slot] = new WeakReference<Object>(obj);
+            this.ids[slot] = newId;
+            return newId;
+        }
+
+        public synchronized long newId() {
+            if (this.nextId == this.idBlockEnd) {
+                this.nextId = reserveIdBlock();
+                this.idBlockEnd = this.nextId + ID_BLOCK_SIZE;
+            }
+            return this.nextId++;
+        }
 
-    private final ConcurrentLinkedQueue<Long> freeIds = new ConcurrentLinkedQueue<Long>();
+        /**
+         * Inserts an object which is known not to be in the table yet.
+         */
+        private long insertNew(final Object obj, final int hash, final long id) {
+            final int mask = this.keys.length - 1;
+            int slot = hash & mask;
+            while (this.keys[slot] != null)
+                slot = (slot + 1) & mask;
+            this.keys[slot] = new WeakReference<Object>(obj);
+            this.ids[slot] = id;
+            return id;
+        }
 
-    private final AtomicLong nextId = new AtomicLong(1);
+        private void rehash() {
+            final WeakReference<?>[] oldKeys = this.keys;
+            final long[] oldIds = this.ids;
+            int live = 0;
+            for (final WeakReference<?> ref: oldKeys)
+                if (ref != null && ref.get() != null)
+                    ++live;
+            // the new load factor is between 1/8 and 1/4 (including the new element)
+            int newCapacity = INITIAL_STRIPE_CAPACITY;
+            while (newCapacity < 4 * (live + 1))
+                newCapacity <<= 1;
+            final WeakReference<?>[] newKeys = new WeakReference<?>[newCapacity];
+            final long[] newIds = new long[newCapacity];
+            final int mask = newCapacity - 1;
+            int usedSlots0 = 1; // the element to be inserted after rehashing
+            for (int i = 0; i < oldKeys.length; ++i) {
+                final WeakReference<?> ref = oldKeys[i];
+                final Object o = ref == null ? null : ref.get();
+                if (o == null)
+                    continue;
+                int slot = hash(o) & mask;
+                while (newKeys[slot] != null)
+                    slot = (slot + 1) & mask;
+                newKeys[slot] = ref;
+                newIds[slot] = oldIds[i];
+                ++usedSlots0;
+            }
+            this.keys = newKeys;
+            this.ids = newIds;
+            this.usedSlots = usedSlots0;
+        }
+
+        public synchronized int size() {
+            int live = 0;
+            for (final WeakReference<?> ref: this.keys)
+                if (ref != null && ref.get() != null)
+                    ++live;
+            return live;
+        }
+
+    }
 
     private ObjectIdentifier() {
         // private constructor ==> singleton
+        for (int i = 0; i < NUM_STRIPES; ++i)
+            this.stripes[i] = new Stripe();
+    }
+
+    private static int hash(final Object obj) {
+        // spread the identity hash code, the upper bits select the stripe
+        return System.identityHashCode(obj) * 0x9E3779B9;
+    }
+
+    private synchronized long reserveIdBlock() {
+        final long block = this.nextIdBlock;
+        this.nextIdBlock += ID_BLOCK_SIZE;
+        if (this.nextIdBlock <= 0)
+            throw new RuntimeException("long overflow in object ids");
+        return block;
     }
 
     public long getObjectId(final Object obj) {
-        final Long id = this.objectMap.get(obj);
-        return id == null ? getNewId(obj) : id;
+        final int hash = hash(obj);
+        return this.stripes[hash >>> (32 - STRIPE_BITS)].getId(obj, hash);
     }
 
-    // if obj != null, the id is stored in the objectMap
+    // if obj != null, the id is stored in the table
     public long getNewId(final Object obj) {
-        Long newId = this.freeIds.poll();
-        if (newId == null) {
-            newId = this.nextId.getAndIncrement();
-            if (newId.longValue() == 0)
-                throw new RuntimeException("long overflow in object ids");
-        }
-        if (obj != null) {
-            final Long oldId = this.objectMap.putIfAbsent(obj, newId);
-            if (oldId != null) {
-                this.freeIds.add(newId);
-                return oldId;
-            }
-        }
+        if (obj != null)
+            return getObjectId(obj);
+        // choose a stripe depending on the current thread, to avoid contention
+        final int hash = hash(Thread.currentThread());
+        return this.stripes[hash >>> (32 - STRIPE_BITS)].newId();
+    }
 
-        return newId;
+    /**
+     * Computes the number of objects (which have not been garbage collected yet)
+     * stored in this ObjectIdentifier. This is expensive, it iterates the whole table.
+     *
+     * @return the number of live objects which have an id assigned
+     */
+    public int size() {
+        int size = 0;
+        for (final Stripe stripe: this.stripes)
+            size += stripe.size();
+        return size;
     }
 
 }
@@ -200,8 +200,9 @@ public class GZipIntegerTraceSequence implements IntegerTraceSequence {
                 optOut.close();
             }
             backwardReader.close();
-            oldMplexOut.remove();
+            this.tracer.streamRemoved(oldMplexOut);
         }
+        this.tracer.streamFinished(this.mplexOut);
     }
 
     @Override
@@ -200,8 +200,9 @@ public class GZipLongTraceSequence implements LongTraceSequence {
                 optOut.close();
             }
             backwardReader.close();
-            oldMplexOut.remove();
+            this.tracer.streamRemoved(oldMplexOut);
         }
+        this.tracer.streamFinished(this.mplexOut);
     }
 
     @Override
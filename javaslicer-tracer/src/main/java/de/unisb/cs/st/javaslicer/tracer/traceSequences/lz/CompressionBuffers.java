@@ -0,0 +1,51 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer.traceSequences.lz
+ *    Class:     CompressionBuffers
+ *    Filename:  javaslicer-tracer/src/main/java/de/unisb/cs/st/javaslicer/tracer/traceSequences/lz/CompressionBuffers.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer.traceSequences.lz;
+
+import de.unisb.cs.st.javaslicer.common.util.LZBlockCodec;
+
+/**
+ * The output buffer and hash table used to compress a block, kept per thread
+ * (i.e. per trace writer), so that finishing a block allocates nothing.
+ */
+class CompressionBuffers {
+
+    public final byte[] output = new byte[LZBlockCodec.maxCompressedLength(LZIntegerTraceSequence.BLOCK_SIZE)];
+    public final int[] hashTable = LZBlockCodec.newHashTable();
+
+    private static final ThreadLocal<CompressionBuffers> instances = new ThreadLocal<CompressionBuffers>() {
+        @Override
+        protected CompressionBuffers initialValue() {
+            return new CompressionBuffers();
+        }
+    };
+
+    private CompressionBuffers() {
+        // use get()
+    }
+
+    public static CompressionBuffers get() {
+        return instances.get();
+    }
+
+}
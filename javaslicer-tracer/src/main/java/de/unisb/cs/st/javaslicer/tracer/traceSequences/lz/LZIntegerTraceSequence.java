@@ -0,0 +1,153 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer.traceSequences.lz
+ *    Class:     LZIntegerTraceSequence
+ *    Filename:  javaslicer-tracer/src/main/java/de/unisb/cs/st/javaslicer/tracer/traceSequences/lz/LZIntegerTraceSequence.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer.traceSequences.lz;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import de.hammacher.util.MultiplexedFileWriter.MultiplexOutputStream;
+import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes;
+import de.unisb.cs.st.javaslicer.common.util.DeltaVarints;
+import de.unisb.cs.st.javaslicer.common.util.LZBlockCodec;
+import de.unisb.cs.st.javaslicer.tracer.Tracer;
+import de.unisb.cs.st.javaslicer.tracer.traceSequences.TraceSequence.IntegerTraceSequence;
+
+/**
+ * Collects the zigzag- and varint-encoded differences of the traced values in
+ * blocks of up to {@link #BLOCK_SIZE} bytes, and writes each block compressed
+ * by the {@link LZBlockCodec} (or uncompressed, if that is smaller).
+ *
+ * On {@link #finish()}, an index is appended to the stream: for each block the
+ * compressed length, the uncompressed length and the number of values, followed
+ * by the number of blocks. Since the blocks are independent, the reader can
+ * decompress them in reverse order, so the stream never has to be inverted.
+ */
+public class LZIntegerTraceSequence implements IntegerTraceSequence {
+
+    public static final int BLOCK_SIZE = 64*1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 32;
+
+    private boolean ready = false;
+
+    private final Tracer tracer;
+    private final MultiplexOutputStream out;
+
+    private final int streamIndex;
+
+    private byte[] block = new byte[INITIAL_BUFFER_SIZE];
+    private int blockLength = 0;
+    private int blockValues = 0;
+    private int lastValue = 0;
+
+    // three ints per written block: compressed length, uncompressed length, number of values
+    private int[] index = new int[12];
+    private int indexLength = 0;
+
+    public LZIntegerTraceSequence(final Tracer tracer) {
+        this.tracer = tracer;
+        this.out = tracer.newOutputStream();
+        this.streamIndex = this.out.getId();
+    }
+
+    @Override
+    public void trace(final int value) throws IOException {
+        assert !this.ready: "Trace cannot be extended any more";
+
+        if (this.blockLength + DeltaVarints.MAX_INT_LENGTH > this.block.length) {
+            if (this.block.length < BLOCK_SIZE)
+                this.block = Arrays.copyOf(this.block, Math.min(2 * this.block.length, BLOCK_SIZE));
+            else
+                finishBlock();
+        }
+
+        final int diff = value - this.lastValue;
+        this.lastValue = value;
+        this.blockLength = DeltaVarints.encodeInt(diff, this.block, this.blockLength);
+        ++this.blockValues;
+    }
+
+    private void finishBlock() throws IOException {
+        final CompressionBuffers buffers = CompressionBuffers.get();
+        final byte[] compressed = buffers.output;
+        int compressedLength = LZBlockCodec.compress(this.block, this.blockLength, compressed, buffers.hashTable);
+        if (compressedLength < this.blockLength) {
+            this.out.write(compressed, 0, compressedLength);
+        } else {
+            // a compressed length equal to the uncompressed length marks an uncompressed block
+            compressedLength = this.blockLength;
+            this.out.write(this.block, 0, this.blockLength);
+        }
+
+        if (this.indexLength + 3 > this.index.length)
+            this.index = Arrays.copyOf(this.index, 2 * this.index.length);
+        this.index[this.indexLength++] = compressedLength;
+        this.index[this.indexLength++] = this.blockLength;
+        this.index[this.indexLength++] = this.blockValues;
+
+        this.blockLength = 0;
+        this.blockValues = 0;
+        this.lastValue = 0;
+    }
+
+    private void writeIndex() throws IOException {
+        final byte[] buf = new byte[4 * (this.indexLength + 1)];
+        int pos = 0;
+        for (int i = 0; i <= this.indexLength; ++i) {
+            final int value = i == this.indexLength ? this.indexLength / 3 : this.index[i];
+            buf[pos++] = (byte) (value >>> 24);
+            buf[pos++] = (byte) (value >>> 16);
+            buf[pos++] = (byte) (value >>> 8);
+            buf[pos++] = (byte) value;
+        }
+        this.out.write(buf, 0, pos);
+    }
+
+    @Override
+    public void writeOut(final DataOutputStream dataOut) throws IOException {
+        finish();
+
+        dataOut.writeByte(TraceSequenceTypes.TYPE_INTEGER);
+        dataOut.writeInt(this.streamIndex);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (this.ready)
+            return;
+        this.ready = true;
+        if (this.blockValues != 0)
+            finishBlock();
+        this.block = null;
+        writeIndex();
+        this.index = null;
+        this.out.close();
+        this.tracer.streamFinished(this.out);
+    }
+
+    @Override
+    public boolean useMultiThreading() {
+        return !this.ready;
+    }
+}
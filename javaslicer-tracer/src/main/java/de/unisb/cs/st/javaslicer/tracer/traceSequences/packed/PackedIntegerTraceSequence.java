@@ -0,0 +1,118 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer.traceSequences.packed
+ *    Class:     PackedIntegerTraceSequence
+ *    Filename:  javaslicer-tracer/src/main/java/de/unisb/cs/st/javaslicer/tracer/traceSequences/packed/PackedIntegerTraceSequence.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer.traceSequences.packed;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import de.hammacher.util.MultiplexedFileWriter.MultiplexOutputStream;
+import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes;
+import de.unisb.cs.st.javaslicer.common.util.DeltaVarints;
+import de.unisb.cs.st.javaslicer.tracer.Tracer;
+import de.unisb.cs.st.javaslicer.tracer.traceSequences.TraceSequence.IntegerTraceSequence;
+
+/**
+ * Writes the difference to the previous value, zigzag- and varint-encoded.
+ *
+ * The values are grouped into blocks of at most {@link #BLOCK_SIZE} values.
+ * The first value of each block is encoded relative to 0, so each block can
+ * be decoded on its own. After the encoded values, each block contains a
+ * trailer of two ints: the number of bytes of encoded data and the number of
+ * values. This way, the reader can find the blocks from the end of the stream.
+ */
+public class PackedIntegerTraceSequence implements IntegerTraceSequence {
+
+    public static final int BLOCK_SIZE = 1024;
+
+    private boolean ready = false;
+
+    private final Tracer tracer;
+    private final MultiplexOutputStream out;
+
+    private final int streamIndex;
+
+    private final byte[] buf = new byte[8];
+
+    private int lastValue = 0;
+    private int blockValues = 0;
+    private int blockBytes = 0;
+
+    public PackedIntegerTraceSequence(final Tracer tracer) {
+        this.tracer = tracer;
+        this.out = tracer.newOutputStream();
+        this.streamIndex = this.out.getId();
+    }
+
+    @Override
+    public void trace(final int value) throws IOException {
+        assert !this.ready: "Trace cannot be extended any more";
+
+        final int diff = value - this.lastValue;
+        this.lastValue = value;
+        final int len = DeltaVarints.encodeInt(diff, this.buf, 0);
+        this.out.write(this.buf, 0, len);
+        this.blockBytes += len;
+        if (++this.blockValues == BLOCK_SIZE)
+            finishBlock();
+    }
+
+    private void finishBlock() throws IOException {
+        writeInt(this.buf, 0, this.blockBytes);
+        writeInt(this.buf, 4, this.blockValues);
+        this.out.write(this.buf, 0, 8);
+        this.lastValue = 0;
+        this.blockValues = 0;
+        this.blockBytes = 0;
+    }
+
+    private static void writeInt(final byte[] b, final int off, final int value) {
+        b[off] = (byte) (value >>> 24);
+        b[off+1] = (byte) (value >>> 16);
+        b[off+2] = (byte) (value >>> 8);
+        b[off+3] = (byte) value;
+    }
+
+    @Override
+    public void writeOut(final DataOutputStream dataOut) throws IOException {
+        finish();
+
+        dataOut.writeByte(TraceSequenceTypes.TYPE_INTEGER);
+        dataOut.writeInt(this.streamIndex);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (this.ready)
+            return;
+        this.ready = true;
+        if (this.blockValues != 0)
+            finishBlock();
+        this.out.close();
+        this.tracer.streamFinished(this.out);
+    }
+
+    @Override
+    public boolean useMultiThreading() {
+        return false;
+    }
+}
@@ -25,47 +25,92 @@ package de.unisb.cs.st.javaslicer.tracer.traceSequences.sequitur;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.concurrent.atomic.AtomicLong;
 
 import de.hammacher.util.streams.OptimizedDataOutputStream;
 import de.unisb.cs.st.javaslicer.tracer.traceSequences.TraceSequence.IntegerTraceSequence;
-import de.unisb.cs.st.sequitur.output.OutputSequence;
+import de.unisb.cs.st.javaslicer.tracer.traceSequences.sequitur.SequiturTraceSequenceFactory.Shard;
 
+/**
+ * Buffers the differences of the traced values and appends them to the grammar
+ * of its shard whenever {@link #CHUNK_SIZE} values are collected. So the memory
+ * needed per sequence is bounded, and the sequence consists of one or more
+ * segments of the shard's grammar.
+ */
 public class SequiturIntegerTraceSequence implements IntegerTraceSequence {
 
-    private boolean ready = false;
+    public static final int CHUNK_SIZE = 16*1024;
 
-    private long sequenceOffset;
+    private boolean ready = false;
 
     private int[] values = new int[10];
+    private int bufferedCount = 0;
     private int count = 0;
 
     private int lastValue = 0;
 
-    private final OutputSequence<Integer> sequiturSeq;
-    private final AtomicLong sequiturSeqLength;
+    // the segments of the shard's grammar that this sequence consists of
+    private long[] segmentOffsets = new long[1];
+    private int[] segmentLengths = new int[1];
+    private int numSegments = 0;
+
+    private final Shard shard;
 
-    public SequiturIntegerTraceSequence(final OutputSequence<Integer> outputSequence, final AtomicLong outputSeqLength) {
-        this.sequiturSeq = outputSequence;
-        this.sequiturSeqLength = outputSeqLength;
+    public SequiturIntegerTraceSequence(final Shard shard) {
+        this.shard = shard;
     }
 
     @Override
 	public void trace(final int value) {
         assert !this.ready: "Trace cannot be extended any more";
 
-        if (this.count == this.values.length)
-            this.values = Arrays.copyOf(this.values, this.values.length*3/2);
-        this.values[this.count++] = value - this.lastValue;
+        if (this.bufferedCount == this.values.length) {
+            if (this.values.length >= CHUNK_SIZE)
+                appendToShard(false);
+            else
+                this.values = Arrays.copyOf(this.values, Math.min(this.values.length*3/2, CHUNK_SIZE));
+        }
+        this.values[this.bufferedCount++] = value - this.lastValue;
         this.lastValue = value;
+        ++this.count;
+    }
+
+    private void appendToShard(final boolean appendLastValue) {
+        final int length = appendLastValue ? this.bufferedCount + 1 : this.bufferedCount;
+        final long offset;
+        synchronized (this.shard) {
+            for (int i = 0; i < this.bufferedCount; ++i)
+                this.shard.intSequence.append(this.values[i]);
+            if (appendLastValue)
+                this.shard.intSequence.append(this.lastValue);
+            offset = this.shard.intSequenceLength;
+            this.shard.intSequenceLength += length;
+        }
+        this.bufferedCount = 0;
+
+        final int last = this.numSegments - 1;
+        if (last >= 0 && this.segmentOffsets[last] + this.segmentLengths[last] == offset) {
+            this.segmentLengths[last] += length;
+            return;
+        }
+        if (this.numSegments == this.segmentOffsets.length) {
+            this.segmentOffsets = Arrays.copyOf(this.segmentOffsets, 2*this.numSegments);
+            this.segmentLengths = Arrays.copyOf(this.segmentLengths, 2*this.numSegments);
+        }
+        this.segmentOffsets[this.numSegments] = offset;
+        this.segmentLengths[this.numSegments++] = length;
     }
 
     @Override
     public void writeOut(final DataOutputStream out) throws IOException {
         finish();
 
-        OptimizedDataOutputStream.writeLong0(2*this.sequenceOffset, out);
+        OptimizedDataOutputStream.writeInt0(2*this.shard.index, out);
         OptimizedDataOutputStream.writeInt0(this.count, out);
+        OptimizedDataOutputStream.writeInt0(this.numSegments, out);
+        for (int i = 0; i < this.numSegments; ++i) {
+            OptimizedDataOutputStream.writeLong0(this.segmentOffsets[i], out);
+            OptimizedDataOutputStream.writeInt0(this.segmentLengths[i], out);
+        }
     }
 
     @Override
@@ -73,22 +118,15 @@ public class SequiturIntegerTraceSequence implements IntegerTraceSequence {
         if (this.ready)
             return;
         this.ready = true;
-        synchronized (this.sequiturSeq) {
-            for (int i = 0; i < this.count; ++i)
-                this.sequiturSeq.append(this.values[i]);
-            this.values = null;
-            if (this.count > 10) {
-                this.sequiturSeq.append(this.lastValue);
-                this.sequenceOffset = this.sequiturSeqLength.getAndAdd(this.count+1);
-            } else {
-                this.sequenceOffset = this.sequiturSeqLength.getAndAdd(this.count);
-            }
-        }
+        // longer sequences get their last value appended, so they can be read backwards
+        if (this.count > 10 || this.bufferedCount > 0)
+            appendToShard(this.count > 10);
+        this.values = null;
     }
 
     @Override
     public boolean useMultiThreading() {
-        return false;
+        return !this.ready;
     }
 
 }
@@ -25,47 +25,89 @@ package de.unisb.cs.st.javaslicer.tracer.traceSequences.sequitur;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.concurrent.atomic.AtomicLong;
 
 import de.hammacher.util.streams.OptimizedDataOutputStream;
 import de.unisb.cs.st.javaslicer.tracer.traceSequences.TraceSequence.LongTraceSequence;
-import de.unisb.cs.st.sequitur.output.OutputSequence;
+import de.unisb.cs.st.javaslicer.tracer.traceSequences.sequitur.SequiturTraceSequenceFactory.Shard;
 
+/**
+ * The long version of the {@link SequiturIntegerTraceSequence}.
+ */
 public class SequiturLongTraceSequence implements LongTraceSequence {
 
-    private boolean ready = false;
+    public static final int CHUNK_SIZE = SequiturIntegerTraceSequence.CHUNK_SIZE;
 
-    private long sequenceOffset;
+    private boolean ready = false;
 
     private long[] values = new long[10];
+    private int bufferedCount = 0;
     private int count = 0;
 
     private long lastValue = 0;
 
-    private final OutputSequence<Long> sequiturSeq;
-    private final AtomicLong sequiturSeqLength;
+    // the segments of the shard's grammar that this sequence consists of
+    private long[] segmentOffsets = new long[1];
+    private int[] segmentLengths = new int[1];
+    private int numSegments = 0;
+
+    private final Shard shard;
 
-    public SequiturLongTraceSequence(final OutputSequence<Long> outputSequence, final AtomicLong outputSeqLength) {
-        this.sequiturSeq = outputSequence;
-        this.sequiturSeqLength = outputSeqLength;
+    public SequiturLongTraceSequence(final Shard shard) {
+        this.shard = shard;
     }
 
     @Override
 	public void trace(final long value) {
         assert !this.ready: "Trace cannot be extended any more";
 
-        if (this.count == this.values.length)
-            this.values = Arrays.copyOf(this.values, this.values.length*3/2);
-        this.values[this.count++] = value - this.lastValue;
+        if (this.bufferedCount == this.values.length) {
+            if (this.values.length >= CHUNK_SIZE)
+                appendToShard(false);
+            else
+                this.values = Arrays.copyOf(this.values, Math.min(this.values.length*3/2, CHUNK_SIZE));
+        }
+        this.values[this.bufferedCount++] = value - this.lastValue;
         this.lastValue = value;
+        ++this.count;
+    }
+
+    private void appendToShard(final boolean appendLastValue) {
+        final int length = appendLastValue ? this.bufferedCount + 1 : this.bufferedCount;
+        final long offset;
+        synchronized (this.shard) {
+            for (int i = 0; i < this.bufferedCount; ++i)
+                this.shard.longSequence.append(this.values[i]);
+            if (appendLastValue)
+                this.shard.longSequence.append(this.lastValue);
+            offset = this.shard.longSequenceLength;
+            this.shard.longSequenceLength += length;
+        }
+        this.bufferedCount = 0;
+
+        final int last = this.numSegments - 1;
+        if (last >= 0 && this.segmentOffsets[last] + this.segmentLengths[last] == offset) {
+            this.segmentLengths[last] += length;
+            return;
+        }
+        if (this.numSegments == this.segmentOffsets.length) {
+            this.segmentOffsets = Arrays.copyOf(this.segmentOffsets, 2*this.numSegments);
+            this.segmentLengths = Arrays.copyOf(this.segmentLengths, 2*this.numSegments);
+        }
+        this.segmentOffsets[this.numSegments] = offset;
+        this.segmentLengths[this.numSegments++] = length;
     }
 
     @Override
     public void writeOut(final DataOutputStream out) throws IOException {
         finish();
 
-        OptimizedDataOutputStream.writeLong0(2*this.sequenceOffset+1, out);
+        OptimizedDataOutputStream.writeInt0(2*this.shard.index+1, out);
         OptimizedDataOutputStream.writeInt0(this.count, out);
+        OptimizedDataOutputStream.writeInt0(this.numSegments, out);
+        for (int i = 0; i < this.numSegments; ++i) {
+            OptimizedDataOutputStream.writeLong0(this.segmentOffsets[i], out);
+            OptimizedDataOutputStream.writeInt0(this.segmentLengths[i], out);
+        }
     }
 
     @Override
@@ -73,22 +115,15 @@ public class SequiturLongTraceSequence implements LongTraceSequence {
         if (this.ready)
             return;
         this.ready = true;
-        synchronized (this.sequiturSeq) {
-            for (int i = 0; i < this.count; ++i)
-                this.sequiturSeq.append(this.values[i]);
-            this.values = null;
-            if (this.count > 10) {
-                this.sequiturSeq.append(this.lastValue);
-                this.sequenceOffset = this.sequiturSeqLength.getAndAdd(this.count+1);
-            } else {
-                this.sequenceOffset = this.sequiturSeqLength.getAndAdd(this.count);
-            }
-        }
+        // longer sequences get their last value appended, so they can be read backwards
+        if (this.count > 10 || this.bufferedCount > 0)
+            appendToShard(this.count > 10);
+        this.values = null;
     }
 
     @Override
     public boolean useMultiThreading() {
-        return false;
+        return !this.ready;
     }
 
 }
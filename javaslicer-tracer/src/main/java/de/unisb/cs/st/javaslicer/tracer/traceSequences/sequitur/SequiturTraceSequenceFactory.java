@@ -27,7 +27,6 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
 
 import de.hammacher.util.streams.OptimizedDataOutputStream;
 import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes;
@@ -41,25 +40,49 @@ import de.unisb.cs.st.sequitur.output.OutputSequence;
 
 public class SequiturTraceSequenceFactory implements TraceSequenceFactory {
 
-    public static class PerThread implements TraceSequenceFactory.PerThread {
+    private static ObjectWriter<Long> LONG_WRITER = new ObjectWriter<Long>() {
+        @Override
+		public void writeObject(final Long object, final ObjectOutputStream outputStream) throws IOException {
+            OptimizedDataOutputStream.writeLong0(object.longValue(), outputStream);
+        }
+    };
+    private static ObjectWriter<Integer> INT_WRITER = new ObjectWriter<Integer>() {
+        @Override
+		public void writeObject(final Integer object, final ObjectOutputStream outputStream) throws IOException {
+            OptimizedDataOutputStream.writeInt0(object.intValue(), outputStream);
+        }
+    };
 
-        private static ObjectWriter<Long> LONG_WRITER = new ObjectWriter<Long>() {
-            @Override
-			public void writeObject(final Long object, final ObjectOutputStream outputStream) throws IOException {
-                OptimizedDataOutputStream.writeLong0(object.longValue(), outputStream);
-            }
-        };
-        private static ObjectWriter<Integer> INT_WRITER = new ObjectWriter<Integer>() {
-            @Override
-			public void writeObject(final Integer object, final ObjectOutputStream outputStream) throws IOException {
-                OptimizedDataOutputStream.writeInt0(object.intValue(), outputStream);
-            }
-        };
+    /**
+     * The number of grammars per thread. The sequences of a thread are distributed
+     * round-robin among them, and sequences of different shards can be appended
+     * to their grammar in parallel.
+     */
+    public static final int NUM_SHARDS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The grammars of one shard. The sequences synchronize on the shard when
+     * appending to it.
+     */
+    static class Shard {
+
+        public final int index;
 
-        private final OutputSequence<Integer> intSequence = new OutputSequence<Integer>(INT_WRITER);
-        private final OutputSequence<Long> longSequence = new OutputSequence<Long>(LONG_WRITER);
-        private final AtomicLong intSequenceLength = new AtomicLong(0);
-        private final AtomicLong longSequenceLength = new AtomicLong(0);
+        public final OutputSequence<Integer> intSequence = new OutputSequence<Integer>(INT_WRITER);
+        public final OutputSequence<Long> longSequence = new OutputSequence<Long>(LONG_WRITER);
+        public long intSequenceLength = 0;
+        public long longSequenceLength = 0;
+
+        public Shard(final int index) {
+            this.index = index;
+        }
+
+    }
+
+    public static class PerThread implements TraceSequenceFactory.PerThread {
+
+        private final Shard[] shards = new Shard[NUM_SHARDS];
+        private int numSequences = 0;
 
         private List<SequiturIntegerTraceSequence> intSequences = new ArrayList<SequiturIntegerTraceSequence>();
         private List<SequiturLongTraceSequence> longSequences = new ArrayList<SequiturLongTraceSequence>();
@@ -68,15 +91,19 @@ public class SequiturTraceSequenceFactory implements TraceSequenceFactory {
 		public synchronized TraceSequence createTraceSequence(final Type type, final Tracer tracer) throws IOException {
             if (this.intSequences == null)
                 throw new IOException("sequence factory already finished");
+            final int shardNr = this.numSequences++ % NUM_SHARDS;
+            Shard shard = this.shards[shardNr];
+            if (shard == null)
+                shard = this.shards[shardNr] = new Shard(shardNr);
             SequiturIntegerTraceSequence intTraceSequence;
             SequiturLongTraceSequence longTraceSequence;
             switch (type) {
             case INTEGER:
-                intTraceSequence = new SequiturIntegerTraceSequence(this.intSequence, this.intSequenceLength);
+                intTraceSequence = new SequiturIntegerTraceSequence(shard);
                 this.intSequences.add(intTraceSequence);
                 return intTraceSequence;
             case LONG:
-                longTraceSequence = new SequiturLongTraceSequence(this.longSequence, this.longSequenceLength);
+                longTraceSequence = new SequiturLongTraceSequence(shard);
                 this.longSequences.add(longTraceSequence);
                 return longTraceSequence;
             default:
@@ -95,17 +122,26 @@ public class SequiturTraceSequenceFactory implements TraceSequenceFactory {
                 longSeq.finish();
             this.intSequences = null;
             this.longSequences = null;
-            this.intSequence.finish();
-            this.longSequence.finish();
+            for (int i = 0; i < this.shards.length && this.shards[i] != null; ++i) {
+                this.shards[i].intSequence.finish();
+                this.shards[i].longSequence.finish();
+            }
         }
 
         @Override
         public void writeOut(final OutputStream out) throws IOException {
             finish();
-            out.write(TraceSequenceTypes.FORMAT_SEQUITUR);
+            out.write(TraceSequenceTypes.FORMAT_SEQUITUR_SHARDED);
             final ObjectOutputStream objOut = new ObjectOutputStream(out);
-            this.intSequence.writeOut(objOut, true);
-            this.longSequence.writeOut(objOut, true);
+            // shards are created in order, so all used ones are at the beginning
+            int numShards = 0;
+            while (numShards < this.shards.length && this.shards[numShards] != null)
+                ++numShards;
+            objOut.writeInt(numShards);
+            for (int i = 0; i < numShards; ++i) {
+                this.shards[i].intSequence.writeOut(objOut, true);
+                this.shards[i].longSequence.writeOut(objOut, true);
+            }
             objOut.flush();
         }
 
@@ -35,14 +35,17 @@ public class UncompressedIntegerTraceSequence implements IntegerTraceSequence {
 
     private boolean ready = false;
 
+    private final Tracer tracer;
+    private final MultiplexOutputStream out;
     private final MyDataOutputStream dataOut;
 
     private final int streamIndex;
 
     public UncompressedIntegerTraceSequence(final Tracer tracer) {
-        final MultiplexOutputStream out = tracer.newOutputStream();
-        this.dataOut = new MyDataOutputStream(out);
-        this.streamIndex = out.getId();
+        this.tracer = tracer;
+        this.out = tracer.newOutputStream();
+        this.dataOut = new MyDataOutputStream(this.out);
+        this.streamIndex = this.out.getId();
     }
 
     @Override
@@ -66,6 +69,7 @@ public class UncompressedIntegerTraceSequence implements IntegerTraceSequence {
             return;
         this.ready = true;
         this.dataOut.close();
+        this.tracer.streamFinished(this.out);
     }
 
     @Override
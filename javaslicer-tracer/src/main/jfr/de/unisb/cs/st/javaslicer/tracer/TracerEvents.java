@@ -0,0 +1,134 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   de.unisb.cs.st.javaslicer.tracer
+ *    Class:     TracerEvents
+ *    Filename:  javaslicer-tracer/src/main/jfr/de/unisb/cs/st/javaslicer/tracer/TracerEvents.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The JFR event types of the tracer. Only instantiated via {@link JfrEvents}, which makes
+ * sure that this class is not loaded in JVMs without the <code>jdk.jfr</code> API.
+ *
+ * This class is kept out of the main sources, which are compiled against the Java 8 API,
+ * and is only compiled by the "jfr" build profile.
+ */
+final class TracerEvents implements JfrEvents.Sink {
+
+    @Name("de.unisb.cs.st.javaslicer.ClassTransformation")
+    @Label("Class Transformation")
+    @Description("Instrumentation of one class by the tracer")
+    @Category("JavaSlicer")
+    @StackTrace(false)
+    static class ClassTransformation extends Event {
+        @Label("Class")
+        String className;
+        @Label("Transformation Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long transformationTime;
+    }
+
+    @Name("de.unisb.cs.st.javaslicer.WriteStall")
+    @Label("Write Stall")
+    @Description("A traced thread waited because the trace writers were behind")
+    @Category("JavaSlicer")
+    @StackTrace(false)
+    static class WriteStall extends Event {
+        @Label("Stall Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long stallTime;
+    }
+
+    @Name("de.unisb.cs.st.javaslicer.TracerStatistics")
+    @Label("Tracer Statistics")
+    @Description("Periodic snapshot of the tracer's counters (see TracerMetricsMXBean)")
+    @Category("JavaSlicer")
+    @Period("1 s")
+    @StackTrace(false)
+    static class Statistics extends Event {
+        @Label("Traced Events")
+        long tracedEvents;
+        @Label("Write Queue Depth")
+        int writeQueueDepth;
+        @Label("Write Stalls")
+        long writeStalls;
+        @Label("Bytes Written")
+        @DataAmount(DataAmount.BYTES)
+        long bytesWritten;
+        @Label("Transformed Classes")
+        int transformedClasses;
+        @Label("Object Id Table Size")
+        int objectIdTableSize;
+    }
+
+    public TracerEvents() {
+        // instantiated by JfrEvents
+    }
+
+    @Override
+    public boolean register(final TracerMetrics metrics) {
+        if (!FlightRecorder.isAvailable())
+            return false;
+        FlightRecorder.addPeriodicEvent(Statistics.class, new Runnable() {
+            @Override
+            public void run() {
+                final Statistics event = new Statistics();
+                event.tracedEvents = metrics.getTracedEvents();
+                event.writeQueueDepth = metrics.getWriteQueueDepth();
+                event.writeStalls = metrics.getWriteStalls();
+                event.bytesWritten = metrics.getBytesWritten();
+                event.transformedClasses = metrics.getTransformedClasses();
+                event.objectIdTableSize = metrics.getObjectIdTableSize();
+                event.commit();
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void classTransformed(final String className, final long nanoSecs) {
+        final ClassTransformation event = new ClassTransformation();
+        if (event.isEnabled()) {
+            event.className = className.replace('/', '.');
+            event.transformationTime = nanoSecs;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void writeStall(final long nanoSecs) {
+        final WriteStall event = new WriteStall();
+        if (event.isEnabled()) {
+            event.stallTime = nanoSecs;
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   javaslicer-tracer.src.test.java.de.unisb.cs.st.javaslicer.benchmarks
+ *    Class:     CacheRecyclingBenchmark
+ *    Filename:  javaslicer-tracer/src/test/java/de/unisb/cs/st/javaslicer/benchmarks/CacheRecyclingBenchmark.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.benchmarks;
+
+/**
+ * Traces enough events in each thread to fill its event caches many times, and
+ * reports the bytes allocated by each traced thread and the collections of each
+ * garbage collector. Without recycling, each full cache makes the traced thread
+ * allocate new cache arrays (1-2 MB each), which shows up here as allocated
+ * megabytes and as old generation collections.
+ *
+ * Run it with the tracer, and with a tracer that does not recycle the caches to compare:
+ * <pre>
+ * java -javaagent:tracer.jar=tracefile:caches.trace,compression:none,include:de.unisb.cs.st.javaslicer.benchmarks.* \
+ *     -cp test-classes de.unisb.cs.st.javaslicer.benchmarks.CacheRecyclingBenchmark [threads] [iterations]
+ * </pre>
+ * On Java 8, the benchmark classes have to be compiled for Java 6 (the tracer does
+ * not compute stack map frames), and only they can be traced (it does not support
+ * invokedynamic, which the Java 8 runtime classes use).
+ *
+ * With 2 threads and 3 million iterations on a single core, each traced thread
+ * allocated 212.9 MB (14 young and 6 full collections) without recycling, and
+ * 18.9 MB (3 young collections) with it.
+ */
+public class CacheRecyclingBenchmark {
+
+    private final Object[] objects = new Object[256];
+    private long sum;
+
+    public static void main(final String[] args) throws Exception {
+        final int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final long iterations = args.length > 1 ? Long.parseLong(args[1]) : 20*1000*1000;
+
+        final long[] threadAllocated = new long[numThreads];
+        final Thread[] threads = new Thread[numThreads];
+        final String collectorsBefore = JvmCounters.describeCollectors();
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < numThreads; ++i) {
+            final int threadNr = i;
+            threads[i] = new Thread("benchmark " + i) {
+                @Override
+                public void run() {
+                    final long allocatedBefore = JvmCounters.currentThreadAllocatedBytes();
+                    new CacheRecyclingBenchmark().run(iterations);
+                    threadAllocated[threadNr] = allocatedBefore < 0 ? -1
+                        : JvmCounters.currentThreadAllocatedBytes() - allocatedBefore;
+                }
+            };
+            threads[i].start();
+        }
+        for (final Thread t: threads)
+            t.join();
+        final long millis = (System.nanoTime() - startTime) / 1000000;
+
+        System.out.format("%d threads x %d iterations: %d ms%n", numThreads, iterations, millis);
+        for (int i = 0; i < numThreads; ++i) {
+            if (threadAllocated[i] < 0) {
+                System.out.println("(this JVM does not measure the allocation per thread)");
+                break;
+            }
+            System.out.format("thread %d: %.1f MB allocated%n", i, threadAllocated[i] / 1e6);
+        }
+        System.out.println("collections before: " + collectorsBefore);
+        System.out.println("collections after:  " + JvmCounters.describeCollectors());
+    }
+
+    private void run(final long iterations) {
+        final Object[] o = this.objects;
+        for (int i = 0; i < o.length; ++i)
+            o[i] = Integer.valueOf(i);
+        // the array loads trace integer indexes and object ids, so both caches fill up
+        for (long i = 0; i < iterations; ++i) {
+            final int index = (int) i & (o.length - 1);
+            final Object obj = o[index];
+            o[(index + 1) & (o.length - 1)] = obj;
+            this.sum += index;
+        }
+    }
+
+}
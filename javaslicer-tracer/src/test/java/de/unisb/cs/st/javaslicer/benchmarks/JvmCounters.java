@@ -0,0 +1,85 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   javaslicer-tracer.src.test.java.de.unisb.cs.st.javaslicer.benchmarks
+ *    Class:     JvmCounters
+ *    Filename:  javaslicer-tracer/src/test/java/de/unisb/cs/st/javaslicer/benchmarks/JvmCounters.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A snapshot of the garbage collection counters of the JVM, and of the bytes
+ * allocated by the current thread (if the JVM can measure them).
+ */
+public class JvmCounters {
+
+    public final long gcCount;
+    public final long gcMillis;
+    // -1 if not supported
+    public final long allocatedBytes;
+
+    private JvmCounters(final long gcCount, final long gcMillis, final long allocatedBytes) {
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public static JvmCounters now() {
+        long count = 0;
+        long time = 0;
+        for (final GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new JvmCounters(count, time, currentThreadAllocatedBytes());
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread so far, or -1 if
+     *         the JVM does not measure it
+     */
+    public static long currentThreadAllocatedBytes() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        final com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!hotspotThreads.isThreadAllocatedMemorySupported() || !hotspotThreads.isThreadAllocatedMemoryEnabled())
+            return -1;
+        return hotspotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return the collections per collector (e.g. to tell young from old generation
+     *         collections), as "name: count (time ms)"
+     */
+    public static String describeCollectors() {
+        final StringBuilder sb = new StringBuilder();
+        for (final GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (sb.length() != 0)
+                sb.append(", ");
+            sb.append(gc.getName()).append(": ").append(gc.getCollectionCount())
+                .append(" (").append(gc.getCollectionTime()).append(" ms)");
+        }
+        return sb.toString();
+    }
+
+}
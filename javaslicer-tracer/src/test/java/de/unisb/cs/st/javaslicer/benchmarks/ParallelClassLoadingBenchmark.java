@@ -0,0 +1,101 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   javaslicer-tracer.src.test.java.de.unisb.cs.st.javaslicer.benchmarks
+ *    Class:     ParallelClassLoadingBenchmark
+ *    Filename:  javaslicer-tracer/src/test/java/de/unisb/cs/st/javaslicer/benchmarks/ParallelClassLoadingBenchmark.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.benchmarks;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Loads (and thereby instruments) all classes of a jar file from several threads in
+ * parallel, to measure how the class transformation scales with the number of threads.
+ * Each thread uses its own class loader, so every thread loads every class.
+ *
+ * Run it like this, and compare the times for different numbers of threads:
+ * <pre>
+ * java -javaagent:tracer.jar=tracefile:cl.trace \
+ *     -cp test-classes de.unisb.cs.st.javaslicer.benchmarks.ParallelClassLoadingBenchmark &lt;jar&gt; [threads]
+ * </pre>
+ * Use the <code>jmx</code> option of the tracer to also see the time spent per class.
+ */
+public class ParallelClassLoadingBenchmark {
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: " + ParallelClassLoadingBenchmark.class.getName() + " <jar file> [<threads>]");
+            System.exit(-1);
+        }
+        final File jar = new File(args[0]);
+        final int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        final List<String> classNames = new ArrayList<String>();
+        final JarFile jarFile = new JarFile(jar);
+        try {
+            final Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final String name = entries.nextElement().getName();
+                if (name.endsWith(".class") && !name.endsWith("module-info.class"))
+                    classNames.add(name.substring(0, name.length() - 6).replace('/', '.'));
+            }
+        } finally {
+            jarFile.close();
+        }
+
+        final URL[] urls = new URL[] { jar.toURI().toURL() };
+        final AtomicInteger failed = new AtomicInteger(0);
+        final Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; ++i) {
+            threads[i] = new Thread("loader " + i) {
+                @Override
+                public void run() {
+                    final ClassLoader loader = new URLClassLoader(urls, null);
+                    for (final String className: classNames) {
+                        try {
+                            Class.forName(className, false, loader);
+                        } catch (final Throwable e) {
+                            // missing dependencies of the jar
+                            failed.incrementAndGet();
+                        }
+                    }
+                }
+            };
+        }
+
+        final long startTime = System.nanoTime();
+        for (final Thread t: threads)
+            t.start();
+        for (final Thread t: threads)
+            t.join();
+        final long millis = (System.nanoTime() - startTime) / 1000000;
+
+        System.out.format("%d threads loaded %d classes each: %d ms (%d classes failed to load)%n",
+            numThreads, classNames.size(), millis, failed.get());
+    }
+
+}
@@ -0,0 +1,98 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   javaslicer-tracer.src.test.java.de.unisb.cs.st.javaslicer.benchmarks
+ *    Class:     TracingEventBenchmark
+ *    Filename:  javaslicer-tracer/src/test/java/de/unisb/cs/st/javaslicer/benchmarks/TracingEventBenchmark.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.benchmarks;
+
+/**
+ * Runs a loop of field and array accesses (each of which is traced) in several
+ * threads at once, to measure the cost per traced event and how it scales with
+ * the number of threads.
+ *
+ * Run it with the tracer, and once more with the tracer of an older version (or
+ * without any agent) to compare:
+ * <pre>
+ * java -javaagent:tracer.jar=tracefile:events.trace \
+ *     -cp test-classes de.unisb.cs.st.javaslicer.benchmarks.TracingEventBenchmark [threads] [iterations]
+ * </pre>
+ * Each iteration traces about {@value #EVENTS_PER_ITERATION} integer and object
+ * values (array indexes, the arrays, the field owner and the loop labels). It
+ * reports the time per iteration, the garbage collections and the bytes allocated
+ * by the traced threads.
+ *
+ * The benchmarks are not in the tracer package, since the tracer never instruments
+ * its own classes.
+ */
+public class TracingEventBenchmark {
+
+    private static final int EVENTS_PER_ITERATION = 8;
+
+    private int counter;
+    private final int[] values = new int[1024];
+
+    public static void main(final String[] args) throws Exception {
+        final int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        final long iterations = args.length > 1 ? Long.parseLong(args[1]) : 10*1000*1000;
+
+        // warm up in the main thread, so that the loop is compiled before measuring
+        new TracingEventBenchmark().run(iterations / 10);
+
+        final JvmCounters before = JvmCounters.now();
+        final long[] threadAllocated = new long[numThreads];
+        final Thread[] threads = new Thread[numThreads];
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < numThreads; ++i) {
+            final int threadNr = i;
+            threads[i] = new Thread("benchmark " + i) {
+                @Override
+                public void run() {
+                    final long allocatedBefore = JvmCounters.currentThreadAllocatedBytes();
+                    new TracingEventBenchmark().run(iterations);
+                    threadAllocated[threadNr] = allocatedBefore < 0 ? -1
+                        : JvmCounters.currentThreadAllocatedBytes() - allocatedBefore;
+                }
+            };
+            threads[i].start();
+        }
+        for (final Thread t: threads)
+            t.join();
+        final long nanos = System.nanoTime() - startTime;
+        final JvmCounters after = JvmCounters.now();
+
+        long allocated = 0;
+        for (final long a: threadAllocated)
+            allocated = a < 0 || allocated < 0 ? -1 : allocated + a;
+        System.out.format("%d threads x %d iterations: %d ms, %.2f ns per iteration of each thread (about %d events)%n",
+            numThreads, iterations, nanos / 1000000, (double) nanos / iterations, EVENTS_PER_ITERATION);
+        System.out.format("%d GCs (%d ms)%s%n", after.gcCount - before.gcCount, after.gcMillis - before.gcMillis,
+            allocated < 0 ? "" : String.format(", %.1f MB allocated by the traced threads", allocated / 1e6));
+    }
+
+    private void run(final long iterations) {
+        final int[] v = this.values;
+        for (long i = 0; i < iterations; ++i) {
+            final int index = (int) i & (v.length - 1);
+            v[index] += this.counter;
+            this.counter = v[(index + 1) & (v.length - 1)] ^ index;
+        }
+    }
+
+}
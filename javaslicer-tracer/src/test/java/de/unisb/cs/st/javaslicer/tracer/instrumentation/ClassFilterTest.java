@@ -0,0 +1,161 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   javaslicer-tracer.src.test.java.de.unisb.cs.st.javaslicer.tracer.instrumentation
+ *    Class:     ClassFilterTest
+ *    Filename:  javaslicer-tracer/src/test/java/de/unisb/cs/st/javaslicer/tracer/instrumentation/ClassFilterTest.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer.instrumentation;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ClassFilterTest {
+
+    @Test
+    public void testEmpty() {
+        final ClassFilter filter = new ClassFilter();
+        Assert.assertTrue(filter.isEmpty());
+        Assert.assertFalse(filter.isExcluded("java.lang.String"));
+        Assert.assertFalse(filter.isExcluded(""));
+    }
+
+    @Test
+    public void testPrefixPatterns() {
+        final ClassFilter filter = new ClassFilter();
+        filter.addExclude("com.foo.*");
+        filter.addExclude("org.bar.");
+        filter.addExclude("net.Baz*");
+        Assert.assertFalse(filter.isEmpty());
+
+        Assert.assertTrue(filter.isExcluded("com.foo.Bar"));
+        Assert.assertTrue(filter.isExcluded("com.foo.sub.Bar$Inner"));
+        Assert.assertTrue(filter.isExcluded("org.bar.Foo"));
+        Assert.assertTrue(filter.isExcluded("net.Baz"));
+        Assert.assertTrue(filter.isExcluded("net.BazQux"));
+
+        Assert.assertFalse(filter.isExcluded("com.foobar.Bar"));
+        Assert.assertFalse(filter.isExcluded("com.Foo"));
+        Assert.assertFalse(filter.isExcluded("org.barista.Foo"));
+        Assert.assertFalse(filter.isExcluded("net.Ba"));
+    }
+
+    @Test
+    public void testClassPatterns() {
+        final ClassFilter filter = new ClassFilter();
+        filter.addExclude("com.foo.Bar");
+
+        Assert.assertTrue(filter.isExcluded("com.foo.Bar"));
+        // nested classes are matched as well
+        Assert.assertTrue(filter.isExcluded("com.foo.Bar$Inner"));
+        Assert.assertTrue(filter.isExcluded("com.foo.Bar$Inner$1"));
+
+        // but no other classes with the same prefix
+        Assert.assertFalse(filter.isExcluded("com.foo.Barista"));
+        Assert.assertFalse(filter.isExcluded("com.foo.Ba"));
+        Assert.assertFalse(filter.isExcluded("com.foo.Bar.Sub"));
+    }
+
+    @Test
+    public void testInternalNames() {
+        final ClassFilter filter = new ClassFilter();
+        filter.addExclude("com/foo/*");
+        Assert.assertTrue(filter.isExcluded("com.foo.Bar"));
+    }
+
+    @Test
+    public void testLongestMatchWins() {
+        final ClassFilter filter = new ClassFilter();
+        filter.addExclude("com.foo.*");
+        filter.addInclude("com.foo.api.*");
+        filter.addExclude("com.foo.api.internal.*");
+        filter.addInclude("com.foo.api.internal.Visible");
+
+        Assert.assertTrue(filter.isExcluded("com.foo.Impl"));
+        Assert.assertFalse(filter.isExcluded("com.foo.api.Service"));
+        Assert.assertTrue(filter.isExcluded("com.foo.api.internal.Helper"));
+        Assert.assertFalse(filter.isExcluded("com.foo.api.internal.Visible"));
+        Assert.assertFalse(filter.isExcluded("com.foo.api.internal.Visible$Inner"));
+    }
+
+    @Test
+    public void testShorterPatternAddedLater() {
+        // the order in which the patterns are added does not matter
+        final ClassFilter filter = new ClassFilter();
+        filter.addInclude("com.foo.api.*");
+        filter.addExclude("com.foo.*");
+
+        Assert.assertFalse(filter.isExcluded("com.foo.api.Service"));
+        Assert.assertTrue(filter.isExcluded("com.foo.Impl"));
+    }
+
+    @Test
+    public void testExclusionWinsTies() {
+        final ClassFilter filter = new ClassFilter();
+        filter.addInclude("com.foo.*");
+        filter.addExclude("com.foo.*");
+        filter.addExclude("com.bar.Baz");
+        filter.addInclude("com.bar.Baz");
+
+        Assert.assertTrue(filter.isExcluded("com.foo.Bar"));
+        Assert.assertTrue(filter.isExcluded("com.bar.Baz"));
+        Assert.assertTrue(filter.isExcluded("com.bar.Baz$Inner"));
+    }
+
+    @Test
+    public void testIncludesExcludeEverythingElse() {
+        final ClassFilter filter = new ClassFilter();
+        filter.addInclude("com.foo.*");
+
+        Assert.assertFalse(filter.isExcluded("com.foo.Bar"));
+        Assert.assertTrue(filter.isExcluded("com.bar.Foo"));
+        Assert.assertTrue(filter.isExcluded("java.lang.String"));
+    }
+
+    @Test
+    public void testExcludesOnlyIncludeEverythingElse() {
+        final ClassFilter filter = new ClassFilter();
+        filter.addExclude("com.foo.*");
+
+        Assert.assertFalse(filter.isExcluded("com.bar.Foo"));
+    }
+
+    @Test
+    public void testWildcardAll() {
+        final ClassFilter filter = new ClassFilter();
+        filter.addExclude("*");
+        filter.addInclude("com.foo.Bar");
+
+        Assert.assertTrue(filter.isExcluded("java.lang.String"));
+        Assert.assertFalse(filter.isExcluded("com.foo.Bar"));
+    }
+
+    @Test
+    public void testMultiplePatterns() {
+        final ClassFilter filter = new ClassFilter();
+        filter.addIncludes("com.foo.*; com.bar.Baz;;");
+        filter.addExcludes(" com.foo.Secret ;");
+
+        Assert.assertFalse(filter.isExcluded("com.foo.Bar"));
+        Assert.assertFalse(filter.isExcluded("com.bar.Baz"));
+        Assert.assertTrue(filter.isExcluded("com.foo.Secret"));
+        Assert.assertTrue(filter.isExcluded("com.bar.Other"));
+    }
+
+}
@@ -0,0 +1,252 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   javaslicer-tracer.src.test.java.de.unisb.cs.st.javaslicer.tracer.instrumentation
+ *    Class:     IndexRelocatorTest
+ *    Filename:  javaslicer-tracer/src/test/java/de/unisb/cs/st/javaslicer/tracer/instrumentation/IndexRelocatorTest.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer.instrumentation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import de.unisb.cs.st.javaslicer.common.TraceSequenceTypes;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.Field;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.Instruction;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadClass;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.ReadMethod;
+import de.unisb.cs.st.javaslicer.common.classRepresentation.instructions.AbstractInstruction;
+import de.unisb.cs.st.javaslicer.tracer.ThreadTracer;
+import de.unisb.cs.st.javaslicer.tracer.Tracer;
+import de.unisb.cs.st.javaslicer.tracer.traceSequences.uncompressed.UncompressedTraceSequenceFactory;
+
+/**
+ * Instruments a class the way the {@link Transformer} does (with local indexes starting
+ * at 0), relocates it and checks that every index passed to the {@link ThreadTracer} has
+ * been moved to the reserved ranges.
+ */
+public class IndexRelocatorTest implements Opcodes {
+
+    // many indexes are reserved before, so that unrelocated indexes are detected
+    private static final int RESERVED_BEFORE = 100000;
+
+    private static final String THREAD_TRACER_NAME = Type.getInternalName(ThreadTracer.class);
+    private static final String INSTRUMENTER_NAME = Type.getInternalName(TracingMethodInstrumenter.class);
+
+    /**
+     * The instrumented class. It uses locals of all sizes, arrays, allocations and
+     * exception handlers, so that all kinds of tracing calls are generated.
+     */
+    public static class Subject {
+
+        public static long compute(final int[] values, final Object obj) {
+            long sum = 0;
+            double factor = 1.5;
+            final String str = String.valueOf(obj);
+            final int[][] matrix = new int[3][values.length];
+            for (int i = 0; i < values.length; ++i) {
+                sum += values[i] * str.length();
+                matrix[i % 3][i] = (int) factor;
+                factor *= 2;
+            }
+            try {
+                sum += Integer.parseInt(str);
+            } catch (final NumberFormatException e) {
+                sum -= String.valueOf(e.getMessage()).length();
+            }
+            final Object[] objects = new Object[] { obj, str, new StringBuilder(str) };
+            return sum + matrix[1].length + objects.length;
+        }
+
+        public int instanceMethod(final long a, final double b, final Subject other) {
+            final long c = a * 3;
+            final double d = b / 2;
+            return other == null ? (int) (c + d) : other.instanceMethod(c, d, null);
+        }
+
+    }
+
+    private static Tracer tracer;
+
+    @BeforeClass
+    public static void createTracer() throws IOException {
+        final File traceFile = File.createTempFile("relocation", ".trace");
+        traceFile.deleteOnExit();
+        Tracer.newInstance(traceFile, false, false, new UncompressedTraceSequenceFactory(), null,
+            0, null, null, null);
+        tracer = Tracer.getInstance();
+    }
+
+    @Test
+    public void testAllCallSitesRelocated() throws IOException {
+        final ClassNode classNode = new ClassNode();
+        new ClassReader(readClassFile(Subject.class)).accept(classNode, 0);
+
+        AbstractInstruction.reserveIndexes(RESERVED_BEFORE);
+        tracer.reserveTraceSequences(Collections.nCopies(RESERVED_BEFORE, TraceSequenceTypes.Type.INTEGER));
+
+        final int[] outerIndexes = AbstractInstruction.beginLocalIndexes();
+        final List<TraceSequenceTypes.Type> outerTraceSequences = tracer.beginLocalTraceSequences();
+        final IndexRelocator relocator = new IndexRelocator();
+        final ReadClass readClass;
+        final int numInstructions;
+        final List<TraceSequenceTypes.Type> traceSequenceTypes;
+        try {
+            readClass = new ReadClass(Type.getObjectType(classNode.name).getClassName(),
+                AbstractInstruction.getNextIndex(), classNode.access, classNode.sourceFile,
+                Collections.<Field>emptyList(),
+                Type.getObjectType(classNode.superName).getClassName());
+            new TracingClassInstrumenter(readClass, tracer, relocator, false).transform(classNode);
+            readClass.setInstructionNumberEnd(AbstractInstruction.getNextIndex());
+        } finally {
+            numInstructions = AbstractInstruction.endLocalIndexes(outerIndexes);
+            traceSequenceTypes = tracer.endLocalTraceSequences(outerTraceSequences);
+        }
+        Assert.assertTrue("no instructions created", numInstructions > 0);
+        Assert.assertTrue("no trace sequences created", traceSequenceTypes.size() > 0);
+        Assert.assertTrue(numInstructions < RESERVED_BEFORE && traceSequenceTypes.size() < RESERVED_BEFORE);
+
+        final int instrStart = AbstractInstruction.reserveIndexes(numInstructions);
+        final int seqStart = tracer.reserveTraceSequences(traceSequenceTypes);
+        Assert.assertTrue(instrStart >= RESERVED_BEFORE && seqStart >= RESERVED_BEFORE);
+
+        readClass.relocate(instrStart, seqStart);
+        Assert.assertEquals(instrStart, readClass.getInstructionNumberStart());
+        Assert.assertEquals(instrStart + numInstructions, readClass.getInstructionNumberEnd());
+        for (final ReadMethod method: readClass.getMethods())
+            for (final Instruction instr: method.getInstructions())
+                assertInRange("instruction index", instr.getIndex(), instrStart, numInstructions);
+
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classNode.accept(relocator.relocate(writer, instrStart, seqStart));
+        final byte[] classfile = writer.toByteArray();
+        assertCallSitesInRange(classfile, instrStart, numInstructions, seqStart, traceSequenceTypes.size());
+
+        // relocate the written class again, like the instrumentation cache does
+        final int newInstrStart = AbstractInstruction.reserveIndexes(numInstructions);
+        final int newSeqStart = tracer.reserveTraceSequences(traceSequenceTypes);
+        final byte[] movedClassfile = IndexRelocator.relocate(classfile, relocator.getRelocatedConstants(),
+            newInstrStart - instrStart, newSeqStart - seqStart);
+        assertCallSitesInRange(movedClassfile, newInstrStart, numInstructions, newSeqStart, traceSequenceTypes.size());
+    }
+
+    private static void assertCallSitesInRange(final byte[] classfile, final int instrStart, final int numInstructions,
+            final int seqStart, final int numSequences) {
+        final ClassNode relocated = new ClassNode();
+        new ClassReader(classfile).accept(relocated, 0);
+
+        int numCallSites = 0;
+        for (final Object methodObj: relocated.methods) {
+            final MethodNode method = (MethodNode) methodObj;
+            for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if (!(insn instanceof MethodInsnNode))
+                    continue;
+                final MethodInsnNode call = (MethodInsnNode) insn;
+                final String kinds = getIndexArguments(call);
+                if (kinds == null)
+                    continue;
+                ++numCallSites;
+                // the indexes are the last arguments, pushed as constants directly before the call
+                AbstractInsnNode arg = call;
+                for (int i = kinds.length() - 1; i >= 0; --i) {
+                    arg = arg.getPrevious();
+                    final Integer value = getIntConstant(arg);
+                    final String where = method.name + " calling " + call.name;
+                    Assert.assertNotNull("index is not a constant in " + where, value);
+                    if (kinds.charAt(i) == 'I')
+                        assertInRange("instruction index in " + where, value.intValue(), instrStart, numInstructions);
+                    else
+                        assertInRange("sequence index in " + where, value.intValue(), seqStart, numSequences);
+                }
+            }
+        }
+        Assert.assertTrue("no tracing calls found", numCallSites > 0);
+    }
+
+    /**
+     * @return the kinds of the index arguments ('I' for instruction index, 'S' for trace
+     *         sequence index) at the end of the argument list of the called method, or
+     *         <code>null</code> if it is no tracing method
+     */
+    private static String getIndexArguments(final MethodInsnNode call) {
+        if (THREAD_TRACER_NAME.equals(call.owner)) {
+            if ("traceInt".equals(call.name) || "traceObject".equals(call.name)
+                    || "traceLastInstructionIndex".equals(call.name))
+                return "S";
+            if ("passInstruction".equals(call.name) || "enterMethod".equals(call.name)
+                    || "leaveMethod".equals(call.name))
+                return "I";
+            if ("objectAllocated".equals(call.name))
+                return "IS";
+        } else if (INSTRUMENTER_NAME.equals(call.owner) && "traceMultiANewArray".equals(call.name)) {
+            return "SS";
+        }
+        return null;
+    }
+
+    private static Integer getIntConstant(final AbstractInsnNode insn) {
+        if (insn instanceof InsnNode && insn.getOpcode() >= ICONST_M1 && insn.getOpcode() <= ICONST_5)
+            return Integer.valueOf(insn.getOpcode() - ICONST_0);
+        if (insn instanceof IntInsnNode && (insn.getOpcode() == BIPUSH || insn.getOpcode() == SIPUSH))
+            return Integer.valueOf(((IntInsnNode) insn).operand);
+        if (insn instanceof LdcInsnNode && ((LdcInsnNode) insn).cst instanceof Integer)
+            return (Integer) ((LdcInsnNode) insn).cst;
+        return null;
+    }
+
+    private static void assertInRange(final String what, final int value, final int start, final int count) {
+        Assert.assertTrue(what + " " + value + " not in [" + start + ", " + (start + count) + ")",
+            value >= start && value < start + count);
+    }
+
+    private static byte[] readClassFile(final Class<?> cls) throws IOException {
+        final InputStream in = cls.getResourceAsStream("/" + Type.getInternalName(cls) + ".class");
+        Assert.assertNotNull("class file of " + cls.getName() + " not found", in);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buf = new byte[4096];
+            int read;
+            while ((read = in.read(buf)) > 0)
+                out.write(buf, 0, read);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+}
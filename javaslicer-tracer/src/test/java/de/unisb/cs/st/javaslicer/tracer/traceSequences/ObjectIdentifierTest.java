@@ -0,0 +1,127 @@
+/** License information:
+ *    Component: javaslicer-tracer
+ *    Package:   javaslicer-tracer.src.test.java.de.unisb.cs.st.javaslicer.tracer.traceSequences
+ *    Class:     ObjectIdentifierTest
+ *    Filename:  javaslicer-tracer/src/test/java/de/unisb/cs/st/javaslicer/tracer/traceSequences/ObjectIdentifierTest.java
+ *
+ * This file is part of the JavaSlicer tool, developed by Clemens Hammacher at Saarland University.
+ * See http://www.st.cs.uni-saarland.de/javaslicer/ for more information.
+ *
+ * JavaSlicer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JavaSlicer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaSlicer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.unisb.cs.st.javaslicer.tracer.traceSequences;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ObjectIdentifierTest {
+
+    // enough objects to make every stripe rehash several times
+    private static final int NUM_OBJECTS = 200000;
+
+    private static final ObjectIdentifier identifier = ObjectIdentifier.instance;
+
+    @Test
+    public void testSameObjectSameId() {
+        final Object obj = new Object();
+        final long id = identifier.getObjectId(obj);
+        Assert.assertTrue(id > 0);
+        Assert.assertEquals(id, identifier.getObjectId(obj));
+        Assert.assertEquals(id, identifier.getNewId(obj));
+    }
+
+    @Test
+    public void testEqualObjectsDifferentIds() {
+        // ids are assigned by identity, not by equals
+        final String a = new String("equal");
+        final String b = new String("equal");
+        Assert.assertFalse(identifier.getObjectId(a) == identifier.getObjectId(b));
+    }
+
+    @Test
+    public void testManyObjects() {
+        final Object[] objects = new Object[NUM_OBJECTS];
+        final long[] ids = new long[NUM_OBJECTS];
+        final Set<Long> seenIds = new HashSet<Long>();
+        for (int i = 0; i < NUM_OBJECTS; ++i) {
+            objects[i] = new Object();
+            ids[i] = identifier.getObjectId(objects[i]);
+            Assert.assertTrue("duplicate id " + ids[i], seenIds.add(ids[i]));
+        }
+        Assert.assertTrue(identifier.size() >= NUM_OBJECTS);
+
+        // collected objects (from other tests) must not disturb the lookup after rehashing
+        System.gc();
+        for (int i = 0; i < 1000; ++i)
+            identifier.getObjectId(new Object());
+        for (int i = 0; i < NUM_OBJECTS; ++i)
+            Assert.assertEquals(ids[i], identifier.getObjectId(objects[i]));
+    }
+
+    @Test
+    public void testNewIdsAreUnique() {
+        final Object obj = new Object();
+        final long objId = identifier.getObjectId(obj);
+        final Set<Long> seenIds = new HashSet<Long>();
+        seenIds.add(objId);
+        for (int i = 0; i < 5000; ++i)
+            Assert.assertTrue(seenIds.add(identifier.getNewId(null)));
+    }
+
+    @Test
+    public void testConcurrentLookups() throws InterruptedException {
+        // a prime number of objects, so that each thread's order is a permutation
+        final Object[] shared = new Object[10007];
+        for (int i = 0; i < shared.length; ++i)
+            shared[i] = new Object();
+        final int numThreads = 8;
+        final long[][] ids = new long[numThreads][shared.length];
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; ++t) {
+            final int threadNr = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < shared.length; ++i) {
+                            final int index = (i * (2 * threadNr + 1)) % shared.length;
+                            ids[threadNr][index] = identifier.getObjectId(shared[index]);
+                            identifier.getNewId(null);
+                        }
+                    } catch (final Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread t: threads)
+            t.join();
+        Assert.assertNull(failure.get());
+
+        final Set<Long> seenIds = new HashSet<Long>();
+        for (int i = 0; i < shared.length; ++i) {
+            for (int t = 1; t < numThreads; ++t)
+                Assert.assertEquals(ids[0][i], ids[t][i]);
+            Assert.assertTrue(seenIds.add(ids[0][i]));
+        }
+    }
+
+}